@@ -0,0 +1,164 @@
+package com.example.backend.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import jakarta.jms.ConnectionFactory;
+import jakarta.jms.DeliveryMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jms.JmsException;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// Several nodes behind a load balancer, connected to a JMS broker (ActiveMQ Artemis).
+// Every node listens on its own queue (chat.node.<node id>) and a frame for a user is
+// sent to the queue of each node where the user has a session open, or delivered
+// directly when that node is this one. Where users are connected is shared on the
+// chat.presence topic: an update when the sessions of a user change on a node, a
+// snapshot of each node every chat.presence.heartbeat-ms, a snapshot from everybody
+// when a node joins, and a goodbye when a node shuts down. Frames expire in the broker
+// after chat.presence.ttl-ms, the messages are saved by the node that accepted them, so
+// a frame lost with a node is still in the chat history.
+@Component
+@ConditionalOnProperty(name = "chat.router", havingValue = "broker")
+public class BrokerChatRouter implements ChatRouter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BrokerChatRouter.class);
+
+    public static final String PRESENCE_TOPIC = "chat.presence";
+
+    public record RoutedFrame(String username, String payload, String exceptSessionId) {
+    }
+
+    public record PresenceUpdate(Type type, String nodeId, Map<String, Integer> sessions) {
+
+        public enum Type {
+            // sessions of some users changed on the node
+            UPDATE,
+            // every session the node holds
+            SNAPSHOT,
+            // a node started, the others answer with a snapshot
+            JOIN,
+            // a node is shutting down
+            LEAVE
+        }
+    }
+
+    private final ChatPresenceRegistry presenceRegistry;
+    private final ObjectMapper objectMapper;
+    private final JmsTemplate queueTemplate;
+    private final JmsTemplate topicTemplate;
+    private volatile LocalDelivery localDelivery = (username, payload, exceptSessionId) -> {
+    };
+
+    public BrokerChatRouter(ChatPresenceRegistry presenceRegistry, ObjectMapper objectMapper,
+            ConnectionFactory connectionFactory, @Value("${chat.presence.ttl-ms:30000}") long ttl) {
+        this.presenceRegistry = presenceRegistry;
+        this.objectMapper = objectMapper;
+        this.queueTemplate = template(connectionFactory, false, ttl);
+        this.topicTemplate = template(connectionFactory, true, ttl);
+    }
+
+    public static String nodeQueue(String nodeId) {
+        return "chat.node." + nodeId;
+    }
+
+    @Override
+    public void setLocalDelivery(LocalDelivery localDelivery) {
+        this.localDelivery = localDelivery;
+    }
+
+    @Override
+    public void sessionsChanged(String username, int sessions) {
+        presenceRegistry.setLocalSessions(username, sessions);
+        publish(PresenceUpdate.Type.UPDATE, Map.of(username, sessions));
+    }
+
+    @Override
+    public void route(String username, String payload, String exceptSessionId) {
+        for (String node : presenceRegistry.nodesOf(username)) {
+            if (node.equals(presenceRegistry.getNodeId())) {
+                localDelivery.deliver(username, payload, exceptSessionId);
+                continue;
+            }
+            try {
+                queueTemplate.convertAndSend(nodeQueue(node),
+                        objectMapper.writeValueAsString(new RoutedFrame(username, payload, exceptSessionId)));
+            } catch (JsonProcessingException | JmsException e) {
+                LOG.warn("Could not route a chat frame for {} to node {}", username, node, e);
+            }
+        }
+    }
+
+    // A frame sent to this node's queue
+    public void onFrame(String message) throws JsonProcessingException {
+        RoutedFrame frame = objectMapper.readValue(message, RoutedFrame.class);
+        localDelivery.deliver(frame.username(), frame.payload(), frame.exceptSessionId());
+    }
+
+    // A message of the presence topic (our own messages come back too)
+    public void onPresence(String message) throws JsonProcessingException {
+        PresenceUpdate update = objectMapper.readValue(message, PresenceUpdate.class);
+        if (update.nodeId().equals(presenceRegistry.getNodeId())) {
+            return;
+        }
+        switch (update.type()) {
+            case UPDATE -> update.sessions().forEach((username, count) ->
+                    presenceRegistry.setRemoteSessions(update.nodeId(), username, count));
+            case SNAPSHOT -> presenceRegistry.replaceRemoteSessions(update.nodeId(), update.sessions());
+            case JOIN -> {
+                presenceRegistry.replaceRemoteSessions(update.nodeId(), Map.of());
+                publishSnapshot();
+            }
+            case LEAVE -> presenceRegistry.removeNode(update.nodeId());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void join() {
+        LOG.info("Chat node {} joining", presenceRegistry.getNodeId());
+        publish(PresenceUpdate.Type.JOIN, Map.of());
+    }
+
+    @Scheduled(fixedDelayString = "${chat.presence.heartbeat-ms:10000}")
+    public void heartbeat() {
+        presenceRegistry.expireNodes();
+        publishSnapshot();
+    }
+
+    @PreDestroy
+    public void leave() {
+        publish(PresenceUpdate.Type.LEAVE, Map.of());
+    }
+
+    private void publishSnapshot() {
+        publish(PresenceUpdate.Type.SNAPSHOT, presenceRegistry.localSnapshot());
+    }
+
+    private void publish(PresenceUpdate.Type type, Map<String, Integer> sessions) {
+        try {
+            topicTemplate.convertAndSend(PRESENCE_TOPIC,
+                    objectMapper.writeValueAsString(new PresenceUpdate(type, presenceRegistry.getNodeId(), sessions)));
+        } catch (JsonProcessingException | JmsException e) {
+            LOG.warn("Could not publish the chat presence of node {}", presenceRegistry.getNodeId(), e);
+        }
+    }
+
+    private static JmsTemplate template(ConnectionFactory connectionFactory, boolean topic, long ttl) {
+        JmsTemplate template = new JmsTemplate(connectionFactory);
+        template.setPubSubDomain(topic);
+        // the chat history is in the database, frames don't need to survive the broker
+        template.setExplicitQosEnabled(true);
+        template.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        template.setTimeToLive(ttl);
+        return template;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.backend.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.jms.ConnectionFactory;
+import jakarta.jms.DeliveryMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jms.JmsException;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Several nodes connected to the broker of the chat (see BrokerChatRouter). Every
+// change is sent to the cluster.events topic and applied by the other nodes one at a
+// time, in the order each node sent them. A node that is down or disconnected misses
+// the changes of that time: it loads everything from the database when it starts, and
+// the leaderboards are rebuilt and the cached entities expire on a schedule anyway.
+@Component
+@ConditionalOnProperty(name = "chat.router", havingValue = "broker")
+public class BrokerClusterEvents implements ClusterEvents {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BrokerClusterEvents.class);
+
+    public static final String TOPIC = "cluster.events";
+
+    public record Event(String nodeId, String type, List<String> args) {
+    }
+
+    private final ChatPresenceRegistry presenceRegistry;
+    private final ObjectMapper objectMapper;
+    private final JmsTemplate topicTemplate;
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+
+    // set while the listener applies a change of another node
+    private final ThreadLocal<Boolean> applying = ThreadLocal.withInitial(() -> false);
+
+    public BrokerClusterEvents(ChatPresenceRegistry presenceRegistry, ObjectMapper objectMapper,
+            ConnectionFactory connectionFactory) {
+        this.presenceRegistry = presenceRegistry;
+        this.objectMapper = objectMapper;
+        this.topicTemplate = new JmsTemplate(connectionFactory);
+        topicTemplate.setPubSubDomain(true);
+        // the changes are already in the database, they don't need to survive the broker
+        topicTemplate.setExplicitQosEnabled(true);
+        topicTemplate.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+    }
+
+    @Override
+    public void subscribe(String type, Handler handler) {
+        handlers.put(type, handler);
+    }
+
+    @Override
+    public void publish(String type, Object... args) {
+        if (applying.get()) {
+            return;
+        }
+        List<String> values = new ArrayList<>(args.length);
+        for (Object arg : args) {
+            values.add(arg == null ? null : arg.toString());
+        }
+        try {
+            topicTemplate.convertAndSend(TOPIC,
+                    objectMapper.writeValueAsString(new Event(presenceRegistry.getNodeId(), type, values)));
+        } catch (JsonProcessingException | JmsException e) {
+            LOG.warn("Could not publish the cluster event {} {}", type, values, e);
+        }
+    }
+
+    // A message of the topic (our own messages come back too)
+    public void onEvent(String message) throws JsonProcessingException {
+        Event event = objectMapper.readValue(message, Event.class);
+        if (event.nodeId().equals(presenceRegistry.getNodeId())) {
+            return;
+        }
+        Handler handler = handlers.get(event.type());
+        if (handler == null) {
+            LOG.warn("No handler for the cluster event {} of node {}", event.type(), event.nodeId());
+            return;
+        }
+        applying.set(true);
+        try {
+            handler.apply(event.args());
+        } catch (RuntimeException e) {
+            LOG.error("Could not apply the cluster event {} {} of node {}", event.type(), event.args(),
+                    event.nodeId(), e);
+        } finally {
+            applying.set(false);
+        }
+    }
+}
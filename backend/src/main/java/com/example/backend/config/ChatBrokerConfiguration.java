@@ -0,0 +1,50 @@
+package com.example.backend.config;
+
+import jakarta.jms.ConnectionFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.jms.listener.adapter.MessageListenerAdapter;
+
+// Listeners of BrokerChatRouter: the queue of this node and the presence topic; and of
+// BrokerClusterEvents: the topic of the changes made by the other nodes. One consumer
+// each, so frames for a user are delivered, and changes applied, in the order they
+// were sent.
+@Configuration
+@ConditionalOnProperty(name = "chat.router", havingValue = "broker")
+public class ChatBrokerConfiguration {
+
+    @Bean
+    public DefaultMessageListenerContainer chatFrameListener(ConnectionFactory connectionFactory,
+            BrokerChatRouter brokerChatRouter, ChatPresenceRegistry presenceRegistry) {
+        return listener(connectionFactory, BrokerChatRouter.nodeQueue(presenceRegistry.getNodeId()), false,
+                brokerChatRouter, "onFrame");
+    }
+
+    @Bean
+    public DefaultMessageListenerContainer chatPresenceListener(ConnectionFactory connectionFactory,
+            BrokerChatRouter brokerChatRouter) {
+        return listener(connectionFactory, BrokerChatRouter.PRESENCE_TOPIC, true, brokerChatRouter, "onPresence");
+    }
+
+    @Bean
+    public DefaultMessageListenerContainer clusterEventListener(ConnectionFactory connectionFactory,
+            BrokerClusterEvents brokerClusterEvents) {
+        return listener(connectionFactory, BrokerClusterEvents.TOPIC, true, brokerClusterEvents, "onEvent");
+    }
+
+    private static DefaultMessageListenerContainer listener(ConnectionFactory connectionFactory, String destination,
+            boolean topic, Object delegate, String method) {
+        MessageListenerAdapter adapter = new MessageListenerAdapter(delegate);
+        adapter.setDefaultListenerMethod(method);
+
+        DefaultMessageListenerContainer container = new DefaultMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.setDestinationName(destination);
+        container.setPubSubDomain(topic);
+        container.setConcurrentConsumers(1);
+        container.setMessageListener(adapter);
+        return container;
+    }
+}
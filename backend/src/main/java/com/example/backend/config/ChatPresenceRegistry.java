@@ -0,0 +1,112 @@
+package com.example.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Which nodes each user has chat sessions open on, and how many. The counts of this
+// node are kept by ChatWebSocketHandler through the ChatRouter; the counts of the
+// other nodes arrive from them (BrokerChatRouter), as updates of a single user and as
+// periodic snapshots of everything they hold. A node that stops sending snapshots is
+// forgotten after chat.presence.ttl-ms, so a crashed node doesn't keep its users.
+@Component
+public class ChatPresenceRegistry {
+
+    private final String nodeId;
+    private final long ttl;
+
+    // username -> node id -> open sessions
+    private final Map<String, Map<String, Integer>> sessions = new ConcurrentHashMap<>();
+
+    // node id -> last time we heard from it
+    private final Map<String, Long> lastSeen = new ConcurrentHashMap<>();
+
+    public ChatPresenceRegistry(@Value("${chat.node-id:}") String nodeId,
+            @Value("${chat.presence.ttl-ms:30000}") long ttl) {
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+        this.ttl = ttl;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    // Nodes where the user has at least one session open
+    public Set<String> nodesOf(String username) {
+        Map<String, Integer> nodes = sessions.get(username);
+        return nodes == null ? Set.of() : Set.copyOf(nodes.keySet());
+    }
+
+    public boolean isOnline(String username) {
+        return sessions.containsKey(username);
+    }
+
+    // Sessions a user has open on this node changed
+    public void setLocalSessions(String username, int count) {
+        setSessions(nodeId, username, count);
+    }
+
+    // Sessions a user has open on another node changed
+    public void setRemoteSessions(String node, String username, int count) {
+        lastSeen.put(node, System.currentTimeMillis());
+        setSessions(node, username, count);
+    }
+
+    // Everything another node holds, replaces what we knew about it
+    public void replaceRemoteSessions(String node, Map<String, Integer> snapshot) {
+        lastSeen.put(node, System.currentTimeMillis());
+        for (String username : sessions.keySet()) {
+            if (!snapshot.containsKey(username)) {
+                setSessions(node, username, 0);
+            }
+        }
+        snapshot.forEach((username, count) -> setSessions(node, username, count));
+    }
+
+    // Everything this node holds, to be sent to the other nodes
+    public Map<String, Integer> localSnapshot() {
+        Map<String, Integer> snapshot = new HashMap<>();
+        sessions.forEach((username, nodes) -> {
+            Integer count = nodes.get(nodeId);
+            if (count != null) {
+                snapshot.put(username, count);
+            }
+        });
+        return snapshot;
+    }
+
+    // Forget the nodes not heard from in a while
+    public void expireNodes() {
+        long now = System.currentTimeMillis();
+        lastSeen.forEach((node, seen) -> {
+            if (seen + ttl <= now && lastSeen.remove(node, seen)) {
+                removeNode(node);
+            }
+        });
+    }
+
+    public void removeNode(String node) {
+        for (String username : sessions.keySet()) {
+            setSessions(node, username, 0);
+        }
+    }
+
+    private void setSessions(String node, String username, int count) {
+        sessions.compute(username, (key, nodes) -> {
+            if (nodes == null) {
+                nodes = new ConcurrentHashMap<>();
+            }
+            if (count > 0) {
+                nodes.put(node, count);
+            } else {
+                nodes.remove(node);
+            }
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+}
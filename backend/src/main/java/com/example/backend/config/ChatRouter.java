@@ -0,0 +1,23 @@
+package com.example.backend.config;
+
+// Gets chat frames to the sessions of a user wherever they are connected. With a
+// single node that is this JVM (LocalChatRouter, the default); with several nodes
+// behind a load balancer the frame has to reach the node holding the session
+// (BrokerChatRouter, chat.router=broker). ChatWebSocketHandler owns the sessions of
+// this node: it registers how to deliver to them and reports when they open and close.
+public interface ChatRouter {
+
+    // Delivers a frame to the sessions a user has open on this node
+    @FunctionalInterface
+    interface LocalDelivery {
+        void deliver(String username, String payload, String exceptSessionId);
+    }
+
+    void setLocalDelivery(LocalDelivery localDelivery);
+
+    // The user now has this many sessions open on this node
+    void sessionsChanged(String username, int sessions);
+
+    // Send a frame to every session of a user, except the given one (null for none)
+    void route(String username, String payload, String exceptSessionId);
+}
@@ -1,25 +1,77 @@
 package com.example.backend.config;
 
-import com.example.backend.service.ChatService;
+import com.example.backend.service.ChatMessageWriter;
+import com.example.backend.service.UserService;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
+import java.io.IOException;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+// Chat over WebSocket. A user can have several sessions open at once (one per tab or
+// device) and a message is delivered to every session of the recipient and to the
+// other sessions of the sender, on whichever node they are (see ChatRouter). Delivery never runs on the sender's thread: each
+// session has a bounded outbox drained in order by a pool of delivery threads, and a
+// session whose outbox fills up (a slow consumer) is disconnected instead of holding
+// messages for everyone else. Messages are saved asynchronously by ChatMessageWriter,
+// and every message gets an acknowledgement back with the id assigned to it.
 @Component
 public class ChatWebSocketHandler extends TextWebSocketHandler {
-    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChatWebSocketHandler.class);
+
+    private static final String CHAT_SESSION_ATTRIBUTE = "chatSession";
+
+    // Length of the messages.content column
+    private static final int MAX_CONTENT_LENGTH = 255;
+
+    // Open sessions of each user
+    private final Map<String, Set<ChatSession>> sessions = new ConcurrentHashMap<>();
     private final ObjectMapper objectMapper;
-    private final ChatService chatService;
+    private final UserService userService;
+    private final ChatMessageWriter chatMessageWriter;
+    private final ChatRouter chatRouter;
+    private final ThreadPoolExecutor deliveryExecutor;
+    private final int outboxMessages;
+    private final long outboxBytes;
 
-    public ChatWebSocketHandler(ObjectMapper objectMapper, ChatService chatService) {
+    public ChatWebSocketHandler(ObjectMapper objectMapper, UserService userService, ChatMessageWriter chatMessageWriter,
+            ChatRouter chatRouter,
+            @Value("${chat.delivery-threads:4}") int threads,
+            @Value("${chat.delivery-queue:10000}") int queueSize,
+            @Value("${chat.outbox-messages:256}") int outboxMessages,
+            @Value("${chat.outbox-bytes:524288}") long outboxBytes) {
         this.objectMapper = objectMapper;
-        this.chatService = chatService;
+        this.userService = userService;
+        this.chatMessageWriter = chatMessageWriter;
+        this.chatRouter = chatRouter;
+        this.deliveryExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("chat-delivery-"));
+        this.outboxMessages = outboxMessages;
+        this.outboxBytes = outboxBytes;
+        chatRouter.setLocalDelivery(this::deliver);
     }
 
     @Override
@@ -29,69 +81,240 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             session.close(CloseStatus.POLICY_VIOLATION);
             return;
         }
-        System.out.println("WebSocket connection established for user: " + username);
-        sessions.put(username, session);
+        ChatSession chatSession = new ChatSession(username, session);
+        session.getAttributes().put(CHAT_SESSION_ATTRIBUTE, chatSession);
+        sessions.compute(username, (key, userSessions) -> {
+            if (userSessions == null) {
+                userSessions = ConcurrentHashMap.newKeySet();
+            }
+            userSessions.add(chatSession);
+            return userSessions;
+        });
+        chatRouter.sessionsChanged(username, getSessionCount(username));
+        LOG.debug("WebSocket connection established for user {}", username);
     }
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
         String authenticatedUsername = (String) session.getAttributes().get("username");
-        if (authenticatedUsername == null) {
+        ChatSession senderSession = (ChatSession) session.getAttributes().get(CHAT_SESSION_ATTRIBUTE);
+        if (authenticatedUsername == null || senderSession == null) {
             session.close(CloseStatus.POLICY_VIOLATION);
             return;
         }
 
-        System.out.println("Received message: " + message.getPayload());
+        ChatMessage chatMessage;
         try {
-            ChatMessage chatMessage = objectMapper.readValue(message.getPayload(), ChatMessage.class);
-            
-            // Verify the sender is the authenticated user
-            if (!authenticatedUsername.equals(chatMessage.getSenderUsername())) {
-                session.close(CloseStatus.POLICY_VIOLATION);
-                return;
-            }
+            chatMessage = objectMapper.readValue(message.getPayload(), ChatMessage.class);
+        } catch (JsonProcessingException e) {
+            LOG.debug("Unreadable chat message from {}", authenticatedUsername, e);
+            session.close(CloseStatus.BAD_DATA);
+            return;
+        }
 
-            System.out.println("Parsed message: sender=" + chatMessage.getSenderUsername() 
-                + ", recipient=" + chatMessage.getRecipientUsername());
-            
-            chatService.saveMessage(chatMessage);
-
-            // Send to recipient if online
-            WebSocketSession recipientSession = sessions.get(chatMessage.getRecipientUsername());
-            if (recipientSession != null && recipientSession.isOpen()) {
-                recipientSession.sendMessage(message);
-                System.out.println("Message forwarded to recipient: " + chatMessage.getRecipientUsername());
-            } else {
-                System.out.println("Recipient not online or session closed: " + chatMessage.getRecipientUsername());
-            }
-        } catch (Exception e) {
-            System.err.println("Error processing message: " + e.getMessage());
-            e.printStackTrace();
-            session.close(CloseStatus.SERVER_ERROR);
+        // The time of a message is always the server's: the client's clock can be off or
+        // forged, and the history is ordered by it. What the client sent is only echoed
+        // in the acknowledgement.
+        long clientTimestamp = chatMessage.getTimestamp();
+        chatMessage.setTimestamp(System.currentTimeMillis());
+
+        // Verify the sender is the authenticated user
+        if (!authenticatedUsername.equals(chatMessage.getSenderUsername())) {
+            session.close(CloseStatus.POLICY_VIOLATION);
+            return;
         }
+
+        if (chatMessage.getRecipientUsername() == null || chatMessage.getContent() == null
+                || chatMessage.getContent().isBlank() || chatMessage.getContent().length() > MAX_CONTENT_LENGTH
+                || userService.getUserByUsername(chatMessage.getRecipientUsername()) == null) {
+            acknowledge(senderSession, chatMessage, clientTimestamp, ChatAck.Status.INVALID);
+            return;
+        }
+
+        chatMessage.setMessageId(UUID.randomUUID().toString());
+
+        // Backpressure: if the messages can't be saved as fast as they arrive, the
+        // sender is told to retry later
+        if (!chatMessageWriter.enqueue(chatMessage)) {
+            acknowledge(senderSession, chatMessage, clientTimestamp, ChatAck.Status.REJECTED);
+            return;
+        }
+
+        String payload = objectMapper.writeValueAsString(chatMessage);
+        chatRouter.route(chatMessage.getRecipientUsername(), payload, null);
+        if (!chatMessage.getRecipientUsername().equals(authenticatedUsername)) {
+            chatRouter.route(authenticatedUsername, payload, senderSession.id);
+        }
+        acknowledge(senderSession, chatMessage, clientTimestamp, ChatAck.Status.ACCEPTED);
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
         String username = (String) session.getAttributes().get("username");
-        if (username != null) {
-            System.out.println("WebSocket connection closed for user: " + username + " with status: " + status);
-            sessions.remove(username);
+        ChatSession chatSession = (ChatSession) session.getAttributes().get(CHAT_SESSION_ATTRIBUTE);
+        if (username != null && chatSession != null) {
+            LOG.debug("WebSocket connection closed for user {} with status {}", username, status);
+            removeSession(chatSession);
         }
     }
 
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
-        System.err.println("WebSocket transport error: " + exception.getMessage());
-        exception.printStackTrace();
+        LOG.warn("WebSocket transport error for user {}", session.getAttributes().get("username"), exception);
         session.close(CloseStatus.SERVER_ERROR);
     }
 
+    @PreDestroy
+    public void shutdown() {
+        deliveryExecutor.shutdown();
+    }
+
+    // Number of open sessions of a user
+    public int getSessionCount(String username) {
+        Set<ChatSession> userSessions = sessions.get(username);
+        return userSessions == null ? 0 : userSessions.size();
+    }
+
+    // Send a frame to every session of a user open on this node, except the given one
+    private void deliver(String username, String payload, String exceptSessionId) {
+        Set<ChatSession> userSessions = sessions.get(username);
+        if (userSessions == null) {
+            LOG.debug("Recipient {} not online", username);
+            return;
+        }
+        TextMessage message = new TextMessage(payload);
+        for (ChatSession chatSession : userSessions) {
+            if (!chatSession.id.equals(exceptSessionId)) {
+                chatSession.send(message);
+            }
+        }
+    }
+
+    private void acknowledge(ChatSession chatSession, ChatMessage chatMessage, long clientTimestamp,
+            ChatAck.Status status) throws JsonProcessingException {
+        ChatAck ack = new ChatAck(ChatAck.TYPE, chatMessage.getClientId(), chatMessage.getMessageId(),
+                chatMessage.getTimestamp(), clientTimestamp, status);
+        chatSession.send(new TextMessage(objectMapper.writeValueAsString(ack)));
+    }
+
+    private void removeSession(ChatSession chatSession) {
+        boolean[] removed = new boolean[1];
+        sessions.computeIfPresent(chatSession.username, (key, userSessions) -> {
+            removed[0] = userSessions.remove(chatSession);
+            return userSessions.isEmpty() ? null : userSessions;
+        });
+        if (removed[0]) {
+            chatRouter.sessionsChanged(chatSession.username, getSessionCount(chatSession.username));
+        }
+    }
+
+    // An open session with its outbox. Messages are queued and sent in order, by one
+    // delivery thread at a time; the outbox is bounded in messages and bytes.
+    private final class ChatSession {
+
+        // unique across nodes, to leave the sender's session out of a routed frame
+        private final String id = UUID.randomUUID().toString();
+        private final String username;
+        private final WebSocketSession session;
+        private final Queue<TextMessage> outbox = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queuedMessages = new AtomicInteger();
+        private final AtomicLong queuedBytes = new AtomicLong();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private ChatSession(String username, WebSocketSession session) {
+            this.username = username;
+            this.session = session;
+        }
+
+        private void send(TextMessage message) {
+            if (!session.isOpen()) {
+                return;
+            }
+            int messages = queuedMessages.incrementAndGet();
+            long bytes = queuedBytes.addAndGet(message.getPayloadLength());
+            if (messages > outboxMessages || bytes > outboxBytes) {
+                queuedMessages.decrementAndGet();
+                queuedBytes.addAndGet(-message.getPayloadLength());
+                evict(CloseStatus.SESSION_NOT_RELIABLE, "its outbox is full");
+                return;
+            }
+            outbox.add(message);
+            schedule();
+        }
+
+        private void schedule() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    deliveryExecutor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    draining.set(false);
+                    evict(CloseStatus.SERVICE_OVERLOAD, "the delivery queue is full");
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                TextMessage message;
+                while ((message = outbox.poll()) != null) {
+                    queuedMessages.decrementAndGet();
+                    queuedBytes.addAndGet(-message.getPayloadLength());
+                    if (session.isOpen()) {
+                        session.sendMessage(message);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                evict(CloseStatus.SERVER_ERROR, "a send failed: " + e.getMessage());
+            } finally {
+                draining.set(false);
+                // a message queued after the last poll but before the flag was cleared
+                if (!outbox.isEmpty() && session.isOpen()) {
+                    schedule();
+                }
+            }
+        }
+
+        private void evict(CloseStatus status, String reason) {
+            LOG.warn("Closing a chat session of {}: {}", username, reason);
+            outbox.clear();
+            queuedMessages.set(0);
+            queuedBytes.set(0);
+            removeSession(this);
+            try {
+                session.close(status);
+            } catch (IOException e) {
+                LOG.debug("Could not close a chat session of {}", username, e);
+            }
+        }
+    }
+
+    // Acknowledgement of a received message: the client's id for it (if it sent one),
+    // the id and time assigned to the message, the time the client sent (0 if none)
+    // and whether it was accepted
+    public record ChatAck(String type, String clientId, String messageId, long timestamp, long clientTimestamp,
+            Status status) {
+
+        public static final String TYPE = "ack";
+
+        public enum Status {
+            // Delivered to the online sessions and queued to be saved
+            ACCEPTED,
+            // Not accepted right now (the server is overloaded), can be sent again
+            REJECTED,
+            // Never accepted (unknown recipient, empty or too long content)
+            INVALID
+        }
+    }
+
     public static class ChatMessage {
         private String senderUsername;
         private String recipientUsername;
         private String content;
         private long timestamp;
+        // Id chosen by the client to match the acknowledgement (optional)
+        private String clientId;
+        // Id assigned by the server when the message is accepted
+        private String messageId;
 
         // Getters and setters
         public String getSenderUsername() {
@@ -125,5 +348,21 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         public void setTimestamp(long timestamp) {
             this.timestamp = timestamp;
         }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        public void setClientId(String clientId) {
+            this.clientId = clientId;
+        }
+
+        public String getMessageId() {
+            return messageId;
+        }
+
+        public void setMessageId(String messageId) {
+            this.messageId = messageId;
+        }
     }
-} 
\ No newline at end of file
+}
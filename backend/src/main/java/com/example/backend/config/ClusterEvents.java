@@ -0,0 +1,28 @@
+package com.example.backend.config;
+
+import java.util.List;
+
+// Keeps the in-memory state of the nodes in step. MembershipIndex, FollowGraph,
+// LeaderboardService, VerifiedTokenCache and the second-level cache (see
+// SecondLevelCacheSync) live in each JVM, so every change one of them makes here is
+// also published and applied by the other nodes. With a single node there is nobody
+// to tell (LocalClusterEvents, the default); with several behind a load balancer
+// (chat.router=broker) the changes go through the broker of the chat
+// (BrokerClusterEvents). The changes are published once the transaction that made them
+// commits, so the node applying one reads the same rows.
+public interface ClusterEvents {
+
+    // Applies a change published by another node, with the arguments it was published
+    // with (as strings, null stays null)
+    @FunctionalInterface
+    interface Handler {
+        void apply(List<String> args);
+    }
+
+    // Handle the changes of a type published by the other nodes
+    void subscribe(String type, Handler handler);
+
+    // Tell the other nodes about a change made in this node. Does nothing while a
+    // change of another node is being applied, so it is never sent back.
+    void publish(String type, Object... args);
+}
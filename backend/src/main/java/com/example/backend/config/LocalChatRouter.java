@@ -0,0 +1,35 @@
+package com.example.backend.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+// Single node: every session is in this JVM
+@Component
+@ConditionalOnProperty(name = "chat.router", havingValue = "local", matchIfMissing = true)
+public class LocalChatRouter implements ChatRouter {
+
+    private final ChatPresenceRegistry presenceRegistry;
+    private volatile LocalDelivery localDelivery = (username, payload, exceptSessionId) -> {
+    };
+
+    public LocalChatRouter(ChatPresenceRegistry presenceRegistry) {
+        this.presenceRegistry = presenceRegistry;
+    }
+
+    @Override
+    public void setLocalDelivery(LocalDelivery localDelivery) {
+        this.localDelivery = localDelivery;
+    }
+
+    @Override
+    public void sessionsChanged(String username, int sessions) {
+        presenceRegistry.setLocalSessions(username, sessions);
+    }
+
+    @Override
+    public void route(String username, String payload, String exceptSessionId) {
+        if (presenceRegistry.isOnline(username)) {
+            localDelivery.deliver(username, payload, exceptSessionId);
+        }
+    }
+}
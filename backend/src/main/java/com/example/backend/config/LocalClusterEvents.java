@@ -0,0 +1,18 @@
+package com.example.backend.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+// Single node: the state of this JVM is the only one
+@Component
+@ConditionalOnProperty(name = "chat.router", havingValue = "local", matchIfMissing = true)
+public class LocalClusterEvents implements ClusterEvents {
+
+    @Override
+    public void subscribe(String type, Handler handler) {
+    }
+
+    @Override
+    public void publish(String type, Object... args) {
+    }
+}
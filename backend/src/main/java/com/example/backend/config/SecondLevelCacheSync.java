@@ -0,0 +1,113 @@
+package com.example.backend.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.Type;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Evictions of the second-level cache shared with the other nodes (see ClusterEvents).
+// Hibernate keeps the cache of this node up to date with its own writes; the entities
+// it updates or deletes are published once the transaction commits, and the rows
+// written with plain SQL are evicted through here instead of the Cache of the
+// EntityManagerFactory. A node that gets an eviction also drops its query results,
+// as it never saw the write that made them stale.
+@Component
+public class SecondLevelCacheSync {
+
+    private static final String EVICT_ENTITY = "cache.evict-entity";
+    private static final String EVICT_QUERY_REGION = "cache.evict-query-region";
+
+    private final SessionFactoryImplementor sessionFactory;
+    private final ClusterEvents clusterEvents;
+
+    public SecondLevelCacheSync(EntityManagerFactory entityManagerFactory, ClusterEvents clusterEvents) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.clusterEvents = clusterEvents;
+    }
+
+    @PostConstruct
+    public void init() {
+        EntityWriteListener listener = new EntityWriteListener();
+        EventListenerRegistry registry = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+
+        clusterEvents.subscribe(EVICT_ENTITY, this::evictRemote);
+        clusterEvents.subscribe(EVICT_QUERY_REGION, args -> cache().evictQueryRegion(args.get(0)));
+    }
+
+    // An entity was written without Hibernate
+    public void evict(Class<?> entity, Object id) {
+        cache().evictEntityData(entity, id);
+        clusterEvents.publish(EVICT_ENTITY, entity.getName(), id);
+    }
+
+    // Rows read by a cached query were written without Hibernate
+    public void evictQueryRegion(String region) {
+        cache().evictQueryRegion(region);
+        clusterEvents.publish(EVICT_QUERY_REGION, region);
+    }
+
+    // The entity and the collections cached with it, then every query result
+    private void evictRemote(List<String> args) {
+        EntityPersister persister = sessionFactory.getMappingMetamodel().getEntityDescriptor(args.get(0));
+        Object id = persister.getIdentifierType().getReturnedClass() == Long.class ? Long.valueOf(args.get(1))
+                : args.get(1);
+        Cache cache = cache();
+        cache.evictEntityData(persister.getEntityName(), id);
+        for (Type type : persister.getPropertyTypes()) {
+            if (type instanceof CollectionType collection) {
+                cache.evictCollectionData(collection.getRole(), id);
+            }
+        }
+        cache.evictQueryRegions();
+    }
+
+    private Cache cache() {
+        return sessionFactory.getCache();
+    }
+
+    private final class EntityWriteListener implements PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return persister.canWriteToCache();
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            publish(event.getPersister(), event.getId());
+        }
+
+        @Override
+        public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            publish(event.getPersister(), event.getId());
+        }
+
+        @Override
+        public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+        }
+
+        private void publish(EntityPersister persister, Object id) {
+            if (persister.canWriteToCache()) {
+                clusterEvents.publish(EVICT_ENTITY, persister.getEntityName(), id);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.backend.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class FlywayConfiguration {
+
+    // The migrations run at startup, before the EntityManagerFactory is built. With
+    // schema.reset-on-start (dev profile only, it needs spring.flyway.clean-disabled=false)
+    // every table is dropped first and the schema is created again from V1.
+    @Bean
+    public FlywayMigrationStrategy flywayMigrationStrategy(@Value("${schema.reset-on-start:false}") boolean reset) {
+        return flyway -> {
+            if (reset) {
+                flyway.clean();
+            }
+            flyway.migrate();
+        };
+    }
+}
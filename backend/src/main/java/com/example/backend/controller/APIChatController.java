@@ -1,5 +1,7 @@
 package com.example.backend.controller;
 
+import com.example.backend.dto.ChatSummary;
+import com.example.backend.dto.Cursor;
 import com.example.backend.service.ChatService;
 import com.example.backend.entity.Chat;
 import com.example.backend.entity.Message;
@@ -13,6 +15,7 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -32,8 +35,6 @@ public class APIChatController {
     // Define a view that includes all necessary message fields
     interface ChatMessageView extends Message.BasicInfo, User.UsernameInfo {}
     interface ChatBasicView extends Chat.BasicInfo, ChatMessageView {}
-    interface ChatListMessageView extends Message.BasicInfoForChatList, User.UsernameInfo {}
-    interface ChatListBasicView extends Chat.BasicInfoForChatList, ChatListMessageView {}
 
     private String getCurrentUsername(HttpServletRequest request) {
         if (request.getUserPrincipal() == null) {
@@ -42,23 +43,30 @@ public class APIChatController {
         return request.getUserPrincipal().getName();
     }
 
-    @JsonView(ChatListBasicView.class)
     @Operation(summary = "Get user's chats")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Chats found", content = {
-            @Content(mediaType = "application/json", schema = @Schema(implementation = Chat.class))
+            @Content(mediaType = "application/json", schema = @Schema(implementation = ChatSummary.class))
         }),
+        @ApiResponse(responseCode = "400", description = "Invalid cursor", content = @Content),
         @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content),
         @ApiResponse(responseCode = "404", description = "No chats found", content = @Content)
     })
     @GetMapping
-    public ResponseEntity<List<Chat>> getUserChats(HttpServletRequest request, 
+    public ResponseEntity<List<ChatSummary>> getUserChats(HttpServletRequest request, 
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String cursor) {
         String username = getCurrentUsername(request);
+        if (cursor != null) {
+            // keyset pagination, invalid cursors are answered by handleIllegalArgument
+            Slice<ChatSummary> chats = chatService.getUserChatsAfter(username, Cursor.decode(cursor), size);
+            return new ResponseEntity<>(chats.getContent(), Cursor.nextPage(chats, chatService::cursorOf),
+                    HttpStatus.OK);
+        }
         System.out.println("Getting chats for authenticated user: " + username);
-        Page<Chat> chatsPage = chatService.getUserChats(username, PageRequest.of(page, size));
-        List<Chat> chats = chatsPage.getContent();
+        Page<ChatSummary> chatsPage = chatService.getUserChats(username, PageRequest.of(page, size));
+        List<ChatSummary> chats = chatsPage.getContent();
         System.out.println("Retrieved " + chats.size() + " chats");
         return ResponseEntity.ok(chats);
     }
@@ -69,12 +77,16 @@ public class APIChatController {
         @ApiResponse(responseCode = "200", description = "Messages found", content = {
             @Content(mediaType = "application/json", schema = @Schema(implementation = Message.class))
         }),
+        @ApiResponse(responseCode = "400", description = "Anchor message not in this chat", content = @Content),
         @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content),
         @ApiResponse(responseCode = "403", description = "Forbidden - User not part of this chat", content = @Content),
         @ApiResponse(responseCode = "404", description = "Chat not found", content = @Content)
     })
     @GetMapping("/{chatId}/messages")
-    public ResponseEntity<List<Message>> getChatMessages(HttpServletRequest request, @PathVariable Long chatId) {
+    public ResponseEntity<List<Message>> getChatMessages(HttpServletRequest request, @PathVariable Long chatId,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "50") int size) {
         String username = getCurrentUsername(request);
         
         // Check if chat exists
@@ -89,7 +101,9 @@ public class APIChatController {
             return new ResponseEntity<>(HttpStatus.FORBIDDEN);
         }
 
-        List<Message> messages = chatService.getChatMessages(chatId, username);
+        // messages older than "before" (newest first) or newer than "after" (oldest
+        // first), the latest ones if neither is given
+        List<Message> messages = chatService.getChatMessages(chatId, username, before, after, size);
         return ResponseEntity.ok(messages);
     }
 
@@ -1,28 +1,26 @@
 package com.example.backend.controller;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.security.Principal;
-import java.sql.Blob;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
-import javax.imageio.ImageIO;
-
-import org.hibernate.engine.jdbc.BlobProxy;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import com.example.backend.security.AccessContext;
+import com.example.backend.service.CommunityAccess;
 import com.example.backend.service.CommunityService;
+import com.example.backend.service.ImageService;
 import com.example.backend.service.UserService;
 import com.fasterxml.jackson.annotation.JsonView;
 
@@ -30,11 +28,15 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 
+import com.example.backend.dto.Cursor;
+import com.example.backend.dto.MemberSummary;
 import com.example.backend.entity.Ban;
 import com.example.backend.entity.Community;
+import com.example.backend.entity.ImageMetadata;
 import com.example.backend.entity.User;
 import com.example.backend.entity.Post;
 
@@ -43,6 +45,8 @@ import com.example.backend.entity.Post;
 public class APICommunityController {
     private final CommunityService communityService;
     private final UserService userService;
+    private final ImageService imageService;
+    private final AccessContext accessContext;
 
     interface CommunityBasicInfo extends Community.BasicInfo, User.UsernameInfo {
     }
@@ -56,9 +60,12 @@ public class APICommunityController {
     interface CommunityBanInfo extends Ban.BasicInfo {
     }
 
-    public APICommunityController(CommunityService communityService, UserService userService) {
+    public APICommunityController(CommunityService communityService, UserService userService,
+            ImageService imageService, AccessContext accessContext) {
         this.communityService = communityService;
         this.userService = userService;
+        this.imageService = imageService;
+        this.accessContext = accessContext;
     }
 
     // Get communities by ID | SECURITY: CHECKED
@@ -92,7 +99,9 @@ public class APICommunityController {
             Admin: get communities by admin username. Sortings: NONE
             Name: search by name. Sortings: creationDate, lastPostDate, members, alphabetical (default)
             Description: search by description. Sortings: creationDate, lastPostDate, members, alphabetical (default)
-            """)
+            """, description = "Default: matches whole words and word prefixes. When that finds nothing, or the "
+            + "query has no word the full-text index can match, the query is matched as a substring (a part of a "
+            + "word)")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Found communities", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = Community.class))
@@ -132,24 +141,24 @@ public class APICommunityController {
         }
     }
 
-    // Get members of a community (pageable) | SECURITY: CHECKED
+    // Get members of a community (pageable, or sorted by username with a cursor) | SECURITY: CHECKED
     @Operation(summary = "Get members of a community (pageable)")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Found members", content = {
-                    @Content(mediaType = "application/json", schema = @Schema(implementation = Community.class))
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = MemberSummary.class))
             }),
             @ApiResponse(responseCode = "404", description = "Community not found", content = @Content),
-            @ApiResponse(responseCode = "400", description = "Missing parameter", content = @Content),
+            @ApiResponse(responseCode = "400", description = "Missing parameter or invalid cursor", content = @Content),
             @ApiResponse(responseCode = "204", description = "No content", content = @Content)
     })
-    @JsonView(CommunityUsersInfo.class)
     @GetMapping("/communities/{id}/users")
     public ResponseEntity<Object> getMembers(
             @PathVariable Long id,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(required = false) String query,
-            @RequestParam(defaultValue = "false") boolean count) {
+            @RequestParam(defaultValue = "false") boolean count,
+            @RequestParam(required = false) String cursor) {
         // does community exist?
         if (communityService.getCommunityById(id) == null) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
@@ -158,16 +167,28 @@ public class APICommunityController {
         if (count) {
             int numberOfUsers = communityService.getNumberOfUsers(id);
             return new ResponseEntity<>(numberOfUsers, HttpStatus.OK);
+        } else if (cursor != null) {
+            Slice<MemberSummary> members;
+            try {
+                members = communityService.getMembersAfter(id, query, Cursor.decode(cursor), size);
+            } catch (IllegalArgumentException e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            if (members.isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            }
+            return new ResponseEntity<>(members.getContent(),
+                    Cursor.nextPage(members, member -> Cursor.of(member.username(), null)), HttpStatus.OK);
         } else {
             if (query != null) {
-                Page<User> members = communityService.searchMembers(id, query, pageable);
+                Page<MemberSummary> members = communityService.searchMembers(id, query, pageable);
                 if (members.isEmpty()) {
                     return new ResponseEntity<>(HttpStatus.NO_CONTENT);
                 } else {
                     return new ResponseEntity<>(members.getContent(), HttpStatus.OK);
                 }
             } else {
-                Page<User> members = communityService.getMembers(id, pageable);
+                Page<MemberSummary> members = communityService.getMembers(id, pageable);
                 if (members.isEmpty()) {
                     return new ResponseEntity<>(HttpStatus.NO_CONTENT);
                 } else {
@@ -248,7 +269,7 @@ public class APICommunityController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -311,7 +332,7 @@ public class APICommunityController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -350,7 +371,7 @@ public class APICommunityController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -406,12 +427,12 @@ public class APICommunityController {
         }
 
         // check that the user performing the request is logged in
-        if (request.getUserPrincipal() == null) {
+        if (!accessContext.isLoggedIn()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -421,7 +442,7 @@ public class APICommunityController {
         }
 
         // is the user banned from the community?
-        if (communityService.isUserBannedFromCommunity(username, community.getIdentifier())) {
+        if (accessContext.getCommunityAccess(username, community.getIdentifier()).isBanned()) {
             return new ResponseEntity<>(HttpStatus.FORBIDDEN);
         }
 
@@ -440,7 +461,7 @@ public class APICommunityController {
             String username) {
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -449,21 +470,23 @@ public class APICommunityController {
         String requesterUsername = request.getUserPrincipal().getName();
 
         if (!requesterUsername.equals(username)
-                && !userService.getUserByUsername(requesterUsername).getRoles().contains("ADMIN")) {
+                && !accessContext.isAdmin()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
-        User user = userService.getUserByUsername(username);
+        User user = requesterUsername.equals(username) ? accessContext.getUser()
+                : userService.getUserByUsername(username);
         if (user == null) {
             return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
         }
 
         // check ban
-        if (communityService.isUserBannedFromCommunity(user.getUsername(), community.getIdentifier())) {
+        if (accessContext.getCommunityAccess(username, community.getIdentifier()).isBanned()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         communityService.joinCommunity(user.getUsername(), community.getIdentifier());
+        accessContext.invalidate(community.getIdentifier());
         return new ResponseEntity<>(community, HttpStatus.OK);
     }
 
@@ -471,47 +494,47 @@ public class APICommunityController {
             String username) {
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         // check that the user performing the request is the user being removed, a
         // community admin, moderator or a site admin
         String requesterUsername = request.getUserPrincipal().getName();
-        if (!requesterUsername.equals(username) && !community.getAdmin().getUsername().equals(requesterUsername)
-                && !communityService.isUserModeratorOfCommunity(requesterUsername, community.getIdentifier())
-                && !userService.getUserByUsername(requesterUsername).getRoles().contains("ADMIN")) {
+        if (!requesterUsername.equals(username) && !accessContext.canModerate(community.getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         // check that the user being removed is a member of the community
-        if (!communityService.isUserMemberOfCommunity(username, community.getIdentifier())) {
+        CommunityAccess target = accessContext.getCommunityAccess(username, community.getIdentifier());
+        if (!target.member()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         // check that the user being removed is not the admin of the community
-        if (community.getAdmin().getUsername().equals(username)) {
+        if (target.admin()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         // check that a moderator is not removing another moderator
-        if (communityService.isUserModeratorOfCommunity(username, community.getIdentifier())
-                && communityService.isUserModeratorOfCommunity(requesterUsername, community.getIdentifier())) {
+        if (target.moderator() && accessContext.isModerator(community.getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         // if the user being removed is a moderator, remove them from the moderators
         // list
-        if (communityService.isUserModeratorOfCommunity(username, community.getIdentifier())) {
+        if (target.moderator()) {
             communityService.demoteUserFromModerator(username, community.getIdentifier());
         }
 
-        User user = userService.getUserByUsername(username);
+        User user = requesterUsername.equals(username) ? accessContext.getUser()
+                : userService.getUserByUsername(username);
         if (user == null) {
             return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
         }
 
         communityService.leaveCommunity(user.getUsername(), community.getIdentifier());
+        accessContext.invalidate(community.getIdentifier());
         return new ResponseEntity<>(community, HttpStatus.OK);
     }
 
@@ -542,21 +565,18 @@ public class APICommunityController {
         }
 
         // is user logged in
-        if (request.getUserPrincipal() == null) {
+        if (!accessContext.isLoggedIn()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         // check that the user performing the request is the admin or a moderator of the
         // community
-        String requesterUsername = request.getUserPrincipal().getName();
-        if (!community.getAdmin().getUsername().equals(requesterUsername)
-                && !communityService.isUserModeratorOfCommunity(requesterUsername, community.getIdentifier())
-                && !userService.getUserByUsername(requesterUsername).getRoles().contains("ADMIN")) {
+        if (!accessContext.canModerate(community.getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -566,33 +586,33 @@ public class APICommunityController {
         }
 
         // check that the admin is not banning themselves
-        if (community.getAdmin().getUsername().equals(user.getUsername())) {
+        CommunityAccess target = accessContext.getCommunityAccess(user.getUsername(), community.getIdentifier());
+        if (target.admin()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         // check that the user being banned is a member of the community
-        if (!communityService.isUserMemberOfCommunity(user.getUsername(), community.getIdentifier())) {
+        if (!target.member()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         // check if user is already banned
-        if (communityService.isUserBannedFromCommunity(user.getUsername(), community.getIdentifier())) {
+        if (target.isBanned()) {
             return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
         }
 
         // check that a moderator is not banning another moderator
-        if (communityService.isUserModeratorOfCommunity(user.getUsername(), community.getIdentifier())
-                && communityService.isUserModeratorOfCommunity(requesterUsername, community.getIdentifier())) {
+        if (target.moderator() && accessContext.isModerator(community.getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         // if the user being banned is a moderator, remove them from the moderators list
-        if (communityService.isUserModeratorOfCommunity(user.getUsername(), community.getIdentifier())) {
+        if (target.moderator()) {
             communityService.demoteUserFromModerator(user.getUsername(), community.getIdentifier());
         }
 
         // the site admin cannot be banned
-        if (userService.getUserByUsername(user.getUsername()).getRoles().contains("ADMIN")) {
+        if (user.getRoles().contains("ADMIN")) {
             return new ResponseEntity<>(HttpStatus.FORBIDDEN);
         }
 
@@ -622,6 +642,7 @@ public class APICommunityController {
                 return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
         }
 
+        accessContext.invalidate(community.getIdentifier());
         Ban ban = communityService.getBan(user.getUsername(), community.getIdentifier());
         URI location = ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}")
                 .buildAndExpand(ban.getId()).toUri();
@@ -673,7 +694,7 @@ public class APICommunityController {
     public ResponseEntity<String> unbanUser(HttpServletRequest request, @PathVariable Long id) {
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -684,10 +705,7 @@ public class APICommunityController {
 
         // check that the user performing the request is the admin or a moderator of the
         // community
-        String requesterUsername = request.getUserPrincipal().getName();
-        if (!communityService.isUserModeratorOfCommunity(requesterUsername, ban.getCommunity().getIdentifier())
-                && !ban.getCommunity().getAdmin().getUsername().equals(requesterUsername)
-                && !userService.getUserByUsername(requesterUsername).getRoles().contains("ADMIN")) {
+        if (!accessContext.canModerate(ban.getCommunity().getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -718,7 +736,7 @@ public class APICommunityController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -729,8 +747,7 @@ public class APICommunityController {
         // check that the user performing the request is the admin of the community or a
         // site admin
         String requesterUsername = request.getUserPrincipal().getName();
-        if (!community.getAdmin().getUsername().equals(requesterUsername) && !userService
-                .getUserByUsername(requesterUsername).getRoles().contains("ADMIN")) {
+        if (!community.getAdmin().getUsername().equals(requesterUsername) && !accessContext.isAdmin()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -785,7 +802,7 @@ public class APICommunityController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -796,14 +813,13 @@ public class APICommunityController {
         }
 
         // is user the admin of the community? or a site admin?
-        if (!community.getAdmin().getUsername().equals(principal.getName()) && !userService
-                .getUserByUsername(principal.getName()).getRoles().contains("ADMIN")) {
+        if (!community.getAdmin().getUsername().equals(principal.getName()) && !accessContext.isAdmin()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         // delete banner
         if (action != null && action.equals("delete")) {
-            community.setBanner(null);
+            community.setBannerMetadata(null);
             communityService.saveCommunity(community);
             return new ResponseEntity<>(community, HttpStatus.OK);
         }
@@ -813,25 +829,24 @@ public class APICommunityController {
         }
 
         // Check file
-        try (InputStream is = file.getInputStream()) {
-            try {
-                ImageIO.read(is).toString();
-                long size = file.getSize() / 1024 / 1024; // MB
-                if (size >= 5) {
-                    return new ResponseEntity<>("File is too large. Max size is 5MB", HttpStatus.BAD_REQUEST);
-                }
-                community.setBanner(BlobProxy.generateProxy(file.getInputStream(), file.getSize()));
-                communityService.saveCommunity(community);
-
-                // Resource URL for the image (location header)
-                URI location = ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}")
-                        .buildAndExpand(community.getIdentifier()).toUri();
-
-                // Return response
-                return ResponseEntity.created(location).body(community);
-            } catch (Exception e) {
+        long size = file.getSize() / 1024 / 1024; // MB
+        if (size >= 5) {
+            return new ResponseEntity<>("File is too large. Max size is 5MB", HttpStatus.BAD_REQUEST);
+        }
+        try {
+            ImageMetadata uploaded = imageService.upload(file);
+            if (uploaded == null) {
                 return new ResponseEntity<>("File is not an image", HttpStatus.BAD_REQUEST);
             }
+            community.setBannerMetadata(uploaded);
+            communityService.saveCommunity(community);
+
+            // Resource URL for the image (location header)
+            URI location = ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}")
+                    .buildAndExpand(community.getIdentifier()).toUri();
+
+            // Return response
+            return ResponseEntity.created(location).body(community);
         } catch (IOException e) {
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -845,25 +860,25 @@ public class APICommunityController {
 
             }),
             @ApiResponse(responseCode = "404", description = "Entity not found", content = @Content),
+            @ApiResponse(responseCode = "400", description = "Invalid size", content = @Content),
             @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content),
             @ApiResponse(responseCode = "500", description = "Internal Server Error", content = @Content)
     })
     @GetMapping("/communities/{id}/pictures")
-    public ResponseEntity<Object> getCommunityBanner(@PathVariable Long id) {
+    public ResponseEntity<Object> getCommunityBanner(HttpServletRequest request, HttpServletResponse response,
+            @PathVariable Long id, @RequestParam(value = "v", required = false) String version,
+            @RequestParam(value = "size", required = false) String size) {
         Community community = communityService.getCommunityById(id);
         if (community == null) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
 
-        Blob banner = community.getBanner();
-        if (banner == null) {
+        if (!community.isHasBanner()) {
             return new ResponseEntity<>("Community banner not found", HttpStatus.NOT_FOUND);
         }
 
         try {
-            int blobLength = (int) banner.length();
-            byte[] blobAsBytes = banner.getBytes(1, blobLength);
-            return ResponseEntity.ok().contentType(MediaType.IMAGE_PNG).body(blobAsBytes);
+            return imageService.serve(request, response, community.getBannerMetadata(), version, size);
         } catch (Exception e) {
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -891,7 +906,7 @@ public class APICommunityController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -911,19 +926,15 @@ public class APICommunityController {
         // mod or the user being banned
         String requesterUsername = request.getUserPrincipal().getName();
         if (!requesterUsername.equals(ban.getUser().getUsername())
-                && !userService.getUserByUsername(requesterUsername).getRoles().contains("ADMIN") && !communityService
-                        .isUserModeratorOfCommunity(requesterUsername, community.getIdentifier())
-                && !community.getAdmin().getUsername()
-                        .equals(requesterUsername)) {
+                && !accessContext.canModerate(community.getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         String banReason = ban.getBanReason();
         LocalDateTime banUntil = ban.getBanUntil();
 
-        // is ban over?
+        // is ban over? (ExpiryScheduler removes it)
         if (banUntil != null && banUntil.isBefore(LocalDateTime.now())) {
-            communityService.unbanUserFromCommunityById(id);
             banReason = null;
             banUntil = null;
         }
@@ -972,7 +983,7 @@ public class APICommunityController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -984,9 +995,7 @@ public class APICommunityController {
         // check that the user performing the request is the admin of the community, a
         // mod or the user being banned
         String requesterUsername = request.getUserPrincipal().getName();
-        if (!requesterUsername.equals(username) && !userService.getUserByUsername(requesterUsername).getRoles()
-                .contains("ADMIN") && !communityService.isUserModeratorOfCommunity(requesterUsername, id)
-                && !communityService.getCommunityById(id).getAdmin().getUsername().equals(requesterUsername)) {
+        if (!requesterUsername.equals(username) && !accessContext.canModerate(id)) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -1020,7 +1029,7 @@ public class APICommunityController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -1031,10 +1040,7 @@ public class APICommunityController {
 
         // check that the user performing the request is the admin or a moderator of the
         // community
-        String requesterUsername = request.getUserPrincipal().getName();
-        if (!communityService.getCommunityById(id).getAdmin().getUsername().equals(requesterUsername)
-                && !communityService.isUserModeratorOfCommunity(requesterUsername, id) && !userService
-                        .getUserByUsername(requesterUsername).getRoles().contains("ADMIN")) {
+        if (!accessContext.canModerate(id)) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -1086,7 +1092,7 @@ public class APICommunityController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
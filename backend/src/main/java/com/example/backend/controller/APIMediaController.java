@@ -0,0 +1,57 @@
+package com.example.backend.controller;
+
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import com.example.backend.service.MediaMigrationService;
+import com.example.backend.security.AccessContext;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.servlet.http.HttpServletRequest;
+import io.swagger.v3.oas.annotations.media.Content;
+
+@RestController
+@RequestMapping("/api/v1")
+public class APIMediaController {
+
+    private final MediaMigrationService mediaMigrationService;
+    private final AccessContext accessContext;
+
+    public APIMediaController(MediaMigrationService mediaMigrationService, AccessContext accessContext) {
+        this.mediaMigrationService = mediaMigrationService;
+        this.accessContext = accessContext;
+    }
+
+    // Move the images stored in the database to the media store | SECURITY: CHECKED
+    @Operation(summary = "Move the images still stored in the database to the media store (returns the images moved per table)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Images moved"),
+            @ApiResponse(responseCode = "400", description = "Invalid batch size", content = @Content),
+            @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content),
+    })
+    @PostMapping("/media/migrations")
+    public ResponseEntity<Map<String, Integer>> migrateMedia(HttpServletRequest request,
+            @RequestParam(defaultValue = "100") int batchSize) {
+        // Is user logged in?
+        if (request.getUserPrincipal() == null) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+
+        // Is user a site admin?
+        String requesterUsername = request.getUserPrincipal().getName();
+        if (!accessContext.isAdmin()) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+
+        if (batchSize <= 0) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        return new ResponseEntity<>(mediaMigrationService.migrate(batchSize), HttpStatus.OK);
+    }
+}
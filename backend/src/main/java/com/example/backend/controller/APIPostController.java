@@ -1,43 +1,44 @@
 package com.example.backend.controller;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.security.Principal;
-import java.sql.Blob;
 import java.util.List;
 import java.util.Map;
 
-import javax.imageio.ImageIO;
-
-import org.hibernate.engine.jdbc.BlobProxy;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import com.example.backend.security.AccessContext;
 import com.example.backend.service.CommunityService;
+import com.example.backend.service.ImageService;
 import com.example.backend.service.PostService;
 import com.example.backend.service.ReplyService;
-import com.example.backend.service.UserService;
 import com.fasterxml.jackson.annotation.JsonView;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 
+import com.example.backend.dto.Cursor;
 import com.example.backend.dto.PostDTO;
+import com.example.backend.dto.PostSummary;
 import com.example.backend.entity.Community;
+import com.example.backend.entity.ImageMetadata;
 import com.example.backend.entity.User;
 import com.example.backend.entity.Post;
+import com.example.backend.entity.PostVote;
 import com.example.backend.entity.Reply;
 
 @RestController
@@ -46,8 +47,9 @@ public class APIPostController {
 
     private final CommunityService communityService;
     private final PostService postService;
-    private final UserService userService;
     private final ReplyService replyService;
+    private final ImageService imageService;
+    private final AccessContext accessContext;
 
     interface PostInfo extends Post.BasicInfo {
     }
@@ -55,12 +57,13 @@ public class APIPostController {
     interface ReplyInfo extends User.UsernameInfo, Reply.BasicInfo {
     }
 
-    public APIPostController(CommunityService communityService, PostService postService, UserService userService,
-            ReplyService replyService) {
+    public APIPostController(CommunityService communityService, PostService postService,
+            ReplyService replyService, ImageService imageService, AccessContext accessContext) {
         this.communityService = communityService;
         this.postService = postService;
-        this.userService = userService;
         this.replyService = replyService;
+        this.imageService = imageService;
+        this.accessContext = accessContext;
     }
 
     // Get post by ID | SECURITY: CHECKED
@@ -89,20 +92,21 @@ public class APIPostController {
      * - replies
      * - likes
      */ // SECURITY: CHECKED
-    @Operation(summary = "Search posts")
+    @Operation(summary = "Search posts", description = "Matches whole words and word prefixes. When that finds "
+            + "nothing, or the query has no word the full-text index can match, the query is matched as a substring "
+            + "(a part of a word)")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Posts found", content = {
-                    @Content(mediaType = "application/json", schema = @Schema(implementation = Post.class)),
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = PostSummary.class)),
             }),
             @ApiResponse(responseCode = "204", description = "Posts not found", content = @Content),
     })
-    @JsonView(PostInfo.class)
     @GetMapping("/posts")
-    public ResponseEntity<List<Post>> searchPosts(@RequestParam String query,
+    public ResponseEntity<List<PostSummary>> searchPosts(@RequestParam String query,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size, @RequestParam(defaultValue = "creationDate") String order) {
         Pageable pageable = PageRequest.of(page, size);
-        Page<Post> posts = postService.searchPosts(query, pageable, order);
+        Page<PostSummary> posts = postService.searchPosts(query, pageable, order);
         if (posts.isEmpty()) {
             return ResponseEntity.noContent().build();
         }
@@ -116,18 +120,20 @@ public class APIPostController {
      * - lastModifiedDate
      * - replies
      * - likes
+     * Sending a cursor (empty for the first page) switches from page to keyset
+     * pagination: the cursor of the next page is returned in the X-Next-Cursor header
      */ // SECURITY: CHECKED
     // Get posts of a community
     @Operation(summary = "Get posts of a community using its ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Found the posts", content = {
-                    @Content(mediaType = "application/json", schema = @Schema(implementation = Post.class))
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = PostSummary.class))
 
             }),
             @ApiResponse(responseCode = "204", description = "No posts found", content = @Content),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor or sort", content = @Content),
             @ApiResponse(responseCode = "404", description = "Community not found", content = @Content),
     })
-    @JsonView(PostInfo.class)
     @GetMapping("/communities/{communityID}/posts")
     public ResponseEntity<Object> getCommunityPosts( // Search for posts inside a community (all variants of searching
                                                      // posts by community ID)
@@ -136,7 +142,8 @@ public class APIPostController {
             @RequestParam(value = "page", required = false, defaultValue = "0") int page,
             @RequestParam(value = "size", required = false, defaultValue = "10") int size,
             @RequestParam(value = "sort", required = false, defaultValue = "lastModifiedDate") String sort,
-            @RequestParam(value = "query", required = false) String query) {
+            @RequestParam(value = "query", required = false) String query,
+            @RequestParam(value = "cursor", required = false) String cursor) {
 
         Community community = communityService.getCommunityById(communityID);
         if (community == null) {
@@ -145,9 +152,26 @@ public class APIPostController {
 
         if (count) {
             return new ResponseEntity<>(communityService.getNumberOfPosts(communityID), HttpStatus.OK);
+        } else if (cursor != null) {
+            // keyset pagination is not available for full-text searches
+            if (query != null && !query.isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            Slice<PostSummary> posts;
+            try {
+                posts = postService.getPostsByCommunityAfter(communityID, sort, Cursor.decode(cursor), size);
+            } catch (IllegalArgumentException e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+
+            if (posts.isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            }
+            return new ResponseEntity<>(posts.getContent(),
+                    Cursor.nextPage(posts, post -> postService.cursorOf(post, sort)), HttpStatus.OK);
         } else {
             Pageable pageable = PageRequest.of(page, size);
-            Page<Post> posts = null;
+            Page<PostSummary> posts = null;
             if (query == null || query.isEmpty()) {
                 posts = postService.searchPostsByCommunityIdentifier(communityID, "", pageable, sort, false);
             } else {
@@ -166,26 +190,25 @@ public class APIPostController {
     @Operation(summary = "Get posts by username")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Posts found", content = {
-                    @Content(mediaType = "application/json", schema = @Schema(implementation = Post.class)),
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = PostSummary.class)),
             }),
             @ApiResponse(responseCode = "204", description = "Posts not found", content = @Content),
     })
-    @JsonView(PostInfo.class)
     @GetMapping("/users/{username}/posts")
-    public ResponseEntity<List<Post>> getPostsByUsername(@PathVariable String username,
+    public ResponseEntity<List<PostSummary>> getPostsByUsername(@PathVariable String username,
             @RequestParam(required = false) String query,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "creationDate") String order) {
         Pageable pageable = PageRequest.of(page, size);
         if (query == null || query.isEmpty()) {
-            Page<Post> posts = postService.getPostsOfUser(username, pageable, order);
+            Page<PostSummary> posts = postService.getPostsOfUser(username, pageable, order);
             if (posts.isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
             return new ResponseEntity<>(posts.getContent(), HttpStatus.OK);
         } else {
-            Page<Post> posts = postService.searchPostsOfUser(username, query, pageable, order);
+            Page<PostSummary> posts = postService.searchPostsOfUser(username, query, pageable, order);
             if (posts.isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
@@ -214,24 +237,24 @@ public class APIPostController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         // does the community exist?
-        if (communityService.getCommunityById(communityID) == null) {
+        Community community = communityService.getCommunityById(communityID);
+        if (community == null) {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
 
         // is the user a member of the community?
-        User author = userService.getUserByUsername(principal.getName());
-        Community community = communityService.getCommunityById(communityID);
-        if (!community.getMembers().contains(author)) {
+        User author = accessContext.getUser();
+        if (!accessContext.isMember(communityID)) {
             return new ResponseEntity<>(HttpStatus.FORBIDDEN);
         }
 
         // is the user banned from the community?
-        if (communityService.isUserBannedFromCommunity(author.getUsername(), community.getIdentifier())) {
+        if (accessContext.isBanned(community.getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -246,18 +269,16 @@ public class APIPostController {
         // image (optional)
         MultipartFile image = postDTO.getImage();
         if (image != null) {
-            try (InputStream is = image.getInputStream()) {
-                try {
-                    ImageIO.read(is).toString();
-                    long size = image.getSize() / 1024 / 1024; // MB
-                    if (size >= 5) {
-                        return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
-                    }
-                    post.setImage(BlobProxy.generateProxy(image.getInputStream(), image.getSize()));
-                    post.setHasImage(true);
-                } catch (IOException e) {
+            long size = image.getSize() / 1024 / 1024; // MB
+            if (size >= 5) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            try {
+                ImageMetadata uploaded = imageService.upload(image);
+                if (uploaded == null) {
                     return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
                 }
+                post.addImage(uploaded);
             } catch (IOException e) {
                 return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
             }
@@ -288,7 +309,7 @@ public class APIPostController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -300,21 +321,18 @@ public class APIPostController {
 
         // is the user the author of the post, a community admin, moderator or a site
         // admin?
-        User author = userService.getUserByUsername(principal.getName());
-        if (!post.getAuthor().equals(author) && !communityService.isUserAdminOfCommunity(author.getUsername(),
-                post.getCommunity().getIdentifier())
-                && !communityService.isUserModeratorOfCommunity(author.getUsername(),
-                        post.getCommunity().getIdentifier())
-                && !userService.getUserByUsername(principal.getName()).getRoles().contains("ADMIN")) {
+        User author = accessContext.getUser();
+        if (!post.getAuthor().equals(author)
+                && !accessContext.canModerate(post.getCommunity().getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.FORBIDDEN);
         }
 
         // is the user banned from the community?
-        if (communityService.isUserBannedFromCommunity(author.getUsername(), post.getCommunity().getIdentifier())) {
+        if (accessContext.isBanned(post.getCommunity().getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
-        post.setImage(null);
+        post.setImageMetadata(null);
         post.setHasImage(false);
         postService.updatePost(post);
 
@@ -375,7 +393,7 @@ public class APIPostController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -385,39 +403,28 @@ public class APIPostController {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
 
-        User author = userService.getUserByUsername(principal.getName());
+        User author = accessContext.getUser();
 
         // is the user banned from the community?
-        if (communityService.isUserBannedFromCommunity(author.getUsername(), post.getCommunity().getIdentifier())) {
+        if (accessContext.isBanned(post.getCommunity().getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         // upvote or downvote
         switch (action) {
             case "upvote":
-                // has the user already upvoted the post?
-                if (postService.hasUserUpvotedPost(author.getUsername(), postId)) {
-                    postService.removeUpvote(post, author.getUsername());
-                } else {
-                    postService.upvotePost(post, author.getUsername());
-                }
+                // upvoting an already upvoted post removes the upvote
+                postService.votePost(post, author.getUsername(), PostVote.Direction.UPVOTE);
                 return new ResponseEntity<>(post, HttpStatus.OK);
             case "downvote":
-                // has the user already downvoted the post?
-                if (postService.hasUserDownvotedPost(author.getUsername(), postId)) {
-                    postService.removeDownvote(post, author.getUsername());
-                } else {
-                    postService.downvotePost(post, author.getUsername());
-                }
+                // downvoting an already downvoted post removes the downvote
+                postService.votePost(post, author.getUsername(), PostVote.Direction.DOWNVOTE);
                 return new ResponseEntity<>(post, HttpStatus.OK);
             case "edit":
                 // is the user the author of the post a community admin, moderator or a site
                 // admin?
-                if (!post.getAuthor().equals(author) && !communityService.isUserAdminOfCommunity(author.getUsername(),
-                        post.getCommunity().getIdentifier())
-                        && !communityService.isUserModeratorOfCommunity(author.getUsername(),
-                                post.getCommunity().getIdentifier())
-                        && !userService.getUserByUsername(principal.getName()).getRoles().contains("ADMIN")) {
+                if (!post.getAuthor().equals(author)
+                        && !accessContext.canModerate(post.getCommunity().getIdentifier())) {
                     return new ResponseEntity<>(HttpStatus.FORBIDDEN);
                 }
 
@@ -433,18 +440,16 @@ public class APIPostController {
                 // image (optional)
                 MultipartFile image = postDTO.getImage();
                 if (image != null) {
-                    try (InputStream is = image.getInputStream()) {
-                        try {
-                            ImageIO.read(is).toString();
-                            long size = image.getSize() / 1024 / 1024; // MB
-                            if (size >= 5) {
-                                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
-                            }
-                            post.setImage(BlobProxy.generateProxy(image.getInputStream(), image.getSize()));
-                            post.setHasImage(true);
-                        } catch (IOException e) {
+                    long size = image.getSize() / 1024 / 1024; // MB
+                    if (size >= 5) {
+                        return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                    }
+                    try {
+                        ImageMetadata uploaded = imageService.upload(image);
+                        if (uploaded == null) {
                             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
                         }
+                        post.addImage(uploaded);
                     } catch (IOException e) {
                         return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
                     }
@@ -480,7 +485,7 @@ public class APIPostController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -492,23 +497,20 @@ public class APIPostController {
 
         // is the user the author of the post, a community admin, moderator or a site
         // admin?
-        User author = userService.getUserByUsername(principal.getName());
-        if (!post.getAuthor().equals(author) && !communityService.isUserAdminOfCommunity(author.getUsername(),
-                post.getCommunity().getIdentifier())
-                && !communityService.isUserModeratorOfCommunity(author.getUsername(),
-                        post.getCommunity().getIdentifier())
-                && !userService.getUserByUsername(principal.getName()).getRoles().contains("ADMIN")) {
+        User author = accessContext.getUser();
+        if (!post.getAuthor().equals(author)
+                && !accessContext.canModerate(post.getCommunity().getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.FORBIDDEN);
         }
 
         // is the user banned from the community?
-        if (communityService.isUserBannedFromCommunity(author.getUsername(), post.getCommunity().getIdentifier())) {
+        if (accessContext.isBanned(post.getCommunity().getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         // delete image
         if (action != null && action.equals("delete")) {
-            post.setImage(null);
+            post.setImageMetadata(null);
             post.setHasImage(false);
             postService.updatePost(post);
             return new ResponseEntity<>(post, HttpStatus.OK);
@@ -516,18 +518,16 @@ public class APIPostController {
 
         // update image
         if (image != null) {
-            try (InputStream is = image.getInputStream()) {
-                try {
-                    ImageIO.read(is).toString();
-                    long size = image.getSize() / 1024 / 1024; // MB
-                    if (size >= 5) {
-                        return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
-                    }
-                    post.setImage(BlobProxy.generateProxy(image.getInputStream(), image.getSize()));
-                    post.setHasImage(true);
-                } catch (IOException e) {
+            long size = image.getSize() / 1024 / 1024; // MB
+            if (size >= 5) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            try {
+                ImageMetadata uploaded = imageService.upload(image);
+                if (uploaded == null) {
                     return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
                 }
+                post.addImage(uploaded);
             } catch (IOException e) {
                 return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
             }
@@ -555,7 +555,7 @@ public class APIPostController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -567,17 +567,14 @@ public class APIPostController {
 
         // is the user the author of the post, a community admin, moderator or a site
         // admin?
-        User author = userService.getUserByUsername(principal.getName());
-        if (!post.getAuthor().equals(author) && !communityService.isUserAdminOfCommunity(author.getUsername(),
-                post.getCommunity().getIdentifier())
-                && !communityService.isUserModeratorOfCommunity(author.getUsername(),
-                        post.getCommunity().getIdentifier())
-                && !userService.getUserByUsername(principal.getName()).getRoles().contains("ADMIN")) {
+        User author = accessContext.getUser();
+        if (!post.getAuthor().equals(author)
+                && !accessContext.canModerate(post.getCommunity().getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.FORBIDDEN);
         }
 
         // is the user banned from the community?
-        if (communityService.isUserBannedFromCommunity(author.getUsername(), post.getCommunity().getIdentifier())) {
+        if (accessContext.isBanned(post.getCommunity().getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -594,23 +591,23 @@ public class APIPostController {
                     @Content(mediaType = "image/png"),
             }),
             @ApiResponse(responseCode = "404", description = "Post image not found", content = @Content),
+            @ApiResponse(responseCode = "400", description = "Invalid size", content = @Content),
     })
     @GetMapping("/posts/{postId}/pictures")
-    public ResponseEntity<Object> getPostImage(@PathVariable Long postId) {
+    public ResponseEntity<Object> getPostImage(HttpServletRequest request, HttpServletResponse response,
+            @PathVariable Long postId, @RequestParam(value = "v", required = false) String version,
+            @RequestParam(value = "size", required = false) String size) {
         Post post = postService.getPostById(postId);
-        if (post == null || post.getImage() == null) {
+        if (post == null) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
 
-        Blob image = post.getImage();
-        if (image == null) {
+        if (!post.isHasImage()) {
             return new ResponseEntity<>("Post image not found", HttpStatus.NOT_FOUND);
         }
 
         try {
-            int blobLength = (int) image.length();
-            byte[] blobAsBytes = image.getBytes(1, blobLength);
-            return ResponseEntity.ok().contentType(MediaType.IMAGE_PNG).body(blobAsBytes);
+            return imageService.serve(request, response, post.getImageMetadata(), version, size);
         } catch (Exception e) {
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -618,19 +615,35 @@ public class APIPostController {
 
     // REPLIES ----------------------------------------------------------------
 
-    // Get replies of a post | SECURITY: CHECKED
+    // Get replies of a post (page or, with a cursor, keyset pagination) | SECURITY: CHECKED
     @Operation(summary = "Get replies of a post")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Replies found", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = Reply.class)),
             }),
             @ApiResponse(responseCode = "204", description = "Replies not found", content = @Content),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor or order", content = @Content),
     })
     @JsonView(ReplyInfo.class)
     @GetMapping("/posts/{postId}/replies/all")
     public ResponseEntity<List<Reply>> getRepliesOfPost(@PathVariable Long postId,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size, @RequestParam(defaultValue = "creationDate") String order) {
+            @RequestParam(defaultValue = "10") int size, @RequestParam(defaultValue = "creationDate") String order,
+            @RequestParam(required = false) String cursor) {
+        if (cursor != null) {
+            Slice<Reply> replies;
+            try {
+                replies = replyService.getRepliesByPostAfter(postId, order, Cursor.decode(cursor), size);
+            } catch (IllegalArgumentException e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            if (replies.isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            }
+            return new ResponseEntity<>(replies.getContent(),
+                    Cursor.nextPage(replies, reply -> replyService.cursorOf(reply, order)), HttpStatus.OK);
+        }
+
         Pageable pageable = PageRequest.of(page, size);
         Page<Reply> replies = replyService.getRepliesByPost(postId, pageable, order);
         if (replies.isEmpty()) {
@@ -664,7 +677,9 @@ public class APIPostController {
      * - content
      * - author
      */ // SECURITY: CHECKED
-    @Operation(summary = "Search replies")
+    @Operation(summary = "Search replies", description = "Matches whole words and word prefixes. When that finds "
+            + "nothing, or the query has no word the full-text index can match, the query is matched as a substring "
+            + "(a part of a word)")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Replies found", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = Reply.class)),
@@ -706,7 +721,9 @@ public class APIPostController {
      * - author
      * - query (searches by title and content) (default)
      */ // SECURITY: CHECKED
-    @Operation(summary = "Search replies by post")
+    @Operation(summary = "Search replies by post", description = "Criteria query: matches whole words and word "
+            + "prefixes. When that finds nothing, or the query has no word the full-text index can match, the query "
+            + "is matched as a substring (a part of a word)")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Replies found", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = Reply.class)),
@@ -763,7 +780,7 @@ public class APIPostController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -779,10 +796,10 @@ public class APIPostController {
         }
 
         // is the user a member of the community?
-        User author = userService.getUserByUsername(principal.getName());
+        User author = accessContext.getUser();
         
         // is the user banned from the community?
-        if (communityService.isUserBannedFromCommunity(author.getUsername(), post.getCommunity().getIdentifier())) {
+        if (accessContext.isBanned(post.getCommunity().getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -828,7 +845,7 @@ public class APIPostController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -839,12 +856,11 @@ public class APIPostController {
         }
 
         // is the user banned from the community?
-        if (communityService.isUserBannedFromCommunity(principal.getName(),
-                reply.getPost().getCommunity().getIdentifier())) {
+        if (accessContext.isBanned(reply.getPost().getCommunity().getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
-        User user = userService.getUserByUsername(principal.getName());
+        User user = accessContext.getUser();
 
         // like or unlike
         if ("like".equals(action)) {
@@ -901,7 +917,7 @@ public class APIPostController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -913,19 +929,14 @@ public class APIPostController {
 
         // is the user the author of the reply, the post author, an admin community,
         // moderator or a site admin?
-        User author = userService.getUserByUsername(principal.getName());
+        User author = accessContext.getUser();
         if (!reply.getAuthor().equals(author) && !reply.getPost().getAuthor().equals(author)
-                && !communityService.isUserAdminOfCommunity(author.getUsername(),
-                        reply.getPost().getCommunity().getIdentifier())
-                && !communityService.isUserModeratorOfCommunity(author.getUsername(),
-                        reply.getPost().getCommunity().getIdentifier())
-                && !userService.getUserByUsername(author.getUsername()).getRoles().contains("ADMIN")) {
+                && !accessContext.canModerate(reply.getPost().getCommunity().getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.FORBIDDEN);
         }
 
         // is the user banned from the community?
-        if (communityService.isUserBannedFromCommunity(author.getUsername(),
-                reply.getPost().getCommunity().getIdentifier())) {
+        if (accessContext.isBanned(reply.getPost().getCommunity().getIdentifier())) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
         // get the post
@@ -939,7 +950,7 @@ public class APIPostController {
 
     // Get the most liked posts of the most followed users the user follows (sorting
     // the posts by upvotes) | SECURITY: CHECKED
-    @Operation(summary = "Get the most liked posts of the most followed users the user follows")
+    @Operation(summary = "Get the most liked posts of the most followed users the user follows", description = "Ranks the newest posts of the followed users (feed.timeline-size, 500 by default), not all of them")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Posts found", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = Post.class)),
@@ -965,7 +976,7 @@ public class APIPostController {
 
     // Get the most liked posts of the user's communities (sorting the posts by
     // upvotes) | SECURITY: CHECKED
-    @Operation(summary = "Get the most liked posts of the user's communities")
+    @Operation(summary = "Get the most liked posts of the user's communities", description = "Ranks the newest posts of the communities (feed.timeline-size, 500 by default), not all of them")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Posts found", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = Post.class)),
@@ -0,0 +1,52 @@
+package com.example.backend.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import com.example.backend.service.SearchIndexService;
+import com.example.backend.security.AccessContext;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.servlet.http.HttpServletRequest;
+import io.swagger.v3.oas.annotations.media.Content;
+
+@RestController
+@RequestMapping("/api/v1")
+public class APISearchController {
+
+    private final SearchIndexService searchIndexService;
+    private final AccessContext accessContext;
+
+    public APISearchController(SearchIndexService searchIndexService, AccessContext accessContext) {
+        this.searchIndexService = searchIndexService;
+        this.accessContext = accessContext;
+    }
+
+    // Rebuild the full-text search indexes from the database | SECURITY: CHECKED
+    @Operation(summary = "Rebuild the search indexes in the background")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Rebuild started", content = @Content),
+            @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content),
+            @ApiResponse(responseCode = "409", description = "A rebuild is already running", content = @Content),
+    })
+    @PostMapping("/search/indexes")
+    public ResponseEntity<Void> rebuildSearchIndexes(HttpServletRequest request) {
+        // Is user logged in?
+        if (request.getUserPrincipal() == null) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+
+        // Is user a site admin?
+        if (!accessContext.isAdmin()) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+
+        if (!searchIndexService.rebuildIndexes()) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
+        return new ResponseEntity<>(HttpStatus.ACCEPTED);
+    }
+}
@@ -1,20 +1,15 @@
 package com.example.backend.controller;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.security.Principal;
-import java.sql.Blob;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
 
-import javax.imageio.ImageIO;
-import org.hibernate.engine.jdbc.BlobProxy;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.MissingServletRequestParameterException;
@@ -23,9 +18,14 @@ import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import com.example.backend.dto.SignupRequestDTO;
+import com.example.backend.entity.AccountDeletion;
 import com.example.backend.entity.Community;
+import com.example.backend.entity.ImageMetadata;
 import com.example.backend.entity.User;
 import com.example.backend.entity.User.BanInfo;
+import com.example.backend.security.AccessContext;
+import com.example.backend.service.AccountDeletionService;
+import com.example.backend.service.ImageService;
 import com.example.backend.service.MailService;
 import com.example.backend.service.UserService;
 import com.fasterxml.jackson.annotation.JsonView;
@@ -35,6 +35,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import jakarta.mail.MessagingException;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 
@@ -45,6 +46,9 @@ public class APIUserController {
     private final UserService userService;
     private final PasswordEncoder passwordEncoder;
     private final MailService mailService;
+    private final ImageService imageService;
+    private final AccessContext accessContext;
+    private final AccountDeletionService accountDeletionService;
 
     interface UserBasicView extends User.CommunitiesInfo, Community.NameInfo {
     }
@@ -61,10 +65,14 @@ public class APIUserController {
     interface CommunitiesBasicView extends Community.BasicInfo, UserUsername {
     }
 
-    public APIUserController(UserService userService, PasswordEncoder passwordEncoder, MailService mailService) {
+    public APIUserController(UserService userService, PasswordEncoder passwordEncoder, MailService mailService,
+            ImageService imageService, AccessContext accessContext, AccountDeletionService accountDeletionService) {
         this.userService = userService;
         this.passwordEncoder = passwordEncoder;
         this.mailService = mailService;
+        this.imageService = imageService;
+        this.accessContext = accessContext;
+        this.accountDeletionService = accountDeletionService;
     }
 
     // Get current user | SECURITY: CHECKED
@@ -85,11 +93,11 @@ public class APIUserController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
-        User user = userService.getUserByUsername(principal.getName());
+        User user = accessContext.getUser();
         if (user == null) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         } else {
@@ -208,7 +216,9 @@ public class APIUserController {
 
     // SEARCH ENGINE: USERS | SECURITY: CHECKED
     @JsonView(UserBasicView.class)
-    @Operation(summary = "Search users by username, email, alias or description. Search Engine's default behaviour")
+    @Operation(summary = "Search users by username, email, alias or description. Search Engine's default behaviour",
+            description = "Matches whole words and word prefixes. When that finds nothing, or the query has no word "
+                    + "the full-text index can match, the query is matched as a substring (a part of a word)")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Users found", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = User.class)),
@@ -352,6 +362,7 @@ public class APIUserController {
         List<String> roles = List.of("USER"); // Default role
         User user = new User(username, alias, "Soy nuevo, nuevísimo!", "", email,
                 passwordEncoder.encode(password), roles);
+        user.setPfpMetadata(imageService.storeAsset(user.getPfpString()));
         userService.saveUser(user);
 
         // Resource URL (location header)
@@ -386,7 +397,7 @@ public class APIUserController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -397,7 +408,7 @@ public class APIUserController {
 
         // Check if user is authorized (if user is admin or the user itself)
         if (!principal.getName().equals(username)
-                && !userService.getUserByUsername(principal.getName()).getRoles().contains("ADMIN")) {
+                && !accessContext.isAdmin()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -474,22 +485,26 @@ public class APIUserController {
     }
 
     // Delete User | SECURITY: CHECKED
+    // The account is disabled at once and deleted in the background, the progress is
+    // at the Location of the response
     @Operation(summary = "Delete user")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "User deleted"),
+            @ApiResponse(responseCode = "202", description = "User deletion started", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = AccountDeletion.class)),
+            }),
             @ApiResponse(responseCode = "404", description = "User not found", content = @Content),
             @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content),
             @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content),
     })
     @DeleteMapping("/users/{username}")
-    public ResponseEntity<String> deleteUser(HttpServletRequest request, @PathVariable String username) {
+    public ResponseEntity<Object> deleteUser(HttpServletRequest request, @PathVariable String username) {
         // is the user logged in?
         if (request.getUserPrincipal() == null) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -499,8 +514,7 @@ public class APIUserController {
         }
 
         // Check if user is authorized
-        List<String> roles = userService.getUserByUsername(request.getUserPrincipal().getName()).getRoles();
-        boolean isAdmin = roles.contains("ADMIN");
+        boolean isAdmin = accessContext.isAdmin();
 
         // the admin of the site can't delete their account
         if (isAdmin && request.getUserPrincipal().getName().equals(username)) {
@@ -517,11 +531,9 @@ public class APIUserController {
             return new ResponseEntity<>("User is the admin of one or more communities", HttpStatus.FORBIDDEN);
         }
 
-        // Remove references to the user in other entities
-        userService.removeUserReferences(user);
-
-        // Delete user
-        userService.deleteUser(user);
+        // Disable the user and queue the removal of everything it owns
+        AccountDeletion deletion = accountDeletionService.requestDeletion(user, request.getUserPrincipal().getName());
+        URI location = ServletUriComponentsBuilder.fromCurrentRequest().path("/deletion").build().toUri();
 
         // if the user is the same as the one logged in, logout
         if (request.getUserPrincipal().getName().equals(username)) {
@@ -529,12 +541,41 @@ public class APIUserController {
             request.getSession().invalidate();
 
             // Return a response indicating the user should logout
-            return ResponseEntity.status(HttpStatus.OK)
+            return ResponseEntity.accepted()
+                    .location(location)
                     .header(HttpHeaders.SET_COOKIE, "token=; HttpOnly; Path=/; Max-Age=0")
-                    .body("User deleted. Logout");
+                    .body(deletion);
+        }
+
+        return ResponseEntity.accepted().location(location).body(deletion);
+    }
+
+    // Progress of the deletion of a user | SECURITY: CHECKED
+    @Operation(summary = "Get the progress of the deletion of a user")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Deletion found", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = AccountDeletion.class)),
+            }),
+            @ApiResponse(responseCode = "404", description = "Deletion not found", content = @Content),
+            @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content),
+    })
+    @GetMapping("/users/{username}/deletion")
+    public ResponseEntity<AccountDeletion> getUserDeletion(HttpServletRequest request, @PathVariable String username) {
+        // is the user logged in?
+        if (request.getUserPrincipal() == null) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
-        return new ResponseEntity<>(username + " has been deleted", HttpStatus.OK);
+        // Only admins or the user itself
+        if (!request.getUserPrincipal().getName().equals(username) && !accessContext.isAdmin()) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+
+        AccountDeletion deletion = accountDeletionService.getDeletion(username);
+        if (deletion == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(deletion, HttpStatus.OK);
     }
 
     // Change Profile Picture | SECURITY: CHECKED
@@ -559,13 +600,13 @@ public class APIUserController {
         }
 
         // is the user's account disabled?
-        if (userService.isAccountDisabled(request.getUserPrincipal().getName())) {
+        if (accessContext.isDisabled()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
         // Logged user = user or is admin?
         if (!principal.getName().equals(username)
-                && !userService.getUserByUsername(principal.getName()).getRoles().contains("ADMIN")) {
+                && !accessContext.isAdmin()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -579,25 +620,24 @@ public class APIUserController {
         }
 
         // Check file
-        try (InputStream is = file.getInputStream()) {
-            try {
-                ImageIO.read(is).toString();
-                long size = file.getSize() / 1024 / 1024; // MB
-                if (size >= 5) {
-                    return new ResponseEntity<>("File is too large. Max size is 5MB", HttpStatus.BAD_REQUEST);
-                }
-                user.setPfp(BlobProxy.generateProxy(file.getInputStream(), file.getSize()));
-                userService.saveUser(user);
-
-                // Resource URL for the image (location header)
-                URI location = ServletUriComponentsBuilder.fromCurrentRequest().path("/{username}/pictures")
-                        .buildAndExpand(user.getUsername()).toUri();
-
-                // Return response
-                return ResponseEntity.created(location).body(user);
-            } catch (Exception e) {
+        long size = file.getSize() / 1024 / 1024; // MB
+        if (size >= 5) {
+            return new ResponseEntity<>("File is too large. Max size is 5MB", HttpStatus.BAD_REQUEST);
+        }
+        try {
+            ImageMetadata uploaded = imageService.upload(file);
+            if (uploaded == null) {
                 return new ResponseEntity<>("File is not an image", HttpStatus.BAD_REQUEST);
             }
+            user.setPfpMetadata(uploaded);
+            userService.saveUser(user);
+
+            // Resource URL for the image (location header)
+            URI location = ServletUriComponentsBuilder.fromCurrentRequest().path("/{username}/pictures")
+                    .buildAndExpand(user.getUsername()).toUri();
+
+            // Return response
+            return ResponseEntity.created(location).body(user);
         } catch (IOException e) {
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -610,25 +650,24 @@ public class APIUserController {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = User.class)),
             }),
             @ApiResponse(responseCode = "404", description = "Profile picture not found", content = @Content),
+            @ApiResponse(responseCode = "400", description = "Invalid size", content = @Content),
             @ApiResponse(responseCode = "500", description = "Internal Server Error", content = @Content),
     })
     @GetMapping("/users/{username}/pictures")
-    public ResponseEntity<Object> getProfilePicture(@PathVariable String username) {
+    public ResponseEntity<Object> getProfilePicture(HttpServletRequest request, HttpServletResponse response,
+            @PathVariable String username, @RequestParam(value = "v", required = false) String version,
+            @RequestParam(value = "size", required = false) String size) {
         User user = userService.getUserByUsername(username);
         if (user == null) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
 
-        Blob image = user.getPfp();
-
-        if (image == null) {
+        if (user.getPfpMetadata() == null) {
             return new ResponseEntity<>("Profile picture not found", HttpStatus.NOT_FOUND);
         }
 
         try {
-            int blobLength = (int) image.length();
-            byte[] blobAsBytes = image.getBytes(1, blobLength);
-            return ResponseEntity.ok().contentType(MediaType.IMAGE_PNG).body(blobAsBytes);
+            return imageService.serve(request, response, user.getPfpMetadata(), version, size);
         } catch (Exception e) {
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -688,8 +727,7 @@ public class APIUserController {
         }
 
         // Is user a site admin?
-        String requesterUsername = request.getUserPrincipal().getName();
-        if (!userService.getUserByUsername(requesterUsername).getRoles().contains("ADMIN")) {
+        if (!accessContext.isAdmin()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -715,8 +753,7 @@ public class APIUserController {
         }
 
         // Is user a site admin?
-        String requesterUsername = request.getUserPrincipal().getName();
-        if (!userService.getUserByUsername(requesterUsername).getRoles().contains("ADMIN")) {
+        if (!accessContext.isAdmin()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -746,8 +783,7 @@ public class APIUserController {
         }
 
         // Is user a site admin?
-        String requesterUsername = request.getUserPrincipal().getName();
-        if (!userService.getUserByUsername(requesterUsername).getRoles().contains("ADMIN")) {
+        if (!accessContext.isAdmin()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -809,8 +845,7 @@ public class APIUserController {
         }
 
         // Is user a site admin?
-        String requesterUsername = request.getUserPrincipal().getName();
-        if (!userService.getUserByUsername(requesterUsername).getRoles().contains("ADMIN")) {
+        if (!accessContext.isAdmin()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -848,8 +883,7 @@ public class APIUserController {
         }
 
         // Is user a site admin?
-        String requesterUsername = request.getUserPrincipal().getName();
-        if (!userService.getUserByUsername(requesterUsername).getRoles().contains("ADMIN")) {
+        if (!accessContext.isAdmin()) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
@@ -0,0 +1,27 @@
+package com.example.backend.dto;
+
+import java.time.LocalDateTime;
+
+// Read model of a chat in the chat list of a user: the fields of the
+// Chat.BasicInfoForChatList view and the unread count and last read message of the
+// user the list belongs to, read by a single query per page (see
+// ChatRepository.CHAT_SUMMARY).
+public record ChatSummary(Long id, Participant user1, Participant user2, LastMessage lastMessage,
+        LocalDateTime lastMessageTime, Long unreadCount, Long lastReadMessageId) {
+
+    public record Participant(String username) {
+    }
+
+    public record LastMessage(Participant sender, String content) {
+    }
+
+    // Row of a list query (no last message if its id is null)
+    public ChatSummary(Long id, String user1, String user2, Long lastMessageId, String lastMessageSender,
+            String lastMessageContent, LocalDateTime lastMessageTime, Long unreadCount, Long lastReadMessageId) {
+        this(id, new Participant(user1), new Participant(user2),
+                lastMessageId == null ? null
+                        : new LastMessage(lastMessageSender == null ? null : new Participant(lastMessageSender),
+                                lastMessageContent),
+                lastMessageTime, unreadCount, lastReadMessageId);
+    }
+}
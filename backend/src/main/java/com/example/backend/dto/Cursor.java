@@ -0,0 +1,96 @@
+package com.example.backend.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
+
+// Position in a list paginated by keyset: the sort key and the id of the last item
+// of the previous page. The next page is read with "WHERE (key, id) < (:key, :id)"
+// instead of an OFFSET, so every page costs the same, and lists return a Slice so
+// no COUNT query is run. Clients get the cursor of the next page in the
+// X-Next-Cursor header and send it back untouched in the cursor parameter (an
+// empty cursor asks for the first page).
+public final class Cursor {
+
+    public static final String NEXT_HEADER = "X-Next-Cursor";
+
+    // Keys of the first page: greater than any stored value, as lists are sorted in
+    // descending order
+    private static final LocalDateTime FIRST_DATE = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    private static final Cursor FIRST = new Cursor(null, null);
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final String key;
+    private final String id;
+
+    private Cursor(String key, String id) {
+        this.key = key;
+        this.id = id;
+    }
+
+    public static Cursor of(Object key, Object id) {
+        return new Cursor(String.valueOf(key), id == null ? null : String.valueOf(id));
+    }
+
+    // Cursor sent by a client. Throws IllegalArgumentException if it was not
+    // created by this class.
+    public static Cursor decode(String token) {
+        if (token == null || token.isEmpty()) {
+            return FIRST;
+        }
+        String value = new String(DECODER.decode(token), StandardCharsets.UTF_8);
+        int separator = value.lastIndexOf('\n');
+        if (separator < 0) {
+            return new Cursor(value, null);
+        }
+        return new Cursor(value.substring(0, separator), value.substring(separator + 1));
+    }
+
+    public String encode() {
+        String value = id == null ? key : key + "\n" + id;
+        return ENCODER.encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Header with the cursor of the page after the slice, empty if it is the last
+    public static <T> HttpHeaders nextPage(Slice<T> slice, Function<T, Cursor> cursorOf) {
+        HttpHeaders headers = new HttpHeaders();
+        List<T> content = slice.getContent();
+        if (slice.hasNext() && !content.isEmpty()) {
+            headers.set(NEXT_HEADER, cursorOf.apply(content.get(content.size() - 1)).encode());
+        }
+        return headers;
+    }
+
+    public LocalDateTime dateKey() {
+        if (key == null) {
+            return FIRST_DATE;
+        }
+        try {
+            return LocalDateTime.parse(key);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    public int intKey() {
+        return key == null ? Integer.MAX_VALUE : Integer.parseInt(key);
+    }
+
+    // Keys sorted in ascending order (usernames)
+    public String stringKey() {
+        return key == null ? "" : key;
+    }
+
+    public long longId() {
+        return id == null ? Long.MAX_VALUE : Long.parseLong(id);
+    }
+}
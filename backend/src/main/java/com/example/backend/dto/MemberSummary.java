@@ -0,0 +1,23 @@
+package com.example.backend.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Read model of a member in the member list of a community: the fields of the
+// User.BasicInfo view, with the same JSON shape. The page is read by a single query
+// (see CommunityMemberRepository.MEMBER_SUMMARY) and the roles of all its members by
+// another one, instead of loading each user with its roles.
+public record MemberSummary(String username, String alias, String email, String description, List<String> roles,
+        String pfpString, int followers, int following, LocalDateTime fullCreationDate) {
+
+    // Row of a list query, the roles are added by withRoles
+    public MemberSummary(String username, String alias, String email, String description, String pfpString,
+            int followers, int following, LocalDateTime fullCreationDate) {
+        this(username, alias, email, description, List.of(), pfpString, followers, following, fullCreationDate);
+    }
+
+    public MemberSummary withRoles(List<String> roles) {
+        return new MemberSummary(username, alias, email, description, roles, pfpString, followers, following,
+                fullCreationDate);
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.backend.dto;
+
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+// Read model of a post in a list: the fields of the Post.BasicInfo view, with the
+// same JSON shape, read by a single query per page (see PostRepository.POST_SUMMARY)
+// instead of loading the post entities with their authors and communities.
+public record PostSummary(Long identifier, Author author, String title, String content, boolean hasImage,
+        CommunityName community, int upvotes, int downvotes, int comments, LocalDateTime fullCreationDate,
+        LocalDateTime fullLastReplyDate, LocalDateTime fullLastEditDate,
+        // Upvotes still buffered in memory (see VoteCounterBuffer), included in upvotes
+        @JsonIgnore int pendingUpvotes) {
+
+    public record Author(String username) {
+    }
+
+    public record CommunityName(Long identifier, String name) {
+    }
+
+    // Row of a list query
+    public PostSummary(Long identifier, String authorUsername, String title, String content, boolean hasImage,
+            Long communityIdentifier, String communityName, int upvotes, int downvotes, int comments,
+            LocalDateTime fullCreationDate, LocalDateTime fullLastReplyDate, LocalDateTime fullLastEditDate) {
+        this(identifier, authorUsername == null ? null : new Author(authorUsername), title, content, hasImage,
+                communityIdentifier == null ? null : new CommunityName(communityIdentifier, communityName), upvotes,
+                downvotes, comments, fullCreationDate, fullLastReplyDate, fullLastEditDate, 0);
+    }
+
+    // The stored counters plus the votes still buffered in memory
+    public PostSummary withPendingVotes(int pendingUpvotes, int pendingDownvotes) {
+        return new PostSummary(identifier, author, title, content, hasImage, community,
+                upvotes - this.pendingUpvotes + pendingUpvotes, downvotes + pendingDownvotes, comments,
+                fullCreationDate, fullLastReplyDate, fullLastEditDate, pendingUpvotes);
+    }
+}
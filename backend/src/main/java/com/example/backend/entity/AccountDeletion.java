@@ -0,0 +1,121 @@
+package com.example.backend.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+// Progress of the deletion of an account (see AccountDeletionService). The row is
+// kept after the user is gone so the progress can still be read, and it has no
+// foreign key to the user for that reason.
+@Entity
+@Table(name = "account_deletion")
+public class AccountDeletion {
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    // Steps in the order they run. Each one removes the rows of one kind in chunks
+    // until none are left, so running a step again is harmless.
+    public enum Step {
+        // follow edges in both directions, and the counters of the other side
+        FOLLOWING, FOLLOWERS,
+        // memberships and moderation of communities
+        MEMBERSHIPS, MODERATION,
+        // likes given to replies, and the like counters of the replies
+        REPLY_LIKES,
+        // votes given to posts (the counters of the posts are kept)
+        POST_VOTES,
+        BANS,
+        // replies written by the user, and the comment counters of their posts
+        REPLIES,
+        // replies of other users to the posts of the user, then the posts
+        POST_REPLIES, POSTS,
+        // chat history
+        MESSAGES, CHATS,
+        // the user row itself
+        ACCOUNT;
+
+        public Step next() {
+            Step[] steps = values();
+            return ordinal() + 1 < steps.length ? steps[ordinal() + 1] : null;
+        }
+    }
+
+    @Id
+    private String username;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private Status status;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Step step;
+
+    // Rows removed or updated so far
+    private long processed;
+
+    private String requestedBy;
+
+    private LocalDateTime requestedAt;
+
+    private LocalDateTime updatedAt;
+
+    private String error;
+
+    public AccountDeletion() {
+    }
+
+    public AccountDeletion(String username, String requestedBy) {
+        this.username = username;
+        restart(requestedBy);
+    }
+
+    // Start again from the first step (the steps already done find nothing to remove)
+    public void restart(String requestedBy) {
+        this.status = Status.QUEUED;
+        this.step = Step.values()[0];
+        this.processed = 0;
+        this.requestedBy = requestedBy;
+        this.requestedAt = LocalDateTime.now();
+        this.updatedAt = this.requestedAt;
+        this.error = null;
+    }
+
+    public boolean isActive() {
+        return status == Status.QUEUED || status == Status.RUNNING;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Step getStep() {
+        return step;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public String getRequestedBy() {
+        return requestedBy;
+    }
+
+    public LocalDateTime getRequestedAt() {
+        return requestedAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
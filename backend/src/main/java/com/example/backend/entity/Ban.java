@@ -7,13 +7,15 @@ import com.fasterxml.jackson.annotation.JsonView;
 import jakarta.persistence.*;
 
 @Entity
+// ban_until is indexed for ExpiryScheduler, which lifts the bans when they end
+@Table(indexes = @Index(name = "idx_ban_ban_until", columnList = "ban_until"))
 public class Ban {
 
     public interface BasicInfo extends User.UsernameInfo, Community.NameInfo {
     }
 
     @Id
-    @GeneratedValue(strategy = jakarta.persistence.GenerationType.AUTO)
+    @PooledSequence(name = "ban_seq", allocationSize = 20)
     @JsonView(BasicInfo.class)
     private Long id;
 
@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonView;
 import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
@@ -30,9 +31,10 @@ public class Chat {
     @OnDelete(action = OnDeleteAction.CASCADE)
     private User user2;
 
+    // Never sent with the chat, the messages are read by pages (see MessageRepository)
     @OneToMany(mappedBy = "chat", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @OrderBy("timestamp DESC")
-    @JsonView(BasicInfo.class)
+    @JsonIgnore
     private List<Message> messages = new ArrayList<>();
 
     @OneToOne
@@ -45,9 +47,21 @@ public class Chat {
     @JsonView(BasicInfoForChatList.class)
     private LocalDateTime lastMessageTime;
 
-    @Transient
-    @JsonView(BasicInfoForChatList.class)
-    private Long unreadCount;
+    // Unread messages of each participant and the last message they read, kept up to
+    // date as messages are added and read so listing chats doesn't count messages
+    @Column(nullable = false)
+    @JsonIgnore
+    private long user1Unread;
+
+    @Column(nullable = false)
+    @JsonIgnore
+    private long user2Unread;
+
+    @JsonIgnore
+    private Long user1LastReadId;
+
+    @JsonIgnore
+    private Long user2LastReadId;
 
     // Constructors
     public Chat() {
@@ -60,21 +74,6 @@ public class Chat {
         this.user2 = user2;
     }
 
-    // Calculate unread messages for a specific user
-    public Long calculateUnreadCount(String username) {
-        return messages.stream()
-            .filter(message -> message.getReceiver().getUsername().equals(username) && !message.isRead())
-            .count();
-    }
-
-    public Long getUnreadCount() {
-        return unreadCount;
-    }
-
-    public void setUnreadCount(Long unreadCount) {
-        this.unreadCount = unreadCount;
-    }
-
     // Getters and Setters
     public Long getId() {
         return id;
@@ -125,6 +124,14 @@ public class Chat {
             message.setChat(this);  // Set the bidirectional relationship
             this.lastMessage = message;
             this.lastMessageTime = message.getTimestamp();
+            if (!message.isRead()) {
+                String receiver = message.getReceiver().getUsername();
+                if (user1.getUsername().equals(receiver)) {
+                    user1Unread++;
+                } else if (user2.getUsername().equals(receiver)) {
+                    user2Unread++;
+                }
+            }
         }
     }
 
@@ -5,11 +5,11 @@ import com.fasterxml.jackson.annotation.JsonView;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
-import java.sql.Blob;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -17,6 +17,8 @@ import java.util.Objects;
 @Setter
 @Getter
 @Entity
+// Cached in the second-level cache (the member, moderator and post lists are not)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "community")
 public class Community {
 
     public interface NameInfo {
@@ -32,7 +34,7 @@ public class Community {
     // by underscores
     @Id
     @JsonView(NameInfo.class)
-    @GeneratedValue(strategy = jakarta.persistence.GenerationType.AUTO)
+    @PooledSequence(name = "community_seq", allocationSize = 10)
     private Long identifier;
 
     @JsonView(NameInfo.class)
@@ -46,50 +48,42 @@ public class Community {
     @ManyToOne
     private User admin;
 
-    // Moderators list
-    @JsonView(UsersInfo.class)
-    @ManyToMany
-    @JoinTable(name = "moderator_community", joinColumns = @JoinColumn(name = "community_id"), inverseJoinColumns = @JoinColumn(name = "user_id"))
-    private List<User> moderators = new ArrayList<>();
+    // Moderators (rows of moderator_community, written through CommunityModeratorRepository)
+    @JsonIgnore
+    @OneToMany(mappedBy = "community")
+    private List<CommunityModerator> moderatorships = new ArrayList<>();
 
     @JsonView(BasicInfo.class)
     private boolean hasBanner = false;
 
-    // Banner image
+    // Banner image (its hash is the key in the MediaStore)
     @JsonIgnore
-    @Lob
-    private Blob banner;
+    @Embedded
+    @AttributeOverride(name = "contentType", column = @Column(name = "banner_content_type", length = 50))
+    @AttributeOverride(name = "hash", column = @Column(name = "banner_hash", length = 64))
+    @AttributeOverride(name = "lastModified", column = @Column(name = "banner_last_modified"))
+    @AttributeOverride(name = "width", column = @Column(name = "banner_width"))
+    @AttributeOverride(name = "height", column = @Column(name = "banner_height"))
+    private ImageMetadata bannerMetadata;
 
     @JsonView(BasicInfo.class)
     private String bannerString;
 
-    // A community can have multiple users
-    @ManyToMany
-    @JsonView(UsersInfo.class)
-    @JoinTable(name = "user_community", joinColumns = @JoinColumn(name = "community_id"), inverseJoinColumns = @JoinColumn(name = "user_id"))
-    private List<User> members = new ArrayList<>();
+    // A community can have multiple users (rows of user_community, written through
+    // CommunityMemberRepository one at a time, never by saving the community)
+    @JsonIgnore
+    @OneToMany(mappedBy = "community")
+    private List<CommunityMember> memberships = new ArrayList<>();
 
     // A community can have multiple posts
     @OneToMany(mappedBy = "community", cascade = CascadeType.ALL)
     private List<Post> posts = new ArrayList<>();
 
-    @JsonView(BasicInfo.class)
-    private LocalDate creationDate = LocalDate.now();
-
-    @JsonView(BasicInfo.class)
-    private LocalTime creationTime = LocalTime.now();
-
     @JsonView(BasicInfo.class) // Creation date
-    private LocalDateTime fullCreationDate = LocalDateTime.of(creationDate, creationTime);
-
-    @JsonView(BasicInfo.class)
-    private LocalDate lastPostDate = LocalDate.now();
-
-    @JsonView(BasicInfo.class)
-    private LocalTime lastPostTime = LocalTime.now();
+    private LocalDateTime fullCreationDate = LocalDateTime.now();
 
     @JsonView(BasicInfo.class) // Modification date (last post)
-    private LocalDateTime fullLastPostDate = LocalDateTime.of(lastPostDate, lastPostTime);
+    private LocalDateTime fullLastPostDate = fullCreationDate;
 
     @JsonView(UsersInfo.class) // banned users List of Ban Entities
     @OneToMany(mappedBy = "community", cascade = CascadeType.ALL)
@@ -100,34 +94,27 @@ public class Community {
 
     public Community(String name, String description, String banner, User admin) {
         this.name = name;
-        this.members.add(admin);
         this.admin = admin;
         this.description = description;
         this.bannerString = Objects.requireNonNullElse(banner, "default_community_banner.jpg");
     }
 
-    public void addMember(User user) {
-        this.members.add(user);
-    }
-
-    public void removeMember(User user) {
-        this.members.remove(user);
-    }
-
-    public void addModerator(User user) {
-        this.moderators.add(user);
+    @JsonView(UsersInfo.class)
+    public List<User> getMembers() {
+        return memberships.stream().map(member -> Hibernate.unproxy(member.getUser(), User.class)).toList();
     }
 
-    public void removeModerator(User user) {
-        this.moderators.remove(user);
+    @JsonView(UsersInfo.class)
+    public List<User> getModerators() {
+        return moderatorships.stream().map(moderator -> Hibernate.unproxy(moderator.getUser(), User.class)).toList();
     }
 
     public String toString() {
         return this.name;
     }
 
-    public void setBanner(Blob banner) {
-        this.banner = banner;
+    public void setBannerMetadata(ImageMetadata banner) {
+        this.bannerMetadata = banner;
         if (banner != null) {
             this.hasBanner = true;
         } else {
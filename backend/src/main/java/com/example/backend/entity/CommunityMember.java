@@ -0,0 +1,99 @@
+package com.example.backend.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+// Membership of a user in a community, one row per (community, user) written and
+// removed on its own, so joining or leaving never touches the other members. The
+// primary key answers "members of this community" and the (user, community) index
+// answers "communities of this user".
+@Entity
+@Table(name = "user_community", indexes = @Index(name = "idx_user_community_user", columnList = "user_id, community_id"))
+@IdClass(CommunityMember.CommunityMemberId.class)
+public class CommunityMember {
+
+    @Id
+    @Column(name = "community_id")
+    private Long communityId;
+
+    @Id
+    @Column(name = "user_id")
+    private String username;
+
+    // Mapped to generate the foreign keys (rows are removed with the community or the
+    // user) and to page the users and communities on each side
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "community_id", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Community community;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private User user;
+
+    private LocalDateTime joinedAt = LocalDateTime.now();
+
+    public CommunityMember() {
+    }
+
+    public CommunityMember(Long communityId, String username) {
+        this.communityId = communityId;
+        this.username = username;
+    }
+
+    public Long getCommunityId() {
+        return communityId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Community getCommunity() {
+        return community;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public LocalDateTime getJoinedAt() {
+        return joinedAt;
+    }
+
+    public static class CommunityMemberId implements Serializable {
+
+        private Long communityId;
+        private String username;
+
+        public CommunityMemberId() {
+        }
+
+        public CommunityMemberId(Long communityId, String username) {
+            this.communityId = communityId;
+            this.username = username;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CommunityMemberId other)) {
+                return false;
+            }
+            return Objects.equals(communityId, other.communityId) && Objects.equals(username, other.username);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(communityId, username);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.backend.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+// Moderator role of a user in a community, one row per (community, user). Kept apart
+// from CommunityMember because the role is granted and revoked on its own, and
+// written one row at a time like it.
+@Entity
+@Table(name = "moderator_community", indexes = @Index(name = "idx_moderator_community_user", columnList = "user_id, community_id"))
+@IdClass(CommunityModerator.CommunityModeratorId.class)
+public class CommunityModerator {
+
+    @Id
+    @Column(name = "community_id")
+    private Long communityId;
+
+    @Id
+    @Column(name = "user_id")
+    private String username;
+
+    // Mapped to generate the foreign keys (rows are removed with the community or the
+    // user) and to page the moderators of a community
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "community_id", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Community community;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private User user;
+
+    private LocalDateTime appointedAt = LocalDateTime.now();
+
+    public CommunityModerator() {
+    }
+
+    public CommunityModerator(Long communityId, String username) {
+        this.communityId = communityId;
+        this.username = username;
+    }
+
+    public Long getCommunityId() {
+        return communityId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Community getCommunity() {
+        return community;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public LocalDateTime getAppointedAt() {
+        return appointedAt;
+    }
+
+    public static class CommunityModeratorId implements Serializable {
+
+        private Long communityId;
+        private String username;
+
+        public CommunityModeratorId() {
+        }
+
+        public CommunityModeratorId(Long communityId, String username) {
+            this.communityId = communityId;
+            this.username = username;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CommunityModeratorId other)) {
+                return false;
+            }
+            return Objects.equals(communityId, other.communityId) && Objects.equals(username, other.username);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(communityId, username);
+        }
+    }
+}
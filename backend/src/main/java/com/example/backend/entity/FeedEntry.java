@@ -0,0 +1,111 @@
+package com.example.backend.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+// A post delivered to the home feed of a user. Entries are written when the post
+// is published (see FeedService) so reading a feed never has to resolve who the
+// user follows or which communities they are a member of.
+@Entity
+@Table(name = "feed_entry")
+@IdClass(FeedEntry.FeedEntryId.class)
+public class FeedEntry {
+
+    public enum Feed {
+        // posts of the users the owner follows
+        FOLLOWING,
+        // posts of the communities the owner is a member of
+        COMMUNITIES
+    }
+
+    @Id
+    @Column(name = "username")
+    private String username;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(length = 15)
+    private Feed feed;
+
+    @Id
+    @Column(name = "post_id")
+    private Long postId;
+
+    // Source of the entry, used to remove it again on unfollow / leave
+    @Column(name = "author_username")
+    private String authorUsername;
+
+    @Column(name = "community_id")
+    private Long communityId;
+
+    // Only mapped to generate the foreign keys (entries are removed with the post or the user)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "username", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private User user;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "post_id", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Post post;
+
+    public FeedEntry() {
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Feed getFeed() {
+        return feed;
+    }
+
+    public Long getPostId() {
+        return postId;
+    }
+
+    public String getAuthorUsername() {
+        return authorUsername;
+    }
+
+    public Long getCommunityId() {
+        return communityId;
+    }
+
+    public static class FeedEntryId implements Serializable {
+
+        private String username;
+        private Feed feed;
+        private Long postId;
+
+        public FeedEntryId() {
+        }
+
+        public FeedEntryId(String username, Feed feed, Long postId) {
+            this.username = username;
+            this.feed = feed;
+            this.postId = postId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FeedEntryId other)) {
+                return false;
+            }
+            return Objects.equals(username, other.username) && feed == other.feed
+                    && Objects.equals(postId, other.postId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(username, feed, postId);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.backend.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+
+import java.time.LocalDateTime;
+
+// Content type, SHA-256 hash, dimensions and modification date of a stored image.
+// The hash is the key of the image in the MediaStore and its ETag, and the date its
+// Last-Modified header. Everything is computed once when the image is uploaded so
+// serving the image never has to inspect its bytes. The dimensions decide which
+// resized variants (see ImageVariant) the image has.
+@Embeddable
+public class ImageMetadata {
+
+    @Column(length = 50)
+    private String contentType;
+
+    @Column(length = 64)
+    private String hash;
+
+    private LocalDateTime lastModified;
+
+    // null for images stored before the dimensions were recorded
+    private Integer width;
+
+    private Integer height;
+
+    public ImageMetadata() {
+    }
+
+    public ImageMetadata(String contentType, String hash, LocalDateTime lastModified, Integer width,
+            Integer height) {
+        this.contentType = contentType;
+        this.hash = hash;
+        this.lastModified = lastModified;
+        this.width = width;
+        this.height = height;
+    }
+
+    // Content type from the first bytes of an image (magic numbers of the formats
+    // accepted by the upload endpoints)
+    public static String detectContentType(byte[] header) {
+        int length = header.length;
+        if (startsWith(header, length, 0x89, 'P', 'N', 'G')) {
+            return "image/png";
+        }
+        if (startsWith(header, length, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(header, length, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        }
+        if (startsWith(header, length, 'B', 'M')) {
+            return "image/bmp";
+        }
+        if (startsWith(header, length, 'R', 'I', 'F', 'F') && length >= 12 && header[8] == 'W'
+                && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+            return "image/webp";
+        }
+        return "application/octet-stream";
+    }
+
+    private static boolean startsWith(byte[] header, int length, int... magic) {
+        if (length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((header[i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public LocalDateTime getLastModified() {
+        return lastModified;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+}
@@ -8,7 +8,8 @@ import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
 
 @Entity
-@Table(name = "messages")
+// History pages are read by (chat_id, timestamp, id), see MessageRepository
+@Table(name = "messages", indexes = @Index(name = "idx_messages_chat_timestamp", columnList = "chat_id, timestamp, id"))
 public class Message {
     public interface BasicInfoForChatList {}
     public interface BasicInfo extends BasicInfoForChatList {}
@@ -0,0 +1,21 @@
+package com.example.backend.entity;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Id generated from a pooled sequence table (see PooledSequenceGenerator)
+@IdGeneratorType(PooledSequenceGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD, ElementType.METHOD })
+public @interface PooledSequence {
+
+    // Name of the sequence table
+    String name();
+
+    // Ids reserved per round trip, unless spring.jpa.properties.ids.<name>.allocation-size is set
+    int allocationSize();
+}
@@ -0,0 +1,45 @@
+package com.example.backend.entity;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.generator.AnnotationBasedGenerator;
+import org.hibernate.generator.GeneratorCreationContext;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.lang.reflect.Member;
+import java.util.Properties;
+
+// Identifier generator of the entities that are inserted in bulk (posts, replies,
+// communities and bans). MySQL has no sequences, so each entity gets a one-row table
+// (post_seq, reply_seq, ...) instead of sharing hibernate_sequence, and every round trip
+// to it reserves increment_size ids that the pooled-lo optimizer hands out in memory,
+// so batched inserts don't wait on the table for every row. The ids are annotated with
+// @PooledSequence, and its allocationSize can be overridden per sequence with
+// spring.jpa.properties.ids.<name>.allocation-size.
+public class PooledSequenceGenerator extends SequenceStyleGenerator implements AnnotationBasedGenerator<PooledSequence> {
+
+    public static final String ALLOCATION_SIZE_SETTING = "ids.%s.allocation-size";
+
+    private PooledSequence sequence;
+
+    @Override
+    public void initialize(PooledSequence annotation, Member member, GeneratorCreationContext context) {
+        this.sequence = annotation;
+    }
+
+    @Override
+    public void configure(Type type, Properties parameters, ServiceRegistry serviceRegistry) throws MappingException {
+        parameters.setProperty(SEQUENCE_PARAM, sequence.name());
+        parameters.setProperty(INCREMENT_PARAM, Integer.toString(sequence.allocationSize()));
+        Object allocationSize = serviceRegistry.requireService(ConfigurationService.class).getSettings()
+                .get(String.format(ALLOCATION_SIZE_SETTING, parameters.getProperty(SEQUENCE_PARAM)));
+        if (allocationSize != null) {
+            parameters.setProperty(INCREMENT_PARAM, allocationSize.toString());
+        }
+        parameters.putIfAbsent(OPT_PARAM, StandardOptimizerDescriptor.POOLED_LO.getExternalName());
+        super.configure(type, parameters, serviceRegistry);
+    }
+}
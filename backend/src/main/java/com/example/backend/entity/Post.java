@@ -5,17 +5,19 @@ import com.fasterxml.jackson.annotation.JsonView;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
-import java.sql.Blob;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
 
 @Getter
 @Setter
 @Entity
+// Cached in the second-level cache. The vote counters are written by VoteCounterBuffer
+// outside Hibernate, which evicts the posts it updates.
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "post")
 public class Post {
 
     public interface IdInfo {
@@ -35,7 +37,7 @@ public class Post {
     }
 
     @Id
-    @GeneratedValue(strategy = jakarta.persistence.GenerationType.AUTO)
+    @PooledSequence(name = "post_seq", allocationSize = 50)
     @JsonView(IdInfo.class)
     private Long identifier;
 
@@ -51,9 +53,15 @@ public class Post {
     @JsonView(BasicInfo.class)
     private String content;
 
+    // Image of the post (its hash is the key in the MediaStore)
     @JsonIgnore
-    @Lob
-    private Blob image;
+    @Embedded
+    @AttributeOverride(name = "contentType", column = @Column(name = "image_content_type", length = 50))
+    @AttributeOverride(name = "hash", column = @Column(name = "image_hash", length = 64))
+    @AttributeOverride(name = "lastModified", column = @Column(name = "image_last_modified"))
+    @AttributeOverride(name = "width", column = @Column(name = "image_width"))
+    @AttributeOverride(name = "height", column = @Column(name = "image_height"))
+    private ImageMetadata imageMetadata;
 
     @JsonView(BasicInfo.class)
     private boolean hasImage = false;
@@ -63,56 +71,39 @@ public class Post {
     @JsonView(BasicInfo.class)
     private Community community;
 
+    // Vote counters are only written through atomic UPDATEs (see PostVote and
+    // VoteCounterBuffer), never by saving the entity
     @JsonView(BasicInfo.class)
+    @Column(updatable = false)
     private int upvotes;
 
-    // Users who upvoted the post
-    @JsonView(DetailedInfo.class)
-    @ManyToMany
-    @JoinTable(name = "post_upvoted_by", joinColumns = @JoinColumn(name = "post_id"), inverseJoinColumns = @JoinColumn(name = "user_id"))
-    private List<User> upvotedBy = new ArrayList<>();
-
     @JsonView(BasicInfo.class)
+    @Column(updatable = false)
     private int downvotes;
 
-    // Users who downvoted the post
-    @JsonView(DetailedInfo.class)
-    @ManyToMany
-    @JoinTable(name = "post_downvoted_by", joinColumns = @JoinColumn(name = "post_id"), inverseJoinColumns = @JoinColumn(name = "user_id"))
-    private List<User> downvotedBy = new ArrayList<>();
+    // Votes that are still buffered in memory and not yet written to the database
+    @Transient
+    @JsonIgnore
+    private int pendingUpvotes;
+
+    @Transient
+    @JsonIgnore
+    private int pendingDownvotes;
 
     @JsonView(BasicInfo.class) // Number of comments
     private int comments;
 
-    @JsonView(DetailedInfo.class)
-    private LocalDate creationDate = LocalDate.now();
-
-    @JsonView(DetailedInfo.class)
-    private LocalTime creationTime = LocalTime.now();
-
     @JsonView(BasicInfo.class) // Post creation date
-    private LocalDateTime fullCreationDate = LocalDateTime.of(creationDate, creationTime);
-
-    @JsonView(DetailedInfo.class)
-    private LocalDate lastReplyDate = LocalDate.now();
-
-    @JsonView(DetailedInfo.class)
-    private LocalTime lastReplyTime = LocalTime.now();
+    private LocalDateTime fullCreationDate = LocalDateTime.now();
 
     @JsonView(BasicInfo.class) // Post last reply date
-    private LocalDateTime fullLastReplyDate = LocalDateTime.of(lastReplyDate, lastReplyTime);
+    private LocalDateTime fullLastReplyDate = fullCreationDate;
 
     @JsonView(DetailedInfo.class)
     private boolean isEdited = false;
 
-    @JsonView(DetailedInfo.class)
-    private LocalDate lastEditDate = LocalDate.now();
-
-    @JsonView(DetailedInfo.class)
-    private LocalTime lastEditTime = LocalTime.now();
-
     @JsonView(BasicInfo.class) // Post last edit date
-    private LocalDateTime fullLastEditDate = LocalDateTime.of(lastEditDate, lastEditTime);
+    private LocalDateTime fullLastEditDate = fullCreationDate;
 
     @JsonView(Replies.class) // List of comments
     @OneToMany(mappedBy = "post", cascade = jakarta.persistence.CascadeType.ALL)
@@ -121,25 +112,26 @@ public class Post {
     public Post() {
     }
 
-    public void upvote(User user) {
-        this.upvotes++;
-        this.upvotedBy.add(user);
+    public int getUpvotes() {
+        return upvotes + pendingUpvotes;
+    }
+
+    public int getDownvotes() {
+        return downvotes + pendingDownvotes;
     }
 
-    public void downvote(User user) {
-        this.downvotes++;
-        this.downvotedBy.add(user);
+    public void setPendingVotes(int pendingUpvotes, int pendingDownvotes) {
+        this.pendingUpvotes = pendingUpvotes;
+        this.pendingDownvotes = pendingDownvotes;
     }
 
-    public void addImage(Blob image) {
-        this.image = image;
+    public void addImage(ImageMetadata image) {
+        this.imageMetadata = image;
         this.hasImage = true;
     }
 
     public void updateEditDate() {
-        this.lastEditDate = LocalDate.now();
-        this.lastEditTime = LocalTime.now();
-        this.fullLastEditDate = LocalDateTime.of(lastEditDate, lastEditTime);
+        this.fullLastEditDate = LocalDateTime.now();
     }
 
     public Post(String title, String content, User author, Community community) {
@@ -0,0 +1,105 @@
+package com.example.backend.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+// A single vote of a user on a post. Votes are stored one row per (post, user)
+// so that voting never has to load the whole list of voters of a post.
+@Entity
+@Table(name = "post_vote", indexes = @Index(name = "idx_post_vote_username", columnList = "username"))
+@IdClass(PostVote.PostVoteId.class)
+public class PostVote {
+
+    public enum Direction {
+        UPVOTE, DOWNVOTE
+    }
+
+    @Id
+    @Column(name = "post_id")
+    private Long postId;
+
+    @Id
+    @Column(name = "username")
+    private String username;
+
+    // Only mapped to generate the foreign keys (rows are removed with the post or the user)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "post_id", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Post post;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "username", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private User user;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private Direction direction;
+
+    private LocalDateTime votedAt = LocalDateTime.now();
+
+    public PostVote() {
+    }
+
+    public PostVote(Long postId, String username, Direction direction) {
+        this.postId = postId;
+        this.username = username;
+        this.direction = direction;
+    }
+
+    public Long getPostId() {
+        return postId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public void setDirection(Direction direction) {
+        this.direction = direction;
+    }
+
+    public LocalDateTime getVotedAt() {
+        return votedAt;
+    }
+
+    public static class PostVoteId implements Serializable {
+
+        private Long postId;
+        private String username;
+
+        public PostVoteId() {
+        }
+
+        public PostVoteId(Long postId, String username) {
+            this.postId = postId;
+            this.username = username;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PostVoteId other)) {
+                return false;
+            }
+            return Objects.equals(postId, other.postId) && Objects.equals(username, other.username);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(postId, username);
+        }
+    }
+}
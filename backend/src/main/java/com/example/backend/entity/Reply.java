@@ -1,24 +1,17 @@
 package com.example.backend.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonView;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
-import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.Id;
-import jakarta.persistence.JoinColumn;
-import jakarta.persistence.JoinTable;
-import jakarta.persistence.ManyToMany;
 import jakarta.persistence.ManyToOne;
-import jakarta.persistence.OneToMany;
+import jakarta.persistence.Transient;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.util.ArrayList;
-import java.util.List;
 
 @Getter
 @Setter
@@ -39,7 +32,7 @@ public class Reply {
 
     @Id
     @JsonView(BasicInfo.class)
-    @GeneratedValue(strategy = jakarta.persistence.GenerationType.AUTO)
+    @PooledSequence(name = "reply_seq", allocationSize = 100)
     private Long identifier;
 
     @ManyToOne
@@ -54,27 +47,22 @@ public class Reply {
     @Column(length = 500)  
     private String content;
 
+    // Only written through atomic UPDATEs (see VoteCounterBuffer), never by saving the entity
     @JsonView(BasicInfo.class)
+    @Column(updatable = false)
     private int likes = 0;
 
-    // Users who liked the reply (a reply can be liked by multiple users)
-    @JsonView(LikesInfo.class)
-    @ManyToMany
-    @JoinTable(name = "reply_liked_by", joinColumns = @JoinColumn(name = "reply_id"), inverseJoinColumns = @JoinColumn(name = "user_id"))
-    private List<User> likedBy = new ArrayList<>();
+    // Likes that are still buffered in memory and not yet written to the database
+    @Transient
+    @JsonIgnore
+    private int pendingLikes;
 
     @JsonView(UserInfo.class)
     @ManyToOne
     private User author;
 
-    @JsonView(BasicInfo.class)
-    private LocalDate creationDate = LocalDate.now();
-
-    @JsonView(BasicInfo.class)
-    private LocalTime creationTime = LocalTime.now();
-
     @JsonView(BasicInfo.class) // Reply creation date
-    private LocalDateTime fullCreationDate = LocalDateTime.of(creationDate, creationTime);
+    private LocalDateTime fullCreationDate = LocalDateTime.now();
 
     public Reply() {
     }
@@ -86,6 +74,10 @@ public class Reply {
         this.post = post;
     }
 
+    public int getLikes() {
+        return likes + pendingLikes;
+    }
+
     @Override
     public String toString() {
         return "Reply{" +
@@ -94,17 +86,7 @@ public class Reply {
                 ", content='" + content + '\'' +
                 ", likes=" + likes +
                 ", author=" + author +
-                ", creationDate=" + creationDate +
-                ", creationTime=" + creationTime +
                 ", fullCreationDate=" + fullCreationDate +
                 '}';
     }
-
-    public void addLikedBy(User user) {
-        likedBy.add(user);
-    }
-
-    public void removeLikedBy(User user) {
-        likedBy.remove(user);
-    }
 }
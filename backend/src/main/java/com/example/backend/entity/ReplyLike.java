@@ -0,0 +1,90 @@
+package com.example.backend.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+// A like given by a user to a reply, one row per (reply, user) written and removed on
+// its own. The like counter of the reply is kept apart (see VoteCounterBuffer). The
+// primary key answers "has this user liked this reply" and the (user, reply) index
+// finds the likes of a user.
+@Entity
+@Table(name = "reply_liked_by", indexes = @Index(name = "idx_reply_liked_by_user", columnList = "user_id, reply_id"))
+@IdClass(ReplyLike.ReplyLikeId.class)
+public class ReplyLike {
+
+    @Id
+    @Column(name = "reply_id")
+    private Long replyId;
+
+    @Id
+    @Column(name = "user_id")
+    private String username;
+
+    // Only mapped to generate the foreign keys (rows are removed with the reply or the user)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "reply_id", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Reply reply;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private User user;
+
+    private LocalDateTime likedAt = LocalDateTime.now();
+
+    public ReplyLike() {
+    }
+
+    public ReplyLike(Long replyId, String username) {
+        this.replyId = replyId;
+        this.username = username;
+    }
+
+    public Long getReplyId() {
+        return replyId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public LocalDateTime getLikedAt() {
+        return likedAt;
+    }
+
+    public static class ReplyLikeId implements Serializable {
+
+        private Long replyId;
+        private String username;
+
+        public ReplyLikeId() {
+        }
+
+        public ReplyLikeId(Long replyId, String username) {
+            this.replyId = replyId;
+            this.username = username;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ReplyLikeId other)) {
+                return false;
+            }
+            return Objects.equals(replyId, other.replyId) && Objects.equals(username, other.username);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(replyId, username);
+        }
+    }
+}
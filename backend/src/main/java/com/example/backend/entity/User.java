@@ -5,19 +5,13 @@ import com.fasterxml.jackson.annotation.JsonView;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
-
-import javax.sql.rowset.serial.SerialBlob;
-import javax.sql.rowset.serial.SerialException;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.io.IOException;
-import java.io.File;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.sql.Blob;
 import java.sql.SQLException;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -25,6 +19,13 @@ import java.util.Objects;
 @Setter
 @Getter
 @Entity
+// disabled_until is indexed for ExpiryScheduler, which lifts the suspensions when they end
+@Table(indexes = @Index(name = "idx_user_disabled_until", columnList = "disabled_until"))
+// Cached in the second-level cache, read through UserRepository.findByUsername
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "user")
+// Saving a user only writes the columns that changed, so it doesn't overwrite the
+// follow counters, which are moved with relative UPDATEs (see UserService.followUser)
+@DynamicUpdate
 public class User {
 
     public interface UsernameInfo {
@@ -61,12 +62,19 @@ public class User {
     @Getter
     @JsonView(BasicInfo.class)
     @ElementCollection(fetch = FetchType.EAGER) // Eager fetch because roles should be loaded when user is loaded
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "user-roles")
     private List<String> roles;
 
-    @Setter
-    @JsonIgnore // Do not serialize this field
-    @Lob
-    private Blob pfp;
+    // Profile picture (its hash is the key in the MediaStore, the default picture
+    // is stored once and shared by every user that has it)
+    @JsonIgnore
+    @Embedded
+    @AttributeOverride(name = "contentType", column = @Column(name = "pfp_content_type", length = 50))
+    @AttributeOverride(name = "hash", column = @Column(name = "pfp_hash", length = 64))
+    @AttributeOverride(name = "lastModified", column = @Column(name = "pfp_last_modified"))
+    @AttributeOverride(name = "width", column = @Column(name = "pfp_width"))
+    @AttributeOverride(name = "height", column = @Column(name = "pfp_height"))
+    private ImageMetadata pfpMetadata;
 
     @JsonView(BanInfo.class)
     private int banCount = 0; // Accumulative, never decreases
@@ -86,26 +94,6 @@ public class User {
     @JsonView(BanInfo.class)
     private LocalDateTime disabledUntil;
 
-    @JsonView(FollowersInfo.class)
-    @ManyToMany
-    private List<User> followersList = new ArrayList<>();
-
-    @JsonView(FollowersInfo.class)
-    @ManyToMany
-    private List<User> followingList = new ArrayList<>();
-
-    // A user may have upvoted 0 or multiple posts
-    @ManyToMany(mappedBy = "upvotedBy")
-    private List<Post> upvotedPosts = new ArrayList<>();
-
-    // A user may have downvoted 0 or multiple posts
-    @ManyToMany(mappedBy = "downvotedBy")
-    private List<Post> downvotedPosts = new ArrayList<>();
-
-    // A user may have liked 0 or multiple replies
-    @ManyToMany(mappedBy = "likedBy")
-    private List<Reply> likedReplies = new ArrayList<>();
-
     // A user can have 0 or multiple posts
     @OneToMany(mappedBy = "author", cascade = CascadeType.ALL)
     private List<Post> posts = new ArrayList<>();
@@ -114,19 +102,8 @@ public class User {
     @OneToMany(mappedBy = "author", cascade = CascadeType.ALL)
     private List<Reply> replies = new ArrayList<>();
 
-    // A user can join 0 or multiple communities
-    @JsonView(CommunitiesInfo.class)
-    @ManyToMany(mappedBy = "members")
-    private List<Community> communities = new ArrayList<>();
-
-    @JsonView(BasicInfo.class)
-    private LocalDate creationDate = LocalDate.now();
-
-    @JsonView(BasicInfo.class)
-    private LocalTime creationTime = LocalTime.now();
-
     @JsonView(BasicInfo.class) // User creation date
-    private LocalDateTime fullCreationDate = LocalDateTime.of(creationDate, creationTime);
+    private LocalDateTime fullCreationDate = LocalDateTime.now();
 
     public User() {
     }
@@ -144,77 +121,26 @@ public class User {
         } else {
             this.pfpString = pfp;
         }
-        this.pfp = LocalImageToBlob(pfpString);
     }
 
-    public void addFollower(User user) {
-        this.followersList.add(user);
+    // The follow edges are stored in user_follow (see UserFollow), the user only
+    // keeps the counters
+    public void addFollower() {
         this.followers++;
     }
 
-    public void removeFollower(User user) {
-        this.followersList.remove(user);
+    public void removeFollower() {
         this.followers--;
     }
 
-    public void addFollowing(User user) {
-        this.followingList.add(user);
+    public void addFollowing() {
         this.following++;
     }
 
-    public void removeFollowing(User user) {
-        this.followingList.remove(user);
+    public void removeFollowing() {
         this.following--;
     }
 
-    public void addLikedReply(Reply reply) {
-        this.likedReplies.add(reply);
-    }
-
-    public void removeLikedReply(Reply reply) {
-        this.likedReplies.remove(reply);
-    }
-
-    public void addUpvotedPost(Post post) {
-        this.upvotedPosts.add(post);
-    }
-
-    public void removeUpvotedPost(Post post) {
-        this.upvotedPosts.remove(post);
-    }
-
-    public void addDownvotedPost(Post post) {
-        this.downvotedPosts.add(post);
-    }
-
-    public void removeDownvotedPost(Post post) {
-        this.downvotedPosts.remove(post);
-    }
-
-    public Blob LocalImageToBlob(String imgPath) throws IOException, SQLException {
-        imgPath = imgPath.replace("/assets", "backend/src/main/resources/static/assets");
-        String onDocker = System.getenv("RUNNING_IN_DOCKER");
-        Blob imgBlob = null;
-
-        if (onDocker != null && onDocker.equals("true")) {
-            try (InputStream imgStream = getClass()
-                    .getResourceAsStream(imgPath.replace("backend/src/main/resources/static", "/static"))) {
-                if (imgStream == null) {
-                    throw new IOException("Image not found");
-                }
-                imgBlob = new SerialBlob(imgStream.readAllBytes());
-            }
-        } else {
-            String baseDir = System.getProperty("user.dir").replace("\\", "/").replace("/backend", "");
-            File imgFile = new File(baseDir + "/" + imgPath);
-            if (!imgFile.exists() || !imgFile.canRead()) {
-                throw new IOException("Cannot access image file: " + imgFile.getAbsolutePath());
-            }
-            imgBlob = new SerialBlob(Files.readAllBytes(imgFile.toPath()));
-        }
-        return imgBlob;
-    }
-
     public void addBanCount() {
         this.banCount++;
     }
@@ -0,0 +1,90 @@
+package com.example.backend.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+// A follow edge between two users, one row per (follower, followed). The primary key
+// answers "who does this user follow" and the (followed, follower) index answers
+// "who follows this user", so neither side has to load a list of users.
+@Entity
+@Table(name = "user_follow", indexes = @Index(name = "idx_user_follow_followed", columnList = "followed, follower"))
+@IdClass(UserFollow.UserFollowId.class)
+public class UserFollow {
+
+    @Id
+    @Column(name = "follower")
+    private String follower;
+
+    @Id
+    @Column(name = "followed")
+    private String followed;
+
+    // Mapped to generate the foreign keys (rows are removed with either user) and to
+    // page the users on each side of the edge
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "follower", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private User followerUser;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "followed", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private User followedUser;
+
+    private LocalDateTime followedAt = LocalDateTime.now();
+
+    public UserFollow() {
+    }
+
+    public UserFollow(String follower, String followed) {
+        this.follower = follower;
+        this.followed = followed;
+    }
+
+    public String getFollower() {
+        return follower;
+    }
+
+    public String getFollowed() {
+        return followed;
+    }
+
+    public LocalDateTime getFollowedAt() {
+        return followedAt;
+    }
+
+    public static class UserFollowId implements Serializable {
+
+        private String follower;
+        private String followed;
+
+        public UserFollowId() {
+        }
+
+        public UserFollowId(String follower, String followed) {
+            this.follower = follower;
+            this.followed = followed;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof UserFollowId other)) {
+                return false;
+            }
+            return Objects.equals(follower, other.follower) && Objects.equals(followed, other.followed);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(follower, followed);
+        }
+    }
+}
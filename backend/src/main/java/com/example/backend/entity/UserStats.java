@@ -0,0 +1,59 @@
+package com.example.backend.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+// Profile counters of a user, one row per user read by primary key. They are kept
+// up to date with relative UPDATEs by UserStatsService on every write that changes
+// them, and can be recomputed from the source tables at any time. The follower and
+// following counters live on User itself.
+@Entity
+@Table(name = "user_stats")
+public class UserStats {
+
+    @Id
+    @Column(name = "username")
+    private String username;
+
+    // Only mapped to generate the foreign key (the row is removed with the user)
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "username", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private User user;
+
+    // Posts written by the user
+    private int posts;
+
+    // Communities the user is a member of
+    private int communities;
+
+    // Communities the user is the admin of
+    private int adminCommunities;
+
+    // Upvotes received by the posts of the user
+    private long upvotes;
+
+    public UserStats() {
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public int getPosts() {
+        return posts;
+    }
+
+    public int getCommunities() {
+        return communities;
+    }
+
+    public int getAdminCommunities() {
+        return adminCommunities;
+    }
+
+    public long getUpvotes() {
+        return upvotes;
+    }
+}
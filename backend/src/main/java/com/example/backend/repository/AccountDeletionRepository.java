@@ -0,0 +1,13 @@
+package com.example.backend.repository;
+
+import com.example.backend.entity.AccountDeletion;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface AccountDeletionRepository extends JpaRepository<AccountDeletion, String> {
+
+        List<AccountDeletion> findByStatusIn(Collection<AccountDeletion.Status> statuses);
+}
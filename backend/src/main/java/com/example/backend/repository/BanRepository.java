@@ -1,9 +1,23 @@
 package com.example.backend.repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.example.backend.entity.Ban;
 
 public interface BanRepository extends JpaRepository<Ban, Long> {
-    
+
+    // Bans ending in [afterTime, to) as (community id, username, ban end, id), after
+    // the given ban in (ban end, id) order. Read through idx_ban_ban_until (the id is
+    // part of every secondary index) by the expiry scheduler.
+    @Query("SELECT b.community.identifier, b.user.username, b.banUntil, b.id FROM Ban b WHERE b.banUntil < :to "
+            + "AND (b.banUntil > :afterTime OR (b.banUntil = :afterTime AND b.id > :afterId)) "
+            + "ORDER BY b.banUntil, b.id")
+    List<Object[]> getEndingBans(@Param("afterTime") LocalDateTime afterTime, @Param("afterId") long afterId,
+            @Param("to") LocalDateTime to, Pageable pageable);
 }
@@ -1,18 +1,57 @@
 package com.example.backend.repository;
 
+import com.example.backend.dto.ChatSummary;
 import com.example.backend.entity.Chat;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 public interface ChatRepository extends JpaRepository<Chat, Long> {
-    @Query("SELECT c FROM Chat c WHERE c.user1.username = :username OR c.user2.username = :username ORDER BY c.lastMessageTime DESC")
-    Page<Chat> findByUsername(@Param("username") String username, Pageable pageable);
+    // Chats are listed as summaries (see ChatSummary) with the participants and the
+    // last message in the same query: the usernames are the foreign keys of the chat
+    // and the message, the unread counts of the user are columns of the chat
+    String CHAT_SUMMARY = "SELECT new com.example.backend.dto.ChatSummary(c.id, c.user1.username, c.user2.username, "
+            + "lm.id, lm.sender.username, lm.content, c.lastMessageTime, "
+            + "CASE WHEN c.user1.username = :username THEN c.user1Unread ELSE c.user2Unread END, "
+            + "CASE WHEN c.user1.username = :username THEN c.user1LastReadId ELSE c.user2LastReadId END) "
+            + "FROM Chat c LEFT JOIN c.lastMessage lm ";
+
+    @Query(value = CHAT_SUMMARY
+            + "WHERE c.user1.username = :username OR c.user2.username = :username ORDER BY c.lastMessageTime DESC",
+            countQuery = "SELECT COUNT(c) FROM Chat c WHERE c.user1.username = :username OR c.user2.username = :username")
+    Page<ChatSummary> findByUsername(@Param("username") String username, Pageable pageable);
+
+    // Keyset page of the chats of a user (see Cursor)
+    @Query(CHAT_SUMMARY
+            + "WHERE (c.user1.username = :username OR c.user2.username = :username) "
+            + "AND (c.lastMessageTime < :time OR (c.lastMessageTime = :time AND c.id < :id)) "
+            + "ORDER BY c.lastMessageTime DESC, c.id DESC")
+    Slice<ChatSummary> findByUsernameAfter(@Param("username") String username, @Param("time") LocalDateTime time,
+            @Param("id") long id, Pageable pageable);
 
     @Query("SELECT c FROM Chat c WHERE (c.user1.username = :user1 AND c.user2.username = :user2) OR (c.user1.username = :user2 AND c.user2.username = :user1)")
     Optional<Chat> findByUsers(@Param("user1") String user1, @Param("user2") String user2);
-} 
\ No newline at end of file
+
+    // A participant read the chat up to a message: moves their marker and recounts
+    // their unread messages (only the ones sent after it can be left)
+    @Modifying
+    @Query("UPDATE Chat c SET "
+            + "c.user1LastReadId = CASE WHEN c.user1.username = :username THEN :lastId ELSE c.user1LastReadId END, "
+            + "c.user1Unread = CASE WHEN c.user1.username = :username THEN "
+            + "(SELECT COUNT(m) FROM Message m WHERE m.chat.id = :chatId AND m.receiver.username = :username AND m.read = false) "
+            + "ELSE c.user1Unread END, "
+            + "c.user2LastReadId = CASE WHEN c.user1.username <> :username AND c.user2.username = :username THEN :lastId "
+            + "ELSE c.user2LastReadId END, "
+            + "c.user2Unread = CASE WHEN c.user1.username <> :username AND c.user2.username = :username THEN "
+            + "(SELECT COUNT(m) FROM Message m WHERE m.chat.id = :chatId AND m.receiver.username = :username AND m.read = false) "
+            + "ELSE c.user2Unread END "
+            + "WHERE c.id = :chatId")
+    int markAsRead(@Param("chatId") Long chatId, @Param("username") String username, @Param("lastId") Long lastId);
+}
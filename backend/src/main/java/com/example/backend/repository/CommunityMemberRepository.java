@@ -0,0 +1,87 @@
+package com.example.backend.repository;
+
+import com.example.backend.dto.MemberSummary;
+import com.example.backend.entity.CommunityMember;
+
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface CommunityMemberRepository extends JpaRepository<CommunityMember, CommunityMember.CommunityMemberId> {
+
+        // Read model of the member lists (see MemberSummary), the roles of a page are
+        // read apart with UserRepository.getRoles
+        String MEMBER_SUMMARY = "SELECT new com.example.backend.dto.MemberSummary(u.username, u.alias, u.email, "
+                        + "u.description, u.pfpString, u.followers, u.following, u.fullCreationDate) "
+                        + "FROM CommunityMember m JOIN m.user u ";
+
+        // Is the user a member of the community? (primary key lookup)
+        boolean existsByCommunityIdAndUsername(Long communityId, String username);
+
+        // Members of a community (primary key range)
+        int countByCommunityId(Long communityId);
+
+        // Communities of a user (idx_user_community_user range)
+        int countByUsername(String username);
+
+        // Add a membership with a single-row insert, returns 0 if it already existed
+        // (only the caches that read the table are dropped, without the hint Hibernate drops all of them)
+        @Transactional
+        @Modifying
+        @Query(value = "INSERT IGNORE INTO user_community (community_id, user_id, joined_at) VALUES (:communityId, :username, NOW(6))",
+                        nativeQuery = true)
+        @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "user_community"))
+        int addMember(@Param("communityId") Long communityId, @Param("username") String username);
+
+        // Remove a membership, returns the number of rows removed
+        @Transactional
+        @Modifying
+        @Query("DELETE FROM CommunityMember m WHERE m.communityId = :communityId AND m.username = :username")
+        int removeMember(@Param("communityId") Long communityId, @Param("username") String username);
+
+        // Members of a community sorted by username, read in primary key order
+        @Query(value = MEMBER_SUMMARY + "WHERE m.communityId = :communityId ORDER BY m.username",
+                        countQuery = "SELECT COUNT(m) FROM CommunityMember m WHERE m.communityId = :communityId")
+        Page<MemberSummary> getMembers(@Param("communityId") Long communityId, Pageable pageable);
+
+        // Keyset page of the members of a community sorted by username (see Cursor)
+        @Query(MEMBER_SUMMARY + "WHERE m.communityId = :communityId AND m.username > :after ORDER BY m.username")
+        Slice<MemberSummary> getMembersAfter(@Param("communityId") Long communityId, @Param("after") String after, Pageable pageable);
+
+        // Keyset page of the members of a community whose username contains the query
+        @Query(MEMBER_SUMMARY + "WHERE m.communityId = :communityId AND m.username LIKE %:username% "
+                        + "AND m.username > :after ORDER BY m.username")
+        Slice<MemberSummary> searchMembersAfter(@Param("communityId") Long communityId, @Param("username") String username,
+                        @Param("after") String after, Pageable pageable);
+
+        // Members of a community whose username contains the query
+        @Query(value = MEMBER_SUMMARY + "WHERE m.communityId = :communityId AND m.username LIKE %:username% "
+                        + "ORDER BY m.username",
+                        countQuery = "SELECT COUNT(m) FROM CommunityMember m WHERE m.communityId = :communityId "
+                                        + "AND m.username LIKE %:username%")
+        Page<MemberSummary> searchMembers(@Param("communityId") Long communityId, @Param("username") String username,
+                        Pageable pageable);
+
+        // Usernames of the members of a community
+        @Query("SELECT m.username FROM CommunityMember m WHERE m.communityId = :communityId")
+        List<String> getMemberUsernames(@Param("communityId") Long communityId);
+
+        // Every (community id, member username) pair, for the membership index
+        @Query("SELECT m.communityId, m.username FROM CommunityMember m")
+        List<Object[]> getAllMemberships();
+
+        // Communities of a user with more members than the given limit
+        @Query("SELECT m.communityId FROM CommunityMember m WHERE m.username = :username AND "
+                        + "(SELECT COUNT(o) FROM CommunityMember o WHERE o.communityId = m.communityId) > :limit")
+        List<Long> getLargeCommunitiesOfUser(@Param("username") String username, @Param("limit") long limit);
+}
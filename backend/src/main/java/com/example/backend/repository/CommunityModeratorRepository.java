@@ -0,0 +1,52 @@
+package com.example.backend.repository;
+
+import com.example.backend.entity.CommunityModerator;
+import com.example.backend.entity.User;
+
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface CommunityModeratorRepository extends JpaRepository<CommunityModerator, CommunityModerator.CommunityModeratorId> {
+
+        // Is the user a moderator of the community? (primary key lookup)
+        boolean existsByCommunityIdAndUsername(Long communityId, String username);
+
+        int countByCommunityId(Long communityId);
+
+        // Grant the role with a single-row insert, returns 0 if the user already had it
+        // (only the caches that read the table are dropped, without the hint Hibernate drops all of them)
+        @Transactional
+        @Modifying
+        @Query(value = "INSERT IGNORE INTO moderator_community (community_id, user_id, appointed_at) VALUES (:communityId, :username, NOW(6))",
+                        nativeQuery = true)
+        @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "moderator_community"))
+        int addModerator(@Param("communityId") Long communityId, @Param("username") String username);
+
+        // Revoke the role, returns the number of rows removed
+        @Transactional
+        @Modifying
+        @Query("DELETE FROM CommunityModerator m WHERE m.communityId = :communityId AND m.username = :username")
+        int removeModerator(@Param("communityId") Long communityId, @Param("username") String username);
+
+        // Moderators of a community sorted by username (cached, dropped whenever the
+        // moderator_community or user tables change)
+        @Query(value = "SELECT m.user FROM CommunityModerator m WHERE m.communityId = :communityId ORDER BY m.username",
+                        countQuery = "SELECT COUNT(m) FROM CommunityModerator m WHERE m.communityId = :communityId")
+        @QueryHints({ @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+                        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "community-moderators") })
+        Page<User> getModerators(@Param("communityId") Long communityId, Pageable pageable);
+
+        // Every (community id, moderator username) pair, for the membership index
+        @Query("SELECT m.communityId, m.username FROM CommunityModerator m")
+        List<Object[]> getAllModerators();
+}
@@ -5,19 +5,28 @@ import com.example.backend.entity.Community;
 import com.example.backend.entity.Post;
 import com.example.backend.entity.User;
 import io.swagger.v3.oas.annotations.Operation;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
 public interface CommunityRepository extends JpaRepository<Community, Long> {
+        // Full-text condition on the ft_community index (see SearchIndexService)
+        String MATCH_COMMUNITY = "MATCH(c.name, c.description) AGAINST (:query IN BOOLEAN MODE)";
+
         @Query("SELECT c FROM Community c WHERE c.name LIKE %:name%")
         Page<Community> findByName(String name, Pageable pageable);
 
-        Community findByIdentifier(long communityId);
+        // Primary key lookup, answered by the second-level cache when the community is in it
+        default Community findByIdentifier(long communityId) {
+                return findById(communityId).orElse(null);
+        }
 
         Page<Community> findByAdminUsername(String username, Pageable pageable);
 
@@ -25,10 +34,10 @@ public interface CommunityRepository extends JpaRepository<Community, Long> {
         Page<Community> findByDescription(String description, Pageable pageable);
 
         @Operation(summary = "Search communities by name or description. Search Engine's default behaviour")
-        @Query("SELECT c FROM Community c WHERE " +
-                        "c.name LIKE %:query% OR " +
-                        "c.description LIKE %:query%")
-        Page<Community> engineSearchCommunities(String query, Pageable pageable);
+        @Query(value = "SELECT c.* FROM community c WHERE " + MATCH_COMMUNITY + " ORDER BY " + MATCH_COMMUNITY
+                        + " DESC, c.identifier",
+                        countQuery = "SELECT COUNT(*) FROM community c WHERE " + MATCH_COMMUNITY, nativeQuery = true)
+        Page<Community> engineSearchCommunities(@Param("query") String query, Pageable pageable);
 
         // Find latest created communities
         @Query("SELECT c FROM Community c ORDER BY c.fullCreationDate DESC")
@@ -39,7 +48,7 @@ public interface CommunityRepository extends JpaRepository<Community, Long> {
         Page<Community> findCommunitiesOrderByLastPostDate(Pageable pageable);
 
         // Find communities by number of members
-        @Query("SELECT c FROM Community c LEFT JOIN c.members m GROUP BY c ORDER BY COUNT(m) DESC")
+        @Query("SELECT c FROM Community c ORDER BY (SELECT COUNT(m) FROM CommunityMember m WHERE m.communityId = c.identifier) DESC")
         Page<Community> findCommunitiesOrderByMembers(Pageable pageable);
 
         // Find communities by name and sort by creation date
@@ -51,7 +60,8 @@ public interface CommunityRepository extends JpaRepository<Community, Long> {
         Page<Community> findByNameOrderByLastPostDate(String name, Pageable pageable);
 
         // Find communities by name and sort by number of members
-        @Query("SELECT c FROM Community c WHERE c.name LIKE %:name% ORDER BY (SELECT COUNT(m) FROM c.members m) DESC")
+        @Query("SELECT c FROM Community c WHERE c.name LIKE %:name% ORDER BY "
+                        + "(SELECT COUNT(m) FROM CommunityMember m WHERE m.communityId = c.identifier) DESC")
         Page<Community> findByNameOrderByMembers(String name, Pageable pageable);
 
         // Find communities by description and sort by creation date
@@ -63,56 +73,71 @@ public interface CommunityRepository extends JpaRepository<Community, Long> {
         Page<Community> findByDescriptionOrderByLastPostDate(String description, Pageable pageable);
 
         // Find communities by description and sort by number of members
-        @Query("SELECT c FROM Community c WHERE c.description LIKE %:description% ORDER BY (SELECT COUNT(m) FROM c.members m) DESC")
+        @Query("SELECT c FROM Community c WHERE c.description LIKE %:description% ORDER BY "
+                        + "(SELECT COUNT(m) FROM CommunityMember m WHERE m.communityId = c.identifier) DESC")
         Page<Community> findByDescriptionOrderByMembers(String description, Pageable pageable);
 
         // Search engine default behaviour + sort by latest modified date
-        @Query("SELECT c FROM Community c WHERE " +
-                        "c.name LIKE %:query% OR " +
-                        "c.description LIKE %:query% ORDER BY c.fullLastPostDate DESC")
-        Page<Community> engineSearchCommunitiesOrderByLastPostDate(String query, Pageable pageable);
+        @Query(value = "SELECT c.* FROM community c WHERE " + MATCH_COMMUNITY + " ORDER BY c.full_last_post_date DESC",
+                        countQuery = "SELECT COUNT(*) FROM community c WHERE " + MATCH_COMMUNITY, nativeQuery = true)
+        Page<Community> engineSearchCommunitiesOrderByLastPostDate(@Param("query") String query, Pageable pageable);
 
         // Search engine default behaviour + sort by creation date
-        @Query("SELECT c FROM Community c WHERE " +
-                        "c.name LIKE %:query% OR " +
-                        "c.description LIKE %:query% ORDER BY c.fullCreationDate DESC")
-        Page<Community> engineSearchCommunitiesOrderByCreationDate(String query, Pageable pageable);
+        @Query(value = "SELECT c.* FROM community c WHERE " + MATCH_COMMUNITY + " ORDER BY c.full_creation_date DESC",
+                        countQuery = "SELECT COUNT(*) FROM community c WHERE " + MATCH_COMMUNITY, nativeQuery = true)
+        Page<Community> engineSearchCommunitiesOrderByCreationDate(@Param("query") String query, Pageable pageable);
 
         // Search engine default behaviour + sort by number of members
-        @Query("SELECT c FROM Community c LEFT JOIN c.members m GROUP BY c ORDER BY COUNT(m) DESC")
-        Page<Community> engineSearchCommunitiesOrderByMembers(String query, Pageable pageable);
+        @Query(value = "SELECT c.* FROM community c WHERE " + MATCH_COMMUNITY + " ORDER BY "
+                        + "(SELECT COUNT(*) FROM user_community m WHERE m.community_id = c.identifier) DESC",
+                        countQuery = "SELECT COUNT(*) FROM community c WHERE " + MATCH_COMMUNITY, nativeQuery = true)
+        Page<Community> engineSearchCommunitiesOrderByMembers(@Param("query") String query, Pageable pageable);
+
+        // Substring searches, for the text the full-text index can't match (see
+        // SearchIndexService.toBooleanQuery): sorted by the Pageable, or by members
+        @Query("SELECT c FROM Community c WHERE c.name LIKE %:text% OR c.description LIKE %:text%")
+        Page<Community> searchCommunitiesBySubstring(@Param("text") String text, Pageable pageable);
 
-        // Return members count of a community
-        @Query("SELECT COUNT(c.members) FROM Community c WHERE c.identifier = :communityId")
-        int getMembersCount(long communityId);
+        @Query("SELECT c FROM Community c WHERE c.name LIKE %:text% OR c.description LIKE %:text% ORDER BY "
+                        + "(SELECT COUNT(m) FROM CommunityMember m WHERE m.communityId = c.identifier) DESC")
+        Page<Community> searchCommunitiesBySubstringOrderByMembers(@Param("text") String text, Pageable pageable);
 
         // Return posts count of a community
         @Query("SELECT COUNT(c.posts) FROM Community c WHERE c.identifier = :communityId")
         int getPostsCount(long communityId);
 
-        // Get members of a community
-        @Query("SELECT c.members FROM Community c WHERE c.identifier = :communityId")
-        Page<User> getMembers(long communityId, Pageable pageable);
+        // Relation of a user with a community: whether the user is its admin, a member
+        // and a moderator, and the end of their ban (null if not banned). No row if the
+        // community does not exist.
+        @Query(value = "SELECT c.admin_username = :username, "
+                        + "EXISTS (SELECT 1 FROM user_community uc WHERE uc.community_id = c.identifier AND uc.user_id = :username), "
+                        + "EXISTS (SELECT 1 FROM moderator_community mc WHERE mc.community_id = c.identifier AND mc.user_id = :username), "
+                        + "(SELECT MAX(b.ban_until) FROM ban b WHERE b.community_id = c.identifier AND b.username = :username) "
+                        + "FROM community c WHERE c.identifier = :communityId", nativeQuery = true)
+        List<Object[]> getAccess(@Param("communityId") long communityId, @Param("username") String username);
 
-        // Search members of a community by username
-        @Query("SELECT u FROM Community c JOIN c.members u WHERE c.identifier = :communityId AND u.username LIKE %:username%")
-        Page<User> searchMembers(@Param("communityId") long communityId, @Param("username") String username, Pageable pageable);
+        // Every (community id, admin username) pair, for the membership index
+        @Query("SELECT c.identifier, a.username FROM Community c LEFT JOIN c.admin a")
+        List<Object[]> getAllAdmins();
 
-        @Query("SELECT c.members FROM Community c WHERE c.identifier = :communityId")
-        List<User> getMembersList(long communityId);
+        // Every (community id, username, ban end) triple, for the membership index
+        @Query("SELECT b.community.identifier, b.user.username, b.banUntil FROM Ban b")
+        List<Object[]> getAllBans();
+
+        // Usernames of the authors of the posts of a community
+        @Query("SELECT DISTINCT p.author.username FROM Post p WHERE p.community.identifier = :communityId")
+        List<String> getPostAuthorUsernames(@Param("communityId") long communityId);
 
         // Get Posts List of a community
         @Query("SELECT c.posts FROM Community c WHERE c.identifier = :communityId")
         List<Post> getPostsList(long communityId);
 
-        // Get admin of a community
+        // Get admin of a community (cached, dropped whenever the community or user tables change)
         @Query("SELECT c.admin FROM Community c WHERE c.identifier = :communityId")
+        @QueryHints({ @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+                        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "community-admin") })
         User getAdmin(long communityId);
 
-        // Get moderators of a community
-        @Query("SELECT c.moderators FROM Community c WHERE c.identifier = :communityId")
-        Page<User> getModerators(long communityId, Pageable pageable);
-
         // Find all communities by name
         @Query("SELECT c FROM Community c WHERE c.name LIKE %:name%")
         List<Community> findAllByName(String name);
@@ -136,11 +161,13 @@ public interface CommunityRepository extends JpaRepository<Community, Long> {
 
         // Get communities with the most number of members and return both the community
         // name and the total number of members
-        @Query("SELECT c.name, COUNT(m) as totalMembers FROM Community c LEFT JOIN c.members m GROUP BY c.name ORDER BY totalMembers DESC")
+        @Query("SELECT c.name, COUNT(m) as totalMembers FROM Community c LEFT JOIN CommunityMember m ON m.communityId = c.identifier "
+                        + "GROUP BY c.name ORDER BY totalMembers DESC")
         List<Object[]> getMostPopularCommunitiesCount();
 
         // Get communities with the most number of members and return the community
-        // identifier, name, and the total number of members
-        @Query("SELECT c.identifier, c.name, COUNT(m) as totalMembers FROM Community c LEFT JOIN c.members m GROUP BY c.identifier ORDER BY totalMembers DESC")
-        List<Object[]> getMostPopularCommunitiesCountWithId();
+        // identifier, name, and the total number of members (limited by the pageable)
+        @Query("SELECT c.identifier, c.name, COUNT(m) as totalMembers FROM Community c LEFT JOIN CommunityMember m ON m.communityId = c.identifier "
+                        + "GROUP BY c.identifier ORDER BY totalMembers DESC")
+        List<Object[]> getMostPopularCommunitiesCountWithId(Pageable pageable);
 }
@@ -0,0 +1,33 @@
+package com.example.backend.repository;
+
+import com.example.backend.entity.FeedEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface FeedEntryRepository extends JpaRepository<FeedEntry, FeedEntry.FeedEntryId> {
+
+        // Ids of the newest posts of a feed (primary key range scan)
+        @Query("SELECT f.postId FROM FeedEntry f WHERE f.username = :username AND f.feed = :feed ORDER BY f.postId DESC")
+        List<Long> getTimeline(@Param("username") String username, @Param("feed") FeedEntry.Feed feed,
+                        Pageable pageable);
+
+        // Remove the posts of an author from the following feed of a user
+        @Transactional
+        @Modifying
+        @Query("DELETE FROM FeedEntry f WHERE f.username = :username AND f.feed = com.example.backend.entity.FeedEntry.Feed.FOLLOWING "
+                        + "AND f.authorUsername = :author")
+        int deleteAuthorEntries(@Param("username") String username, @Param("author") String author);
+
+        // Remove the posts of a community from the communities feed of a user
+        @Transactional
+        @Modifying
+        @Query("DELETE FROM FeedEntry f WHERE f.username = :username AND f.feed = com.example.backend.entity.FeedEntry.Feed.COMMUNITIES "
+                        + "AND f.communityId = :communityId")
+        int deleteCommunityEntries(@Param("username") String username, @Param("communityId") Long communityId);
+}
@@ -1,11 +1,40 @@
 package com.example.backend.repository;
 
 import com.example.backend.entity.Message;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 public interface MessageRepository extends JpaRepository<Message, Long> {
     @Query("SELECT COUNT(m) FROM Message m WHERE m.receiver.username = :username AND m.read = false")
     Long countUnreadMessagesByUsername(@Param("username") String username);
-} 
\ No newline at end of file
+
+    // Page of the history of a chat older than (time, id), newest first. Served by
+    // the (chat_id, timestamp, id) index.
+    @Query("SELECT m FROM Message m WHERE m.chat.id = :chatId "
+            + "AND (m.timestamp < :time OR (m.timestamp = :time AND m.id < :id)) "
+            + "ORDER BY m.timestamp DESC, m.id DESC")
+    List<Message> findByChatBefore(@Param("chatId") Long chatId, @Param("time") LocalDateTime time,
+            @Param("id") long id, Pageable pageable);
+
+    // Page of the history of a chat newer than (time, id), oldest first
+    @Query("SELECT m FROM Message m WHERE m.chat.id = :chatId "
+            + "AND (m.timestamp > :time OR (m.timestamp = :time AND m.id > :id)) "
+            + "ORDER BY m.timestamp ASC, m.id ASC")
+    List<Message> findByChatAfter(@Param("chatId") Long chatId, @Param("time") LocalDateTime time,
+            @Param("id") long id, Pageable pageable);
+
+    @Query("SELECT MAX(m.id) FROM Message m WHERE m.chat.id = :chatId")
+    Long findLastMessageId(@Param("chatId") Long chatId);
+
+    // Mark the messages of a chat sent to a user as read, up to the given one
+    @Modifying
+    @Query("UPDATE Message m SET m.read = true WHERE m.chat.id = :chatId AND m.receiver.username = :username "
+            + "AND m.read = false AND m.id <= :lastId")
+    int markAsRead(@Param("chatId") Long chatId, @Param("username") String username, @Param("lastId") Long lastId);
+}
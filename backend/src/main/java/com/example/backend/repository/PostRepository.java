@@ -1,16 +1,43 @@
 package com.example.backend.repository;
 
+import com.example.backend.dto.PostSummary;
 import com.example.backend.entity.Post;
 import com.example.backend.entity.User;
 import io.swagger.v3.oas.annotations.Operation;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
 public interface PostRepository extends JpaRepository<Post, Long> {
-        Post findByIdentifier(Long postId);
+        // Full-text condition on the ft_post index (see SearchIndexService). The query
+        // must already be in boolean mode syntax
+        String MATCH_POST = "MATCH(p.title, p.content) AGAINST (:query IN BOOLEAN MODE)";
+
+        String REPLY_COUNT = "(SELECT COUNT(*) FROM reply r WHERE r.post_identifier = p.identifier)";
+        // Substring condition of the searches the full-text index can't answer
+        String POST_SUBSTRING = "(p.title LIKE %:text% OR p.content LIKE %:text%)";
+
+        // Read model of the post lists (see PostSummary). The author and the community
+        // id are the foreign keys of the post, only the community name needs a join.
+        String POST_SUMMARY = "SELECT new com.example.backend.dto.PostSummary(p.identifier, p.author.username, p.title, "
+                        + "p.content, p.hasImage, c.identifier, c.name, p.upvotes, p.downvotes, p.comments, "
+                        + "p.fullCreationDate, p.fullLastReplyDate, p.fullLastEditDate) FROM Post p LEFT JOIN p.community c ";
+
+        String COMMUNITY_POSTS_COUNT = "SELECT COUNT(p) FROM Post p WHERE p.community.identifier = :communityIdentifier";
+
+        String USER_POSTS_COUNT = "SELECT COUNT(p) FROM Post p WHERE p.author.username = :username";
+
+        // Primary key lookup, answered by the second-level cache when the post is in it
+        default Post findByIdentifier(Long postId) {
+                return postId == null ? null : findById(postId).orElse(null);
+        }
 
         // Search post by title
         Page<Post> findByTitle(String title, Pageable pageable);
@@ -25,195 +52,225 @@ public interface PostRepository extends JpaRepository<Post, Long> {
         Page<Post> findByAuthorUsername(String authorUsername, Pageable pageable);
 
         // Search post by community identifier
-        @Query("SELECT p FROM Post p WHERE p.community.identifier = :communityIdentifier")
-        Page<Post> findByCommunityIdentifier(@Param("communityIdentifier") Long communityIdentifier,
+        @Query(value = POST_SUMMARY + "WHERE p.community.identifier = :communityIdentifier", countQuery = COMMUNITY_POSTS_COUNT)
+        Page<PostSummary> findByCommunityIdentifier(@Param("communityIdentifier") Long communityIdentifier,
                         Pageable pageable);
 
         // Search post by community identifier and sort by latest modified date
-        @Query("SELECT p FROM Post p WHERE p.community.identifier = :communityIdentifier ORDER BY p.fullLastReplyDate DESC")
-        Page<Post> findByCommunityIdentifierOrderByLastModifiedDate(
+        @Query(value = POST_SUMMARY + "WHERE p.community.identifier = :communityIdentifier ORDER BY p.fullLastReplyDate DESC",
+                        countQuery = COMMUNITY_POSTS_COUNT)
+        Page<PostSummary> findByCommunityIdentifierOrderByLastModifiedDate(
                         @Param("communityIdentifier") Long communityIdentifier,
                         Pageable pageable);
 
         // Search post by community identifier and sort by creation date
-        @Query("SELECT p FROM Post p WHERE p.community.identifier = :communityIdentifier ORDER BY p.fullCreationDate DESC")
-        Page<Post> findByCommunityIdentifierOrderByCreationDate(
+        @Query(value = POST_SUMMARY + "WHERE p.community.identifier = :communityIdentifier ORDER BY p.fullCreationDate DESC",
+                        countQuery = COMMUNITY_POSTS_COUNT)
+        Page<PostSummary> findByCommunityIdentifierOrderByCreationDate(
                         @Param("communityIdentifier") Long communityIdentifier,
                         Pageable pageable);
 
         // Search post by community identifier and sort by number of likes
-        @Query("SELECT p FROM Post p WHERE p.community.identifier = :communityIdentifier ORDER BY p.upvotes DESC")
-        Page<Post> findByCommunityIdentifierOrderByLikes(@Param("communityIdentifier") Long communityIdentifier,
+        @Query(value = POST_SUMMARY + "WHERE p.community.identifier = :communityIdentifier ORDER BY p.upvotes DESC",
+                        countQuery = COMMUNITY_POSTS_COUNT)
+        Page<PostSummary> findByCommunityIdentifierOrderByLikes(@Param("communityIdentifier") Long communityIdentifier,
                         Pageable pageable);
 
-        // Search post by community identifier and sort by number of replies
-        @Query("SELECT p FROM Post p LEFT JOIN p.replyList r WHERE p.community.identifier = :communityIdentifier GROUP BY p ORDER BY COUNT(r) DESC")
-        Page<Post> findByCommunityIdentifierOrderByReplies(@Param("communityIdentifier") Long communityIdentifier,
+        // Search post by community identifier and sort by number of replies (the comments
+        // counter, read through idx_post_community_comments instead of grouping the replies)
+        @Query(value = POST_SUMMARY + "WHERE p.community.identifier = :communityIdentifier ORDER BY p.comments DESC",
+                        countQuery = COMMUNITY_POSTS_COUNT)
+        Page<PostSummary> findByCommunityIdentifierOrderByReplies(@Param("communityIdentifier") Long communityIdentifier,
                         Pageable pageable);
 
-        // Search post by community identifier and title or content text
-        @Query("SELECT p FROM Post p WHERE " +
-                        "p.community.identifier = :communityIdentifier AND " +
-                        "(p.title LIKE %:query% OR " +
-                        "p.content LIKE %:query%)")
-        Page<Post> findByCommunityIdentifierAndQuery(@Param("communityIdentifier") Long communityIdentifier,
+        // Keyset pages of the posts of a community (see Cursor): the posts after the
+        // given sort key and id, without a count query
+
+        // ... sorted by latest modified date
+        @Query(POST_SUMMARY + "WHERE p.community.identifier = :communityIdentifier AND (p.fullLastReplyDate < :date "
+                        + "OR (p.fullLastReplyDate = :date AND p.identifier < :id)) ORDER BY p.fullLastReplyDate DESC, p.identifier DESC")
+        Slice<PostSummary> findByCommunityIdentifierOrderByLastModifiedDateAfter(
+                        @Param("communityIdentifier") Long communityIdentifier, @Param("date") LocalDateTime date,
+                        @Param("id") long id, Pageable pageable);
+
+        // ... sorted by creation date
+        @Query(POST_SUMMARY + "WHERE p.community.identifier = :communityIdentifier AND (p.fullCreationDate < :date "
+                        + "OR (p.fullCreationDate = :date AND p.identifier < :id)) ORDER BY p.fullCreationDate DESC, p.identifier DESC")
+        Slice<PostSummary> findByCommunityIdentifierOrderByCreationDateAfter(
+                        @Param("communityIdentifier") Long communityIdentifier, @Param("date") LocalDateTime date,
+                        @Param("id") long id, Pageable pageable);
+
+        // ... sorted by number of likes
+        @Query(POST_SUMMARY + "WHERE p.community.identifier = :communityIdentifier AND (p.upvotes < :likes "
+                        + "OR (p.upvotes = :likes AND p.identifier < :id)) ORDER BY p.upvotes DESC, p.identifier DESC")
+        Slice<PostSummary> findByCommunityIdentifierOrderByLikesAfter(@Param("communityIdentifier") Long communityIdentifier,
+                        @Param("likes") int likes, @Param("id") long id, Pageable pageable);
+
+        // ... sorted by number of replies (the comments counter, so no join is needed)
+        @Query(POST_SUMMARY + "WHERE p.community.identifier = :communityIdentifier AND (p.comments < :replies "
+                        + "OR (p.comments = :replies AND p.identifier < :id)) ORDER BY p.comments DESC, p.identifier DESC")
+        Slice<PostSummary> findByCommunityIdentifierOrderByRepliesAfter(@Param("communityIdentifier") Long communityIdentifier,
+                        @Param("replies") int replies, @Param("id") long id, Pageable pageable);
+
+        // The full-text searches are native queries, which can't build a PostSummary:
+        // they return the ids of the page in order, and its summaries are read with
+        // findSummaries
+
+        // Search post by community identifier and title or content text (sort by relevance)
+        @Query(value = "SELECT p.identifier FROM post p WHERE p.community_identifier = :communityIdentifier AND " + MATCH_POST + " ORDER BY " + MATCH_POST + " DESC, p.identifier",
+                        countQuery = "SELECT COUNT(*) FROM post p WHERE p.community_identifier = :communityIdentifier AND " + MATCH_POST, nativeQuery = true)
+        Page<Long> findByCommunityIdentifierAndQuery(@Param("communityIdentifier") Long communityIdentifier,
                         @Param("query") String query, Pageable pageable);
 
-        // Search post by community identifier and title or content text and sort by
-        // modified date
-        @Query("SELECT p FROM Post p WHERE " +
-                        "p.community.identifier = :communityIdentifier AND " +
-                        "(p.title LIKE %:query% OR " +
-                        "p.content LIKE %:query%) ORDER BY p.fullLastReplyDate DESC")
-        Page<Post> findByCommunityIdentifierAndQueryOrderByLastModifiedDate(
-                        @Param("communityIdentifier") Long communityIdentifier,
+        // Search post by community identifier and title or content text and sort by latest modified date
+        @Query(value = "SELECT p.identifier FROM post p WHERE p.community_identifier = :communityIdentifier AND " + MATCH_POST + " ORDER BY p.full_last_reply_date DESC",
+                        countQuery = "SELECT COUNT(*) FROM post p WHERE p.community_identifier = :communityIdentifier AND " + MATCH_POST, nativeQuery = true)
+        Page<Long> findByCommunityIdentifierAndQueryOrderByLastModifiedDate(@Param("communityIdentifier") Long communityIdentifier,
                         @Param("query") String query, Pageable pageable);
 
-        // Search post by community identifier and title or content text and sort by
-        // creation date
-        @Query("SELECT p FROM Post p WHERE " +
-                        "p.community.identifier = :communityIdentifier AND " +
-                        "(p.title LIKE %:query% OR " +
-                        "p.content LIKE %:query%) ORDER BY p.fullCreationDate DESC")
-        Page<Post> findByCommunityIdentifierAndQueryOrderByCreationDate(
-                        @Param("communityIdentifier") Long communityIdentifier,
+        // Search post by community identifier and title or content text and sort by creation date
+        @Query(value = "SELECT p.identifier FROM post p WHERE p.community_identifier = :communityIdentifier AND " + MATCH_POST + " ORDER BY p.full_creation_date DESC",
+                        countQuery = "SELECT COUNT(*) FROM post p WHERE p.community_identifier = :communityIdentifier AND " + MATCH_POST, nativeQuery = true)
+        Page<Long> findByCommunityIdentifierAndQueryOrderByCreationDate(@Param("communityIdentifier") Long communityIdentifier,
                         @Param("query") String query, Pageable pageable);
 
-        // Search post by community identifier and title or content text and sort by
-        // number of likes
-        @Query("SELECT p FROM Post p WHERE " +
-                        "p.community.identifier = :communityIdentifier AND " +
-                        "(p.title LIKE %:query% OR " +
-                        "p.content LIKE %:query%) ORDER BY p.upvotes DESC")
-        Page<Post> findByCommunityIdentifierAndQueryOrderByLikes(
-                        @Param("communityIdentifier") Long communityIdentifier, @Param("query") String query,
-                        Pageable pageable);
+        // Search post by community identifier and title or content text and sort by number of likes
+        @Query(value = "SELECT p.identifier FROM post p WHERE p.community_identifier = :communityIdentifier AND " + MATCH_POST + " ORDER BY p.upvotes DESC",
+                        countQuery = "SELECT COUNT(*) FROM post p WHERE p.community_identifier = :communityIdentifier AND " + MATCH_POST, nativeQuery = true)
+        Page<Long> findByCommunityIdentifierAndQueryOrderByLikes(@Param("communityIdentifier") Long communityIdentifier,
+                        @Param("query") String query, Pageable pageable);
 
-        // Search post by community identifier and title or content text and sort by
-        // number of replies
-        @Query("SELECT p FROM Post p LEFT JOIN p.replyList r WHERE " +
-                        "p.community.identifier = :communityIdentifier AND " +
-                        "(p.title LIKE %:query% OR " +
-                        "p.content LIKE %:query%) GROUP BY p ORDER BY COUNT(r) DESC")
-        Page<Post> findByCommunityIdentifierAndQueryOrderByReplies(
-                        @Param("communityIdentifier") Long communityIdentifier,
+        // Search post by community identifier and title or content text and sort by number of replies
+        @Query(value = "SELECT p.identifier FROM post p WHERE p.community_identifier = :communityIdentifier AND " + MATCH_POST + " ORDER BY " + REPLY_COUNT + " DESC",
+                        countQuery = "SELECT COUNT(*) FROM post p WHERE p.community_identifier = :communityIdentifier AND " + MATCH_POST, nativeQuery = true)
+        Page<Long> findByCommunityIdentifierAndQueryOrderByReplies(@Param("communityIdentifier") Long communityIdentifier,
                         @Param("query") String query, Pageable pageable);
 
-        // Search post by title or content
+        // Search post by title or content (sort by relevance)
         @Operation(summary = "Search posts by title or content. Search Engine's default behaviour")
-        @Query("SELECT p FROM Post p WHERE " +
-                        "p.title LIKE %:query% OR " +
-                        "p.content LIKE %:query%")
-        Page<Post> engineSearchPosts(@Param("query") String query, Pageable pageable);
-
-        // Search engine default behaviour + sort by latest modified date
-        @Query("SELECT p FROM Post p WHERE " +
-                        "p.title LIKE %:query% OR " +
-                        "p.content LIKE %:query% ORDER BY p.fullLastReplyDate DESC")
-        Page<Post> engineSearchPostsOrderByLastModifiedDate(@Param("query") String query, Pageable pageable);
-
-        // Search engine default behaviour + sort by creation date
-        @Query("SELECT p FROM Post p WHERE " +
-                        "p.title LIKE %:query% OR " +
-                        "p.content LIKE %:query% ORDER BY p.fullCreationDate DESC")
-        Page<Post> engineSearchPostsOrderByCreationDate(@Param("query") String query, Pageable pageable);
-
-        // Search engine default behaviour + sort by number of replies
-        @Query("SELECT p FROM Post p LEFT JOIN p.replyList r GROUP BY p ORDER BY COUNT(r) DESC")
-        Page<Post> engineSearchPostsOrderByReplies(String query, Pageable pageable);
-
-        // Search engine default behaviour + sort by number of likes
-        @Query("SELECT p FROM Post p WHERE " +
-                        "p.title LIKE %:query% OR " +
-                        "p.content LIKE %:query% ORDER BY p.upvotes DESC")
-        Page<Post> engineSearchPostsOrderByLikes(@Param("query") String query, Pageable pageable);
-
-        // Return the most liked posts of the most followed users a user follows
-        @Query("SELECT p FROM Post p WHERE p.author IN " +
-                        "(SELECT u.followingList FROM User u WHERE u.username = :username) " +
-                        "ORDER BY p.upvotes DESC")
-        Page<Post> getMostLikedPostsOfMostFollowedUsers(@Param("username") String username, Pageable pageable);
+        @Query(value = "SELECT p.identifier FROM post p WHERE " + MATCH_POST + " ORDER BY " + MATCH_POST + " DESC, p.identifier",
+                        countQuery = "SELECT COUNT(*) FROM post p WHERE " + MATCH_POST, nativeQuery = true)
+        Page<Long> engineSearchPosts(@Param("query") String query, Pageable pageable);
+
+        // Search post by title or content and sort by latest modified date
+        @Query(value = "SELECT p.identifier FROM post p WHERE " + MATCH_POST + " ORDER BY p.full_last_reply_date DESC",
+                        countQuery = "SELECT COUNT(*) FROM post p WHERE " + MATCH_POST, nativeQuery = true)
+        Page<Long> engineSearchPostsOrderByLastModifiedDate(@Param("query") String query, Pageable pageable);
+
+        // Search post by title or content and sort by creation date
+        @Query(value = "SELECT p.identifier FROM post p WHERE " + MATCH_POST + " ORDER BY p.full_creation_date DESC",
+                        countQuery = "SELECT COUNT(*) FROM post p WHERE " + MATCH_POST, nativeQuery = true)
+        Page<Long> engineSearchPostsOrderByCreationDate(@Param("query") String query, Pageable pageable);
+
+        // Search post by title or content and sort by number of likes
+        @Query(value = "SELECT p.identifier FROM post p WHERE " + MATCH_POST + " ORDER BY p.upvotes DESC",
+                        countQuery = "SELECT COUNT(*) FROM post p WHERE " + MATCH_POST, nativeQuery = true)
+        Page<Long> engineSearchPostsOrderByLikes(@Param("query") String query, Pageable pageable);
+
+        // Search post by title or content and sort by number of replies
+        @Query(value = "SELECT p.identifier FROM post p WHERE " + MATCH_POST + " ORDER BY " + REPLY_COUNT + " DESC",
+                        countQuery = "SELECT COUNT(*) FROM post p WHERE " + MATCH_POST, nativeQuery = true)
+        Page<Long> engineSearchPostsOrderByReplies(@Param("query") String query, Pageable pageable);
+
+        // Load the posts of a home feed timeline sorted by number of likes
+        @Query("SELECT p FROM Post p WHERE p.identifier IN :ids ORDER BY p.upvotes DESC, p.identifier DESC")
+        Page<Post> findByIdentifiersOrderByLikes(@Param("ids") Collection<Long> ids, Pageable pageable);
+
+        // Load the posts of a home feed timeline sorted by creation date
+        @Query("SELECT p FROM Post p WHERE p.identifier IN :ids ORDER BY p.fullCreationDate DESC")
+        Page<Post> findByIdentifiersOrderByCreationDate(@Param("ids") Collection<Long> ids, Pageable pageable);
+
+        // Substring searches, for the text the full-text index can't match (see
+        // SearchIndexService.toBooleanQuery). They read every post in range, sorted by the
+        // Pageable, and return the ids of the page like the full-text ones.
+        @Query("SELECT p.identifier FROM Post p WHERE " + POST_SUBSTRING)
+        Page<Long> searchPostIdsBySubstring(@Param("text") String text, Pageable pageable);
+
+        @Query("SELECT p.identifier FROM Post p WHERE p.community.identifier = :communityIdentifier AND " + POST_SUBSTRING)
+        Page<Long> searchPostIdsOfCommunityBySubstring(@Param("communityIdentifier") Long communityIdentifier,
+                        @Param("text") String text, Pageable pageable);
+
+        @Query("SELECT p.identifier FROM Post p WHERE p.author.username = :username AND " + POST_SUBSTRING)
+        Page<Long> searchPostIdsOfUserBySubstring(@Param("username") String username, @Param("text") String text,
+                        Pageable pageable);
 
-        // Return the most liked posts of the communities a user follows
-        @Query("SELECT p FROM Post p WHERE p.community IN " +
-                        "(SELECT u.communities FROM User u WHERE u.username = :username) " +
-                        "ORDER BY p.upvotes DESC")
-        Page<Post> getMostLikedPostsOfFollowedCommunities(@Param("username") String username, Pageable pageable);
+        // Summaries of the given posts, in no particular order
+        @Query(POST_SUMMARY + "WHERE p.identifier IN :ids")
+        List<PostSummary> findSummaries(@Param("ids") Collection<Long> ids);
 
-        // Return the most recent posts of the communities a user follows
-        @Query("SELECT p FROM Post p WHERE p.community IN " +
-                        "(SELECT u.communities FROM User u WHERE u.username = :username) " +
-                        "ORDER BY p.fullCreationDate DESC")
-        Page<Post> getMostRecentPostsOfFollowedCommunities(@Param("username") String username, Pageable pageable);
+        // Ids of the newest posts of the given authors
+        @Query("SELECT p.identifier FROM Post p WHERE p.author.username IN :authors ORDER BY p.identifier DESC")
+        List<Long> getPostIdsOfAuthors(@Param("authors") Collection<String> authors, Pageable pageable);
+
+        // Ids of the newest posts of the given communities
+        @Query("SELECT p.identifier FROM Post p WHERE p.community.identifier IN :communityIds ORDER BY p.identifier DESC")
+        List<Long> getPostIdsOfCommunities(@Param("communityIds") Collection<Long> communityIds, Pageable pageable);
 
         // Return the most liked posts of the most followed communities
         @Query("SELECT p FROM Post p WHERE p.community IN " +
-                        "(SELECT c FROM Community c ORDER BY SIZE(c.members) DESC) " +
+                        "(SELECT c FROM Community c ORDER BY (SELECT COUNT(m) FROM CommunityMember m WHERE m.communityId = c.identifier) DESC) " +
                         "ORDER BY p.upvotes DESC")
         Page<Post> getMostLikedPostsOfMostFollowedCommunities(Pageable pageable);
 
         // Return the most recent posts of the most followed communities
         @Query("SELECT p FROM Post p WHERE p.community IN " +
-                        "(SELECT c FROM Community c ORDER BY SIZE(c.members) DESC) " +
+                        "(SELECT c FROM Community c ORDER BY (SELECT COUNT(m) FROM CommunityMember m WHERE m.communityId = c.identifier) DESC) " +
                         "ORDER BY p.fullCreationDate DESC")
         Page<Post> getMostRecentPostsOfMostFollowedCommunities(Pageable pageable);
 
         // Return the most liked posts of the most followed users
         @Query("SELECT p FROM Post p WHERE p.author IN " +
-                        "(SELECT u FROM User u ORDER BY SIZE(u.followersList) DESC) " +
+                        "(SELECT u FROM User u ORDER BY u.followers DESC) " +
                         "ORDER BY p.upvotes DESC")
         Page<Post> getMostLikedPostsOfMostFollowedUsersGeneral(Pageable pageable);
 
         // Get posts of a specified user by username
-        @Query("SELECT p FROM Post p WHERE p.author.username = :username")
-        Page<Post> getPostsOfUser(@Param("username") String username, Pageable pageable);
+        @Query(value = POST_SUMMARY + "WHERE p.author.username = :username", countQuery = USER_POSTS_COUNT)
+        Page<PostSummary> getPostsOfUser(@Param("username") String username, Pageable pageable);
 
         // Get posts of a specified user by username and sort by recent date
-        @Query("SELECT p FROM Post p WHERE p.author.username = :username ORDER BY p.fullCreationDate DESC")
-        Page<Post> getPostsOfUserOrderByCreationDate(@Param("username") String username, Pageable pageable);
+        @Query(value = POST_SUMMARY + "WHERE p.author.username = :username ORDER BY p.fullCreationDate DESC",
+                        countQuery = USER_POSTS_COUNT)
+        Page<PostSummary> getPostsOfUserOrderByCreationDate(@Param("username") String username, Pageable pageable);
 
         // Get posts of a specified user by username and sort by last modified date
-        @Query("SELECT p FROM Post p WHERE p.author.username = :username ORDER BY p.fullLastReplyDate DESC")
-        Page<Post> getPostsOfUserOrderByLastModifiedDate(@Param("username") String username, Pageable pageable);
+        @Query(value = POST_SUMMARY + "WHERE p.author.username = :username ORDER BY p.fullLastReplyDate DESC",
+                        countQuery = USER_POSTS_COUNT)
+        Page<PostSummary> getPostsOfUserOrderByLastModifiedDate(@Param("username") String username, Pageable pageable);
 
         // Get posts of a specified user by username and sort by number of likes
-        @Query("SELECT p FROM Post p WHERE p.author.username = :username ORDER BY p.upvotes DESC")
-        Page<Post> getPostsOfUserOrderByLikes(@Param("username") String username, Pageable pageable);
-
-        // Get posts of a specified user by username and sort by number of replies
-        @Query("SELECT p FROM Post p LEFT JOIN p.replyList r WHERE p.author.username = :username GROUP BY p ORDER BY COUNT(r) DESC")
-        Page<Post> getPostsOfUserOrderByReplies(@Param("username") String username, Pageable pageable);
-
-        // Get posts of a specified user by username and search by title or content
-        @Query("SELECT p FROM Post p WHERE p.author.username = :username AND " +
-                        "(p.title LIKE %:query% OR " +
-                        "p.content LIKE %:query%)")
-        Page<Post> getPostsOfUserAndQuery(@Param("username") String username, @Param("query") String query, Pageable pageable);
-
-        // Get posts of a specified user by username and search by title or content and sort by recent date
-        @Query("SELECT p FROM Post p WHERE p.author.username = :username AND " +
-                        "(p.title LIKE %:query% OR " +
-                        "p.content LIKE %:query%) ORDER BY p.fullCreationDate DESC")
-        Page<Post> getPostsOfUserAndQueryOrderByCreationDate(@Param("username") String username, @Param("query") String query,
-                        Pageable pageable);
-
-        // Get posts of a specified user by username and search by title or content and sort by last modified date
-        @Query("SELECT p FROM Post p WHERE p.author.username = :username AND " +
-                        "(p.title LIKE %:query% OR " +
-                        "p.content LIKE %:query%) ORDER BY p.fullLastReplyDate DESC")
-        Page<Post> getPostsOfUserAndQueryOrderByLastModifiedDate(@Param("username") String username, @Param("query") String query,
-                        Pageable pageable);
+        @Query(value = POST_SUMMARY + "WHERE p.author.username = :username ORDER BY p.upvotes DESC",
+                        countQuery = USER_POSTS_COUNT)
+        Page<PostSummary> getPostsOfUserOrderByLikes(@Param("username") String username, Pageable pageable);
+
+        // Get posts of a specified user by username and sort by number of replies (the
+        // comments counter, read through idx_post_author_comments)
+        @Query(value = POST_SUMMARY + "WHERE p.author.username = :username ORDER BY p.comments DESC",
+                        countQuery = USER_POSTS_COUNT)
+        Page<PostSummary> getPostsOfUserOrderByReplies(@Param("username") String username, Pageable pageable);
+
+        // Get posts of a specified user by username and search by title or content (sort by relevance)
+        @Query(value = "SELECT p.identifier FROM post p WHERE p.author_username = :username AND " + MATCH_POST + " ORDER BY " + MATCH_POST + " DESC, p.identifier",
+                        countQuery = "SELECT COUNT(*) FROM post p WHERE p.author_username = :username AND " + MATCH_POST, nativeQuery = true)
+        Page<Long> getPostsOfUserAndQuery(@Param("username") String username, @Param("query") String query, Pageable pageable);
+
+        // Get posts of a specified user by username and search by title or content and sort by latest modified date
+        @Query(value = "SELECT p.identifier FROM post p WHERE p.author_username = :username AND " + MATCH_POST + " ORDER BY p.full_last_reply_date DESC",
+                        countQuery = "SELECT COUNT(*) FROM post p WHERE p.author_username = :username AND " + MATCH_POST, nativeQuery = true)
+        Page<Long> getPostsOfUserAndQueryOrderByLastModifiedDate(@Param("username") String username, @Param("query") String query, Pageable pageable);
+
+        // Get posts of a specified user by username and search by title or content and sort by creation date
+        @Query(value = "SELECT p.identifier FROM post p WHERE p.author_username = :username AND " + MATCH_POST + " ORDER BY p.full_creation_date DESC",
+                        countQuery = "SELECT COUNT(*) FROM post p WHERE p.author_username = :username AND " + MATCH_POST, nativeQuery = true)
+        Page<Long> getPostsOfUserAndQueryOrderByCreationDate(@Param("username") String username, @Param("query") String query, Pageable pageable);
 
         // Get posts of a specified user by username and search by title or content and sort by number of likes
-        @Query("SELECT p FROM Post p WHERE p.author.username = :username AND " +
-                        "(p.title LIKE %:query% OR " +
-                        "p.content LIKE %:query%) ORDER BY p.upvotes DESC")
-        Page<Post> getPostsOfUserAndQueryOrderByLikes(@Param("username") String username, @Param("query") String query, Pageable pageable);
+        @Query(value = "SELECT p.identifier FROM post p WHERE p.author_username = :username AND " + MATCH_POST + " ORDER BY p.upvotes DESC",
+                        countQuery = "SELECT COUNT(*) FROM post p WHERE p.author_username = :username AND " + MATCH_POST, nativeQuery = true)
+        Page<Long> getPostsOfUserAndQueryOrderByLikes(@Param("username") String username, @Param("query") String query, Pageable pageable);
 
         // Get posts of a specified user by username and search by title or content and sort by number of replies
-        @Query("SELECT p FROM Post p LEFT JOIN p.replyList r WHERE p.author.username = :username AND " +
-                        "(p.title LIKE %:query% OR " +
-                        "p.content LIKE %:query%) GROUP BY p ORDER BY COUNT(r) DESC")
-        Page<Post> getPostsOfUserAndQueryOrderByReplies(@Param("username") String username, @Param("query") String query, Pageable pageable);
-        
+        @Query(value = "SELECT p.identifier FROM post p WHERE p.author_username = :username AND " + MATCH_POST + " ORDER BY " + REPLY_COUNT + " DESC",
+                        countQuery = "SELECT COUNT(*) FROM post p WHERE p.author_username = :username AND " + MATCH_POST, nativeQuery = true)
+        Page<Long> getPostsOfUserAndQueryOrderByReplies(@Param("username") String username, @Param("query") String query, Pageable pageable);
 }
@@ -0,0 +1,37 @@
+package com.example.backend.repository;
+
+import com.example.backend.entity.PostVote;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+public interface PostVoteRepository extends JpaRepository<PostVote, PostVote.PostVoteId> {
+
+        // Has the given user voted the given post in the given direction? (primary key lookup)
+        boolean existsByPostIdAndUsernameAndDirection(Long postId, String username, PostVote.Direction direction);
+
+        // Cast the first vote of a user on a post with a single-row insert, returns 0 if
+        // the user had already voted it (the primary key settles concurrent votes)
+        @Modifying
+        @Query(value = "INSERT IGNORE INTO post_vote (post_id, username, direction, voted_at) "
+                        + "VALUES (:postId, :username, :direction, NOW(6))", nativeQuery = true)
+        @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "post_vote"))
+        int addVote(@Param("postId") Long postId, @Param("username") String username,
+                        @Param("direction") String direction);
+
+        // Remove the vote of a user on a post only if it was cast in the given direction
+        @Modifying
+        @Query("DELETE FROM PostVote v WHERE v.postId = :postId AND v.username = :username AND v.direction = :direction")
+        int deleteVote(@Param("postId") Long postId, @Param("username") String username,
+                        @Param("direction") PostVote.Direction direction);
+
+        // Flip the direction of an existing vote
+        @Modifying
+        @Query("UPDATE PostVote v SET v.direction = :direction WHERE v.postId = :postId AND v.username = :username AND v.direction <> :direction")
+        int switchVote(@Param("postId") Long postId, @Param("username") String username,
+                        @Param("direction") PostVote.Direction direction);
+}
@@ -0,0 +1,37 @@
+package com.example.backend.repository;
+
+import com.example.backend.entity.ReplyLike;
+
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface ReplyLikeRepository extends JpaRepository<ReplyLike, ReplyLike.ReplyLikeId> {
+
+        // Has the given user liked the given reply? (primary key lookup)
+        boolean existsByReplyIdAndUsername(Long replyId, String username);
+
+        int countByReplyId(Long replyId);
+
+        int countByUsername(String username);
+
+        // Add a like with a single-row insert, returns 0 if the user had already liked the reply
+        // (only the caches that read the table are dropped, without the hint Hibernate drops all of them)
+        @Transactional
+        @Modifying
+        @Query(value = "INSERT IGNORE INTO reply_liked_by (reply_id, user_id, liked_at) VALUES (:replyId, :username, NOW(6))",
+                        nativeQuery = true)
+        @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "reply_liked_by"))
+        int addLike(@Param("replyId") Long replyId, @Param("username") String username);
+
+        // Remove a like, returns the number of rows removed
+        @Transactional
+        @Modifying
+        @Query("DELETE FROM ReplyLike l WHERE l.replyId = :replyId AND l.username = :username")
+        int removeLike(@Param("replyId") Long replyId, @Param("username") String username);
+}
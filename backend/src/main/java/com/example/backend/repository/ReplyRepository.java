@@ -3,10 +3,17 @@ package com.example.backend.repository;
 import com.example.backend.entity.Reply;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
 
 public interface ReplyRepository extends JpaRepository<Reply, Long> {
+        // Full-text condition on the ft_reply index (see SearchIndexService)
+        String MATCH_REPLY = "MATCH(r.title, r.content) AGAINST (:query IN BOOLEAN MODE)";
+
         Reply findByIdentifier(Long replyId);
 
         // Find replies with a given username
@@ -23,11 +30,16 @@ public interface ReplyRepository extends JpaRepository<Reply, Long> {
         @Query("SELECT r FROM Reply r WHERE r.title LIKE %:title%")
         Page<Reply> findByTitle(String title, Pageable pageable);
 
-        // Search replies by title or content
-        @Query("SELECT r FROM Reply r WHERE " +
-                        "r.content LIKE %:query% OR " +
-                        "r.title LIKE %:query%")
-        Page<Reply> engineSearchReplies(String query, Pageable pageable);
+        // Search replies by title or content (full-text, sort by relevance)
+        @Query(value = "SELECT r.* FROM reply r WHERE " + MATCH_REPLY + " ORDER BY " + MATCH_REPLY + " DESC, r.identifier",
+                        countQuery = "SELECT COUNT(*) FROM reply r WHERE " + MATCH_REPLY, nativeQuery = true)
+        Page<Reply> engineSearchReplies(@Param("query") String query, Pageable pageable);
+
+        // Substring search, for the text the full-text index can't match (see
+        // SearchIndexService.toBooleanQuery), newest first
+        @Query("SELECT r FROM Reply r WHERE r.title LIKE %:text% OR r.content LIKE %:text% "
+                        + "ORDER BY r.fullCreationDate DESC, r.identifier DESC")
+        Page<Reply> searchRepliesBySubstring(@Param("text") String text, Pageable pageable);
 
         // Find replies of a post and sort by latest creation date
         @Query("SELECT r FROM Reply r WHERE r.post.identifier = :postId ORDER BY r.fullCreationDate DESC")
@@ -37,6 +49,18 @@ public interface ReplyRepository extends JpaRepository<Reply, Long> {
         @Query("SELECT r FROM Reply r WHERE r.post.identifier = :postId ORDER BY r.likes DESC")
         Page<Reply> findByPostOrderByRating(Long postId, Pageable pageable);
 
+        // Keyset page of the replies of a post sorted by latest creation date (see Cursor)
+        @Query("SELECT r FROM Reply r WHERE r.post.identifier = :postId AND (r.fullCreationDate < :date "
+                        + "OR (r.fullCreationDate = :date AND r.identifier < :id)) ORDER BY r.fullCreationDate DESC, r.identifier DESC")
+        Slice<Reply> findByPostOrderByCreationDateAfter(@Param("postId") Long postId, @Param("date") LocalDateTime date,
+                        @Param("id") long id, Pageable pageable);
+
+        // Keyset page of the replies of a post sorted by rating (see Cursor)
+        @Query("SELECT r FROM Reply r WHERE r.post.identifier = :postId AND (r.likes < :likes "
+                        + "OR (r.likes = :likes AND r.identifier < :id)) ORDER BY r.likes DESC, r.identifier DESC")
+        Slice<Reply> findByPostOrderByRatingAfter(@Param("postId") Long postId, @Param("likes") int likes,
+                        @Param("id") long id, Pageable pageable);
+
         // Find replies of a post by title
         @Query("SELECT r FROM Reply r WHERE r.post.identifier = :postId AND r.title LIKE %:title%")
         Page<Reply> findByPostAndTitle(Long postId, String title, Pageable pageable);
@@ -49,12 +73,18 @@ public interface ReplyRepository extends JpaRepository<Reply, Long> {
         @Query("SELECT r FROM Reply r WHERE r.post.identifier = :postId AND r.author.username LIKE %:author%")
         Page<Reply> findByPostAndAuthor(Long postId, String author, Pageable pageable);
 
-        // Search replies in a post by title or content
-        @Query("SELECT r FROM Reply r WHERE " +
-                        "r.post.identifier = :postId AND " +
-                        "(r.content LIKE %:query% OR " +
-                        "r.title LIKE %:query%)")
-        Page<Reply> findByPostAndQuery(Long postId, String query, Pageable pageable);
+        // Search replies in a post by title or content (full-text, sort by relevance)
+        @Query(value = "SELECT r.* FROM reply r WHERE r.post_identifier = :postId AND " + MATCH_REPLY + " ORDER BY "
+                        + MATCH_REPLY + " DESC, r.identifier",
+                        countQuery = "SELECT COUNT(*) FROM reply r WHERE r.post_identifier = :postId AND " + MATCH_REPLY,
+                        nativeQuery = true)
+        Page<Reply> findByPostAndQuery(@Param("postId") Long postId, @Param("query") String query, Pageable pageable);
+
+        // Substring search in a post, for the text the full-text index can't match
+        @Query("SELECT r FROM Reply r WHERE r.post.identifier = :postId AND (r.title LIKE %:text% OR r.content LIKE %:text%) "
+                        + "ORDER BY r.fullCreationDate DESC, r.identifier DESC")
+        Page<Reply> searchRepliesOfPostBySubstring(@Param("postId") Long postId, @Param("text") String text,
+                        Pageable pageable);
 
         // Check if a reply exists by post identifier and author username
         boolean existsByPostIdentifierAndAuthorUsername(Long postID, String authorUsername);
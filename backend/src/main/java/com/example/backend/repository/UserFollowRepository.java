@@ -0,0 +1,55 @@
+package com.example.backend.repository;
+
+import com.example.backend.entity.User;
+import com.example.backend.entity.UserFollow;
+
+import java.util.List;
+
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface UserFollowRepository extends JpaRepository<UserFollow, UserFollow.UserFollowId> {
+
+        // Does the follower follow the followed user? (primary key lookup)
+        boolean existsByFollowerAndFollowed(String follower, String followed);
+
+        // Add a follow edge with a single-row insert, returns 0 if it already existed (the
+        // primary key settles concurrent follows of the same user)
+        @Transactional
+        @Modifying
+        @Query(value = "INSERT IGNORE INTO user_follow (follower, followed, followed_at) VALUES (:follower, :followed, NOW(6))",
+                        nativeQuery = true)
+        @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "user_follow"))
+        int addEdge(@Param("follower") String follower, @Param("followed") String followed);
+
+        // Remove a follow edge, returns the number of rows removed
+        @Transactional
+        @Modifying
+        @Query("DELETE FROM UserFollow f WHERE f.follower = :follower AND f.followed = :followed")
+        int deleteEdge(@Param("follower") String follower, @Param("followed") String followed);
+
+        // Users followed by a user sorted by username, read in primary key order (a Slice,
+        // as the count comes from the follow graph)
+        @Query("SELECT f.followedUser FROM UserFollow f WHERE f.follower = :username ORDER BY f.followed")
+        Slice<User> getFollowing(@Param("username") String username, Pageable pageable);
+
+        // Users following a user sorted by username, read in idx_user_follow_followed order
+        @Query("SELECT f.followerUser FROM UserFollow f WHERE f.followed = :username ORDER BY f.follower")
+        Slice<User> getFollowers(@Param("username") String username, Pageable pageable);
+
+        int countByFollower(String follower);
+
+        int countByFollowed(String followed);
+
+        // Every edge as (follower, followed), for the follow graph
+        @Query("SELECT f.follower, f.followed FROM UserFollow f")
+        List<Object[]> getAllEdges();
+}
@@ -1,11 +1,11 @@
 package com.example.backend.repository;
 
 import com.example.backend.entity.Community;
-import com.example.backend.entity.Post;
-import com.example.backend.entity.Reply;
 import com.example.backend.entity.User;
 import io.swagger.v3.oas.annotations.Operation;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.domain.Page;
@@ -15,75 +15,76 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 public interface UserRepository extends JpaRepository<User, String> {
-        User findByUsername(String username);
+        // Full-text condition on the ft_user index (see SearchIndexService)
+        String MATCH_USER = "MATCH(u.username, u.email, u.alias, u.description) AGAINST (:query IN BOOLEAN MODE)";
+
+        // Primary key lookup, answered by the second-level cache when the user is in it
+        // (a derived query would always go to the database)
+        default User findByUsername(String username) {
+                return username == null ? null : findById(username).orElse(null);
+        }
 
         User findByEmail(String email);
 
+        // Whether a token issued to the user at the given time is still valid: the user
+        // exists and its deletion (which revokes every token issued until it is
+        // requested) was not requested after that. Two primary key lookups, run once
+        // per token by JwtRequestFilter.
+        default boolean acceptsToken(String username, LocalDateTime issuedAt) {
+                return countTokenOwner(username, issuedAt) > 0;
+        }
+
+        @Query("SELECT COUNT(u) FROM User u WHERE u.username = :username AND NOT EXISTS "
+                        + "(SELECT d FROM AccountDeletion d WHERE d.username = u.username AND d.requestedAt >= :issuedAt)")
+        long countTokenOwner(@Param("username") String username, @Param("issuedAt") LocalDateTime issuedAt);
+
+        // Roles of the given users as (username, role), for the member lists
+        @Query("SELECT u.username, r FROM User u JOIN u.roles r WHERE u.username IN :usernames")
+        List<Object[]> getRoles(@Param("usernames") Collection<String> usernames);
+
+        // Suspensions ending in [afterTime, to) as (username, end), after the given user
+        // in (end, username) order. Read through idx_user_disabled_until by the expiry
+        // scheduler.
+        @Query("SELECT u.username, u.disabledUntil FROM User u WHERE u.isDisabled = true AND u.disabledUntil < :to "
+                        + "AND (u.disabledUntil > :afterTime OR (u.disabledUntil = :afterTime AND u.username > :afterUsername)) "
+                        + "ORDER BY u.disabledUntil, u.username")
+        List<Object[]> getEndingSuspensions(@Param("afterTime") LocalDateTime afterTime,
+                        @Param("afterUsername") String afterUsername, @Param("to") LocalDateTime to, Pageable pageable);
+
         Page<User> findByAlias(String alias, Pageable pageable);
 
         @Operation(summary = "Search users by username, email, alias or description. Search Engine's default behaviour")
-        @Query("SELECT u FROM User u WHERE " +
-                        "u.username LIKE %:query% OR " +
-                        "u.email LIKE %:query% OR " +
-                        "u.alias LIKE %:query% OR " +
-                        "u.description LIKE %:query%")
+        @Query(value = "SELECT u.* FROM `user` u WHERE " + MATCH_USER + " ORDER BY " + MATCH_USER + " DESC, u.username",
+                        countQuery = "SELECT COUNT(*) FROM `user` u WHERE " + MATCH_USER, nativeQuery = true)
         Page<User> engineSearchUsers(@Param("query") String query, Pageable pageable);
 
+        // Substring search, for the text the full-text index can't match (see
+        // SearchIndexService.toBooleanQuery), sorted by the Pageable
+        @Query("SELECT u FROM User u WHERE u.username LIKE %:text% OR u.email LIKE %:text% OR u.alias LIKE %:text% "
+                        + "OR u.description LIKE %:text%")
+        Page<User> searchUsersBySubstring(@Param("text") String text, Pageable pageable);
+
         // Communities a user is a member of
-        @Query("SELECT u.communities FROM User u WHERE u.username LIKE %:username%")
+        @Query(value = "SELECT m.community FROM CommunityMember m WHERE m.username = :username",
+                        countQuery = "SELECT COUNT(m) FROM CommunityMember m WHERE m.username = :username")
         Page<Community> getUserCommunities(@Param("username") String username, Pageable pageable);
 
         // Communities a user is an admin of
-        @Query("SELECT c FROM Community c WHERE c.admin.username LIKE %:username%")
-        Page<Community> findCommunitiesAdmin(String username, Pageable pageable);
-
-        // Get the number of communities a user is a member of
-        @Query("SELECT COUNT(u.communities) FROM User u WHERE u.username LIKE %:username%")
-        int getNumberOfCommunities(@Param("username") String username);
-
-        // Get the number of communities a user is an admin of
-        @Query("SELECT COUNT(c) FROM Community c WHERE c.admin.username LIKE %:username%")
-        int getNumberOfAdminCommunities(@Param("username") String username);
-
-        // Get the number of posts a user has made
-        @Query("SELECT COUNT(p) FROM Post p WHERE p.author.username LIKE %:username%")
-        int getNumberOfPosts(@Param("username") String username);
+        @Query("SELECT c FROM Community c WHERE c.admin.username = :username")
+        Page<Community> findCommunitiesAdmin(@Param("username") String username, Pageable pageable);
 
         // Search engine default behaviour + sort by user's creation date
-        @Query("SELECT u FROM User u WHERE " +
-                        "u.username LIKE %:query% OR " +
-                        "u.email LIKE %:query% OR " +
-                        "u.alias LIKE %:query% OR " +
-                        "u.description LIKE %:query% ORDER BY u.fullCreationDate DESC")
+        @Query(value = "SELECT u.* FROM `user` u WHERE " + MATCH_USER + " ORDER BY u.full_creation_date DESC",
+                        countQuery = "SELECT COUNT(*) FROM `user` u WHERE " + MATCH_USER, nativeQuery = true)
         Page<User> engineSearchUsersOrderByCreationDate(@Param("query") String query, Pageable pageable);
 
-        // Get the number of followers a user has
-        @Query("SELECT COUNT(u.followers) FROM User u WHERE u.username LIKE %:username%")
-        int getNumberOfFollowers(@Param("username") String username);
-
-        // Get the number of users a user is following
-        @Query("SELECT COUNT(u.following) FROM User u WHERE u.username LIKE %:username%")
-        int getNumberOfFollowing(@Param("username") String username);
-
-        // Get the users a user is following
-        @Query("SELECT u.followingList FROM User u WHERE u.username LIKE %:username%")
-        Page<User> getFollowing(@Param("username") String username, Pageable pageable);
-
-        // Get the users following a user
-        @Query("SELECT u.followersList FROM User u WHERE u.username LIKE %:username%")
-        Page<User> getFollowers(@Param("username") String username, Pageable pageable);
-
-        // Get liked replies
-        @Query("SELECT u.likedReplies FROM User u WHERE u.username LIKE %:username%")
-        List<Reply> getLikedReplies(@Param("username") String username);
-
-        // Get upvoted posts
-        @Query("SELECT u.upvotedPosts FROM User u WHERE u.username LIKE %:username%")
-        List<Post> getUpvotedPosts(@Param("username") String username);
+        // Usernames of the users following a user
+        @Query("SELECT f.follower FROM UserFollow f WHERE f.followed = :username")
+        List<String> getFollowerUsernames(@Param("username") String username);
 
-        // Get downvoted posts
-        @Query("SELECT u.downvotedPosts FROM User u WHERE u.username LIKE %:username%")
-        List<Post> getDownvotedPosts(@Param("username") String username);
+        // Users followed by a user that have more followers than the given limit
+        @Query("SELECT u.username FROM UserFollow f JOIN f.followedUser u WHERE f.follower = :username AND u.followers > :limit")
+        List<String> getLargeFollowingOfUser(@Param("username") String username, @Param("limit") int limit);
 
         // Get users with the most upvoted content
         @Query("SELECT u FROM User u JOIN u.posts p ORDER BY p.upvotes DESC")
@@ -92,7 +93,7 @@ public interface UserRepository extends JpaRepository<User, String> {
         // Get users with the most upvoted content and return both the username and the
         // total number of upvotes
         @Query("SELECT u.username, SUM(p.upvotes) as totalUpvotes FROM User u JOIN u.posts p GROUP BY u.username ORDER BY totalUpvotes DESC")
-        List<Object[]> getUsersWithMostLikedContentCount();
+        List<Object[]> getUsersWithMostLikedContentCount(Pageable pageable);
 
         // Get users sorted by banCount and query by username
         @Query("SELECT u FROM User u WHERE u.username LIKE %:username% ORDER BY u.banCount DESC")
@@ -100,9 +101,9 @@ public interface UserRepository extends JpaRepository<User, String> {
 
         // Get users with most bans and return both the username and the total number of bans
         @Query("SELECT u.username, u.banCount FROM User u ORDER BY u.banCount DESC")
-        List<Object[]> getUsersWithMostBansCount();
+        List<Object[]> getUsersWithMostBansCount(Pageable pageable);
 
         // Get users with most dislikes and return both the username and the total number of dislikes
         @Query("SELECT u.username, SUM(p.downvotes) as totalDownvotes FROM User u JOIN u.posts p GROUP BY u.username ORDER BY totalDownvotes DESC")
-        List<Object[]> getUsersWithMostDislikesCount();
+        List<Object[]> getUsersWithMostDislikesCount(Pageable pageable);
 }
@@ -0,0 +1,32 @@
+package com.example.backend.repository;
+
+import com.example.backend.entity.UserStats;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface UserStatsRepository extends JpaRepository<UserStats, String> {
+
+        @Transactional
+        @Modifying
+        @Query("UPDATE UserStats s SET s.posts = s.posts + :delta WHERE s.username = :username")
+        int addPosts(@Param("username") String username, @Param("delta") int delta);
+
+        @Transactional
+        @Modifying
+        @Query("UPDATE UserStats s SET s.communities = s.communities + :delta WHERE s.username = :username")
+        int addCommunities(@Param("username") String username, @Param("delta") int delta);
+
+        @Transactional
+        @Modifying
+        @Query("UPDATE UserStats s SET s.adminCommunities = s.adminCommunities + :delta WHERE s.username = :username")
+        int addAdminCommunities(@Param("username") String username, @Param("delta") int delta);
+
+        @Transactional
+        @Modifying
+        @Query("UPDATE UserStats s SET s.upvotes = s.upvotes + :delta WHERE s.username = :username")
+        int addUpvotes(@Param("username") String username, @Param("delta") long delta);
+}
@@ -0,0 +1,115 @@
+package com.example.backend.security;
+
+import com.example.backend.entity.User;
+import com.example.backend.service.CommunityAccess;
+import com.example.backend.service.CommunityService;
+import com.example.backend.service.UserService;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.annotation.RequestScope;
+
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.Map;
+
+// What the user performing the current request can do: their User, site roles,
+// disabled status and relation with each community involved in the request. Each
+// fact is loaded once per request the first time a check needs it, so controllers
+// can ask again as often as their checks require without querying the database.
+// The relation of other users with a community (the target of a ban, for example)
+// is cached the same way.
+@Component
+@RequestScope
+public class AccessContext {
+
+    private final HttpServletRequest request;
+    private final UserService userService;
+    private final CommunityService communityService;
+
+    private boolean userLoaded;
+    private User user;
+    private Boolean disabled;
+    private final Map<Key, CommunityAccess> communities = new HashMap<>();
+
+    private record Key(String username, Long communityId) {
+    }
+
+    public AccessContext(HttpServletRequest request, UserService userService, CommunityService communityService) {
+        this.request = request;
+        this.userService = userService;
+        this.communityService = communityService;
+    }
+
+    public boolean isLoggedIn() {
+        return request.getUserPrincipal() != null;
+    }
+
+    // Username of the logged in user, null if anonymous
+    public String getUsername() {
+        Principal principal = request.getUserPrincipal();
+        return principal == null ? null : principal.getName();
+    }
+
+    // The logged in user, null if anonymous
+    public User getUser() {
+        if (!userLoaded) {
+            String username = getUsername();
+            user = username == null ? null : userService.getUserByUsername(username);
+            userLoaded = true;
+        }
+        return user;
+    }
+
+    // Site admin
+    public boolean isAdmin() {
+        User current = getUser();
+        return current != null && current.getRoles().contains("ADMIN");
+    }
+
+    public boolean isDisabled() {
+        if (disabled == null) {
+            disabled = userService.isAccountDisabled(getUser());
+        }
+        return disabled;
+    }
+
+    // Relation of the logged in user with a community, null if anonymous or the
+    // community does not exist
+    public CommunityAccess getCommunityAccess(Long communityId) {
+        String username = getUsername();
+        return username == null ? null : getCommunityAccess(username, communityId);
+    }
+
+    // Relation of any user with a community, null if the community does not exist
+    public CommunityAccess getCommunityAccess(String username, Long communityId) {
+        return communities.computeIfAbsent(new Key(username, communityId),
+                key -> communityService.getAccess(key.username(), key.communityId()));
+    }
+
+    public boolean isMember(Long communityId) {
+        CommunityAccess access = getCommunityAccess(communityId);
+        return access != null && access.member();
+    }
+
+    public boolean isModerator(Long communityId) {
+        CommunityAccess access = getCommunityAccess(communityId);
+        return access != null && access.moderator();
+    }
+
+    public boolean isBanned(Long communityId) {
+        CommunityAccess access = getCommunityAccess(communityId);
+        return access != null && access.isBanned();
+    }
+
+    // Community admin, community moderator or site admin
+    public boolean canModerate(Long communityId) {
+        CommunityAccess access = getCommunityAccess(communityId);
+        return (access != null && access.canModerate()) || isAdmin();
+    }
+
+    // Forget the relations with a community after the request changes them
+    public void invalidate(Long communityId) {
+        communities.keySet().removeIf(key -> key.communityId().equals(communityId));
+    }
+}
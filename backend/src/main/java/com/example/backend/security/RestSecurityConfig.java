@@ -90,6 +90,12 @@ public class RestSecurityConfig {
                         .requestMatchers(HttpMethod.PUT, "/api/v1/users/**").hasAnyRole("USER")
                         .requestMatchers(HttpMethod.DELETE, "/api/v1/users/**").hasAnyRole("USER")
 
+                        // search endpoints
+                        .requestMatchers(HttpMethod.POST, "/api/v1/search/**").hasAnyRole("USER")
+
+                        // media endpoints
+                        .requestMatchers(HttpMethod.POST, "/api/v1/media/**").hasAnyRole("USER")
+
                         // PUBLIC ENDPOINTS ----------------------------
                         .anyRequest().permitAll());
 
@@ -111,4 +117,28 @@ public class RestSecurityConfig {
         return http.build();
     }
 
+    @Bean
+    public SecurityFilterChain actuatorFilterChain(HttpSecurity http) throws Exception {
+        http.authenticationProvider(authenticationProvider());
+
+        http
+                .securityMatcher("/actuator/**")
+                .exceptionHandling(handling -> handling
+                        .authenticationEntryPoint(unauthorizedHandlerJwt));
+
+        http
+                .authorizeHttpRequests(authorize -> authorize
+                        // health checks stay public, metrics (cache hit/miss counters...) are for admins
+                        .requestMatchers(HttpMethod.GET, "/actuator/health/**").permitAll()
+                        .anyRequest().hasAnyRole("ADMIN"));
+
+        http.formLogin(formLogin -> formLogin.disable());
+        http.csrf(csrf -> csrf.disable());
+        http.httpBasic(httpBasic -> httpBasic.disable());
+        http.sessionManagement(management -> management.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
+        http.addFilterBefore(jwtRequestFilter, UsernamePasswordAuthenticationFilter.class);
+
+        return http.build();
+    }
+
 }
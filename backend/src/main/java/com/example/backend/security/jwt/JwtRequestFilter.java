@@ -1,5 +1,6 @@
 package com.example.backend.security.jwt;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.Cookie;
@@ -7,9 +8,12 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.example.backend.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -18,7 +22,18 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 
+// Authenticates the requests carrying an access token cookie. A token seen recently is
+// answered by the VerifiedTokenCache without any decryption, parsing or database
+// access; otherwise it is decrypted and parsed once, the database confirms that its
+// user still exists and the token was not revoked (see UserRepository.acceptsToken),
+// and the user's authorities are taken from its "auth" claim (only tokens issued by
+// older versions, which don't carry them, load the user).
 @Component
 public class JwtRequestFilter extends OncePerRequestFilter {
 	
@@ -30,18 +45,30 @@ public class JwtRequestFilter extends OncePerRequestFilter {
 	@Autowired
 	private JwtTokenProvider jwtTokenProvider;
 
+	@Autowired
+	private VerifiedTokenCache verifiedTokenCache;
+
+	@Autowired
+	private UserRepository userRepository;
+
 	@Override
 	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
       throws ServletException, IOException {
 
 		try {
-			String token = getJwtToken(request, true);
-			
-			if (StringUtils.hasText(token) && jwtTokenProvider.validateToken(token)) {
-				
-				String username = jwtTokenProvider.getUsername(token);
+			String encryptedToken = getJwtToken(request, true);
+
+			VerifiedTokenCache.Entry verified = null;
+			if (StringUtils.hasText(encryptedToken)) {
+				verified = verifiedTokenCache.get(encryptedToken);
+				if (verified == null) {
+					verified = verify(encryptedToken);
+				}
+			}
+
+			if (verified != null) {
 				
-				UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+				UserDetails userDetails = new User(verified.username(), "", verified.authorities());
 				
 				UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
 						userDetails, null, userDetails.getAuthorities());
@@ -57,6 +84,27 @@ public class JwtRequestFilter extends OncePerRequestFilter {
 		filterChain.doFilter(request, response);
 	}	
 
+	// Decrypt and parse a token that is not in the cache, and cache it if it is valid
+	private VerifiedTokenCache.Entry verify(String encryptedToken) {
+		Claims claims = jwtTokenProvider.parseClaims(SecurityCipher.decrypt(encryptedToken));
+		if (claims == null || verifiedTokenCache.isRevoked(claims.getSubject(), claims.getIssuedAt())) {
+			return null;
+		}
+		// the revocations of other nodes, or from before a restart, are in the database
+		Date issuedAt = claims.getIssuedAt() != null ? claims.getIssuedAt() : new Date(0);
+		if (!userRepository.acceptsToken(claims.getSubject(),
+				LocalDateTime.ofInstant(issuedAt.toInstant(), ZoneId.systemDefault()))) {
+			return null;
+		}
+
+		List<GrantedAuthority> authorities = jwtTokenProvider.getAuthorities(claims);
+		if (authorities == null) {
+			authorities = new ArrayList<>(userDetailsService.loadUserByUsername(claims.getSubject()).getAuthorities());
+		}
+		return verifiedTokenCache.put(encryptedToken, claims.getSubject(), authorities, claims.getExpiration());
+	}
+
+	// The token as sent by the client (still encrypted)
 	private String getJwtToken(HttpServletRequest request, boolean fromCookie) {
 		
 		if (fromCookie) {
@@ -72,12 +120,7 @@ public class JwtRequestFilter extends OncePerRequestFilter {
 		
 		if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
 		
-			String accessToken = bearerToken.substring(7);
-			if (accessToken == null) {
-				return null;
-			}
-
-			return SecurityCipher.decrypt(accessToken);
+			return bearerToken.substring(7);
 		}
 		return null;
 	}
@@ -92,12 +135,7 @@ public class JwtRequestFilter extends OncePerRequestFilter {
 		
 		for (Cookie cookie : cookies) {
 			if (JwtCookieManager.ACCESS_TOKEN_COOKIE_NAME.equals(cookie.getName())) {
-				String accessToken = cookie.getValue();
-				if (accessToken == null) {
-					return null;
-				}
-
-				return SecurityCipher.decrypt(accessToken);
+				return cookie.getValue();
 			}
 		}
 		return null;
@@ -1,6 +1,8 @@
 package com.example.backend.security.jwt;
 
 import io.jsonwebtoken.*;
+import io.jsonwebtoken.impl.TextCodec;
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,6 +10,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -15,8 +18,10 @@ import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
@@ -30,17 +35,33 @@ public class JwtTokenProvider {
 	
 	private static long JWT_EXPIRATION_IN_MS = 5400000;
 	private static Long REFRESH_TOKEN_EXPIRATION_MSEC = 10800000l;
+
+	// Claim with the authorities of the user (ROLE_USER, ROLE_ADMIN...)
+	private static final String AUTHORITIES_CLAIM = "auth";
+
+	// jwt.secret decoded once (setSigningKey(String) decodes it on every call)
+	private byte[] signingKey;
 	
 	@Autowired
 	private UserDetailsService userDetailsService;
 
+	@PostConstruct
+	public void init() {
+		signingKey = TextCodec.BASE64.decode(jwtSecret);
+	}
+
+	// Longest a token issued now can stay valid
+	public static long getMaxTokenLifetime() {
+		return Math.max(JWT_EXPIRATION_IN_MS, REFRESH_TOKEN_EXPIRATION_MSEC);
+	}
+
 	public Authentication getAuthentication(String token) {
 		UserDetails userDetails = userDetailsService.loadUserByUsername(getUsername(token));
 		return new UsernamePasswordAuthenticationToken(userDetails, "", userDetails.getAuthorities());
 	}
 
 	public String getUsername(String token) {
-		return Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(token).getBody().getSubject();
+		return Jwts.parser().setSigningKey(signingKey).parseClaimsJws(token).getBody().getSubject();
 	}
 
 	public String resolveToken(HttpServletRequest req) {
@@ -52,9 +73,13 @@ public class JwtTokenProvider {
 	}
 
 	public boolean validateToken(String token) {
+		return parseClaims(token) != null;
+	}
+
+	// Verify a token and read its claims in a single parse, null if it is not valid
+	public Claims parseClaims(String token) {
 		try {
-			Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(token);
-			return true;
+			return Jwts.parser().setSigningKey(signingKey).parseClaimsJws(token).getBody();
 		} catch (SignatureException ex) {
 			LOG.debug("Invalid JWT Signature");
 		} catch (MalformedJwtException ex) {
@@ -66,14 +91,30 @@ public class JwtTokenProvider {
 		} catch (IllegalArgumentException ex) {
 			LOG.debug("JWT claims string is empty");
 		}
-		return false;
+		return null;
+	}
+
+	// Authorities carried by a token, null if the token has none in the current format
+	// (tokens issued by older versions), in which case they have to be loaded
+	public List<GrantedAuthority> getAuthorities(Claims claims) {
+		if (!(claims.get(AUTHORITIES_CLAIM) instanceof List<?> values)) {
+			return null;
+		}
+		List<GrantedAuthority> authorities = new ArrayList<>(values.size());
+		for (Object value : values) {
+			if (!(value instanceof String authority)) {
+				return null;
+			}
+			authorities.add(new SimpleGrantedAuthority(authority));
+		}
+		return authorities;
 	}
 
 	public Token generateToken(UserDetails user) {
 
 		Claims claims = Jwts.claims().setSubject(user.getUsername());
 
-		claims.put("auth", user.getAuthorities().stream().map(s -> new SimpleGrantedAuthority("ROLE_"+s))
+		claims.put(AUTHORITIES_CLAIM, user.getAuthorities().stream().map(GrantedAuthority::getAuthority)
 				.filter(Objects::nonNull).collect(Collectors.toList()));
 
 		Date now = new Date();
@@ -95,7 +136,7 @@ public class JwtTokenProvider {
 
 		Claims claims = Jwts.claims().setSubject(user.getUsername());
 
-		claims.put("auth", user.getAuthorities().stream().map(s -> new SimpleGrantedAuthority("ROLE_"+s))
+		claims.put(AUTHORITIES_CLAIM, user.getAuthorities().stream().map(GrantedAuthority::getAuthority)
 				.filter(Objects::nonNull).collect(Collectors.toList()));
 		Date now = new Date();
 		Long duration = now.getTime() + REFRESH_TOKEN_EXPIRATION_MSEC;
@@ -3,6 +3,7 @@ package com.example.backend.security.jwt;
 import javax.crypto.Cipher;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
@@ -11,9 +12,19 @@ import java.util.Base64;
 public class SecurityCipher {
 
 	private static final String KEYVALUE = "secureCDCKey";
+	private static final String TRANSFORMATION = "AES/ECB/PKCS5Padding";
 	private static SecretKeySpec secretKey;
 	private static byte[] key;
 
+	// The key is derived once, and every thread keeps its own initialized ciphers (a
+	// Cipher is not thread-safe, and ECB needs no IV, so it can be reused as is)
+	private static final ThreadLocal<Cipher> ENCRYPT_CIPHER = ThreadLocal.withInitial(() -> newCipher(Cipher.ENCRYPT_MODE));
+	private static final ThreadLocal<Cipher> DECRYPT_CIPHER = ThreadLocal.withInitial(() -> newCipher(Cipher.DECRYPT_MODE));
+
+	static {
+		setKey();
+	}
+
 	private SecurityCipher() {
 		throw new AssertionError("Static!");
 	}
@@ -37,11 +48,10 @@ public class SecurityCipher {
 		}
 
 		try {
-			setKey();
-			Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-			cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+			Cipher cipher = ENCRYPT_CIPHER.get();
 			return Base64.getEncoder().encodeToString(cipher.doFinal(strToEncrypt.getBytes(StandardCharsets.UTF_8)));
 		} catch (Exception e) {
+			ENCRYPT_CIPHER.remove();
 			e.printStackTrace();
 		}
 		return null;
@@ -53,14 +63,24 @@ public class SecurityCipher {
 		}
 
 		try {
-			setKey();
-			Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-			cipher.init(Cipher.DECRYPT_MODE, secretKey);
-			return new String(cipher.doFinal(Base64.getDecoder().decode(strToDecrypt)));
+			Cipher cipher = DECRYPT_CIPHER.get();
+			return new String(cipher.doFinal(Base64.getDecoder().decode(strToDecrypt)), StandardCharsets.UTF_8);
 		} catch (Exception e) {
+			// start from a fresh cipher in case the failed call left it mid-operation
+			DECRYPT_CIPHER.remove();
 			e.printStackTrace();
 		}
 		return null;
 	}
 
+	private static Cipher newCipher(int mode) {
+		try {
+			Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+			cipher.init(mode, secretKey);
+			return cipher;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Could not create the " + TRANSFORMATION + " cipher", e);
+		}
+	}
+
 }
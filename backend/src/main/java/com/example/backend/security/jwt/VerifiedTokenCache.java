@@ -0,0 +1,124 @@
+package com.example.backend.security.jwt;
+
+import com.example.backend.config.ClusterEvents;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Tokens already verified by JwtRequestFilter, keyed by the SHA-256 of the cookie
+// value, so a request with a known token skips the decryption, the JWT parse and the
+// user lookup. Entries live for a short time (never past the expiry of the token).
+// The cache is bounded: when it is full the expired entries are dropped, and tokens
+// are verified without being cached until there is room again. Deleting an account
+// revokes every token issued to it until then, in this node and, through
+// ClusterEvents, in the others; a node that missed it (or was restarted) still finds
+// the account_deletion row, which JwtRequestFilter checks before caching a token.
+@Component
+public class VerifiedTokenCache {
+
+	public record Entry(String username, List<GrantedAuthority> authorities, long expiresAt) {
+	}
+
+	private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	});
+
+	private final long ttl;
+	private final int maxEntries;
+	private final ClusterEvents clusterEvents;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	// username -> when their tokens were revoked in this node (tokens issued until then
+	// are rejected without asking the database)
+	private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+	public VerifiedTokenCache(@Value("${jwt.cache.ttl-ms:60000}") long ttl,
+			@Value("${jwt.cache.max-entries:10000}") int maxEntries, ClusterEvents clusterEvents) {
+		this.ttl = ttl;
+		this.maxEntries = maxEntries;
+		this.clusterEvents = clusterEvents;
+		clusterEvents.subscribe("tokens.revoke-user", args -> revokeUser(args.get(0)));
+	}
+
+	// Verified token, null if it is not cached or its entry expired
+	public Entry get(String encryptedToken) {
+		String key = hash(encryptedToken);
+		Entry entry = entries.get(key);
+		if (entry != null && entry.expiresAt() <= System.currentTimeMillis()) {
+			entries.remove(key, entry);
+			return null;
+		}
+		return entry;
+	}
+
+	// Cache a token that has just been verified, returns its entry
+	public Entry put(String encryptedToken, String username, List<GrantedAuthority> authorities, Date expiration) {
+		long now = System.currentTimeMillis();
+		long expiresAt = now + ttl;
+		if (expiration != null) {
+			expiresAt = Math.min(expiresAt, expiration.getTime());
+		}
+		Entry entry = new Entry(username, List.copyOf(authorities), expiresAt);
+		if (entries.size() >= maxEntries) {
+			purge();
+		}
+		if (entries.size() < maxEntries) {
+			String key = hash(encryptedToken);
+			entries.put(key, entry);
+			// the account may have been deleted while the token was being verified
+			if (revoked.containsKey(username)) {
+				entries.remove(key, entry);
+			}
+		}
+		return entry;
+	}
+
+	public boolean isRevoked(String username, Date issuedAt) {
+		Long revokedAt = revoked.get(username);
+		return revokedAt != null && (issuedAt == null || issuedAt.getTime() <= revokedAt);
+	}
+
+	// Reject every token issued to a user until now (the account was deleted)
+	public void revokeUser(String username) {
+		revoked.put(username, System.currentTimeMillis());
+		entries.values().removeIf(entry -> entry.username().equals(username));
+		clusterEvents.publish("tokens.revoke-user", username);
+	}
+
+	// Drop the expired entries, and the revocations older than any token that could
+	// still be valid
+	@Scheduled(fixedDelayString = "${jwt.cache.purge-interval-ms:60000}")
+	public void purge() {
+		long now = System.currentTimeMillis();
+		entries.values().removeIf(entry -> entry.expiresAt() <= now);
+		revoked.values().removeIf(revokedAt -> revokedAt + JwtTokenProvider.getMaxTokenLifetime() <= now);
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	private static String hash(String encryptedToken) {
+		byte[] digest = SHA256.get().digest(encryptedToken.getBytes(StandardCharsets.UTF_8));
+		return Base64.getEncoder().encodeToString(digest);
+	}
+}
@@ -0,0 +1,373 @@
+package com.example.backend.service;
+
+import com.example.backend.config.SecondLevelCacheSync;
+import com.example.backend.entity.AccountDeletion;
+import com.example.backend.entity.Community;
+import com.example.backend.entity.Post;
+import com.example.backend.entity.User;
+import com.example.backend.repository.AccountDeletionRepository;
+import com.example.backend.repository.UserRepository;
+import com.example.backend.security.jwt.VerifiedTokenCache;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Deletes accounts in the background. The user is disabled and its tokens revoked
+// when the deletion is requested, then the rows that reference it are removed step
+// by step (see AccountDeletion.Step) with set-based statements: each chunk of at most
+// accounts.deletion.chunk-size rows adjusts the counters it affects in one UPDATE,
+// removes the rows and records the progress in the same transaction. A job stopped
+// half-way (a restart, a failure) goes on from the step it was in, and every step can
+// run again without changing anything twice. The rows changed with plain SQL are
+// evicted from the second-level cache, the in-memory indexes are updated after each
+// chunk commits.
+@Service
+public class AccountDeletionService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AccountDeletionService.class);
+
+    private static final String PROGRESS = "UPDATE account_deletion SET status = ?, step = ?, "
+            + "processed = processed + ?, updated_at = ? WHERE username = ?";
+    private static final String FAILED = "UPDATE account_deletion SET status = 'FAILED', error = ?, updated_at = ? "
+            + "WHERE username = ?";
+
+    private final AccountDeletionRepository accountDeletionRepository;
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SecondLevelCacheSync secondLevelCache;
+    private final LeaderboardService leaderboardService;
+    private final MembershipIndex membershipIndex;
+    private final FollowGraph followGraph;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final int chunkSize;
+    private final ThreadPoolExecutor executor;
+
+    // Accounts with a job queued or running in this node
+    private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+
+    public AccountDeletionService(AccountDeletionRepository accountDeletionRepository, UserRepository userRepository,
+            JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            SecondLevelCacheSync secondLevelCache, LeaderboardService leaderboardService,
+            MembershipIndex membershipIndex, FollowGraph followGraph, VerifiedTokenCache verifiedTokenCache,
+            @Value("${accounts.deletion.chunk-size:500}") int chunkSize,
+            @Value("${accounts.deletion.queue:1000}") int queueSize) {
+        this.accountDeletionRepository = accountDeletionRepository;
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.secondLevelCache = secondLevelCache;
+        this.leaderboardService = leaderboardService;
+        this.membershipIndex = membershipIndex;
+        this.followGraph = followGraph;
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.chunkSize = chunkSize;
+        // one account at a time, the jobs are not urgent and this bounds the load
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("account-deletion-"));
+    }
+
+    // Disable the account and queue its deletion. Asking again while the job is
+    // queued or running returns it as it is, a job that failed starts over.
+    public AccountDeletion requestDeletion(User user, String requestedBy) {
+        AccountDeletion job = transactionTemplate.execute(status -> {
+            AccountDeletion existing = accountDeletionRepository.findById(user.getUsername()).orElse(null);
+            if (existing != null && existing.isActive()) {
+                return existing;
+            }
+            if (existing == null) {
+                existing = new AccountDeletion(user.getUsername(), requestedBy);
+            } else {
+                existing.restart(requestedBy);
+            }
+            user.setDisabled(true, LocalDateTime.now().plusYears(100));
+            userRepository.save(user);
+            return accountDeletionRepository.save(existing);
+        });
+        verifiedTokenCache.revokeUser(user.getUsername());
+        schedule(user.getUsername());
+        return job;
+    }
+
+    // Progress of the deletion of an account, null if it was never requested
+    public AccountDeletion getDeletion(String username) {
+        return accountDeletionRepository.findById(username).orElse(null);
+    }
+
+    // Go on with the jobs that were queued or running when the application stopped
+    @EventListener(ApplicationReadyEvent.class)
+    public void resume() {
+        List<AccountDeletion> pending = accountDeletionRepository
+                .findByStatusIn(EnumSet.of(AccountDeletion.Status.QUEUED, AccountDeletion.Status.RUNNING));
+        for (AccountDeletion job : pending) {
+            LOG.info("Resuming the deletion of {} at step {}", job.getUsername(), job.getStep());
+            schedule(job.getUsername());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // a chunk interrupted half-way rolls back, the job resumes on the next start
+        executor.shutdownNow();
+    }
+
+    private void schedule(String username) {
+        if (!scheduled.add(username)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    run(username);
+                } finally {
+                    scheduled.remove(username);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // still QUEUED in the database, picked up again on the next start
+            scheduled.remove(username);
+            LOG.warn("Deletion queue full, the deletion of {} is left queued", username);
+        }
+    }
+
+    private void run(String username) {
+        AccountDeletion job = accountDeletionRepository.findById(username).orElse(null);
+        if (job == null || !job.isActive()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        AccountDeletion.Step step = job.getStep();
+        try {
+            while (step != null && !Thread.currentThread().isInterrupted()) {
+                AccountDeletion.Step current = step;
+                List<Runnable> afterCommit = new ArrayList<>();
+                Integer rows = transactionTemplate.execute(status -> {
+                    int changed = runChunk(username, current, afterCommit);
+                    // a step is finished when a chunk finds nothing left to remove
+                    AccountDeletion.Step next = changed == 0 ? current.next() : current;
+                    jdbcTemplate.update(PROGRESS,
+                            (next == null ? AccountDeletion.Status.DONE : AccountDeletion.Status.RUNNING).name(),
+                            (next == null ? current : next).name(), changed, Timestamp.valueOf(LocalDateTime.now()),
+                            username);
+                    return changed;
+                });
+                afterCommit.forEach(Runnable::run);
+                if (rows == null || rows == 0) {
+                    step = current.next();
+                }
+            }
+            if (step == null) {
+                LOG.info("Deleted the account {} in {} ms", username, System.currentTimeMillis() - start);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Could not delete the account {} at step {}", username, step, e);
+            String error = String.valueOf(e.getMessage());
+            jdbcTemplate.update(FAILED, error.length() > 255 ? error.substring(0, 255) : error,
+                    Timestamp.valueOf(LocalDateTime.now()), username);
+        }
+    }
+
+    // Remove one chunk of the given step. Returns the rows removed, 0 when the step
+    // is finished.
+    private int runChunk(String username, AccountDeletion.Step step, List<Runnable> afterCommit) {
+        return switch (step) {
+            case FOLLOWING -> removeFollows(username, true, afterCommit);
+            case FOLLOWERS -> removeFollows(username, false, afterCommit);
+            case MEMBERSHIPS -> {
+                List<Long> communities = jdbcTemplate.queryForList(
+                        "SELECT community_id FROM user_community WHERE user_id = ? LIMIT ?", Long.class, username,
+                        chunkSize);
+                if (!communities.isEmpty()) {
+                    jdbcTemplate.update("DELETE FROM user_community WHERE user_id = ? AND community_id IN ("
+                            + placeholders(communities) + ")", args(username, communities));
+                    afterCommit.add(() -> communities.forEach(id -> {
+                        membershipIndex.memberLeft(id, username);
+                        leaderboardService.memberLeft(id);
+                    }));
+                }
+                yield communities.size();
+            }
+            case MODERATION -> {
+                List<Long> communities = jdbcTemplate.queryForList(
+                        "SELECT community_id FROM moderator_community WHERE user_id = ? LIMIT ?", Long.class,
+                        username, chunkSize);
+                if (!communities.isEmpty()) {
+                    jdbcTemplate.update("DELETE FROM moderator_community WHERE user_id = ? AND community_id IN ("
+                            + placeholders(communities) + ")", args(username, communities));
+                    afterCommit.add(() -> {
+                        communities.forEach(id -> membershipIndex.moderatorRemoved(id, username));
+                        secondLevelCache.evictQueryRegion("community-moderators");
+                    });
+                }
+                yield communities.size();
+            }
+            case REPLY_LIKES -> {
+                List<Long> replies = jdbcTemplate.queryForList(
+                        "SELECT reply_id FROM reply_liked_by WHERE user_id = ? LIMIT ?", Long.class, username,
+                        chunkSize);
+                if (!replies.isEmpty()) {
+                    jdbcTemplate.update("UPDATE reply SET likes = likes - 1 WHERE identifier IN ("
+                            + placeholders(replies) + ")", replies.toArray());
+                    jdbcTemplate.update("DELETE FROM reply_liked_by WHERE user_id = ? AND reply_id IN ("
+                            + placeholders(replies) + ")", args(username, replies));
+                }
+                yield replies.size();
+            }
+            case POST_VOTES -> jdbcTemplate.update("DELETE FROM post_vote WHERE username = ? LIMIT ?", username,
+                    chunkSize);
+            case BANS -> jdbcTemplate.update("DELETE FROM ban WHERE username = ? LIMIT ?", username, chunkSize);
+            case REPLIES -> {
+                List<Long> replies = jdbcTemplate.queryForList(
+                        "SELECT identifier FROM reply WHERE author_username = ? LIMIT ?", Long.class, username,
+                        chunkSize);
+                if (!replies.isEmpty()) {
+                    String in = placeholders(replies);
+                    List<Long> posts = jdbcTemplate.queryForList(
+                            "SELECT DISTINCT post_identifier FROM reply WHERE identifier IN (" + in + ")", Long.class,
+                            replies.toArray());
+                    jdbcTemplate.update("DELETE FROM reply_liked_by WHERE reply_id IN (" + in + ")",
+                            replies.toArray());
+                    // one UPDATE for every post of the chunk, with the replies it loses
+                    jdbcTemplate.update("UPDATE post p JOIN (SELECT post_identifier, COUNT(*) AS removed FROM reply "
+                            + "WHERE identifier IN (" + in + ") GROUP BY post_identifier) r "
+                            + "ON r.post_identifier = p.identifier SET p.comments = p.comments - r.removed",
+                            replies.toArray());
+                    jdbcTemplate.update("DELETE FROM reply WHERE identifier IN (" + in + ")", replies.toArray());
+                    afterCommit.add(() -> posts.forEach(id -> secondLevelCache.evict(Post.class, id)));
+                }
+                yield replies.size();
+            }
+            case POST_REPLIES -> {
+                List<Long> replies = jdbcTemplate.queryForList("SELECT r.identifier FROM reply r "
+                        + "JOIN post p ON p.identifier = r.post_identifier WHERE p.author_username = ? LIMIT ?",
+                        Long.class, username, chunkSize);
+                if (!replies.isEmpty()) {
+                    String in = placeholders(replies);
+                    jdbcTemplate.update("DELETE FROM reply_liked_by WHERE reply_id IN (" + in + ")",
+                            replies.toArray());
+                    jdbcTemplate.update("DELETE FROM reply WHERE identifier IN (" + in + ")", replies.toArray());
+                }
+                yield replies.size();
+            }
+            case POSTS -> {
+                // the votes and feed entries of the posts go with them (ON DELETE CASCADE)
+                List<Long> posts = jdbcTemplate.queryForList(
+                        "SELECT identifier FROM post WHERE author_username = ? LIMIT ?", Long.class, username,
+                        chunkSize);
+                if (!posts.isEmpty()) {
+                    jdbcTemplate.update("DELETE FROM post WHERE identifier IN (" + placeholders(posts) + ")",
+                            posts.toArray());
+                    afterCommit.add(() -> posts.forEach(id -> secondLevelCache.evict(Post.class, id)));
+                }
+                yield posts.size();
+            }
+            case MESSAGES -> jdbcTemplate.update("DELETE FROM messages WHERE sender_id = ? OR receiver_id = ? LIMIT ?",
+                    username, username, chunkSize);
+            case CHATS -> jdbcTemplate.update("DELETE FROM chats WHERE user1_id = ? OR user2_id = ? LIMIT ?", username,
+                    username, chunkSize);
+            case ACCOUNT -> {
+                // the deletion is refused to community admins, but the user may have been
+                // made admin while the job was pending. Its row is locked first, so it can't
+                // become the admin of another community until it is gone, then those
+                // communities are left without an admin (fk_community_admin).
+                jdbcTemplate.queryForList("SELECT username FROM `user` WHERE username = ? FOR UPDATE", String.class,
+                        username);
+                List<Long> administered = jdbcTemplate.queryForList(
+                        "SELECT identifier FROM community WHERE admin_username = ?", Long.class, username);
+                if (!administered.isEmpty()) {
+                    LOG.warn("{} became the admin of communities {} after asking for its deletion, they are left "
+                            + "without an admin", username, administered);
+                    jdbcTemplate.update("UPDATE community SET admin_username = NULL WHERE admin_username = ?",
+                            username);
+                }
+                // what is left (stats, feed entries) goes with the user by ON DELETE
+                // CASCADE; deleted through JPA so the caches see it
+                userRepository.findById(username).ifPresent(userRepository::delete);
+                afterCommit.add(() -> {
+                    if (!administered.isEmpty()) {
+                        administered.forEach(id -> {
+                            membershipIndex.adminChanged(id, null);
+                            secondLevelCache.evict(Community.class, id);
+                        });
+                        secondLevelCache.evictQueryRegion("community-admin");
+                    }
+                    leaderboardService.userDeleted(username);
+                    membershipIndex.userDeleted(username);
+                    followGraph.removeUser(username);
+                    verifiedTokenCache.revokeUser(username);
+                });
+                yield 0;
+            }
+        };
+    }
+
+    // Remove a chunk of the follow edges of the user (the users it follows, or its
+    // followers) and move the counters of both sides with them, so the user_follow
+    // rows, the counters of the users and the follow graph agree after every chunk
+    private int removeFollows(String username, boolean following, List<Runnable> afterCommit) {
+        String side = following ? "follower" : "followed";
+        String other = following ? "followed" : "follower";
+        String ownCounter = following ? "following" : "followers";
+        String otherCounter = following ? "followers" : "following";
+        List<String> users = jdbcTemplate.queryForList(
+                "SELECT " + other + " FROM user_follow WHERE " + side + " = ? LIMIT ?", String.class, username,
+                chunkSize);
+        if (!users.isEmpty()) {
+            String in = placeholders(users);
+            jdbcTemplate.update("UPDATE `user` SET " + otherCounter + " = " + otherCounter + " - 1 WHERE username IN ("
+                    + in + ")", users.toArray());
+            jdbcTemplate.update("UPDATE `user` SET " + ownCounter + " = " + ownCounter + " - ? WHERE username = ?",
+                    users.size(), username);
+            jdbcTemplate.update("DELETE FROM user_follow WHERE " + side + " = ? AND " + other + " IN (" + in + ")",
+                    args(username, users));
+            // the counters are read through the second-level cache
+            afterCommit.add(() -> {
+                for (String user : users) {
+                    if (following) {
+                        followGraph.unfollow(username, user);
+                    } else {
+                        followGraph.unfollow(user, username);
+                    }
+                    secondLevelCache.evict(User.class, user);
+                }
+                secondLevelCache.evict(User.class, username);
+            });
+        }
+        return users.size();
+    }
+
+    private static String placeholders(List<?> values) {
+        return String.join(", ", Collections.nCopies(values.size(), "?"));
+    }
+
+    private static Object[] args(Object first, List<?> rest) {
+        Object[] args = new Object[rest.size() + 1];
+        args[0] = first;
+        for (int i = 0; i < rest.size(); i++) {
+            args[i + 1] = rest.get(i);
+        }
+        return args;
+    }
+}
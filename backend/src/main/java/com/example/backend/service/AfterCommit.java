@@ -0,0 +1,29 @@
+package com.example.backend.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// Applies a change to the in-memory state (indexes, rankings, schedules) once the
+// transaction that wrote it commits, so a rollback leaves that state as it was.
+// Outside a transaction the write is already committed and the change runs right
+// away. Not for use from an afterCommit callback itself: what it registers there
+// would never run.
+final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    static void run(Runnable change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()
+                && TransactionSynchronizationManager.isActualTransactionActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    change.run();
+                }
+            });
+        } else {
+            change.run();
+        }
+    }
+}
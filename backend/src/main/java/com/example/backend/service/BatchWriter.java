@@ -0,0 +1,63 @@
+package com.example.backend.service;
+
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Inserts many new entities at once (seeding, imports). The entities are persisted in
+// chunks of writes.chunk-size, each chunk in its own transaction, so the persistence
+// context never holds more than one chunk. On flush Hibernate groups the inserts per
+// table (hibernate.order_inserts) into JDBC batches of hibernate.jdbc.batch_size, which
+// the driver sends as multi-row INSERTs (rewriteBatchedStatements), and takes the ids
+// from the pooled generators (see PooledSequenceGenerator). A chunk that fails is rolled
+// back alone; the ones before it stay written.
+@Service
+public class BatchWriter {
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    public BatchWriter(EntityManager entityManager, PlatformTransactionManager transactionManager,
+            @Value("${writes.chunk-size:1000}") int chunkSize) {
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // a chunk never joins the transaction of the caller, whose entities would be
+        // flushed with it
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.chunkSize = chunkSize;
+    }
+
+    // Insert new entities (their ids are set when this returns). Returns the number inserted.
+    public <T> int insertAll(Collection<T> entities) {
+        List<T> chunk = new ArrayList<>(Math.min(chunkSize, entities.size()));
+        int inserted = 0;
+        for (T entity : entities) {
+            chunk.add(entity);
+            if (chunk.size() == chunkSize) {
+                inserted += insertChunk(chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            inserted += insertChunk(chunk);
+        }
+        return inserted;
+    }
+
+    private <T> int insertChunk(List<T> chunk) {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (T entity : chunk) {
+                entityManager.persist(entity);
+            }
+        });
+        return chunk.size();
+    }
+}
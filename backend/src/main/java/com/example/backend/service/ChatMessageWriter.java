@@ -0,0 +1,132 @@
+package com.example.backend.service;
+
+import com.example.backend.config.ChatWebSocketHandler.ChatMessage;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Write-behind queue for the chat messages received over the WebSocket, so delivery
+// never waits for the database. ChatWebSocketHandler queues each accepted message
+// here and the queue is written on a schedule: every batch is one transaction with a
+// JDBC batch of message inserts, one update per chat of its last message and one per
+// recipient of their unread count. The
+// queue is bounded; when it is full the message is refused and the sender is told so.
+// If a batch fails its messages are saved one by one, so a bad message doesn't take
+// the rest of the batch with it.
+@Service
+public class ChatMessageWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChatMessageWriter.class);
+
+    private static final String INSERT_MESSAGE = "INSERT INTO messages (sender_id, receiver_id, content, is_read, `timestamp`, chat_id) "
+            + "VALUES (?, ?, ?, false, ?, ?)";
+    private static final String UPDATE_CHAT = "UPDATE chats SET last_message_id = "
+            + "(SELECT MAX(m.id) FROM messages m WHERE m.chat_id = ?), last_message_time = ? WHERE id = ?";
+    private static final String UPDATE_UNREAD = "UPDATE chats SET "
+            + "user1_unread = user1_unread + CASE WHEN user1_id = ? THEN ? ELSE 0 END, "
+            + "user2_unread = user2_unread + CASE WHEN user1_id <> ? AND user2_id = ? THEN ? ELSE 0 END WHERE id = ?";
+
+    private final ChatService chatService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<ChatMessage> queue;
+    private final int batchSize;
+
+    public ChatMessageWriter(ChatService chatService, JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${chat.write-queue:10000}") int queueSize,
+            @Value("${chat.write-batch:500}") int batchSize) {
+        this.chatService = chatService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+    }
+
+    // Queue a message to be saved, false if the queue is full
+    public boolean enqueue(ChatMessage chatMessage) {
+        return queue.offer(chatMessage);
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    // Write every queued message, in batches
+    @Scheduled(fixedDelayString = "${chat.flush-interval-ms:200}")
+    public synchronized void flush() {
+        List<ChatMessage> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private void write(List<ChatMessage> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(batch));
+        } catch (RuntimeException e) {
+            LOG.warn("Could not write a batch of {} chat messages, saving them one by one", batch.size(), e);
+            for (ChatMessage chatMessage : batch) {
+                try {
+                    chatService.saveMessage(chatMessage);
+                } catch (RuntimeException ex) {
+                    LOG.error("Could not save chat message {} from {} to {}", chatMessage.getMessageId(),
+                            chatMessage.getSenderUsername(), chatMessage.getRecipientUsername(), ex);
+                }
+            }
+        }
+    }
+
+    private void insert(List<ChatMessage> batch) {
+        // chat of each pair of users in the batch, the time of its newest message and
+        // the messages for each recipient
+        Map<String, Long> chatIds = new HashMap<>();
+        Map<Long, Timestamp> lastMessageTimes = new LinkedHashMap<>();
+        Map<Long, Map<String, Integer>> unread = new LinkedHashMap<>();
+
+        List<Object[]> messages = new ArrayList<>(batch.size());
+        for (ChatMessage chatMessage : batch) {
+            String sender = chatMessage.getSenderUsername();
+            String recipient = chatMessage.getRecipientUsername();
+            String pair = sender.compareTo(recipient) < 0 ? sender + "\n" + recipient : recipient + "\n" + sender;
+            Long chatId = chatIds.computeIfAbsent(pair, key -> chatService.getOrCreateChatId(sender, recipient));
+
+            Timestamp time = Timestamp.valueOf(ChatService.timestampOf(chatMessage));
+            messages.add(new Object[] { sender, recipient, chatMessage.getContent(), time, chatId });
+            lastMessageTimes.put(chatId, time);
+            unread.computeIfAbsent(chatId, key -> new HashMap<>()).merge(recipient, 1, Integer::sum);
+        }
+        jdbcTemplate.batchUpdate(INSERT_MESSAGE, messages);
+
+        List<Object[]> chats = new ArrayList<>(lastMessageTimes.size());
+        lastMessageTimes.forEach((chatId, time) -> chats.add(new Object[] { chatId, time, chatId }));
+        jdbcTemplate.batchUpdate(UPDATE_CHAT, chats);
+
+        List<Object[]> counters = new ArrayList<>();
+        unread.forEach((chatId, recipients) -> recipients.forEach((recipient, count) ->
+                counters.add(new Object[] { recipient, count, recipient, recipient, count, chatId })));
+        jdbcTemplate.batchUpdate(UPDATE_UNREAD, counters);
+    }
+}
@@ -5,6 +5,7 @@ import com.example.backend.entity.Message;
 import com.example.backend.entity.User;
 import com.example.backend.repository.ChatRepository;
 import jakarta.annotation.PostConstruct;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 
@@ -13,19 +14,25 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Service
+@ConditionalOnProperty(name = "sample-data.enabled", havingValue = "true", matchIfMissing = true)
 @DependsOn("userSampleService")
 public class ChatSampleService {
 
     private final ChatRepository chatRepository;
     private final UserService userService;
+    private final UserSampleService userSampleService;
 
-    public ChatSampleService(ChatRepository chatRepository, UserService userService) {
+    public ChatSampleService(ChatRepository chatRepository, UserService userService, UserSampleService userSampleService) {
         this.chatRepository = chatRepository;
         this.userService = userService;
+        this.userSampleService = userSampleService;
     }
 
     @PostConstruct
     public void init() {
+        if (!userSampleService.isLoaded()) {
+            return;
+        }
         // Get users
         User bookReader = userService.getUserByUsername("BookReader_14");
         User adminReader = userService.getUserByUsername("AdminReader");
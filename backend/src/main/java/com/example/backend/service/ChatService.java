@@ -1,13 +1,17 @@
 package com.example.backend.service;
 
 import com.example.backend.config.ChatWebSocketHandler.ChatMessage;
+import com.example.backend.dto.ChatSummary;
+import com.example.backend.dto.Cursor;
 import com.example.backend.entity.Chat;
 import com.example.backend.entity.Message;
 import com.example.backend.entity.User;
 import com.example.backend.repository.ChatRepository;
 import com.example.backend.repository.MessageRepository;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -18,6 +22,12 @@ import java.util.List;
 
 @Service
 public class ChatService {
+    // Largest page of messages
+    public static final int MAX_PAGE_SIZE = 100;
+
+    // Key of the latest page: after any stored timestamp
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
     private final ChatRepository chatRepository;
     private final MessageRepository messageRepository;
     private final UserService userService;
@@ -43,10 +53,7 @@ public class ChatService {
 
         // Create and save message
         Message message = new Message(sender, recipient, chatMessage.getContent());
-        message.setTimestamp(LocalDateTime.ofInstant(
-            Instant.ofEpochMilli(chatMessage.getTimestamp()), 
-            ZoneId.systemDefault()
-        ));
+        message.setTimestamp(timestampOf(chatMessage));
         
         // Add message to chat
         chat.addMessage(message);
@@ -55,26 +62,47 @@ public class ChatService {
         chatRepository.save(chat);
     }
 
-    public Page<Chat> getUserChats(String username, Pageable pageable) {
-        System.out.println("Getting chats for user: " + username);
-        Page<Chat> chats = chatRepository.findByUsername(username, pageable);
-        
-        // Calculate unread counts for each chat
-        if (chats != null) {
-            chats.getContent().forEach(chat -> {
-                chat.setUnreadCount(chat.calculateUnreadCount(username));
-            });
-        }
-        
-        System.out.println("Found " + (chats != null ? chats.getContent().size() : 0) + " chats");
-        if (chats != null && !chats.getContent().isEmpty()) {
-            System.out.println("First chat id: " + chats.getContent().get(0).getId());
-        }
-        return chats;
+    // Id of the chat between two users, created if they don't have one yet
+    @Transactional
+    public Long getOrCreateChatId(String senderUsername, String recipientUsername) {
+        return chatRepository.findByUsers(senderUsername, recipientUsername)
+                .orElseGet(() -> {
+                    User sender = userService.getUserByUsername(senderUsername);
+                    User recipient = userService.getUserByUsername(recipientUsername);
+                    if (sender == null || recipient == null) {
+                        throw new IllegalArgumentException("Invalid sender or recipient");
+                    }
+                    return chatRepository.save(new Chat(sender, recipient));
+                })
+                .getId();
+    }
+
+    // Time a message was sent (its epoch millis in the server's time zone)
+    public static LocalDateTime timestampOf(ChatMessage chatMessage) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(chatMessage.getTimestamp()), ZoneId.systemDefault());
+    }
+
+    // Chats of a user, most recent first, with the unread count of the user
+    public Page<ChatSummary> getUserChats(String username, Pageable pageable) {
+        return chatRepository.findByUsername(username, pageable);
     }
 
+    // Keyset page of the chats of a user, most recent first (see Cursor)
+    public Slice<ChatSummary> getUserChatsAfter(String username, Cursor cursor, int size) {
+        return chatRepository.findByUsernameAfter(username, cursor.dateKey(), cursor.longId(),
+                PageRequest.of(0, size));
+    }
+
+    public Cursor cursorOf(ChatSummary chat) {
+        return Cursor.of(chat.lastMessageTime(), chat.id());
+    }
+
+    // Page of the history of a chat. With no anchor, the latest messages (newest
+    // first); before a message, the ones older than it (newest first, to scroll back);
+    // after a message, the ones newer than it (oldest first, to catch up). Pages are
+    // read by (timestamp, id) from the anchor, so every page costs the same.
     @Transactional(readOnly = true)
-    public List<Message> getChatMessages(Long chatId, String username) {
+    public List<Message> getChatMessages(Long chatId, String username, Long before, Long after, int size) {
         Chat chat = chatRepository.findById(chatId)
                 .orElseThrow(() -> new IllegalArgumentException("Chat not found"));
 
@@ -84,12 +112,27 @@ public class ChatService {
             throw new IllegalArgumentException("User not authorized to access this chat");
         }
 
-        // Force loading of messages
-        List<Message> messages = chat.getMessages();
-        messages.size(); // Force initialization of the lazy collection
-        return messages;
+        PageRequest page = PageRequest.of(0, Math.min(Math.max(size, 1), MAX_PAGE_SIZE));
+        if (after != null) {
+            Message anchor = getAnchor(chatId, after);
+            return messageRepository.findByChatAfter(chatId, anchor.getTimestamp(), anchor.getId(), page);
+        }
+        if (before != null) {
+            Message anchor = getAnchor(chatId, before);
+            return messageRepository.findByChatBefore(chatId, anchor.getTimestamp(), anchor.getId(), page);
+        }
+        return messageRepository.findByChatBefore(chatId, LATEST, Long.MAX_VALUE, page);
+    }
+
+    private Message getAnchor(Long chatId, Long messageId) {
+        return messageRepository.findById(messageId)
+                .filter(message -> message.getChat().getId().equals(chatId))
+                .orElseThrow(() -> new IllegalArgumentException("Message not found in this chat"));
     }
 
+    // Two statements whatever the size of the chat: the messages sent to the user up
+    // to the newest one are marked as read, then their marker and unread count in the
+    // chat are updated
     @Transactional
     public void markMessagesAsRead(Long chatId, String username) {
         Chat chat = chatRepository.findById(chatId)
@@ -100,14 +143,12 @@ public class ChatService {
             throw new IllegalArgumentException("User not authorized to access this chat");
         }
 
-        // Mark all messages sent to this user as read
-        for (Message message : chat.getMessages()) {
-            if (message.getReceiver().getUsername().equals(username) && !message.isRead()) {
-                message.setRead(true);
-            }
+        Long lastId = messageRepository.findLastMessageId(chatId);
+        if (lastId == null) {
+            return;
         }
-
-        chatRepository.save(chat);
+        messageRepository.markAsRead(chatId, username, lastId);
+        chatRepository.markAsRead(chatId, username, lastId);
     }
 
     public Long getUnreadMessageCount(String username) {
@@ -0,0 +1,17 @@
+package com.example.backend.service;
+
+import java.time.LocalDateTime;
+
+// Relation of a user with a community, read in a single query (see
+// CommunityService.getAccess). bannedUntil is null if the user is not banned.
+public record CommunityAccess(boolean admin, boolean member, boolean moderator, LocalDateTime bannedUntil) {
+
+    public boolean isBanned() {
+        return bannedUntil != null;
+    }
+
+    // Community admins and moderators can remove and ban members
+    public boolean canModerate() {
+        return admin || moderator;
+    }
+}
@@ -1,40 +1,50 @@
 package com.example.backend.service;
 
 import com.example.backend.entity.Ban;
+import com.example.backend.entity.CommunityMember;
 import com.example.backend.repository.BanRepository;
 import com.example.backend.repository.CommunityRepository;
 import jakarta.annotation.PostConstruct;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 import com.example.backend.entity.Community;
 import com.example.backend.entity.User;
 import com.example.backend.repository.UserRepository;
-import org.springframework.core.io.ClassPathResource;
 
 import java.io.IOException;
-import java.sql.Blob;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 @Service
+@ConditionalOnProperty(name = "sample-data.enabled", havingValue = "true", matchIfMissing = true)
 @DependsOn("userSampleService")
 public class CommunitySampleService {
 
     private final CommunityRepository communityRepository;
+    private final BatchWriter batchWriter;
 
     private final UserRepository userRepository;
     private final BanRepository banRepository;
+    private final ImageService imageService;
+    private final UserSampleService userSampleService;
 
-    public CommunitySampleService(CommunityRepository communityRepository, UserRepository userRepository, BanRepository banRepository) {
+    public CommunitySampleService(CommunityRepository communityRepository, BatchWriter batchWriter, UserRepository userRepository, BanRepository banRepository, ImageService imageService, UserSampleService userSampleService) {
         this.communityRepository = communityRepository;
+        this.batchWriter = batchWriter;
         this.userRepository = userRepository;
         this.banRepository = banRepository;
+        this.imageService = imageService;
+        this.userSampleService = userSampleService;
     }
 
     @PostConstruct
     public void init() throws IOException, SQLException {
+        if (!userSampleService.isLoaded()) {
+            return;
+        }
         List<Community> communities = new ArrayList<>();
         List<String> communityNames = List.of("Bookmarks Forums", "Bookmarks News", "Bookmarks Reviews", "Bookmarks Events");
         List<String> descriptions = List.of("A forum for book readers", "News about books", "Reviews of books", "Events for book readers");
@@ -42,13 +52,7 @@ public class CommunitySampleService {
         // Create first community with banner
         Community firstCommunity = new Community(communityNames.get(0), descriptions.get(0), null, userRepository.findByUsername("AdminReader"));
         try {
-            ClassPathResource resource = new ClassPathResource("static/assets/cusbanner1.PNG");
-            if (resource.exists()) {
-                Blob banner = new javax.sql.rowset.serial.SerialBlob(resource.getInputStream().readAllBytes());
-                firstCommunity.setBanner(banner);
-            } else {
-                System.out.println("Warning: Banner image file not found: static/assets/cusbanner1.PNG");
-            }
+            firstCommunity.setBannerMetadata(imageService.storeAsset("/assets/cusbanner1.PNG"));
         } catch (Exception e) {
             System.out.println("Warning: Could not load banner image: " + e.getMessage());
         }
@@ -59,13 +63,7 @@ public class CommunitySampleService {
             Community community = new Community(communityNames.get(i), descriptions.get(i), null, userRepository.findByUsername("AdminReader"));
             if (i == 2) { // Bookmarks Reviews
                 try {
-                    ClassPathResource resource = new ClassPathResource("static/assets/communityBackground.jpg");
-                    if (resource.exists()) {
-                        Blob banner = new javax.sql.rowset.serial.SerialBlob(resource.getInputStream().readAllBytes());
-                        community.setBanner(banner);
-                    } else {
-                        System.out.println("Warning: Banner image file not found: static/assets/communityBackground.jpg");
-                    }
+                    community.setBannerMetadata(imageService.storeAsset("/assets/communityBackground.jpg"));
                 } catch (Exception e) {
                     System.out.println("Warning: Could not load banner image: " + e.getMessage());
                 }
@@ -80,28 +78,32 @@ public class CommunitySampleService {
         communityRepository.saveAll(communities);
 
         // MEMBERS
+        List<CommunityMember> members = new ArrayList<>();
+        // The admin of each community is a member of it
+        for (Community community : communities) {
+            members.add(new CommunityMember(community.getIdentifier(), community.getAdmin().getUsername()));
+        }
+
         // BookReader_14 is a member of all communities
-        User user = userRepository.findByUsername("BookReader_14");
         for (Community community : communities) {
-            community.addMember(user);
+            members.add(new CommunityMember(community.getIdentifier(), "BookReader_14"));
         }
 
         // FanBook_785 is a member of Bookmarks News
-        user = userRepository.findByUsername("FanBook_785");
         for (int i = 1; i < 2; i++) {
-            communities.get(i).addMember(user);
+            members.add(new CommunityMember(communities.get(i).getIdentifier(), "FanBook_785"));
         }
 
         // YourReader is a member of bookmarks forums
-        user = userRepository.findByUsername("YourReader");
-        communities.get(0).addMember(user);
+        members.add(new CommunityMember(communities.get(0).getIdentifier(), "YourReader"));
 
         // AdminReader joins last community
-        user = userRepository.findByUsername("AdminReader");
-        lastCommunity.addMember(user);
+        members.add(new CommunityMember(lastCommunity.getIdentifier(), "AdminReader"));
+
+        batchWriter.insertAll(members);
 
         // "BadDude" is banned from the first community and second community
-        user = userRepository.findByUsername("ZBadDude");
+        User user = userRepository.findByUsername("ZBadDude");
         LocalDateTime now = LocalDateTime.now();
         user.addBanCount();
         communities.get(0).banUser(user, now.plusDays(7), "because you are a bad dude");
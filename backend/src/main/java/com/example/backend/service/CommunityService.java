@@ -1,30 +1,67 @@
 package com.example.backend.service;
 
+import com.example.backend.config.SecondLevelCacheSync;
+import com.example.backend.dto.Cursor;
+import com.example.backend.dto.MemberSummary;
 import com.example.backend.entity.Ban;
 import com.example.backend.entity.Community;
 import com.example.backend.entity.User;
 import com.example.backend.repository.BanRepository;
+import com.example.backend.repository.CommunityMemberRepository;
+import com.example.backend.repository.CommunityModeratorRepository;
 import com.example.backend.repository.CommunityRepository;
 import com.example.backend.repository.UserRepository;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 @Service
 public class CommunityService {
 
     private final CommunityRepository communityRepository;
+    private final CommunityMemberRepository communityMemberRepository;
+    private final CommunityModeratorRepository communityModeratorRepository;
     private final UserRepository userRepository;
     private final BanRepository banRepository;
-
-    public CommunityService(CommunityRepository communityRepository, UserRepository userRepository, BanRepository banRepository) {
+    private final SearchIndexService searchIndexService;
+    private final FeedService feedService;
+    private final LeaderboardService leaderboardService;
+    private final MembershipIndex membershipIndex;
+    private final UserStatsService userStatsService;
+    private final ExpiryScheduler expiryScheduler;
+    private final SecondLevelCacheSync secondLevelCache;
+
+    public CommunityService(CommunityRepository communityRepository, CommunityMemberRepository communityMemberRepository,
+            CommunityModeratorRepository communityModeratorRepository, UserRepository userRepository, BanRepository banRepository,
+            SearchIndexService searchIndexService, FeedService feedService, LeaderboardService leaderboardService,
+            MembershipIndex membershipIndex, UserStatsService userStatsService, ExpiryScheduler expiryScheduler,
+            SecondLevelCacheSync secondLevelCache) {
         this.communityRepository = communityRepository;
+        this.communityMemberRepository = communityMemberRepository;
+        this.communityModeratorRepository = communityModeratorRepository;
         this.userRepository = userRepository;
         this.banRepository = banRepository;
+        this.searchIndexService = searchIndexService;
+        this.feedService = feedService;
+        this.leaderboardService = leaderboardService;
+        this.membershipIndex = membershipIndex;
+        this.userStatsService = userStatsService;
+        this.expiryScheduler = expiryScheduler;
+        this.secondLevelCache = secondLevelCache;
     }
 
     public Community getCommunityById(Long id) {
@@ -35,25 +72,72 @@ public class CommunityService {
         return communityRepository.findByDescription(description, pageable);
     }
 
-    public Page<User> getMembers(Long identifier, Pageable pageable) {
-        return communityRepository.getMembers(identifier, pageable);
+    public Page<MemberSummary> getMembers(Long identifier, Pageable pageable) {
+        Page<MemberSummary> members = communityMemberRepository.getMembers(identifier, pageable);
+        return members.map(withRoles(members));
+    }
+
+    // Keyset page of the members of a community sorted by username (see Cursor),
+    // optionally only those whose username contains the query
+    public Slice<MemberSummary> getMembersAfter(Long identifier, String query, Cursor cursor, int size) {
+        Pageable pageable = PageRequest.of(0, size);
+        Slice<MemberSummary> members = query != null
+                ? communityMemberRepository.searchMembersAfter(identifier, query, cursor.stringKey(), pageable)
+                : communityMemberRepository.getMembersAfter(identifier, cursor.stringKey(), pageable);
+        return members.map(withRoles(members));
+    }
+
+    // Adds the roles to the members of a page, read with one query instead of one per
+    // member
+    private Function<MemberSummary, MemberSummary> withRoles(Slice<MemberSummary> members) {
+        Map<String, List<String>> roles = new HashMap<>();
+        if (members.hasContent()) {
+            for (Object[] row : userRepository.getRoles(members.map(MemberSummary::username).getContent())) {
+                roles.computeIfAbsent((String) row[0], username -> new ArrayList<>()).add((String) row[1]);
+            }
+        }
+        return member -> member.withRoles(roles.getOrDefault(member.username(), List.of()));
     }
 
     public int getNumberOfUsers(Long identifier) {
-        return communityRepository.getMembersList(identifier).size();
+        if (membershipIndex.isLoaded()) {
+            return Math.max(membershipIndex.getMemberCount(identifier), 0);
+        }
+        return communityMemberRepository.countByCommunityId(identifier);
     }
 
     public int getNumberOfPosts(Long identifier) {
         return communityRepository.getPostsList(identifier).size();
     }
 
+    // Full-text search, then a substring search when it finds nothing or the query has
+    // no word it can match (a part of a word, "ook" in "Bookmarks")
     public Page<Community> engineSearchCommunities(String query, String sortCriteria, Pageable pageable) {
-        return switch (sortCriteria) {
-            case "creationDate" -> communityRepository.engineSearchCommunitiesOrderByCreationDate(query, pageable);
-            case "members" -> communityRepository.engineSearchCommunitiesOrderByMembers(query, pageable);
-            case "lastPostDate" -> communityRepository.engineSearchCommunitiesOrderByLastPostDate(query, pageable);
-            default -> communityRepository.engineSearchCommunities(query, pageable);
-        };
+        String terms = searchIndexService.toBooleanQuery(query);
+        if (terms != null) {
+            Page<Community> communities = switch (sortCriteria) {
+                case "creationDate" -> communityRepository.engineSearchCommunitiesOrderByCreationDate(terms, pageable);
+                case "members" -> communityRepository.engineSearchCommunitiesOrderByMembers(terms, pageable);
+                case "lastPostDate" -> communityRepository.engineSearchCommunitiesOrderByLastPostDate(terms, pageable);
+                default -> communityRepository.engineSearchCommunities(terms, pageable);
+            };
+            if (communities.getTotalElements() > 0) {
+                return communities;
+            }
+        }
+        String text = searchIndexService.toSubstring(query);
+        return text == null ? Page.empty(pageable) : searchCommunitiesBySubstring(text, sortCriteria, pageable);
+    }
+
+    // Substring search in the orders of engineSearchCommunities, the newest community
+    // first when there is no relevance to rank by
+    private Page<Community> searchCommunitiesBySubstring(String text, String sortCriteria, Pageable pageable) {
+        if (sortCriteria.equals("members")) {
+            return communityRepository.searchCommunitiesBySubstringOrderByMembers(text, pageable);
+        }
+        String property = sortCriteria.equals("lastPostDate") ? "fullLastPostDate" : "fullCreationDate";
+        return communityRepository.searchCommunitiesBySubstring(text, PageRequest.of(pageable.getPageNumber(),
+                pageable.getPageSize(), Sort.by(Sort.Direction.DESC, property, "identifier")));
     }
 
     public Page<Community> getCommunities(String sortCriteria, Pageable pageable) {
@@ -87,66 +171,156 @@ public class CommunityService {
         };
     }
 
+    @Transactional
     public void saveCommunity(Community community) {
-        communityRepository.save(community);
+        boolean created = community.getIdentifier() == null;
+        // flushed so the row is there for the membership of the admin (a native insert)
+        communityRepository.saveAndFlush(community);
+        Long communityId = community.getIdentifier();
+        String admin = community.getAdmin() == null ? null : community.getAdmin().getUsername();
+        boolean adminJoined = false;
+        if (created) {
+            userStatsService.adminChanged(null, admin);
+            // the admin is the first member
+            if (admin != null && communityMemberRepository.addMember(communityId, admin) > 0) {
+                userStatsService.communityJoined(admin);
+                adminJoined = true;
+            }
+        }
+        boolean joined = adminJoined;
+        String name = community.getName();
+        int members = communityMemberRepository.countByCommunityId(communityId);
+        AfterCommit.run(() -> {
+            membershipIndex.communitySaved(communityId, admin);
+            if (joined) {
+                membershipIndex.memberJoined(communityId, admin);
+            }
+            leaderboardService.communitySaved(communityId, name, members);
+        });
     }
 
     public void deleteCommunity(Community community) {
         if (community != null) {
+            // the posts and memberships go with the community, so the counters of
+            // everyone involved are recomputed afterwards
+            Set<String> affected = new HashSet<>(communityMemberRepository.getMemberUsernames(community.getIdentifier()));
+            affected.addAll(communityRepository.getPostAuthorUsernames(community.getIdentifier()));
+            if (community.getAdmin() != null) {
+                affected.add(community.getAdmin().getUsername());
+            }
             communityRepository.delete(community);
+            userStatsService.refresh(affected);
+            AfterCommit.run(() -> {
+                membershipIndex.communityDeleted(community.getIdentifier());
+                leaderboardService.communityDeleted(community.getIdentifier());
+            });
         }
     }
 
     // Given username and communityId, check if the user is a member of the community
     public boolean isUserMemberOfCommunity(String username, Long communityId) {
-        List<User> members = communityRepository.getMembersList(communityId);
-        return members.contains(userRepository.findByUsername(username));
+        CommunityAccess access = getAccess(username, communityId);
+        return access != null && access.member();
+    }
+
+    // Relation of a user with a community (admin, member, moderator, banned), null if
+    // the community does not exist. Read from the membership index once it is loaded
+    // and in one query before. A ban that ended counts as lifted (ExpiryScheduler
+    // removes it).
+    public CommunityAccess getAccess(String username, Long communityId) {
+        if (membershipIndex.isLoaded()) {
+            CommunityAccess access = membershipIndex.getAccess(username, communityId);
+            if (access != null && access.isBanned() && access.bannedUntil().isBefore(LocalDateTime.now())) {
+                return new CommunityAccess(access.admin(), access.member(), access.moderator(), null);
+            }
+            return access;
+        }
+        List<Object[]> rows = communityRepository.getAccess(communityId, username);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        Object[] row = rows.get(0);
+        LocalDateTime bannedUntil = row[3] instanceof Timestamp timestamp ? timestamp.toLocalDateTime()
+                : (LocalDateTime) row[3];
+        if (bannedUntil != null && bannedUntil.isBefore(LocalDateTime.now())) {
+            bannedUntil = null;
+        }
+        return new CommunityAccess(isTrue(row[0]), isTrue(row[1]), isTrue(row[2]), bannedUntil);
+    }
 
+    // MySQL returns comparisons and EXISTS as numbers
+    private static boolean isTrue(Object value) {
+        if (value instanceof Boolean bool) {
+            return bool;
+        }
+        return value instanceof Number number && number.intValue() != 0;
     }
 
     // Given username and communityId, check if the user is an admin of the community
     public boolean isUserAdminOfCommunity(String username, Long communityId) {
+        if (membershipIndex.isLoaded()) {
+            CommunityAccess access = membershipIndex.getAccess(username, communityId);
+            return access != null && access.admin();
+        }
         User communityAdmin = communityRepository.getAdmin(communityId);
         return communityAdmin.getUsername().equals(username);
     }
 
-    // Given username and communityId, user joins the community
+    // Given username and communityId, user joins the community (a single row of
+    // user_community, the counters only move if it was not there yet)
+    @Transactional
     public void joinCommunity(String username, Long communityId) {
         User user = userRepository.findByUsername(username);
         Community community = communityRepository.findByIdentifier(communityId);
-        if (user != null && community != null && !isUserMemberOfCommunity(username, communityId)) {
-                community.addMember(user);
-                communityRepository.save(community);
-            }
+        if (user != null && community != null && communityMemberRepository.addMember(communityId, username) > 0) {
+            userStatsService.communityJoined(username);
+            feedService.joinCommunity(username, communityId);
+            AfterCommit.run(() -> {
+                membershipIndex.memberJoined(communityId, username);
+                leaderboardService.memberJoined(communityId);
+            });
+        }
     }
 
     // Given username and communityId, user leaves the community
+    @Transactional
     public void leaveCommunity(String username, Long communityId) {
         User user = userRepository.findByUsername(username);
         Community community = communityRepository.findByIdentifier(communityId);
-        if (user != null && community != null && isUserMemberOfCommunity(username, communityId)) {
-            community.removeMember(user);
-            communityRepository.save(community);
+        if (user != null && community != null && communityMemberRepository.removeMember(communityId, username) > 0) {
+            userStatsService.communityLeft(username);
+            feedService.leaveCommunity(username, communityId);
+            AfterCommit.run(() -> {
+                membershipIndex.memberLeft(communityId, username);
+                leaderboardService.memberLeft(communityId);
+            });
         }
     }
 
     // Given username and communityId, user becomes an admin of the community
+    @Transactional
     public void promoteUserToAdmin(String username, long communityId) {
         User user = userRepository.findByUsername(username);
         Community community = communityRepository.findByIdentifier(communityId);
         if (user != null && community != null && !isUserAdminOfCommunity(username, communityId)) {
+            String oldAdmin = community.getAdmin() == null ? null : community.getAdmin().getUsername();
             community.setAdmin(user);
             communityRepository.save(community);
+            userStatsService.adminChanged(oldAdmin, username);
+            AfterCommit.run(() -> membershipIndex.adminChanged(communityId, username));
         }
     }
 
     // Given username and communityId, user is no longer an admin of the community
+    @Transactional
     public void demoteUserFromAdmin(String username, Long communityId) {
         User user = userRepository.findByUsername(username);
         Community community = communityRepository.findByIdentifier(communityId);
         if (user != null && community != null && isUserAdminOfCommunity(username, communityId)) {
             community.setAdmin(null);
             communityRepository.save(community);
+            userStatsService.adminChanged(username, null);
+            AfterCommit.run(() -> membershipIndex.adminChanged(communityId, null));
         }
     }
 
@@ -157,23 +331,25 @@ public class CommunityService {
 
     // Get the moderators of a community
     public Page<User> getModerators(Long communityId, Pageable pageable) {
-        return communityRepository.getModerators(communityId, pageable);
+        return communityModeratorRepository.getModerators(communityId, pageable);
     }
 
     // Is user a moderator of the community
     public boolean isUserModeratorOfCommunity(String username, Long communityId) {
-        User user = userRepository.findByUsername(username);
-        Community community = communityRepository.findByIdentifier(communityId);
-        return user != null && community != null && community.getModerators().contains(user);
+        CommunityAccess access = getAccess(username, communityId);
+        return access != null && access.moderator();
     }
 
     // Given username and communityId, user becomes a moderator of the community
     public void promoteUserToModerator(String username, Long communityId) {
         User user = userRepository.findByUsername(username);
         Community community = communityRepository.findByIdentifier(communityId);
-        if (user != null && community != null && !community.getModerators().contains(user)) {
-            community.addModerator(user);
-            communityRepository.save(community);
+        if (user != null && community != null && communityModeratorRepository.addModerator(communityId, username) > 0) {
+            AfterCommit.run(() -> {
+                membershipIndex.moderatorAdded(communityId, username);
+                // Hibernate only drops the cached moderators of this node
+                secondLevelCache.evictQueryRegion("community-moderators");
+            });
         }
     }
 
@@ -181,13 +357,18 @@ public class CommunityService {
     public void demoteUserFromModerator(String username, Long communityId) {
         User user = userRepository.findByUsername(username);
         Community community = communityRepository.findByIdentifier(communityId);
-        if (user != null && community != null && community.getModerators().contains(user)) {
-            community.removeModerator(user);
-            communityRepository.save(community);
+        if (user != null && community != null && communityModeratorRepository.removeModerator(communityId, username) > 0) {
+            AfterCommit.run(() -> {
+                membershipIndex.moderatorRemoved(communityId, username);
+                secondLevelCache.evictQueryRegion("community-moderators");
+            });
         }
     }
 
-    // Ban a user from a community
+    // Ban a user from a community. The ban, the ban count and the removal of the
+    // membership are written in one transaction, the in-memory state follows once it
+    // commits.
+    @Transactional
     public void banUserFromCommunity(String username, Long communityId, int duration, String reason) {
         User user = userRepository.findByUsername(username);
         Community community = communityRepository.findByIdentifier(communityId);
@@ -212,8 +393,24 @@ public class CommunityService {
             userRepository.save(user);
 
             // remove user from community
-            community.removeMember(user);
             communityRepository.save(community);
+            boolean wasMember = communityMemberRepository.removeMember(communityId, username) > 0;
+            feedService.leaveCommunity(user.getUsername(), community.getIdentifier());
+            if (wasMember) {
+                userStatsService.communityLeft(username);
+            }
+
+            LocalDateTime banUntil = timeNow;
+            int banCount = user.getBanCount();
+            AfterCommit.run(() -> {
+                membershipIndex.userBanned(communityId, username, banUntil);
+                membershipIndex.memberLeft(communityId, username);
+                expiryScheduler.banCreated(communityId, username, banUntil);
+                leaderboardService.userSaved(username, banCount);
+                if (wasMember) {
+                    leaderboardService.memberLeft(communityId);
+                }
+            });
         }
     }
 
@@ -254,38 +451,24 @@ public class CommunityService {
     }
 
     // Given the ban id, unban the user
+    @Transactional
     public void unbanUserFromCommunityById(Long banId) {
         Ban ban = communityRepository.getBanById(banId);
         if (ban != null) {
             Community community = ban.getCommunity();
+            Long communityId = community.getIdentifier();
+            String username = ban.getUser().getUsername();
             community.unbanUser(banId);
             communityRepository.save(community);
             banRepository.delete(ban);
+            AfterCommit.run(() -> membershipIndex.userUnbanned(communityId, username));
         }
     }
 
     // Given username and communityId, check if the user is banned from the community
     public boolean isUserBannedFromCommunity(String username, Long communityId) {
-        User user = userRepository.findByUsername(username);
-        Community community = communityRepository.findByIdentifier(communityId);
-        if (user != null && community != null) {
-            Ban ban = communityRepository.getBan(communityId, user.getUsername());
-            
-            if (ban != null) {
-                // is ban over?
-                if (ban.getBanUntil().isBefore(LocalDateTime.now())) {
-                    // unban user
-                    community.unbanUserByUser(user);
-                    communityRepository.save(community);
-                    return false;
-                } else {
-                    return true;
-                }
-            } else {
-                return false;
-            }
-        }
-        return false;
+        CommunityAccess access = getAccess(username, communityId);
+        return access != null && access.isBanned();
     }
 
     // Given username and communityId, return the ban of the user in the community
@@ -299,21 +482,13 @@ public class CommunityService {
     }
 
     public List<Object[]> getMostPopularCommunitiesCount(int size) {
-        List<Object[]> communities = communityRepository.getMostPopularCommunitiesCountWithId();
-        if (communities != null){
-            if (size > communities.size()) {
-                return communities;
-            } else {
-                return communities.subList(0, size);
-            }
-        } else {
-            return Collections.emptyList();
-        }
+        return leaderboardService.getMostPopularCommunities(size);
     }
 
     // Search members of a community by username
-    public Page<User> searchMembers(Long communityId, String username, Pageable pageable) {
-        return communityRepository.searchMembers(communityId, username, pageable);
+    public Page<MemberSummary> searchMembers(Long communityId, String username, Pageable pageable) {
+        Page<MemberSummary> members = communityMemberRepository.searchMembers(communityId, username, pageable);
+        return members.map(withRoles(members));
     }
 
 }
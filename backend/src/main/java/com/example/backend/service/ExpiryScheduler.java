@@ -0,0 +1,190 @@
+package com.example.backend.service;
+
+import com.example.backend.config.SecondLevelCacheSync;
+import com.example.backend.entity.User;
+import com.example.backend.repository.BanRepository;
+import com.example.backend.repository.UserRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Lifts community bans and account suspensions when they end. The ones ending before
+// now + expiry.horizon-ms are kept in a queue ordered by end time, loaded page by page
+// through the indexes on ban.ban_until and user.disabled_until and topped up every
+// expiry.reload-ms; new ones are added as they are created. Every expiry.tick-ms the
+// due entries are lifted in batches with statements that check the end time again, so
+// an entry for a ban or suspension that was lifted or extended in the meantime changes
+// nothing. The checks on the request path (CommunityService.getAccess,
+// UserService.isAccountDisabled) treat an ended ban or suspension as lifted and never
+// write.
+@Service
+public class ExpiryScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExpiryScheduler.class);
+
+    // Earlier than any ban or suspension
+    private static final LocalDateTime START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private static final String LIFT_BAN = "DELETE FROM ban WHERE community_id = ? AND username = ? AND ban_until <= ?";
+    private static final String LIFT_SUSPENSION = "UPDATE `user` SET is_disabled = FALSE "
+            + "WHERE username = ? AND is_disabled = TRUE AND disabled_until <= ?";
+
+    // communityId is null for a suspension of the account
+    private record Expiry(LocalDateTime at, String username, Long communityId) {
+    }
+
+    private final BanRepository banRepository;
+    private final UserRepository userRepository;
+    private final MembershipIndex membershipIndex;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SecondLevelCacheSync secondLevelCache;
+    private final long horizon;
+    private final int batchSize;
+
+    private final PriorityQueue<Expiry> queue = new PriorityQueue<>(Comparator.comparing(Expiry::at));
+
+    // Everything ending before this is in the queue (or was lifted)
+    private LocalDateTime loadedUntil = START;
+
+    public ExpiryScheduler(BanRepository banRepository, UserRepository userRepository,
+            MembershipIndex membershipIndex, JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            SecondLevelCacheSync secondLevelCache, @Value("${expiry.horizon-ms:600000}") long horizon,
+            @Value("${expiry.batch-size:500}") int batchSize) {
+        this.banRepository = banRepository;
+        this.userRepository = userRepository;
+        this.membershipIndex = membershipIndex;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.secondLevelCache = secondLevelCache;
+        this.horizon = horizon;
+        this.batchSize = batchSize;
+    }
+
+    // A user was banned from a community
+    public synchronized void banCreated(long communityId, String username, LocalDateTime banUntil) {
+        // the ones after loadedUntil come with the next load
+        if (banUntil.isBefore(loadedUntil)) {
+            queue.add(new Expiry(banUntil, username, communityId));
+        }
+    }
+
+    // An account was suspended
+    public synchronized void suspensionCreated(String username, LocalDateTime disabledUntil) {
+        if (disabledUntil.isBefore(loadedUntil)) {
+            queue.add(new Expiry(disabledUntil, username, null));
+        }
+    }
+
+    // Load the bans and suspensions ending before now + horizon that are not in the
+    // queue yet (at startup, all of them that already ended too)
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${expiry.reload-ms:300000}", fixedDelayString = "${expiry.reload-ms:300000}")
+    public synchronized void load() {
+        LocalDateTime from = loadedUntil;
+        LocalDateTime to = LocalDateTime.now().plusNanos(horizon * 1_000_000);
+        int loaded = 0;
+
+        LocalDateTime afterTime = from;
+        long afterId = -1;
+        List<Object[]> bans;
+        do {
+            bans = banRepository.getEndingBans(afterTime, afterId, to, PageRequest.of(0, batchSize));
+            for (Object[] row : bans) {
+                queue.add(new Expiry((LocalDateTime) row[2], (String) row[1], (Long) row[0]));
+                afterTime = (LocalDateTime) row[2];
+                afterId = (Long) row[3];
+            }
+            loaded += bans.size();
+        } while (bans.size() == batchSize);
+
+        afterTime = from;
+        String afterUsername = "";
+        List<Object[]> suspensions;
+        do {
+            suspensions = userRepository.getEndingSuspensions(afterTime, afterUsername, to,
+                    PageRequest.of(0, batchSize));
+            for (Object[] row : suspensions) {
+                queue.add(new Expiry((LocalDateTime) row[1], (String) row[0], null));
+                afterTime = (LocalDateTime) row[1];
+                afterUsername = (String) row[0];
+            }
+            loaded += suspensions.size();
+        } while (suspensions.size() == batchSize);
+
+        loadedUntil = to;
+        LOG.debug("Loaded {} bans and suspensions ending before {}", loaded, to);
+    }
+
+    // Lift what is due, a batch at a time
+    @Scheduled(fixedDelayString = "${expiry.tick-ms:1000}")
+    public void tick() {
+        List<Expiry> due;
+        while (!(due = pollDue()).isEmpty()) {
+            try {
+                lift(due);
+            } catch (RuntimeException e) {
+                // put them back, they are retried on the next tick
+                LOG.error("Could not lift {} bans and suspensions", due.size(), e);
+                synchronized (this) {
+                    queue.addAll(due);
+                }
+                return;
+            }
+        }
+    }
+
+    private synchronized List<Expiry> pollDue() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Expiry> due = new ArrayList<>();
+        while (due.size() < batchSize && !queue.isEmpty() && !queue.peek().at().isAfter(now)) {
+            due.add(queue.poll());
+        }
+        return due;
+    }
+
+    private void lift(List<Expiry> due) {
+        List<Object[]> bans = new ArrayList<>();
+        List<Object[]> suspensions = new ArrayList<>();
+        for (Expiry expiry : due) {
+            Timestamp at = Timestamp.valueOf(expiry.at());
+            if (expiry.communityId() == null) {
+                suspensions.add(new Object[] { expiry.username(), at });
+            } else {
+                bans.add(new Object[] { expiry.communityId(), expiry.username(), at });
+            }
+        }
+
+        int[][] counts = transactionTemplate.execute(status -> new int[][] {
+                bans.isEmpty() ? new int[0] : jdbcTemplate.batchUpdate(LIFT_BAN, bans),
+                suspensions.isEmpty() ? new int[0] : jdbcTemplate.batchUpdate(LIFT_SUSPENSION, suspensions) });
+
+        // only the rows that still ended at that time were changed
+        for (int i = 0; i < bans.size(); i++) {
+            if (counts[0][i] != 0) {
+                membershipIndex.userUnbanned((Long) bans.get(i)[0], (String) bans.get(i)[1]);
+            }
+        }
+        for (int i = 0; i < suspensions.size(); i++) {
+            if (counts[1][i] != 0) {
+                secondLevelCache.evict(User.class, suspensions.get(i)[0]);
+            }
+        }
+    }
+}
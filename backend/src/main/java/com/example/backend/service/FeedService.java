@@ -0,0 +1,222 @@
+package com.example.backend.service;
+
+import com.example.backend.entity.FeedEntry;
+import com.example.backend.entity.Post;
+import com.example.backend.repository.CommunityMemberRepository;
+import com.example.backend.repository.FeedEntryRepository;
+import com.example.backend.repository.PostRepository;
+import com.example.backend.repository.UserRepository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Home feeds materialized on write. When a post is published its id is pushed to the
+// timeline of every follower of the author and every member of the community, so the
+// /users/me/... feeds only have to load a list of ids and hydrate them in one query.
+// Authors and communities bigger than feed.fanout-limit are not fanned out; their posts
+// are merged into the timeline when it is read. A timeline keeps the newest
+// feed.timeline-size posts, in memory and in the table, so the "most liked" feeds rank
+// the posts of that window and not every post of the followed users and communities.
+@Service
+public class FeedService {
+
+    private static final String INSERT_ENTRY = "INSERT IGNORE INTO feed_entry (username, feed, post_id, author_username, community_id) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String BACKFILL_AUTHOR = "INSERT IGNORE INTO feed_entry (username, feed, post_id, author_username, community_id) "
+            + "SELECT ?, 'FOLLOWING', p.identifier, p.author_username, p.community_identifier FROM post p "
+            + "WHERE p.author_username = ? ORDER BY p.identifier DESC LIMIT ?";
+
+    private static final String BACKFILL_COMMUNITY = "INSERT IGNORE INTO feed_entry (username, feed, post_id, author_username, community_id) "
+            + "SELECT ?, 'COMMUNITIES', p.identifier, p.author_username, p.community_identifier FROM post p "
+            + "WHERE p.community_identifier = ? ORDER BY p.identifier DESC LIMIT ?";
+
+    // Drop the entries of a timeline older than its newest feed.timeline-size posts (the
+    // derived table is needed because MySQL can't read the table a DELETE writes)
+    private static final String TRIM_TIMELINE = "DELETE FROM feed_entry WHERE username = ? AND feed = ? AND post_id < "
+            + "(SELECT post_id FROM (SELECT post_id FROM feed_entry WHERE username = ? AND feed = ? "
+            + "ORDER BY post_id DESC LIMIT 1 OFFSET ?) oldest)";
+
+    private final FeedEntryRepository feedEntryRepository;
+    private final PostRepository postRepository;
+    private final UserRepository userRepository;
+    private final CommunityMemberRepository communityMemberRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    // Number of posts kept in each timeline
+    private final int timelineSize;
+
+    // Followers / members above which a post is not fanned out
+    private final int fanoutLimit;
+
+    // Timelines kept in memory (least recently read are evicted)
+    private final Map<String, Timeline> timelines;
+
+    // Newest post first. A timeline is put in the map before it is read from the table,
+    // so a post published meanwhile is added to it and kept when the read is merged in.
+    private static final class Timeline {
+        private final TreeSet<Long> ids = new TreeSet<>(Comparator.reverseOrder());
+        private boolean loaded;
+    }
+
+    public FeedService(FeedEntryRepository feedEntryRepository, PostRepository postRepository,
+            UserRepository userRepository, CommunityMemberRepository communityMemberRepository, JdbcTemplate jdbcTemplate,
+            @Value("${feed.timeline-size:500}") int timelineSize,
+            @Value("${feed.fanout-limit:1000}") int fanoutLimit,
+            @Value("${feed.cached-timelines:10000}") int cachedTimelines) {
+        this.feedEntryRepository = feedEntryRepository;
+        this.postRepository = postRepository;
+        this.userRepository = userRepository;
+        this.communityMemberRepository = communityMemberRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.timelineSize = timelineSize;
+        this.fanoutLimit = fanoutLimit;
+        this.timelines = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Timeline> eldest) {
+                return size() > cachedTimelines;
+            }
+        });
+    }
+
+    // Push a new post to the feeds of the followers of its author and the members of
+    // its community
+    public void publish(Post post) {
+        String author = post.getAuthor().getUsername();
+        Long communityId = post.getCommunity().getIdentifier();
+        List<Object[]> rows = new ArrayList<>();
+
+        if (post.getAuthor().getFollowers() <= fanoutLimit) {
+            for (String follower : userRepository.getFollowerUsernames(author)) {
+                rows.add(new Object[] { follower, FeedEntry.Feed.FOLLOWING.name(), post.getIdentifier(), author, communityId });
+            }
+        }
+        if (communityMemberRepository.countByCommunityId(communityId) <= fanoutLimit) {
+            for (String member : communityMemberRepository.getMemberUsernames(communityId)) {
+                rows.add(new Object[] { member, FeedEntry.Feed.COMMUNITIES.name(), post.getIdentifier(), author, communityId });
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_ENTRY, rows);
+        List<Object[]> trims = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            trims.add(new Object[] { row[0], row[1], row[0], row[1], timelineSize - 1 });
+        }
+        jdbcTemplate.batchUpdate(TRIM_TIMELINE, trims);
+
+        // only the timelines already in memory are updated, the rest are loaded from
+        // the table when they are read
+        for (Object[] row : rows) {
+            Timeline timeline = timelines.get(key((String) row[0], FeedEntry.Feed.valueOf((String) row[1])));
+            if (timeline != null) {
+                synchronized (timeline) {
+                    add(timeline, List.of(post.getIdentifier()));
+                }
+            }
+        }
+    }
+
+    // A user started following an author: add the latest posts of the author
+    public void follow(String username, String author) {
+        jdbcTemplate.update(BACKFILL_AUTHOR, username, author, timelineSize);
+        trim(username, FeedEntry.Feed.FOLLOWING);
+        timelines.remove(key(username, FeedEntry.Feed.FOLLOWING));
+    }
+
+    public void unfollow(String username, String author) {
+        feedEntryRepository.deleteAuthorEntries(username, author);
+        timelines.remove(key(username, FeedEntry.Feed.FOLLOWING));
+    }
+
+    // A user joined a community: add the latest posts of the community
+    public void joinCommunity(String username, Long communityId) {
+        jdbcTemplate.update(BACKFILL_COMMUNITY, username, communityId, timelineSize);
+        trim(username, FeedEntry.Feed.COMMUNITIES);
+        timelines.remove(key(username, FeedEntry.Feed.COMMUNITIES));
+    }
+
+    public void leaveCommunity(String username, Long communityId) {
+        feedEntryRepository.deleteCommunityEntries(username, communityId);
+        timelines.remove(key(username, FeedEntry.Feed.COMMUNITIES));
+    }
+
+    // Most liked posts of the users followed by a user
+    public Page<Post> getFollowingFeedByLikes(String username, Pageable pageable) {
+        List<Long> ids = getTimeline(username, FeedEntry.Feed.FOLLOWING);
+        List<String> largeAuthors = userRepository.getLargeFollowingOfUser(username, fanoutLimit);
+        if (!largeAuthors.isEmpty()) {
+            ids = merge(ids, postRepository.getPostIdsOfAuthors(largeAuthors, PageRequest.of(0, timelineSize)));
+        }
+        return ids.isEmpty() ? Page.empty(pageable) : postRepository.findByIdentifiersOrderByLikes(ids, pageable);
+    }
+
+    // Most liked posts of the communities of a user
+    public Page<Post> getCommunitiesFeedByLikes(String username, Pageable pageable) {
+        List<Long> ids = getCommunitiesTimeline(username);
+        return ids.isEmpty() ? Page.empty(pageable) : postRepository.findByIdentifiersOrderByLikes(ids, pageable);
+    }
+
+    // Most recent posts of the communities of a user
+    public Page<Post> getCommunitiesFeedByDate(String username, Pageable pageable) {
+        List<Long> ids = getCommunitiesTimeline(username);
+        return ids.isEmpty() ? Page.empty(pageable) : postRepository.findByIdentifiersOrderByCreationDate(ids, pageable);
+    }
+
+    private List<Long> getCommunitiesTimeline(String username) {
+        List<Long> ids = getTimeline(username, FeedEntry.Feed.COMMUNITIES);
+        List<Long> largeCommunities = communityMemberRepository.getLargeCommunitiesOfUser(username, fanoutLimit);
+        if (!largeCommunities.isEmpty()) {
+            ids = merge(ids, postRepository.getPostIdsOfCommunities(largeCommunities, PageRequest.of(0, timelineSize)));
+        }
+        return ids;
+    }
+
+    private List<Long> getTimeline(String username, FeedEntry.Feed feed) {
+        Timeline timeline = timelines.computeIfAbsent(key(username, feed), name -> new Timeline());
+        // read outside the map lock; the requests for the same timeline wait for the first
+        synchronized (timeline) {
+            if (!timeline.loaded) {
+                add(timeline, feedEntryRepository.getTimeline(username, feed, PageRequest.of(0, timelineSize)));
+                timeline.loaded = true;
+            }
+            return new ArrayList<>(timeline.ids);
+        }
+    }
+
+    private void add(Timeline timeline, List<Long> ids) {
+        timeline.ids.addAll(ids);
+        while (timeline.ids.size() > timelineSize) {
+            timeline.ids.pollLast();
+        }
+    }
+
+    private void trim(String username, FeedEntry.Feed feed) {
+        jdbcTemplate.update(TRIM_TIMELINE, username, feed.name(), username, feed.name(), timelineSize - 1);
+    }
+
+    private static List<Long> merge(List<Long> ids, List<Long> moreIds) {
+        Set<Long> merged = new LinkedHashSet<>(ids);
+        merged.addAll(moreIds);
+        return new ArrayList<>(merged);
+    }
+
+    private static String key(String username, FeedEntry.Feed feed) {
+        return feed.name() + ":" + username;
+    }
+}
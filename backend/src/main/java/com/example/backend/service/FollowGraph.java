@@ -0,0 +1,237 @@
+package com.example.backend.service;
+
+import com.example.backend.config.ClusterEvents;
+import com.example.backend.repository.UserFollowRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// The follow edges of the user_follow table kept in memory as adjacency sets, so
+// "does A follow B" and the follower / following counts never query the database.
+// Usernames are interned to int ordinals and each user keeps the sorted ordinals of
+// the users they follow and of their followers. The graph is loaded once the
+// application is ready and updated once each change of user_follow commits, with the
+// followers / following columns of the users changed in the same transaction: follows
+// and unfollows (UserService) and every chunk of an account deletion
+// (AccountDeletionService). The other nodes apply every change too (see
+// ClusterEvents); until it is loaded the checks go to the database.
+@Service
+public class FollowGraph {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FollowGraph.class);
+
+    private final UserFollowRepository userFollowRepository;
+    private final ClusterEvents clusterEvents;
+
+    private final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+    private final AtomicInteger nextOrdinal = new AtomicInteger();
+    private final Map<Integer, IntSet> following = new HashMap<>();
+    private final Map<Integer, IntSet> followers = new HashMap<>();
+
+    // Checks share the read lock, changes and the initial load take the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded = false;
+
+    // Sorted set of ordinals backed by an int array
+    private static final class IntSet {
+        private int[] values = new int[4];
+        private int size;
+
+        private boolean contains(int value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+
+        private boolean add(int value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = value;
+            size++;
+            return true;
+        }
+
+        private boolean remove(int value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            size--;
+            return true;
+        }
+    }
+
+    public FollowGraph(UserFollowRepository userFollowRepository, ClusterEvents clusterEvents) {
+        this.userFollowRepository = userFollowRepository;
+        this.clusterEvents = clusterEvents;
+
+        // the changes made by the other nodes
+        clusterEvents.subscribe("follows.follow", args -> follow(args.get(0), args.get(1)));
+        clusterEvents.subscribe("follows.unfollow", args -> unfollow(args.get(0), args.get(1)));
+        clusterEvents.subscribe("follows.user-removed", args -> removeUser(args.get(0)));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        load();
+    }
+
+    // Read every edge from the database. Changes made meanwhile wait for the write
+    // lock and are applied on top, so none is lost.
+    public void load() {
+        long start = System.currentTimeMillis();
+        int edges = 0;
+        lock.writeLock().lock();
+        try {
+            following.clear();
+            followers.clear();
+            for (Object[] row : userFollowRepository.getAllEdges()) {
+                link(ordinal((String) row[0]), ordinal((String) row[1]));
+                edges++;
+            }
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        LOG.info("Follow graph of {} edges loaded in {} ms", edges, System.currentTimeMillis() - start);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Only valid once the graph is loaded
+    public boolean isFollowing(String follower, String followed) {
+        lock.readLock().lock();
+        try {
+            Integer from = ordinals.get(follower);
+            Integer to = ordinals.get(followed);
+            if (from == null || to == null) {
+                return false;
+            }
+            IntSet set = following.get(from);
+            return set != null && set.contains(to);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getFollowersCount(String username) {
+        return count(followers, username);
+    }
+
+    public int getFollowingCount(String username) {
+        return count(following, username);
+    }
+
+    // Add an edge, false if it already existed
+    public boolean follow(String follower, String followed) {
+        clusterEvents.publish("follows.follow", follower, followed);
+        lock.writeLock().lock();
+        try {
+            return link(ordinal(follower), ordinal(followed));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Remove an edge, false if it did not exist
+    public boolean unfollow(String follower, String followed) {
+        clusterEvents.publish("follows.unfollow", follower, followed);
+        lock.writeLock().lock();
+        try {
+            Integer from = ordinals.get(follower);
+            Integer to = ordinals.get(followed);
+            if (from == null || to == null) {
+                return false;
+            }
+            return unlink(from, to);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Remove every edge of a deleted user
+    public void removeUser(String username) {
+        clusterEvents.publish("follows.user-removed", username);
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.get(username);
+            if (ordinal == null) {
+                return;
+            }
+            IntSet out = following.remove(ordinal);
+            if (out != null) {
+                for (int i = 0; i < out.size; i++) {
+                    IntSet set = followers.get(out.values[i]);
+                    if (set != null) {
+                        set.remove(ordinal);
+                    }
+                }
+            }
+            IntSet in = followers.remove(ordinal);
+            if (in != null) {
+                for (int i = 0; i < in.size; i++) {
+                    IntSet set = following.get(in.values[i]);
+                    if (set != null) {
+                        set.remove(ordinal);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int count(Map<Integer, IntSet> sets, String username) {
+        lock.readLock().lock();
+        try {
+            Integer ordinal = ordinals.get(username);
+            IntSet set = ordinal == null ? null : sets.get(ordinal);
+            return set == null ? 0 : set.size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean link(int from, int to) {
+        if (!following.computeIfAbsent(from, key -> new IntSet()).add(to)) {
+            return false;
+        }
+        followers.computeIfAbsent(to, key -> new IntSet()).add(from);
+        return true;
+    }
+
+    private boolean unlink(int from, int to) {
+        IntSet out = following.get(from);
+        if (out == null || !out.remove(to)) {
+            return false;
+        }
+        IntSet in = followers.get(to);
+        if (in != null) {
+            in.remove(from);
+        }
+        return true;
+    }
+
+    private int ordinal(String username) {
+        return ordinals.computeIfAbsent(username, name -> nextOrdinal.getAndIncrement());
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.backend.service;
+
+import com.example.backend.entity.ImageMetadata;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Stores and serves images (post pictures, community banners and profile pictures).
+// Images are kept in the MediaStore and referenced from the entities by their
+// ImageMetadata. Serving answers conditional requests with 304 (the hash is the
+// ETag), single Range requests with 206 and copies the bytes straight from the
+// store to the response. Uploads are checked by reading the image header only; the
+// pixels are decoded once, in the background, to generate the resized variants
+// requested with ?size= (see ImageVariantService).
+@Service
+public class ImageService {
+
+    private final MediaStore mediaStore;
+    private final ImageVariantService imageVariantService;
+
+    // Largest image accepted (width x height): a small file can declare huge
+    // dimensions and exhaust the heap when decoded
+    private final long maxPixels;
+
+    // Lifetime of a response requested with the current version (?v=<hash>): the
+    // URL changes whenever the image changes, so it never has to be revalidated
+    private final CacheControl versionedCacheControl;
+
+    // Unversioned URLs (/posts/{id}/pictures) always point to the latest image, so
+    // caches keep the copy but check the ETag before using it
+    private final CacheControl unversionedCacheControl = CacheControl.noCache().cachePrivate();
+
+    // Images bundled with the application (default profile picture, sample data),
+    // stored once per path
+    private final Map<String, ImageMetadata> assets = new ConcurrentHashMap<>();
+
+    public ImageService(MediaStore mediaStore, ImageVariantService imageVariantService,
+            @Value("${media.cache-max-age-days:365}") long cacheMaxAgeDays,
+            @Value("${images.max-pixels:40000000}") long maxPixels) {
+        this.mediaStore = mediaStore;
+        this.imageVariantService = imageVariantService;
+        this.maxPixels = maxPixels;
+        this.versionedCacheControl = CacheControl.maxAge(Duration.ofDays(cacheMaxAgeDays)).cachePublic().immutable();
+    }
+
+    // Check, store and describe an uploaded image, and generate its variants.
+    // Returns null if the file is not an image or it is too large.
+    public ImageMetadata upload(MultipartFile file) throws IOException {
+        int[] dimensions;
+        try (InputStream content = file.getInputStream()) {
+            dimensions = readDimensions(content);
+        }
+        if (dimensions == null || (long) dimensions[0] * dimensions[1] > maxPixels) {
+            return null;
+        }
+        ImageMetadata image;
+        try (InputStream content = file.getInputStream()) {
+            image = store(content);
+        }
+        imageVariantService.schedule(image);
+        return image;
+    }
+
+    // Store an image and describe it
+    public ImageMetadata store(InputStream content) throws IOException {
+        String key = mediaStore.store(content);
+        byte[] header;
+        try (InputStream stored = mediaStore.open(key)) {
+            header = stored.readNBytes(12);
+        }
+        int[] dimensions;
+        try (InputStream stored = mediaStore.open(key)) {
+            dimensions = readDimensions(stored);
+        }
+        // seconds precision, as sent in the Last-Modified header
+        return new ImageMetadata(ImageMetadata.detectContentType(header), key,
+                LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS),
+                dimensions == null ? null : dimensions[0], dimensions == null ? null : dimensions[1]);
+    }
+
+    // Width and height from the image header, without decoding the pixels. Null if
+    // no ImageIO reader understands the content.
+    private static int[] readDimensions(InputStream content) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(content)) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new int[] { reader.getWidth(0), reader.getHeight(0) };
+            } catch (IOException | RuntimeException e) {
+                // truncated or corrupt header
+                return null;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Store an image of the static folder ("/assets/defaultProfilePicture.png")
+    public ImageMetadata storeAsset(String path) {
+        ImageMetadata asset = assets.computeIfAbsent(path, p -> {
+            try (InputStream content = new ClassPathResource("static" + p).getInputStream()) {
+                return store(content);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot store image " + p, e);
+            }
+        });
+        // every entity gets its own copy of the embeddable
+        return new ImageMetadata(asset.getContentType(), asset.getHash(), asset.getLastModified(),
+                asset.getWidth(), asset.getHeight());
+    }
+
+    // Write an image, or the variant of the requested size, to the response.
+    // Returns null when the response has been written (the controller must not
+    // write anything else), a 404 response if the image is not in the store or a
+    // 400 response if the size is not valid.
+    public ResponseEntity<Object> serve(HttpServletRequest request, HttpServletResponse response,
+            ImageMetadata image, String version, String size) throws IOException {
+        ImageVariant variant;
+        try {
+            variant = ImageVariant.fromParameter(size);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+        if (image == null || !mediaStore.exists(image.getHash())) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        // the variant if it is ready, the original otherwise
+        String key = variant == null ? null : imageVariantService.resolve(image, variant);
+        String contentType = image.getContentType();
+        if (key == null) {
+            key = image.getHash();
+        } else {
+            try (InputStream stored = mediaStore.open(key)) {
+                contentType = ImageMetadata.detectContentType(stored.readNBytes(12));
+            }
+        }
+
+        // while the variant is generated the original is served under its URL, so
+        // that response must not be cached as immutable
+        boolean variantPending = variant != null && key.equals(image.getHash()) && image.getWidth() != null
+                && image.getHeight() != null && variant.reduces(image.getWidth(), image.getHeight());
+
+        String etag = "\"" + key + "\"";
+        long lastModified = image.getLastModified() == null ? -1
+                : image.getLastModified().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        boolean versioned = image.getHash().equals(version) && !variantPending;
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+                (versioned ? versionedCacheControl : unversionedCacheControl).getHeaderValue());
+        // sets the ETag and Last-Modified headers, and the 304 status if the client
+        // copy is still valid
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return null;
+        }
+
+        long length = mediaStore.size(key);
+        long start = 0;
+        long end = length - 1;
+        response.setContentType(contentType);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (rangeHeader != null && (ifRange == null || ifRange.equals(etag))) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+                if (ranges.size() == 1) {
+                    start = ranges.get(0).getRangeStart(length);
+                    end = ranges.get(0).getRangeEnd(length);
+                }
+            } catch (IllegalArgumentException e) {
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return null;
+            }
+            // several ranges are answered with the whole image
+            if (ranges.size() == 1) {
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return null;
+        }
+        WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+        mediaStore.transferTo(key, start, count, out);
+        response.flushBuffer();
+        return null;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.backend.service;
+
+import java.util.Locale;
+
+// Resized copies of an uploaded image, requested with the size parameter of the
+// /pictures endpoints (?size=thumbnail). Each variant fits the image in a square of
+// maxSize pixels keeping its proportions; images already smaller than that are
+// served as uploaded.
+public enum ImageVariant {
+
+    // avatars and small previews
+    THUMBNAIL(160),
+    // post and community cards of the feeds
+    CARD(640),
+    // detail pages
+    FULL(1920);
+
+    private final int maxSize;
+
+    ImageVariant(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    // Suffix of the key of the variant in the MediaStore
+    public String getSuffix() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    // Whether an image of these dimensions is reduced by this variant
+    public boolean reduces(int width, int height) {
+        return Math.max(width, height) > maxSize;
+    }
+
+    // Variant of a size parameter, null if no size is requested
+    public static ImageVariant fromParameter(String size) {
+        if (size == null || size.isEmpty()) {
+            return null;
+        }
+        for (ImageVariant variant : values()) {
+            if (variant.getSuffix().equalsIgnoreCase(size)) {
+                return variant;
+            }
+        }
+        throw new IllegalArgumentException("Invalid image size: " + size);
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.backend.service;
+
+import com.example.backend.entity.ImageMetadata;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Generates the resized variants of the stored images (see ImageVariant) in the
+// background, so uploads return as soon as the original is stored. The original is
+// decoded once per job and the variants are produced from the largest to the
+// smallest, each one scaled from the previous. Jobs run on a fixed number of
+// threads with a bounded queue: when the queue is full the job is dropped and the
+// original keeps being served until the variant is requested again.
+@Service
+public class ImageVariantService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ImageVariantService.class);
+
+    private static final float JPEG_QUALITY = 0.85f;
+
+    private final MediaStore mediaStore;
+    private final ThreadPoolExecutor executor;
+
+    // Hashes of the images with a job queued or running
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    public ImageVariantService(MediaStore mediaStore,
+            @Value("${images.variant-threads:2}") int threads,
+            @Value("${images.variant-queue:100}") int queueSize) {
+        this.mediaStore = mediaStore;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("image-variants-"));
+    }
+
+    // Key of a variant of an image in the MediaStore
+    public static String key(String hash, ImageVariant variant) {
+        return hash + "-" + variant.getSuffix();
+    }
+
+    // Key of the variant to serve for the image, or null if the original has to be
+    // served: the image is not reduced by the variant, its dimensions are unknown or
+    // the variant is not ready yet (it is generated then)
+    public String resolve(ImageMetadata image, ImageVariant variant) {
+        if (image.getWidth() == null || image.getHeight() == null
+                || !variant.reduces(image.getWidth(), image.getHeight())) {
+            return null;
+        }
+        String key = key(image.getHash(), variant);
+        if (mediaStore.exists(key)) {
+            return key;
+        }
+        schedule(image);
+        return null;
+    }
+
+    // Generate the missing variants of an image
+    public void schedule(ImageMetadata image) {
+        if (image.getWidth() == null || image.getHeight() == null
+                || !ImageVariant.THUMBNAIL.reduces(image.getWidth(), image.getHeight())) {
+            return;
+        }
+        String hash = image.getHash();
+        if (!pending.add(hash)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(hash);
+                } catch (Exception e) {
+                    LOG.warn("Cannot generate the variants of image {}", hash, e);
+                } finally {
+                    pending.remove(hash);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(hash);
+            LOG.warn("Image variant queue full, image {} is served without variants for now", hash);
+        }
+    }
+
+    private void generate(String hash) throws IOException {
+        BufferedImage image;
+        try (InputStream content = mediaStore.open(hash)) {
+            image = ImageIO.read(content);
+        }
+        if (image == null) {
+            return;
+        }
+        ImageVariant[] variants = ImageVariant.values();
+        for (int i = variants.length - 1; i >= 0; i--) {
+            ImageVariant variant = variants[i];
+            if (!variant.reduces(image.getWidth(), image.getHeight())) {
+                continue;
+            }
+            image = resize(image, variant.getMaxSize());
+            String key = key(hash, variant);
+            if (!mediaStore.exists(key)) {
+                mediaStore.store(key, new ByteArrayInputStream(encode(image)));
+            }
+        }
+    }
+
+    private static BufferedImage resize(BufferedImage image, int maxSize) {
+        double scale = (double) maxSize / Math.max(image.getWidth(), image.getHeight());
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        boolean alpha = image.getColorModel().hasAlpha();
+
+        BufferedImage resized = new BufferedImage(width, height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+
+    // PNG keeps the transparency, everything else is re-encoded as JPEG
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (image.getColorModel().hasAlpha()) {
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
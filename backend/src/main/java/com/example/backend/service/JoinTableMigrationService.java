@@ -0,0 +1,103 @@
+package com.example.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+// Moves the join tables that older versions mapped as @ManyToMany lists
+// (user_community, moderator_community and reply_liked_by, created without a primary
+// key and possibly with duplicated rows) to the layout of the join entities
+// (CommunityMember, CommunityModerator, ReplyLike). Each table is copied once, without
+// duplicates, to a new table with the composite primary key, the (user, parent) index,
+// the timestamp column and foreign keys that cascade on delete, and then swapped with
+// the old one in a single RENAME. Runs at startup once the schema is in place, before
+// anything writes to the tables; tables that already have a primary key are skipped,
+// so it does nothing on databases created by this version.
+@Service
+@DependsOn("entityManagerFactory")
+public class JoinTableMigrationService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JoinTableMigrationService.class);
+
+    private record JoinTable(String table, String parentColumn, String parentTable, String parentKey,
+            String timestampColumn, String userIndex) {
+    }
+
+    private static final List<JoinTable> TABLES = List.of(
+            new JoinTable("user_community", "community_id", "community", "identifier", "joined_at",
+                    "idx_user_community_user"),
+            new JoinTable("moderator_community", "community_id", "community", "identifier", "appointed_at",
+                    "idx_moderator_community_user"),
+            new JoinTable("reply_liked_by", "reply_id", "reply", "identifier", "liked_at",
+                    "idx_reply_liked_by_user"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JoinTableMigrationService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        for (JoinTable join : TABLES) {
+            if (!tableExists(join.table()) || hasPrimaryKey(join.table())) {
+                continue;
+            }
+            String copy = join.table() + "_migrated";
+            String old = join.table() + "_old";
+            // leftovers of a run that was interrupted
+            jdbcTemplate.execute("DROP TABLE IF EXISTS `" + copy + "`");
+            jdbcTemplate.execute("DROP TABLE IF EXISTS `" + old + "`");
+            jdbcTemplate.execute("CREATE TABLE `" + copy + "` ("
+                    + join.parentColumn() + " BIGINT NOT NULL, "
+                    + "user_id VARCHAR(255) NOT NULL, "
+                    + join.timestampColumn() + " DATETIME(6), "
+                    + "PRIMARY KEY (" + join.parentColumn() + ", user_id), "
+                    + "INDEX " + join.userIndex() + " (user_id, " + join.parentColumn() + "), "
+                    + "FOREIGN KEY (" + join.parentColumn() + ") REFERENCES `" + join.parentTable() + "` ("
+                    + join.parentKey() + ") ON DELETE CASCADE, "
+                    + "FOREIGN KEY (user_id) REFERENCES `user` (username) ON DELETE CASCADE)");
+
+            // rows written before the timestamp existed get the time of the migration
+            String timestamp = columnExists(join.table(), join.timestampColumn())
+                    ? "COALESCE(MIN(" + join.timestampColumn() + "), NOW(6))"
+                    : "NOW(6)";
+            int rows = jdbcTemplate.update("INSERT INTO `" + copy + "` (" + join.parentColumn() + ", user_id, "
+                    + join.timestampColumn() + ") SELECT " + join.parentColumn() + ", user_id, " + timestamp
+                    + " FROM `" + join.table() + "` GROUP BY " + join.parentColumn() + ", user_id");
+
+            jdbcTemplate.execute("RENAME TABLE `" + join.table() + "` TO `" + old + "`, `" + copy + "` TO `"
+                    + join.table() + "`");
+            jdbcTemplate.execute("DROP TABLE `" + old + "`");
+            LOG.info("Migrated {} to a join table with a primary key ({} rows)", join.table(), rows);
+        }
+    }
+
+    private boolean tableExists(String table) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = ?",
+                Integer.class, table);
+        return count != null && count > 0;
+    }
+
+    private boolean hasPrimaryKey(String table) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.table_constraints WHERE table_schema = DATABASE() "
+                        + "AND table_name = ? AND constraint_type = 'PRIMARY KEY'",
+                Integer.class, table);
+        return count != null && count > 0;
+    }
+
+    private boolean columnExists(String table, String column) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() "
+                        + "AND table_name = ? AND column_name = ?",
+                Integer.class, table, column);
+        return count != null && count > 0;
+    }
+}
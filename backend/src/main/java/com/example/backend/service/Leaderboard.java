@@ -0,0 +1,60 @@
+package com.example.backend.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// Ranking of keys by score kept sorted on every update. The score of each key is
+// held in a map and the (score, key) pairs in a tree ordered by score descending,
+// so changing a score is O(log n) and reading the top k is O(k).
+public class Leaderboard<K extends Comparable<K>> {
+
+    public record Entry<K>(K key, long score) {
+    }
+
+    private final Map<K, Long> scores = new HashMap<>();
+    private final TreeSet<Entry<K>> ranking = new TreeSet<>(
+            Comparator.<Entry<K>>comparingLong(Entry::score).reversed().thenComparing(Entry::key));
+
+    // Add a delta to the score of a key (a missing key starts at 0)
+    public synchronized void add(K key, long delta) {
+        Long score = scores.get(key);
+        set(key, score == null ? delta : score + delta);
+    }
+
+    public synchronized void set(K key, long score) {
+        Long previous = scores.put(key, score);
+        if (previous != null) {
+            ranking.remove(new Entry<>(key, previous));
+        }
+        ranking.add(new Entry<>(key, score));
+    }
+
+    public synchronized void remove(K key) {
+        Long previous = scores.remove(key);
+        if (previous != null) {
+            ranking.remove(new Entry<>(key, previous));
+        }
+    }
+
+    // Replace every score with the given ones
+    public synchronized void reset(Map<K, Long> newScores) {
+        scores.clear();
+        ranking.clear();
+        newScores.forEach(this::set);
+    }
+
+    // The k keys with the highest score, highest first
+    public synchronized List<Entry<K>> top(int k) {
+        List<Entry<K>> top = new ArrayList<>(Math.max(0, Math.min(k, ranking.size())));
+        Iterator<Entry<K>> iterator = ranking.iterator();
+        while (top.size() < k && iterator.hasNext()) {
+            top.add(iterator.next());
+        }
+        return top;
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.backend.service;
+
+import com.example.backend.config.ClusterEvents;
+import com.example.backend.repository.CommunityRepository;
+import com.example.backend.repository.UserRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// "Most popular" rankings kept in memory: members per community and upvotes,
+// downvotes and bans per user. They are loaded from the database once the
+// application is ready, updated by the services on every join / leave / vote / ban
+// and reloaded on a schedule to correct any drift; the other nodes apply every event
+// too (see ClusterEvents). Until the first load finishes the rankings are read from
+// the database with the limit pushed down to the query.
+@Service
+public class LeaderboardService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LeaderboardService.class);
+
+    private final CommunityRepository communityRepository;
+    private final UserRepository userRepository;
+    private final VoteCounterBuffer voteCounterBuffer;
+    private final ClusterEvents clusterEvents;
+
+    private final Leaderboard<Long> communityMembers = new Leaderboard<>();
+    private final Map<Long, String> communityNames = new ConcurrentHashMap<>();
+    private final Leaderboard<String> userUpvotes = new Leaderboard<>();
+    private final Leaderboard<String> userDownvotes = new Leaderboard<>();
+    private final Leaderboard<String> userBans = new Leaderboard<>();
+
+    private volatile boolean loaded = false;
+
+    public LeaderboardService(CommunityRepository communityRepository, UserRepository userRepository,
+            VoteCounterBuffer voteCounterBuffer, ClusterEvents clusterEvents) {
+        this.communityRepository = communityRepository;
+        this.userRepository = userRepository;
+        this.voteCounterBuffer = voteCounterBuffer;
+        this.clusterEvents = clusterEvents;
+
+        // the events of the other nodes
+        clusterEvents.subscribe("leaderboards.community-saved",
+                args -> communitySaved(Long.valueOf(args.get(0)), args.get(1), Integer.parseInt(args.get(2))));
+        clusterEvents.subscribe("leaderboards.community-deleted", args -> communityDeleted(Long.valueOf(args.get(0))));
+        clusterEvents.subscribe("leaderboards.member-joined", args -> memberJoined(Long.valueOf(args.get(0))));
+        clusterEvents.subscribe("leaderboards.member-left", args -> memberLeft(Long.valueOf(args.get(0))));
+        clusterEvents.subscribe("leaderboards.user-saved",
+                args -> userSaved(args.get(0), Integer.parseInt(args.get(1))));
+        clusterEvents.subscribe("leaderboards.user-deleted", args -> userDeleted(args.get(0)));
+        clusterEvents.subscribe("leaderboards.post-published", args -> postPublished(args.get(0)));
+        clusterEvents.subscribe("leaderboards.post-voted",
+                args -> postVoted(args.get(0), Integer.parseInt(args.get(1)), Integer.parseInt(args.get(2))));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    // Reload every ranking from the database
+    @Scheduled(initialDelayString = "${leaderboards.rebuild-interval-ms:600000}", fixedDelayString = "${leaderboards.rebuild-interval-ms:600000}")
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+
+        // the vote counters must be in the database before they are summed
+        voteCounterBuffer.flush();
+
+        Map<Long, Long> members = new HashMap<>();
+        Map<Long, String> names = new HashMap<>();
+        for (Object[] row : communityRepository.getMostPopularCommunitiesCountWithId(Pageable.unpaged())) {
+            members.put((Long) row[0], toLong(row[2]));
+            names.put((Long) row[0], (String) row[1]);
+        }
+        communityMembers.reset(members);
+        communityNames.keySet().retainAll(names.keySet());
+        communityNames.putAll(names);
+
+        userUpvotes.reset(toScores(userRepository.getUsersWithMostLikedContentCount(Pageable.unpaged())));
+        userDownvotes.reset(toScores(userRepository.getUsersWithMostDislikesCount(Pageable.unpaged())));
+        userBans.reset(toScores(userRepository.getUsersWithMostBansCount(Pageable.unpaged())));
+
+        loaded = true;
+        LOG.info("Leaderboards rebuilt in {} ms", System.currentTimeMillis() - start);
+    }
+
+    // --- Rankings: [identifier, name, members] and [username, score] rows ---
+
+    public List<Object[]> getMostPopularCommunities(int size) {
+        if (size <= 0) {
+            return Collections.emptyList();
+        }
+        if (!loaded) {
+            return communityRepository.getMostPopularCommunitiesCountWithId(PageRequest.of(0, size));
+        }
+        List<Object[]> rows = new ArrayList<>();
+        for (Leaderboard.Entry<Long> entry : communityMembers.top(size)) {
+            rows.add(new Object[] { entry.key(), communityNames.get(entry.key()), entry.score() });
+        }
+        return rows;
+    }
+
+    public List<Object[]> getMostUpvotedUsers(int size) {
+        if (size <= 0) {
+            return Collections.emptyList();
+        }
+        return loaded ? toRows(userUpvotes.top(size))
+                : userRepository.getUsersWithMostLikedContentCount(PageRequest.of(0, size));
+    }
+
+    public List<Object[]> getMostDownvotedUsers(int size) {
+        if (size <= 0) {
+            return Collections.emptyList();
+        }
+        return loaded ? toRows(userDownvotes.top(size))
+                : userRepository.getUsersWithMostDislikesCount(PageRequest.of(0, size));
+    }
+
+    public List<Object[]> getMostBannedUsers(int size) {
+        if (size <= 0) {
+            return Collections.emptyList();
+        }
+        return loaded ? toRows(userBans.top(size))
+                : userRepository.getUsersWithMostBansCount(PageRequest.of(0, size));
+    }
+
+    // --- Events ---
+
+    // A community was created or edited
+    public void communitySaved(Long communityId, String name, int members) {
+        communityNames.put(communityId, name);
+        communityMembers.set(communityId, members);
+        clusterEvents.publish("leaderboards.community-saved", communityId, name, members);
+    }
+
+    public void communityDeleted(Long communityId) {
+        communityMembers.remove(communityId);
+        communityNames.remove(communityId);
+        clusterEvents.publish("leaderboards.community-deleted", communityId);
+    }
+
+    public void memberJoined(Long communityId) {
+        communityMembers.add(communityId, 1);
+        clusterEvents.publish("leaderboards.member-joined", communityId);
+    }
+
+    public void memberLeft(Long communityId) {
+        communityMembers.add(communityId, -1);
+        clusterEvents.publish("leaderboards.member-left", communityId);
+    }
+
+    // A user was created or edited
+    public void userSaved(String username, int banCount) {
+        userBans.set(username, banCount);
+        clusterEvents.publish("leaderboards.user-saved", username, banCount);
+    }
+
+    public void userDeleted(String username) {
+        userUpvotes.remove(username);
+        userDownvotes.remove(username);
+        userBans.remove(username);
+        clusterEvents.publish("leaderboards.user-deleted", username);
+    }
+
+    // A post was published (its author now ranks by votes even with none yet)
+    public void postPublished(String author) {
+        userUpvotes.add(author, 0);
+        userDownvotes.add(author, 0);
+        clusterEvents.publish("leaderboards.post-published", author);
+    }
+
+    public void postVoted(String author, int upvotes, int downvotes) {
+        userUpvotes.add(author, upvotes);
+        userDownvotes.add(author, downvotes);
+        clusterEvents.publish("leaderboards.post-voted", author, upvotes, downvotes);
+    }
+
+    public void postDeleted(String author, int upvotes, int downvotes) {
+        postVoted(author, -upvotes, -downvotes);
+    }
+
+    private static Map<String, Long> toScores(List<Object[]> rows) {
+        Map<String, Long> scores = new HashMap<>();
+        for (Object[] row : rows) {
+            scores.put((String) row[0], toLong(row[1]));
+        }
+        return scores;
+    }
+
+    private static List<Object[]> toRows(List<Leaderboard.Entry<String>> entries) {
+        List<Object[]> rows = new ArrayList<>(entries.size());
+        for (Leaderboard.Entry<String> entry : entries) {
+            rows.add(new Object[] { entry.key(), entry.score() });
+        }
+        return rows;
+    }
+
+    private static long toLong(Object value) {
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+}
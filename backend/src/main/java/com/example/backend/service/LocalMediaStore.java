@@ -0,0 +1,127 @@
+package com.example.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+// MediaStore on the local disk. Every file is named after its SHA-256 hash and
+// sharded in two directory levels by the first characters of the hash
+// (media/ab/cd/abcd...) so no directory grows too large. Files are written to a
+// temporary file first and moved into place once hashed, so a key never points to
+// a partially written file. Derived files (resized variants) are named after the
+// original with a suffix (abcd...-thumbnail) and stored next to it.
+@Service
+public class LocalMediaStore implements MediaStore {
+
+    private static final Pattern KEY = Pattern.compile("[0-9a-f]{64}(-[a-z]+)?");
+
+    private final Path root;
+    private final Path tmp;
+
+    public LocalMediaStore(@Value("${media.store-path:media}") String root) throws IOException {
+        this.root = Paths.get(root).toAbsolutePath();
+        this.tmp = this.root.resolve("tmp");
+        Files.createDirectories(tmp);
+    }
+
+    @Override
+    public String store(InputStream content) throws IOException {
+        Path upload = Files.createTempFile(tmp, "upload", null);
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream in = new DigestInputStream(content, digest)) {
+                Files.copy(in, upload, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String key = HexFormat.of().formatHex(digest.digest());
+
+            // same content already stored: keep the existing copy
+            Path file = path(key);
+            if (!Files.exists(file)) {
+                Files.createDirectories(file.getParent());
+                try {
+                    Files.move(upload, file, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    // stored by a concurrent upload of the same content
+                }
+            }
+            return key;
+        } finally {
+            Files.deleteIfExists(upload);
+        }
+    }
+
+    @Override
+    public void store(String key, InputStream content) throws IOException {
+        Path file = path(key);
+        Path upload = Files.createTempFile(tmp, "upload", null);
+        try {
+            Files.copy(content, upload, StandardCopyOption.REPLACE_EXISTING);
+            Files.createDirectories(file.getParent());
+            Files.move(upload, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(upload);
+        }
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return key != null && KEY.matcher(key).matches() && Files.exists(path(key));
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        return Files.size(path(key));
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return Files.newInputStream(path(key));
+    }
+
+    // FileChannel.transferTo lets the kernel copy the file to the target without
+    // going through a buffer in the heap when the target supports it
+    @Override
+    public long transferTo(String key, long position, long count, WritableByteChannel target) throws IOException {
+        try (FileChannel file = FileChannel.open(path(key), StandardOpenOption.READ)) {
+            long sent = 0;
+            while (sent < count) {
+                long transferred = file.transferTo(position + sent, count - sent, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                sent += transferred;
+            }
+            return sent;
+        }
+    }
+
+    private Path path(String key) {
+        if (!KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid media key: " + key);
+        }
+        return root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.backend.service;
+
+import com.example.backend.config.SecondLevelCacheSync;
+import com.example.backend.entity.Community;
+import com.example.backend.entity.ImageMetadata;
+import com.example.backend.entity.Post;
+import com.example.backend.entity.User;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Moves the images that older versions kept in BLOB columns (post.image,
+// community.banner and user.pfp) to the MediaStore. Rows are processed in batches:
+// each image is copied to the store, then the batch is updated in one statement
+// with the image metadata and the BLOB set to NULL, so the migration can be
+// stopped and run again at any time (the updated rows are evicted from the
+// second-level cache). Tables created by this version no longer have the BLOB
+// columns and are skipped.
+@Service
+public class MediaMigrationService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MediaMigrationService.class);
+
+    private record BlobColumn(Class<?> entity, String table, String idColumn, String column, String prefix,
+            String flagColumn) {
+    }
+
+    private static final List<BlobColumn> COLUMNS = List.of(
+            new BlobColumn(Post.class, "post", "identifier", "image", "image", "has_image"),
+            new BlobColumn(Community.class, "community", "identifier", "banner", "banner", "has_banner"),
+            new BlobColumn(User.class, "user", "username", "pfp", "pfp", null));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ImageService imageService;
+    private final SecondLevelCacheSync secondLevelCache;
+
+    public MediaMigrationService(JdbcTemplate jdbcTemplate, ImageService imageService,
+            SecondLevelCacheSync secondLevelCache) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.imageService = imageService;
+        this.secondLevelCache = secondLevelCache;
+    }
+
+    // Migrate every image still in the database. Returns the rows moved per table.
+    public synchronized Map<String, Integer> migrate(int batchSize) {
+        Map<String, Integer> moved = new LinkedHashMap<>();
+        for (BlobColumn blob : COLUMNS) {
+            if (!columnExists(blob)) {
+                continue;
+            }
+            int rows = 0;
+            List<Object> ids;
+            while (!(ids = nextBatch(blob, batchSize)).isEmpty()) {
+                List<Object[]> updates = new ArrayList<>(ids.size());
+                for (Object id : ids) {
+                    ImageMetadata image = copyToStore(blob, id);
+                    updates.add(new Object[] { image.getContentType(), image.getHash(),
+                            Timestamp.valueOf(image.getLastModified()), image.getWidth(), image.getHeight(), id });
+                }
+                jdbcTemplate.batchUpdate(updateStatement(blob), updates);
+                for (Object id : ids) {
+                    secondLevelCache.evict(blob.entity(), id);
+                }
+                rows += ids.size();
+                LOG.info("Moved {} images of {}.{} to the media store", rows, blob.table(), blob.column());
+            }
+            moved.put(blob.table(), rows);
+        }
+        return moved;
+    }
+
+    private boolean columnExists(BlobColumn blob) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() "
+                        + "AND table_name = ? AND column_name = ?",
+                Integer.class, blob.table(), blob.column());
+        return count != null && count > 0;
+    }
+
+    private List<Object> nextBatch(BlobColumn blob, int batchSize) {
+        return jdbcTemplate.queryForList("SELECT `" + blob.idColumn() + "` FROM `" + blob.table() + "` WHERE `"
+                + blob.column() + "` IS NOT NULL LIMIT ?", Object.class, batchSize);
+    }
+
+    // One row at a time, so only one image is read from the database at once
+    private ImageMetadata copyToStore(BlobColumn blob, Object id) {
+        return jdbcTemplate.query("SELECT `" + blob.column() + "` FROM `" + blob.table() + "` WHERE `"
+                + blob.idColumn() + "` = ?", rs -> {
+                    rs.next();
+                    try (InputStream content = rs.getBinaryStream(1)) {
+                        return imageService.store(content);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, id);
+    }
+
+    private static String updateStatement(BlobColumn blob) {
+        return "UPDATE `" + blob.table() + "` SET `" + blob.column() + "` = NULL, "
+                + blob.prefix() + "_content_type = ?, " + blob.prefix() + "_hash = ?, "
+                + blob.prefix() + "_last_modified = ?, " + blob.prefix() + "_width = ?, "
+                + blob.prefix() + "_height = ?"
+                + (blob.flagColumn() == null ? "" : ", " + blob.flagColumn() + " = TRUE")
+                + " WHERE `" + blob.idColumn() + "` = ?";
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.backend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+
+// Storage of uploaded media (post pictures, community banners and profile
+// pictures). Content is addressed by the SHA-256 hash of its bytes, so storing the
+// same file twice returns the same key and keeps a single copy. Entities only keep
+// the key (see ImageMetadata).
+public interface MediaStore {
+
+    // Store the content and return its key
+    String store(InputStream content) throws IOException;
+
+    // Store content derived from another stored file (a resized variant) under a
+    // key built from the key of that file, replacing any previous content
+    void store(String key, InputStream content) throws IOException;
+
+    boolean exists(String key);
+
+    // Size of the content in bytes
+    long size(String key) throws IOException;
+
+    InputStream open(String key) throws IOException;
+
+    // Copy count bytes starting at position to the target, returns the bytes copied
+    long transferTo(String key, long position, long count, WritableByteChannel target) throws IOException;
+}
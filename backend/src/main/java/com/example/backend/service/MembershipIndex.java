@@ -0,0 +1,293 @@
+package com.example.backend.service;
+
+import com.example.backend.config.ClusterEvents;
+import com.example.backend.repository.CommunityMemberRepository;
+import com.example.backend.repository.CommunityModeratorRepository;
+import com.example.backend.repository.CommunityRepository;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// Members, moderators and bans of every community kept in memory, so membership
+// checks and member counts don't query the database. Each username is interned to
+// an ordinal and every community keeps a compressed (Roaring) bitmap of the ordinals
+// of its members and moderators, so its size follows its own members and not the
+// number of users, plus the end of its active bans. The index is loaded once the
+// application is ready and the services update it after each change commits; until
+// it is loaded the checks go to the database. Every change is also applied by the
+// other nodes (see ClusterEvents), and the index is reloaded on a schedule, so a
+// change a node missed (a ban above all) is only kept from it until the next reload.
+@Service
+public class MembershipIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MembershipIndex.class);
+
+    private final CommunityRepository communityRepository;
+    private final CommunityMemberRepository communityMemberRepository;
+    private final CommunityModeratorRepository communityModeratorRepository;
+    private final ClusterEvents clusterEvents;
+
+    private final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+    private final AtomicInteger nextOrdinal = new AtomicInteger();
+    private Map<Long, Entry> communities = new HashMap<>();
+
+    // Checks share the read lock, changes and the swap of a reload take the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded = false;
+
+    // Changes made while a reload reads the database, applied again to the new index
+    private List<Consumer<Map<Long, Entry>>> pending;
+
+    private static final class Entry {
+        private String admin;
+        private final RoaringBitmap members = new RoaringBitmap();
+        private final RoaringBitmap moderators = new RoaringBitmap();
+        private final Map<Integer, LocalDateTime> bans = new HashMap<>();
+        private int memberCount;
+
+        private void addMember(int ordinal) {
+            if (members.checkedAdd(ordinal)) {
+                memberCount++;
+            }
+        }
+
+        private void removeMember(int ordinal) {
+            if (members.checkedRemove(ordinal)) {
+                memberCount--;
+            }
+        }
+    }
+
+    public MembershipIndex(CommunityRepository communityRepository, CommunityMemberRepository communityMemberRepository,
+            CommunityModeratorRepository communityModeratorRepository, ClusterEvents clusterEvents) {
+        this.communityRepository = communityRepository;
+        this.communityMemberRepository = communityMemberRepository;
+        this.communityModeratorRepository = communityModeratorRepository;
+        this.clusterEvents = clusterEvents;
+
+        // the changes made by the other nodes
+        clusterEvents.subscribe("membership.community-saved",
+                args -> communitySaved(Long.parseLong(args.get(0)), args.get(1)));
+        clusterEvents.subscribe("membership.community-deleted", args -> communityDeleted(Long.parseLong(args.get(0))));
+        clusterEvents.subscribe("membership.admin-changed",
+                args -> adminChanged(Long.parseLong(args.get(0)), args.get(1)));
+        clusterEvents.subscribe("membership.member-joined",
+                args -> memberJoined(Long.parseLong(args.get(0)), args.get(1)));
+        clusterEvents.subscribe("membership.member-left", args -> memberLeft(Long.parseLong(args.get(0)), args.get(1)));
+        clusterEvents.subscribe("membership.moderator-added",
+                args -> moderatorAdded(Long.parseLong(args.get(0)), args.get(1)));
+        clusterEvents.subscribe("membership.moderator-removed",
+                args -> moderatorRemoved(Long.parseLong(args.get(0)), args.get(1)));
+        clusterEvents.subscribe("membership.user-banned", args -> userBanned(Long.parseLong(args.get(0)), args.get(1),
+                args.get(2) == null ? null : LocalDateTime.parse(args.get(2))));
+        clusterEvents.subscribe("membership.user-unbanned",
+                args -> userUnbanned(Long.parseLong(args.get(0)), args.get(1)));
+        clusterEvents.subscribe("membership.user-deleted", args -> userDeleted(args.get(0)));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        load();
+    }
+
+    // Read every membership from the database into a new index, without blocking the
+    // checks. Changes made meanwhile go to the current index and are applied again to
+    // the new one before it replaces it; they are idempotent, so one the read already
+    // saw is not counted twice.
+    @Scheduled(initialDelayString = "${membership.reload-interval-ms:60000}", fixedDelayString = "${membership.reload-interval-ms:60000}")
+    public synchronized void load() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Map<Long, Entry> loading = new HashMap<>();
+        try {
+            for (Object[] row : communityRepository.getAllAdmins()) {
+                entry(loading, (Long) row[0]).admin = (String) row[1];
+            }
+            for (Object[] row : communityMemberRepository.getAllMemberships()) {
+                entry(loading, (Long) row[0]).addMember(ordinal((String) row[1]));
+            }
+            for (Object[] row : communityModeratorRepository.getAllModerators()) {
+                entry(loading, (Long) row[0]).moderators.add(ordinal((String) row[1]));
+            }
+            for (Object[] row : communityRepository.getAllBans()) {
+                entry(loading, (Long) row[0]).bans.merge(ordinal((String) row[1]), (LocalDateTime) row[2],
+                        (a, b) -> a.isAfter(b) ? a : b);
+            }
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        for (Entry entry : loading.values()) {
+            entry.members.runOptimize();
+            entry.moderators.runOptimize();
+        }
+
+        lock.writeLock().lock();
+        try {
+            pending.forEach(change -> change.accept(loading));
+            pending = null;
+            communities = loading;
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        LOG.info("Membership index of {} communities and {} users loaded in {} ms", loading.size(),
+                ordinals.size(), System.currentTimeMillis() - start);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Relation of a user with a community, null if the community does not exist.
+    // Only valid once the index is loaded.
+    public CommunityAccess getAccess(String username, long communityId) {
+        lock.readLock().lock();
+        try {
+            Entry entry = communities.get(communityId);
+            if (entry == null) {
+                return null;
+            }
+            Integer ordinal = ordinals.get(username);
+            if (ordinal == null) {
+                return new CommunityAccess(username.equals(entry.admin), false, false, null);
+            }
+            return new CommunityAccess(username.equals(entry.admin), entry.members.contains(ordinal),
+                    entry.moderators.contains(ordinal), entry.bans.get(ordinal));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Number of members of a community, -1 if it does not exist
+    public int getMemberCount(long communityId) {
+        lock.readLock().lock();
+        try {
+            Entry entry = communities.get(communityId);
+            return entry == null ? -1 : entry.memberCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // A community was created or updated. Its members and moderators are indexed as
+    // their rows are written (memberJoined, moderatorAdded), not read from the entity.
+    public void communitySaved(long communityId, String admin) {
+        change(index -> entry(index, communityId).admin = admin);
+        clusterEvents.publish("membership.community-saved", communityId, admin);
+    }
+
+    public void communityDeleted(long communityId) {
+        change(index -> index.remove(communityId));
+        clusterEvents.publish("membership.community-deleted", communityId);
+    }
+
+    public void adminChanged(long communityId, String username) {
+        update(communityId, entry -> entry.admin = username);
+        clusterEvents.publish("membership.admin-changed", communityId, username);
+    }
+
+    public void memberJoined(long communityId, String username) {
+        update(communityId, entry -> entry.addMember(ordinal(username)));
+        clusterEvents.publish("membership.member-joined", communityId, username);
+    }
+
+    public void memberLeft(long communityId, String username) {
+        update(communityId, entry -> entry.removeMember(ordinal(username)));
+        clusterEvents.publish("membership.member-left", communityId, username);
+    }
+
+    public void moderatorAdded(long communityId, String username) {
+        update(communityId, entry -> entry.moderators.add(ordinal(username)));
+        clusterEvents.publish("membership.moderator-added", communityId, username);
+    }
+
+    public void moderatorRemoved(long communityId, String username) {
+        update(communityId, entry -> entry.moderators.remove(ordinal(username)));
+        clusterEvents.publish("membership.moderator-removed", communityId, username);
+    }
+
+    public void userBanned(long communityId, String username, LocalDateTime banUntil) {
+        update(communityId, entry -> entry.bans.put(ordinal(username), banUntil));
+        clusterEvents.publish("membership.user-banned", communityId, username, banUntil);
+    }
+
+    public void userUnbanned(long communityId, String username) {
+        update(communityId, entry -> entry.bans.remove(ordinal(username)));
+        clusterEvents.publish("membership.user-unbanned", communityId, username);
+    }
+
+    // A deleted user leaves every community. The ordinal is kept, so a new account
+    // with the same username starts with no memberships.
+    public void userDeleted(String username) {
+        clusterEvents.publish("membership.user-deleted", username);
+        Integer ordinal = ordinals.get(username);
+        if (ordinal == null) {
+            return;
+        }
+        change(index -> {
+            for (Entry entry : index.values()) {
+                entry.removeMember(ordinal);
+                entry.moderators.remove(ordinal);
+                entry.bans.remove(ordinal);
+            }
+        });
+    }
+
+    private void update(long communityId, Consumer<Entry> change) {
+        change(index -> {
+            Entry entry = index.get(communityId);
+            if (entry != null) {
+                change.accept(entry);
+            }
+        });
+    }
+
+    // Apply a change to the index, and to the one being loaded if a reload is running
+    private void change(Consumer<Map<Long, Entry>> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(communities);
+            if (pending != null) {
+                pending.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static Entry entry(Map<Long, Entry> index, long communityId) {
+        return index.computeIfAbsent(communityId, id -> new Entry());
+    }
+
+    private int ordinal(String username) {
+        return ordinals.computeIfAbsent(username, name -> nextOrdinal.getAndIncrement());
+    }
+}
@@ -1,25 +1,24 @@
 package com.example.backend.service;
 
 import com.example.backend.entity.Post;
+import com.example.backend.entity.PostVote;
 import com.example.backend.entity.Reply;
 import com.example.backend.repository.CommunityRepository;
-import com.example.backend.repository.PostRepository;
-import com.example.backend.repository.ReplyRepository;
 import jakarta.annotation.PostConstruct;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 import com.example.backend.entity.Community;
 import com.example.backend.entity.User;
 import com.example.backend.repository.UserRepository;
-import org.springframework.core.io.ClassPathResource;
 
 import java.io.IOException;
-import java.sql.Blob;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
 @Service
+@ConditionalOnProperty(name = "sample-data.enabled", havingValue = "true", matchIfMissing = true)
 @DependsOn("communitySampleService")
 public class PostSampleService {
 
@@ -27,38 +26,44 @@ public class PostSampleService {
 
     private final UserRepository userRepository;
 
-    private final PostRepository postRepository;
+    private final PostService postService;
 
-    private final ReplyRepository replyRepository;
+    private final ReplyService replyService;
 
-    public PostSampleService(CommunityRepository communityRepository, UserRepository userRepository, PostRepository postRepository, ReplyRepository replyRepository) {
+    private final VoteCounterBuffer voteCounterBuffer;
+
+    private final ImageService imageService;
+
+    private final UserSampleService userSampleService;
+
+    public PostSampleService(CommunityRepository communityRepository, UserRepository userRepository, PostService postService, ReplyService replyService, VoteCounterBuffer voteCounterBuffer, ImageService imageService, UserSampleService userSampleService) {
         this.communityRepository = communityRepository;
         this.userRepository = userRepository;
-        this.postRepository = postRepository;
-        this.replyRepository = replyRepository;
+        this.postService = postService;
+        this.replyService = replyService;
+        this.voteCounterBuffer = voteCounterBuffer;
+        this.imageService = imageService;
+        this.userSampleService = userSampleService;
     }
 
     @PostConstruct
     public void init() throws IOException, SQLException {
+        if (!userSampleService.isLoaded()) {
+            return;
+        }
         List<User> users = userRepository.findAll();
         List<Community> communities = communityRepository.findAll();
         List<String> postTitles = List.of("Welcome to Bookmarks Forums", "Bookmarks News: New Book Releases", "Bookmarks Reviews: The Best Books", "Bookmarks Events: Upcoming Events");
         List<String> postContents = List.of("Welcome to Bookmarks Forums! This is a forum for book readers to discuss their favorite books.", "Check out the new book releases in Bookmarks News!", "Read the reviews of the best books in Bookmarks Reviews.", "Join us for the upcoming events for book readers in Bookmarks Events.");
-        List<String> postImages = List.of("static/assets/cmbg1.png", "static/assets/cmbg2.png", "static/assets/cmbg3.png", "static/assets/cmbg4.png");
+        List<String> postImages = List.of("/assets/cmbg1.png", "/assets/cmbg2.png", "/assets/cmbg3.png", "/assets/cmbg4.png");
 
         List<Post> posts = new ArrayList<>();
 
         for (int i = 0; i < postTitles.size(); i++) {
             Post post = new Post(postTitles.get(i), postContents.get(i), users.get(i), communities.get(i));
             try {
-                // Load and set the image for each post
-                ClassPathResource resource = new ClassPathResource(postImages.get(i));
-                if (resource.exists()) {
-                    Blob image = new javax.sql.rowset.serial.SerialBlob(resource.getInputStream().readAllBytes());
-                    post.addImage(image);
-                } else {
-                    System.out.println("Warning: Image file not found: " + postImages.get(i));
-                }
+                // Store and set the image for each post
+                post.addImage(imageService.storeAsset(postImages.get(i)));
             } catch (Exception e) {
                 System.out.println("Warning: Could not load image for post " + i + ": " + e.getMessage());
             }
@@ -69,7 +74,8 @@ public class PostSampleService {
         Post postWithoutImage = new Post("Forum's rules apply to all communities!", "Remember to follow the rules of the forum in all communities. If you see a violation, please report it to the admin.", users.get(3), communities.get(0));
         posts.add(postWithoutImage);
 
-        postRepository.saveAll(posts);
+        // batched inserts, then delivered to the home feeds of followers and community members
+        postService.savePosts(posts);
 
         // REPLIES
 
@@ -79,42 +85,43 @@ public class PostSampleService {
         String bannedUserReplyTitle = "I'm a bad dude";
         String bannedUserReplyContent = "This is trash, dude";
 
+        List<Reply> replies = new ArrayList<>();
         for (int i = 0; i < replyTitles.size(); i++) {
-            // +1 comment to the post
-            posts.get(i).setComments(posts.get(i).getComments() + 1);
-            Reply reply = new Reply(replyTitles.get(i), replyContents.get(i), users.get(i), posts.get(i));
-            replyRepository.save(reply);
+            replies.add(new Reply(replyTitles.get(i), replyContents.get(i), users.get(i), posts.get(i)));
         }
 
         // Banned user posts reply on post 1
         Post postWithId1 = posts.get(0);
-        Reply bannedUserReply = new Reply(bannedUserReplyTitle, bannedUserReplyContent, users.get(4), postWithId1);
-        replyRepository.save(bannedUserReply);
-        
+        replies.add(new Reply(bannedUserReplyTitle, bannedUserReplyContent, users.get(4), postWithId1));
+
+        // batched inserts, +1 comment to each post per reply
+        replyService.saveReplies(replies);
+
 
         // Everybody upvotes the second post
         Post post = posts.get(1);
         for (User user : users) {
-            post.upvote(user);
+            postService.votePost(post, user.getUsername(), PostVote.Direction.UPVOTE);
         }
 
         // The first post is upvoted by the first user and downvoted by the second user
         post = posts.get(0);
-        post.upvote(users.get(0));
-        post.downvote(users.get(1));
+        postService.votePost(post, users.get(0).getUsername(), PostVote.Direction.UPVOTE);
+        postService.votePost(post, users.get(1).getUsername(), PostVote.Direction.DOWNVOTE);
 
         // The third post is upvoted by 2 users and downvoted by 1 user
         post = posts.get(2);
-        post.upvote(users.get(0));
-        post.upvote(users.get(1));
-        post.downvote(users.get(2));
+        postService.votePost(post, users.get(0).getUsername(), PostVote.Direction.UPVOTE);
+        postService.votePost(post, users.get(1).getUsername(), PostVote.Direction.UPVOTE);
+        postService.votePost(post, users.get(2).getUsername(), PostVote.Direction.DOWNVOTE);
 
         // The fourth post is upvoted by 3 users
         post = posts.get(3);
         for (int i = 0; i < 3; i++) {
-            post.upvote(users.get(i));
+            postService.votePost(post, users.get(i).getUsername(), PostVote.Direction.UPVOTE);
         }
 
-        postRepository.saveAll(posts);
+        // write the sample votes now instead of waiting for the first scheduled flush
+        voteCounterBuffer.flush();
     }
 }
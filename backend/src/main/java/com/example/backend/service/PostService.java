@@ -1,33 +1,67 @@
 package com.example.backend.service;
 
+import com.example.backend.dto.Cursor;
+import com.example.backend.dto.PostSummary;
+import com.example.backend.entity.ImageMetadata;
 import com.example.backend.entity.Post;
+import com.example.backend.entity.PostVote;
 import com.example.backend.entity.User;
 import com.example.backend.repository.PostRepository;
-import com.example.backend.repository.UserRepository;
+import com.example.backend.repository.PostVoteRepository;
 
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
-import java.sql.Blob;
 
 @Service
 public class PostService {
 
     private final PostRepository postRepository;
-    private final UserRepository userRepository;
-
-    public PostService(PostRepository postRepository, UserRepository userRepository) {
+    private final PostVoteRepository postVoteRepository;
+    private final VoteCounterBuffer voteCounterBuffer;
+    private final SearchIndexService searchIndexService;
+    private final FeedService feedService;
+    private final LeaderboardService leaderboardService;
+    private final CommunityService communityService;
+    private final UserStatsService userStatsService;
+    private final BatchWriter batchWriter;
+
+    public PostService(PostRepository postRepository, PostVoteRepository postVoteRepository,
+            VoteCounterBuffer voteCounterBuffer, SearchIndexService searchIndexService, FeedService feedService,
+            LeaderboardService leaderboardService, CommunityService communityService,
+            UserStatsService userStatsService, BatchWriter batchWriter) {
         this.postRepository = postRepository;
-        this.userRepository = userRepository;
+        this.postVoteRepository = postVoteRepository;
+        this.voteCounterBuffer = voteCounterBuffer;
+        this.searchIndexService = searchIndexService;
+        this.feedService = feedService;
+        this.leaderboardService = leaderboardService;
+        this.communityService = communityService;
+        this.userStatsService = userStatsService;
+        this.batchWriter = batchWriter;
     }
 
     public Page<Post> getPostsByAuthor(String author, Pageable pageable) {
         return postRepository.findByAuthorUsername(author, pageable);
     }
 
-    public Page<Post> getPostsByCommunity(Long community, Pageable pageable) {
-        return postRepository.findByCommunityIdentifier(community, pageable);
+    public Page<PostSummary> getPostsByCommunity(Long community, Pageable pageable) {
+        return withPendingVotes(postRepository.findByCommunityIdentifier(community, pageable));
     }
 
     public Page<Post> getPostsByTitle(String title, Pageable pageable) {
@@ -42,32 +76,55 @@ public class PostService {
         return postRepository.findByAuthor(author, pageable);
     }
 
-    public Page<Post> searchPosts(String query, Pageable pageable, String order) {
-        return switch (order) {
-            case "creationDate" -> postRepository.engineSearchPostsOrderByCreationDate(query, pageable);
-            case "lastModifiedDate" -> postRepository.engineSearchPostsOrderByLastModifiedDate(query, pageable);
-            case "replies" -> postRepository.engineSearchPostsOrderByReplies(query, pageable);
-            case "likes" -> postRepository.engineSearchPostsOrderByLikes(query, pageable);
-            default -> postRepository.engineSearchPosts(query, pageable);
-        };
+    // Full-text search (whole words and word prefixes). When it finds nothing, or the
+    // query has no word it can match, the text is searched as a substring, so "ook"
+    // still finds "Bookmarks".
+    public Page<PostSummary> searchPosts(String query, Pageable pageable, String order) {
+        String terms = searchIndexService.toBooleanQuery(query);
+        if (terms != null) {
+            Page<Long> ids = switch (order) {
+                case "creationDate" -> postRepository.engineSearchPostsOrderByCreationDate(terms, pageable);
+                case "lastModifiedDate" -> postRepository.engineSearchPostsOrderByLastModifiedDate(terms, pageable);
+                case "replies" -> postRepository.engineSearchPostsOrderByReplies(terms, pageable);
+                case "likes" -> postRepository.engineSearchPostsOrderByLikes(terms, pageable);
+                default -> postRepository.engineSearchPosts(terms, pageable);
+            };
+            if (ids.getTotalElements() > 0) {
+                return summariesOf(ids);
+            }
+        }
+        String text = searchIndexService.toSubstring(query);
+        return text == null ? Page.empty(pageable)
+                : summariesOf(postRepository.searchPostIdsBySubstring(text, substringPage(pageable, order)));
     }
 
-    public Page<Post> searchPostsByCommunityIdentifier(Long communityIdentifier, String query, Pageable pageable,
+    public Page<PostSummary> searchPostsByCommunityIdentifier(Long communityIdentifier, String query, Pageable pageable,
             String order, boolean searchOnContent) {
         if (searchOnContent) {
-            return switch (order) {
-                case "creationDate" -> postRepository
-                        .findByCommunityIdentifierAndQueryOrderByCreationDate(communityIdentifier, query, pageable);
-                case "lastModifiedDate" -> postRepository
-                        .findByCommunityIdentifierAndQueryOrderByLastModifiedDate(communityIdentifier, query, pageable);
-                case "likes" ->
-                    postRepository.findByCommunityIdentifierAndQueryOrderByLikes(communityIdentifier, query, pageable);
-                case "replies" -> postRepository.findByCommunityIdentifierAndQueryOrderByReplies(communityIdentifier,
-                        query, pageable);
-                default -> postRepository.findByCommunityIdentifierAndQuery(communityIdentifier, query, pageable);
-            };
+            // as searchPosts, a substring search when the full-text search finds nothing
+            String terms = searchIndexService.toBooleanQuery(query);
+            if (terms != null) {
+                Page<Long> ids = switch (order) {
+                    case "creationDate" -> postRepository
+                            .findByCommunityIdentifierAndQueryOrderByCreationDate(communityIdentifier, terms, pageable);
+                    case "lastModifiedDate" -> postRepository.findByCommunityIdentifierAndQueryOrderByLastModifiedDate(
+                            communityIdentifier, terms, pageable);
+                    case "likes" -> postRepository.findByCommunityIdentifierAndQueryOrderByLikes(communityIdentifier,
+                            terms, pageable);
+                    case "replies" -> postRepository.findByCommunityIdentifierAndQueryOrderByReplies(
+                            communityIdentifier, terms, pageable);
+                    default -> postRepository.findByCommunityIdentifierAndQuery(communityIdentifier, terms, pageable);
+                };
+                if (ids.getTotalElements() > 0) {
+                    return summariesOf(ids);
+                }
+            }
+            String text = searchIndexService.toSubstring(query);
+            return text == null ? Page.empty(pageable)
+                    : summariesOf(postRepository.searchPostIdsOfCommunityBySubstring(communityIdentifier, text,
+                            substringPage(pageable, order)));
         } else {
-            return switch (order) {
+            return withPendingVotes(switch (order) {
                 case "creationDate" ->
                     postRepository.findByCommunityIdentifierOrderByCreationDate(communityIdentifier, pageable);
                 case "lastModifiedDate" ->
@@ -75,29 +132,91 @@ public class PostService {
                 case "likes" -> postRepository.findByCommunityIdentifierOrderByLikes(communityIdentifier, pageable);
                 case "replies" -> postRepository.findByCommunityIdentifierOrderByReplies(communityIdentifier, pageable);
                 default -> postRepository.findByCommunityIdentifier(communityIdentifier, pageable);
-            };
+            });
         }
     }
 
+    // Keyset page of the posts of a community (see Cursor). Supports the same orders
+    // as searchPostsByCommunityIdentifier, ties broken by the newest post.
+    public Slice<PostSummary> getPostsByCommunityAfter(Long communityIdentifier, String order, Cursor cursor, int size) {
+        Pageable pageable = PageRequest.of(0, size);
+        Slice<PostSummary> posts = switch (order) {
+            case "creationDate" -> postRepository.findByCommunityIdentifierOrderByCreationDateAfter(communityIdentifier,
+                    cursor.dateKey(), cursor.longId(), pageable);
+            case "lastModifiedDate" -> postRepository.findByCommunityIdentifierOrderByLastModifiedDateAfter(
+                    communityIdentifier, cursor.dateKey(), cursor.longId(), pageable);
+            case "likes" -> postRepository.findByCommunityIdentifierOrderByLikesAfter(communityIdentifier,
+                    cursor.intKey(), cursor.longId(), pageable);
+            case "replies" -> postRepository.findByCommunityIdentifierOrderByRepliesAfter(communityIdentifier,
+                    cursor.intKey(), cursor.longId(), pageable);
+            default -> throw new IllegalArgumentException("Invalid sort: " + order);
+        };
+        return posts.map(voteCounterBuffer::applyPending);
+    }
+
+    // Cursor of the page after a post. Likes are the stored counter, which is
+    // what the query sorts by, without the votes still buffered in memory.
+    public Cursor cursorOf(PostSummary post, String order) {
+        return switch (order) {
+            case "creationDate" -> Cursor.of(post.fullCreationDate(), post.identifier());
+            case "lastModifiedDate" -> Cursor.of(post.fullLastReplyDate(), post.identifier());
+            case "likes" -> Cursor.of(post.upvotes() - post.pendingUpvotes(), post.identifier());
+            case "replies" -> Cursor.of(post.comments(), post.identifier());
+            default -> throw new IllegalArgumentException("Invalid sort: " + order);
+        };
+    }
+
+    @Transactional
     public void savePost(Post post) {
         // only saves the post if it has a title and content, community is not null and
         // the author is a member of the community
         if (post.getTitle() != null && post.getContent() != null && post.getCommunity() != null
-                && post.getAuthor() != null && post.getCommunity().getMembers().contains(post.getAuthor())) {
+                && post.getAuthor() != null && communityService.isUserMemberOfCommunity(post.getAuthor().getUsername(),
+                        post.getCommunity().getIdentifier())) {
+            boolean created = post.getIdentifier() == null;
             postRepository.save(post);
+            if (created) {
+                userStatsService.postCreated(post.getAuthor().getUsername());
+            }
+            feedService.publish(post);
+            leaderboardService.postPublished(post.getAuthor().getUsername());
         }
     }
 
+    // Insert many new posts at once (seeding, imports) with batched inserts. The posts
+    // are not checked like in savePost; the profile counters of their authors are
+    // recomputed once and the posts are delivered to the home feeds. Returns the
+    // number of posts inserted.
+    public int savePosts(Collection<Post> posts) {
+        int inserted = batchWriter.insertAll(posts);
+        Set<String> authors = new HashSet<>();
+        for (Post post : posts) {
+            authors.add(post.getAuthor().getUsername());
+        }
+        userStatsService.refresh(authors);
+        for (Post post : posts) {
+            feedService.publish(post);
+            leaderboardService.postPublished(post.getAuthor().getUsername());
+        }
+        return inserted;
+    }
+
     public Post getPostById(Long id) {
-        return postRepository.findByIdentifier(id);
+        return voteCounterBuffer.applyPending(postRepository.findByIdentifier(id));
     }
 
     public void deletePostById(Long id) {
         postRepository.deleteById(id);
     }
 
+    @Transactional
     public void deletePost(Post post) {
         postRepository.delete(post);
+        if (post.getAuthor() != null) {
+            // pending upvotes are never written for a deleted post
+            userStatsService.postDeleted(post.getAuthor().getUsername(), post.getUpvotes() - post.getPendingUpvotes());
+            leaderboardService.postDeleted(post.getAuthor().getUsername(), post.getUpvotes(), post.getDownvotes());
+        }
     }
 
     public void updatePost(Post post) {
@@ -106,64 +225,75 @@ public class PostService {
         postRepository.save(post);
     }
 
-    public void upvotePost(Post post, String username) {
-        // remove the downvote if the user has downvoted the post
-        if (post.getDownvotedBy().contains(userRepository.findByUsername(username))) {
-            post.getDownvotedBy().remove(userRepository.findByUsername(username));
-            post.setDownvotes(post.getDownvotes() - 1);
-        }
-        post.upvote(userRepository.findByUsername(username));
-        postRepository.save(post);
-    }
-
-    public void downvotePost(Post post, String username) {
-        // remove the upvote if the user has upvoted the post
-        if (post.getUpvotedBy().contains(userRepository.findByUsername(username))) {
-            post.getUpvotedBy().remove(userRepository.findByUsername(username));
-            post.setUpvotes(post.getUpvotes() - 1);
+    // Vote a post. Voting the same way twice removes the vote and voting the other
+    // way switches it. Only the vote row of the user and the counters of the post
+    // are touched.
+    @Transactional
+    public void votePost(Post post, String username, PostVote.Direction direction) {
+        Long postId = post.getIdentifier();
+        int upvotes = 0;
+        int downvotes = 0;
+
+        // each statement only changes the row in the state it expects, so concurrent
+        // votes of the same user never fail on the primary key or count twice
+        if (postVoteRepository.addVote(postId, username, direction.name()) > 0) {
+            if (direction == PostVote.Direction.UPVOTE) {
+                upvotes = 1;
+            } else {
+                downvotes = 1;
+            }
+        } else if (postVoteRepository.deleteVote(postId, username, direction) > 0) {
+            if (direction == PostVote.Direction.UPVOTE) {
+                upvotes = -1;
+            } else {
+                downvotes = -1;
+            }
+        } else {
+            if (postVoteRepository.switchVote(postId, username, direction) == 0) {
+                return;
+            }
+            if (direction == PostVote.Direction.UPVOTE) {
+                upvotes = 1;
+                downvotes = -1;
+            } else {
+                upvotes = -1;
+                downvotes = 1;
+            }
         }
-        post.downvote(userRepository.findByUsername(username));
-        postRepository.save(post);
-    }
 
-    public void removeUpvote(Post post, String username) {
-        post.getUpvotedBy().remove(userRepository.findByUsername(username));
-        post.setUpvotes(post.getUpvotes() - 1);
-        postRepository.save(post);
+        // the counters are written in batches by the buffer
+        voteCounterBuffer.addPostVotes(postId, upvotes, downvotes);
+        voteCounterBuffer.applyPending(post);
+        leaderboardService.postVoted(post.getAuthor().getUsername(), upvotes, downvotes);
     }
 
-    public void removeDownvote(Post post, String username) {
-        post.getDownvotedBy().remove(userRepository.findByUsername(username));
-        post.setDownvotes(post.getDownvotes() - 1);
-        postRepository.save(post);
-    }
-
-    public void setImage(Post post, Blob image) {
+    public void setImage(Post post, ImageMetadata image) {
         post.addImage(image);
         postRepository.save(post);
     }
 
     // Has the given user upvoted the given post?
     public boolean hasUserUpvotedPost(String username, Long postId) {
-        return userRepository.getUpvotedPosts(username).contains(postRepository.findByIdentifier(postId));
+        return postVoteRepository.existsByPostIdAndUsernameAndDirection(postId, username, PostVote.Direction.UPVOTE);
     }
 
     // Has the given user downvoted the given post?
     public boolean hasUserDownvotedPost(String username, Long postId) {
-        return userRepository.getDownvotedPosts(username).contains(postRepository.findByIdentifier(postId));
+        return postVoteRepository.existsByPostIdAndUsernameAndDirection(postId, username, PostVote.Direction.DOWNVOTE);
     }
 
     // User specific (recommendations' algorithms)
+    // Home feeds (read from the materialized timelines)
     public Page<Post> getMostLikedPostsOfMostFollowedUsers(String username, Pageable pageable) {
-        return postRepository.getMostLikedPostsOfMostFollowedUsers(username, pageable);
+        return withPendingVotes(feedService.getFollowingFeedByLikes(username, pageable));
     }
 
     public Page<Post> getMostLikedPostsOfUserCommunities(String username, Pageable pageable) {
-        return postRepository.getMostLikedPostsOfFollowedCommunities(username, pageable);
+        return withPendingVotes(feedService.getCommunitiesFeedByLikes(username, pageable));
     }
 
     public Page<Post> getMostRecentPostsOfFollowedCommunities(String username, Pageable pageable) {
-        return postRepository.getMostRecentPostsOfFollowedCommunities(username, pageable);
+        return withPendingVotes(feedService.getCommunitiesFeedByDate(username, pageable));
     }
 
     // General (recommendations' algorithms)
@@ -179,24 +309,70 @@ public class PostService {
         return postRepository.getMostRecentPostsOfMostFollowedCommunities(pageable);
     }
 
-    public Page<Post> getPostsOfUser(String username, Pageable pageable, String order) {
-        return switch (order) {
+    public Page<PostSummary> getPostsOfUser(String username, Pageable pageable, String order) {
+        return withPendingVotes(switch (order) {
             case "creationDate" -> postRepository.getPostsOfUserOrderByCreationDate(username, pageable);
             case "lastModifiedDate" -> postRepository.getPostsOfUserOrderByLastModifiedDate(username, pageable);
             case "likes" -> postRepository.getPostsOfUserOrderByLikes(username, pageable);
             case "replies" -> postRepository.getPostsOfUserOrderByReplies(username, pageable);
-            default -> postRepository.findByAuthorUsername(username, pageable);
-        };
+            default -> postRepository.getPostsOfUser(username, pageable);
+        });
     }
 
-    public Page<Post> searchPostsOfUser(String username, String query, Pageable pageable, String order) {
-        return switch (order) {
-            case "creationDate" -> postRepository.getPostsOfUserAndQueryOrderByCreationDate(username, query, pageable);
-            case "lastModifiedDate" -> postRepository.getPostsOfUserAndQueryOrderByLastModifiedDate(username, query, pageable);
-            case "likes" -> postRepository.getPostsOfUserAndQueryOrderByLikes(username, query, pageable);
-            case "replies" -> postRepository.getPostsOfUserAndQueryOrderByReplies(username, query, pageable);
-            default -> postRepository.getPostsOfUserAndQuery(username, query, pageable);
+    // As searchPosts, a substring search when the full-text search finds nothing
+    public Page<PostSummary> searchPostsOfUser(String username, String query, Pageable pageable, String order) {
+        String terms = searchIndexService.toBooleanQuery(query);
+        if (terms != null) {
+            Page<Long> ids = switch (order) {
+                case "creationDate" -> postRepository.getPostsOfUserAndQueryOrderByCreationDate(username, terms, pageable);
+                case "lastModifiedDate" -> postRepository.getPostsOfUserAndQueryOrderByLastModifiedDate(username, terms, pageable);
+                case "likes" -> postRepository.getPostsOfUserAndQueryOrderByLikes(username, terms, pageable);
+                case "replies" -> postRepository.getPostsOfUserAndQueryOrderByReplies(username, terms, pageable);
+                default -> postRepository.getPostsOfUserAndQuery(username, terms, pageable);
+            };
+            if (ids.getTotalElements() > 0) {
+                return summariesOf(ids);
+            }
+        }
+        String text = searchIndexService.toSubstring(query);
+        return text == null ? Page.empty(pageable)
+                : summariesOf(postRepository.searchPostIdsOfUserBySubstring(username, text,
+                        substringPage(pageable, order)));
+    }
+
+    // Page of a substring search in one of the search orders. Without a relevance
+    // ranking the default order is the newest post first.
+    private static Pageable substringPage(Pageable pageable, String order) {
+        String property = switch (order) {
+            case "lastModifiedDate" -> "fullLastReplyDate";
+            case "likes" -> "upvotes";
+            case "replies" -> "comments";
+            default -> "fullCreationDate";
         };
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(),
+                Sort.by(Sort.Direction.DESC, property, "identifier"));
     }
 
+    // Add the votes still buffered in memory to the posts of a page
+    private <S extends Slice<Post>> S withPendingVotes(S posts) {
+        posts.forEach(voteCounterBuffer::applyPending);
+        return posts;
+    }
+
+    private Page<PostSummary> withPendingVotes(Page<PostSummary> posts) {
+        return posts.map(voteCounterBuffer::applyPending);
+    }
+
+    // Summaries of a page of post ids, in the order of the page, read with one query
+    // (posts deleted in between are left out)
+    private Page<PostSummary> summariesOf(Page<Long> ids) {
+        if (ids.isEmpty()) {
+            return new PageImpl<>(List.of(), ids.getPageable(), ids.getTotalElements());
+        }
+        Map<Long, PostSummary> summaries = postRepository.findSummaries(ids.getContent()).stream()
+                .collect(Collectors.toMap(PostSummary::identifier, Function.identity()));
+        List<PostSummary> posts = ids.getContent().stream().map(summaries::get).filter(Objects::nonNull)
+                .map(voteCounterBuffer::applyPending).toList();
+        return new PageImpl<>(posts, ids.getPageable(), ids.getTotalElements());
+    }
 }
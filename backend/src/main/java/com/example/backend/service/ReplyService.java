@@ -1,21 +1,47 @@
 package com.example.backend.service;
 
+import com.example.backend.config.SecondLevelCacheSync;
+import com.example.backend.dto.Cursor;
+import com.example.backend.entity.Post;
 import com.example.backend.entity.Reply;
-import com.example.backend.repository.UserRepository;
+import com.example.backend.repository.ReplyLikeRepository;
 import com.example.backend.repository.ReplyRepository;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @Service
 public class ReplyService {
 
-    private final ReplyRepository replyRepository;
-    private final UserRepository userRepository;
+    private static final String COMMENTS_UPDATE = "UPDATE post SET comments = comments + ? WHERE identifier = ?";
 
-    public ReplyService(ReplyRepository replyRepository, UserRepository userRepository) {
+    private final ReplyRepository replyRepository;
+    private final ReplyLikeRepository replyLikeRepository;
+    private final VoteCounterBuffer voteCounterBuffer;
+    private final SearchIndexService searchIndexService;
+    private final BatchWriter batchWriter;
+    private final JdbcTemplate jdbcTemplate;
+    private final SecondLevelCacheSync secondLevelCache;
+
+    public ReplyService(ReplyRepository replyRepository, ReplyLikeRepository replyLikeRepository,
+            VoteCounterBuffer voteCounterBuffer, SearchIndexService searchIndexService, BatchWriter batchWriter,
+            JdbcTemplate jdbcTemplate, SecondLevelCacheSync secondLevelCache) {
         this.replyRepository = replyRepository;
-        this.userRepository = userRepository;
+        this.replyLikeRepository = replyLikeRepository;
+        this.voteCounterBuffer = voteCounterBuffer;
+        this.searchIndexService = searchIndexService;
+        this.batchWriter = batchWriter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.secondLevelCache = secondLevelCache;
     }
 
     public boolean existsByPostIDAndAuthorUsername(Long postID, String authorUsername) {
@@ -26,6 +52,25 @@ public class ReplyService {
         return replyRepository.save(reply);
     }
 
+    // Insert many new replies at once (seeding, imports) with batched inserts, then add
+    // them to the comment counters of their posts with one relative UPDATE per post.
+    // Returns the number of replies inserted.
+    public int saveReplies(Collection<Reply> replies) {
+        int inserted = batchWriter.insertAll(replies);
+        Map<Long, Integer> comments = new HashMap<>();
+        for (Reply reply : replies) {
+            comments.merge(reply.getPost().getIdentifier(), 1, Integer::sum);
+        }
+        List<Object[]> updates = new ArrayList<>(comments.size());
+        comments.forEach((postId, added) -> updates.add(new Object[] { added, postId }));
+        jdbcTemplate.batchUpdate(COMMENTS_UPDATE, updates);
+        // the counters were written outside Hibernate
+        for (Long postId : comments.keySet()) {
+            secondLevelCache.evict(Post.class, postId);
+        }
+        return inserted;
+    }
+
     public void deleteReply(Reply reply) {
         if (reply != null) {
             replyRepository.delete(reply);
@@ -33,7 +78,7 @@ public class ReplyService {
     }
 
     public Reply getReplyById(Long id) {
-        return replyRepository.findByIdentifier(id);
+        return voteCounterBuffer.applyPending(replyRepository.findByIdentifier(id));
     }
 
     public Page<Reply> getRepliesByTitle(String title, Pageable pageable) {
@@ -49,15 +94,50 @@ public class ReplyService {
     }
 
     public Page<Reply> getRepliesByPost(Long postId, Pageable pageable, String order) {
-        return switch (order) {
+        Page<Reply> replies = switch (order) {
             case "creationDate" -> replyRepository.findByPostOrderByCreationDate(postId, pageable);
             case "rating" -> replyRepository.findByPostOrderByRating(postId, pageable);
             default -> replyRepository.findByPostIdentifier(postId, pageable);
         };
+        replies.forEach(voteCounterBuffer::applyPending);
+        return replies;
+    }
+
+    // Keyset page of the replies of a post (see Cursor)
+    public Slice<Reply> getRepliesByPostAfter(Long postId, String order, Cursor cursor, int size) {
+        Pageable pageable = PageRequest.of(0, size);
+        Slice<Reply> replies = switch (order) {
+            case "creationDate" ->
+                replyRepository.findByPostOrderByCreationDateAfter(postId, cursor.dateKey(), cursor.longId(), pageable);
+            case "rating" ->
+                replyRepository.findByPostOrderByRatingAfter(postId, cursor.intKey(), cursor.longId(), pageable);
+            default -> throw new IllegalArgumentException("Invalid order: " + order);
+        };
+        replies.forEach(voteCounterBuffer::applyPending);
+        return replies;
     }
 
+    // Cursor of the page after a reply (stored likes, as sorted by the query)
+    public Cursor cursorOf(Reply reply, String order) {
+        return switch (order) {
+            case "creationDate" -> Cursor.of(reply.getFullCreationDate(), reply.getIdentifier());
+            case "rating" -> Cursor.of(reply.getLikes() - reply.getPendingLikes(), reply.getIdentifier());
+            default -> throw new IllegalArgumentException("Invalid order: " + order);
+        };
+    }
+
+    // Full-text search, then a substring search when it finds nothing or the query has
+    // no word it can match (a part of a word, "ook" in "Bookmarks")
     public Page<Reply> searchReplies(String query, Pageable pageable) {
-        return replyRepository.engineSearchReplies(query, pageable);
+        String terms = searchIndexService.toBooleanQuery(query);
+        if (terms != null) {
+            Page<Reply> replies = replyRepository.engineSearchReplies(terms, pageable);
+            if (replies.getTotalElements() > 0) {
+                return replies;
+            }
+        }
+        String text = searchIndexService.toSubstring(query);
+        return text == null ? Page.empty(pageable) : replyRepository.searchRepliesBySubstring(text, pageable);
     }
 
     public Page<Reply> searchRepliesByPost(Long postId, String query, String mode, Pageable pageable) {
@@ -65,24 +145,39 @@ public class ReplyService {
             case "title" -> replyRepository.findByPostAndTitle(postId, query, pageable);
             case "content" -> replyRepository.findByPostAndContent(postId, query, pageable);
             case "author" -> replyRepository.findByPostAndAuthor(postId, query, pageable);
-            default -> replyRepository.findByPostAndQuery(postId, query, pageable);
+            default -> {
+                String terms = searchIndexService.toBooleanQuery(query);
+                if (terms != null) {
+                    Page<Reply> replies = replyRepository.findByPostAndQuery(postId, terms, pageable);
+                    if (replies.getTotalElements() > 0) {
+                        yield replies;
+                    }
+                }
+                String text = searchIndexService.toSubstring(query);
+                yield text == null ? Page.empty(pageable)
+                        : replyRepository.searchRepliesOfPostBySubstring(postId, text, pageable);
+            }
         };
     }
 
+    // The like is a single row of reply_liked_by, the counter only moves if the row
+    // was actually added or removed
     public void likeReply(Reply reply, String username) {
-        reply.setLikes(reply.getLikes() + 1);
-        reply.addLikedBy(userRepository.findByUsername(username));
-        replyRepository.save(reply);
+        if (replyLikeRepository.addLike(reply.getIdentifier(), username) > 0) {
+            voteCounterBuffer.addReplyLikes(reply.getIdentifier(), 1);
+        }
+        voteCounterBuffer.applyPending(reply);
     }
 
     public void unlikeReply(Reply reply, String username) {
-        reply.setLikes(reply.getLikes() - 1);
-        reply.removeLikedBy(userRepository.findByUsername(username));
-        replyRepository.save(reply);
+        if (replyLikeRepository.removeLike(reply.getIdentifier(), username) > 0) {
+            voteCounterBuffer.addReplyLikes(reply.getIdentifier(), -1);
+        }
+        voteCounterBuffer.applyPending(reply);
     }
 
     // Has the given user liked the given reply?
     public boolean hasUserLikedReply(String username, Long replyId) {
-        return userRepository.getLikedReplies(username).contains(replyRepository.findByIdentifier(replyId));
+        return replyLikeRepository.existsByReplyIdAndUsername(replyId, username);
     }
 }
@@ -0,0 +1,173 @@
+package com.example.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Full-text search indexes used by the search engine queries. MySQL keeps them up
+// to date on every insert, update and delete of the indexed rows, so the only thing
+// done here is creating them at startup, rebuilding them on demand and turning the
+// user input into a boolean mode query.
+@Service
+public class SearchIndexService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SearchIndexService.class);
+
+    private record FullTextIndex(String table, String name, String columns) {
+    }
+
+    private static final List<FullTextIndex> INDEXES = List.of(
+            new FullTextIndex("post", "ft_post", "title, content"),
+            new FullTextIndex("reply", "ft_reply", "title, content"),
+            new FullTextIndex("community", "ft_community", "name, description"),
+            new FullTextIndex("user", "ft_user", "username, email, alias, description"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Rebuilds run one at a time, off the request thread
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), new CustomizableThreadFactory("search-index-"));
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    // Words the full-text parser of the server never indexes (see loadTokenizerSettings)
+    private int minTokenSize;
+    private int maxTokenSize;
+    private Set<String> stopwords = Set.of();
+
+    public SearchIndexService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        createMissingIndexes();
+        loadTokenizerSettings();
+    }
+
+    // Create the indexes that do not exist yet (they are part of the V1 migration, this
+    // covers databases baselined without them)
+    private void createMissingIndexes() {
+        for (FullTextIndex index : INDEXES) {
+            if (!indexExists(index.table(), index.name())) {
+                createIndex(index, index.name());
+            }
+        }
+    }
+
+    // Token size limits and stopword list of the InnoDB full-text parser: a required
+    // term it never indexes makes a boolean query match nothing
+    private void loadTokenizerSettings() {
+        minTokenSize = jdbcTemplate.queryForObject("SELECT @@innodb_ft_min_token_size", Integer.class);
+        maxTokenSize = jdbcTemplate.queryForObject("SELECT @@innodb_ft_max_token_size", Integer.class);
+        Set<String> words = new HashSet<>();
+        Boolean enabled = jdbcTemplate.queryForObject("SELECT @@innodb_ft_enable_stopword", Boolean.class);
+        if (Boolean.TRUE.equals(enabled)) {
+            String table = jdbcTemplate.queryForObject("SELECT @@innodb_ft_server_stopword_table", String.class);
+            String source = table == null || table.isEmpty()
+                    ? "INFORMATION_SCHEMA.INNODB_FT_DEFAULT_STOPWORD"
+                    : "`" + table.replace("/", "`.`") + "`";
+            for (String word : jdbcTemplate.queryForList("SELECT value FROM " + source, String.class)) {
+                words.add(word.toLowerCase(Locale.ROOT));
+            }
+        }
+        stopwords = Set.copyOf(words);
+    }
+
+    // Rebuild every index from the table contents in the background. The new index is
+    // built next to the old one, which keeps serving the searches, and then swapped in.
+    // Returns false if a rebuild is already running.
+    public boolean rebuildIndexes() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        executor.execute(() -> {
+            try {
+                for (FullTextIndex index : INDEXES) {
+                    rebuildIndex(index);
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Search index rebuild failed", e);
+            } finally {
+                rebuilding.set(false);
+            }
+        });
+        return true;
+    }
+
+    private void rebuildIndex(FullTextIndex index) {
+        long start = System.currentTimeMillis();
+        String building = index.name() + "_new";
+        if (indexExists(index.table(), building)) {
+            // Left behind by an interrupted rebuild
+            jdbcTemplate.execute("ALTER TABLE `" + index.table() + "` DROP INDEX " + building);
+        }
+        createIndex(index, building);
+        if (indexExists(index.table(), index.name())) {
+            jdbcTemplate.execute("ALTER TABLE `" + index.table() + "` DROP INDEX " + index.name()
+                    + ", RENAME INDEX " + building + " TO " + index.name());
+        } else {
+            jdbcTemplate.execute("ALTER TABLE `" + index.table() + "` RENAME INDEX " + building
+                    + " TO " + index.name());
+        }
+        LOG.info("Rebuilt full-text index {} in {} ms", index.name(), System.currentTimeMillis() - start);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Turn the text typed by the user into a boolean mode query in which every word
+    // is required and matched as a prefix ("new rel" -> "+new* +rel*"). Words the
+    // index never holds (stopwords, too short or too long) are left out. Returns null
+    // if no searchable word is left: the callers then search with toSubstring.
+    public String toBooleanQuery(String query) {
+        if (query == null) {
+            return null;
+        }
+        StringJoiner terms = new StringJoiner(" ");
+        for (String word : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}_]+")) {
+            if (word.length() >= minTokenSize && word.length() <= maxTokenSize && !stopwords.contains(word)) {
+                terms.add("+" + word + "*");
+            }
+        }
+        return terms.length() == 0 ? null : terms.toString();
+    }
+
+    // Text of the substring search used when toBooleanQuery has no terms. Returns null
+    // if there is nothing to search for.
+    public String toSubstring(String query) {
+        if (query == null || query.isBlank()) {
+            return null;
+        }
+        return query.trim();
+    }
+
+    private boolean indexExists(String table, String name) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE() "
+                        + "AND table_name = ? AND index_name = ?",
+                Integer.class, table, name);
+        return count != null && count > 0;
+    }
+
+    private void createIndex(FullTextIndex index, String name) {
+        LOG.info("Creating full-text index {} on {}", name, index.table());
+        jdbcTemplate.execute("CREATE FULLTEXT INDEX " + name + " ON `" + index.table() + "` ("
+                + index.columns() + ")");
+    }
+}
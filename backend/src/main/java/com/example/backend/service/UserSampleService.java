@@ -1,9 +1,12 @@
 package com.example.backend.service;
 
 import jakarta.annotation.PostConstruct;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import com.example.backend.entity.User;
+import com.example.backend.entity.UserFollow;
+import com.example.backend.repository.UserFollowRepository;
 import com.example.backend.repository.UserRepository;
 
 import java.io.IOException;
@@ -12,21 +15,35 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Service
+@ConditionalOnProperty(name = "sample-data.enabled", havingValue = "true", matchIfMissing = true)
 public class UserSampleService {
     /*
-    Initializes users (dummy data).
+    Initializes users (dummy data). The sample data is only loaded into an empty
+    database (see isLoaded), so the data is kept between starts.
      */
 
     private final UserRepository userRepository;
+    private final UserFollowRepository userFollowRepository;
     private final PasswordEncoder passwordEncoder;
+    private final ImageService imageService;
 
-    public UserSampleService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    private boolean loaded = false;
+
+    public UserSampleService(UserRepository userRepository, UserFollowRepository userFollowRepository,
+            PasswordEncoder passwordEncoder, ImageService imageService) {
         this.userRepository = userRepository;
+        this.userFollowRepository = userFollowRepository;
         this.passwordEncoder = passwordEncoder;
+        this.imageService = imageService;
     }
 
     @PostConstruct
     public void init() throws IOException, SQLException {
+        if (userRepository.count() > 0) {
+            return;
+        }
+        loaded = true;
+
         List<String> userRoles = List.of("USER");
         List<String> adminRoles = List.of("USER", "ADMIN");
 
@@ -41,45 +58,45 @@ public class UserSampleService {
 
         for (int i = 0; i < usernames.size(); i++) {
             User user = new User(usernames.get(i), aliases.get(i), descriptions.get(i), profilePictures.get(i), emails.get(i), passwords.get(i), roles.get(i));
+            user.setPfpMetadata(imageService.storeAsset(user.getPfpString()));
             users.add(user);
         }
 
         userRepository.saveAll(users);
 
         // FOLLOWERS AND FOLLOWING
+        List<UserFollow> follows = new ArrayList<>();
 
         // BookReader_14 follows FanBook_785, YourReader, and AdminReader
-        users.get(0).addFollowing(users.get(1));
-        users.get(1).addFollower(users.get(0));
-
-        users.get(0).addFollowing(users.get(2));
-        users.get(2).addFollower(users.get(0));
-
-        users.get(0).addFollowing(users.get(3));
-        users.get(3).addFollower(users.get(0));
+        follow(users.get(0), users.get(1), follows);
+        follow(users.get(0), users.get(2), follows);
+        follow(users.get(0), users.get(3), follows);
 
         // FanBook_785 follows BookReader_14 and YourReader
-        users.get(1).addFollowing(users.get(0));
-        users.get(0).addFollower(users.get(1));
-
-        users.get(1).addFollowing(users.get(2));
-        users.get(2).addFollower(users.get(1));
+        follow(users.get(1), users.get(0), follows);
+        follow(users.get(1), users.get(2), follows);
 
         // YourReader follows BookReader_14 and FanBook_785
-        users.get(2).addFollowing(users.get(0));
-        users.get(0).addFollower(users.get(2));
-
-        users.get(2).addFollowing(users.get(1));
-        users.get(1).addFollower(users.get(2));
+        follow(users.get(2), users.get(0), follows);
+        follow(users.get(2), users.get(1), follows);
 
         // AdminReader follows BookReader_14 and FanBook_785
-        users.get(3).addFollowing(users.get(0));
-        users.get(0).addFollower(users.get(3));
-
-        users.get(3).addFollowing(users.get(1));
-        users.get(1).addFollower(users.get(3));
+        follow(users.get(3), users.get(0), follows);
+        follow(users.get(3), users.get(1), follows);
 
+        userFollowRepository.saveAll(follows);
         userRepository.saveAll(users);
 
     }
+
+    // Did this start load the sample data? The other sample services only add theirs then
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    private void follow(User follower, User followed, List<UserFollow> follows) {
+        follows.add(new UserFollow(follower.getUsername(), followed.getUsername()));
+        follower.addFollowing();
+        followed.addFollower();
+    }
 }
@@ -1,38 +1,62 @@
 package com.example.backend.service;
 
+import com.example.backend.config.SecondLevelCacheSync;
 import com.example.backend.entity.*;
 import com.example.backend.repository.*;
 
+import jakarta.persistence.EntityManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.core.session.SessionInformation;
 import org.springframework.security.core.session.SessionRegistry;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.sql.Blob;
 import java.time.LocalDateTime;
-import java.util.Collections;
 import java.util.List;
 
 @Service
 public class UserService {
 
-    private final UserRepository userRepository;
-    private final CommunityRepository communityRepository;
-    private final ReplyRepository replyRepository;
-    private final PostRepository postRepository;
-    private final BanRepository banRepository;
+    // Moves the follow counters of both users of an edge, relative to the stored values
+    private static final String MOVE_FOLLOW_COUNTERS = "UPDATE `user` "
+            + "SET following = following + CASE WHEN username = ? THEN ? ELSE 0 END, "
+            + "followers = followers + CASE WHEN username = ? THEN ? ELSE 0 END WHERE username IN (?, ?)";
 
-    public UserService(UserRepository userRepository, CommunityRepository communityRepository,
-            ReplyRepository replyRepository, PostRepository postRepository, BanRepository banRepository) {
+    private final UserRepository userRepository;
+    private final SearchIndexService searchIndexService;
+    private final FeedService feedService;
+    private final LeaderboardService leaderboardService;
+    private final UserFollowRepository userFollowRepository;
+    private final FollowGraph followGraph;
+    private final UserStatsService userStatsService;
+    private final ExpiryScheduler expiryScheduler;
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+    private final SecondLevelCacheSync secondLevelCache;
+
+    public UserService(UserRepository userRepository, SearchIndexService searchIndexService, FeedService feedService,
+            LeaderboardService leaderboardService, UserFollowRepository userFollowRepository, FollowGraph followGraph,
+            UserStatsService userStatsService, ExpiryScheduler expiryScheduler, JdbcTemplate jdbcTemplate,
+            EntityManager entityManager, SecondLevelCacheSync secondLevelCache) {
 
         this.userRepository = userRepository;
-        this.communityRepository = communityRepository;
-        this.replyRepository = replyRepository;
-        this.postRepository = postRepository;
-        this.banRepository = banRepository;
+        this.searchIndexService = searchIndexService;
+        this.feedService = feedService;
+        this.leaderboardService = leaderboardService;
+        this.userFollowRepository = userFollowRepository;
+        this.followGraph = followGraph;
+        this.userStatsService = userStatsService;
+        this.expiryScheduler = expiryScheduler;
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManager = entityManager;
+        this.secondLevelCache = secondLevelCache;
     }
 
     public User getUserByUsername(String username) {
@@ -49,38 +73,46 @@ public class UserService {
 
     public void saveUser(User user) {
         userRepository.save(user);
-    }
-
-    public void deleteUser(User user) {
-        if (user != null) {
-            userRepository.delete(user);
-        }
+        leaderboardService.userSaved(user.getUsername(), user.getBanCount());
     }
 
     public Page<User> searchUsers(String query, Pageable pageable) {
-        return userRepository.engineSearchUsers(query, pageable);
+        String terms = searchIndexService.toBooleanQuery(query);
+        Page<User> users = terms == null ? Page.empty(pageable) : userRepository.engineSearchUsers(terms, pageable);
+        return users.getTotalElements() > 0 ? users : searchUsersBySubstring(query, pageable);
     }
 
     public Page<User> searchUsersOrderByCreationDate(String query, Pageable pageable) {
-        return userRepository.engineSearchUsersOrderByCreationDate(query, pageable);
+        String terms = searchIndexService.toBooleanQuery(query);
+        Page<User> users = terms == null ? Page.empty(pageable)
+                : userRepository.engineSearchUsersOrderByCreationDate(terms, pageable);
+        return users.getTotalElements() > 0 ? users : searchUsersBySubstring(query, pageable);
+    }
+
+    // Substring search for the text the full-text index can't match (a part of a word,
+    // "ook" in "Bookmarks") or when it finds nothing, newest user first
+    private Page<User> searchUsersBySubstring(String query, Pageable pageable) {
+        String text = searchIndexService.toSubstring(query);
+        if (text == null) {
+            return Page.empty(pageable);
+        }
+        return userRepository.searchUsersBySubstring(text, PageRequest.of(pageable.getPageNumber(),
+                pageable.getPageSize(), Sort.by(Sort.Direction.DESC, "fullCreationDate", "username")));
     }
 
     public int getNumberOfCommunities(String username) {
-        User user = userRepository.findByUsername(username);
-        if (user != null) {
-            return user.getCommunities().size();
-        } else {
-            return -1;
-        }
+        UserStats stats = userStatsService.getStats(username);
+        return stats == null ? -1 : stats.getCommunities();
     }
 
     public int getNumberOfAdminCommunities(String username) {
-        int communitiesCount = userRepository.getNumberOfAdminCommunities(username);
-        return communitiesCount;
+        UserStats stats = userStatsService.getStats(username);
+        return stats == null ? 0 : stats.getAdminCommunities();
     }
 
     public int getNumberOfPosts(String username) {
-        return userRepository.getNumberOfPosts(username);
+        UserStats stats = userStatsService.getStats(username);
+        return stats == null ? 0 : stats.getPosts();
     }
 
     // Get the communities a user is a member of
@@ -94,49 +126,80 @@ public class UserService {
     }
 
     public int getNumberOfFollowers(String username) {
-        return userRepository.getNumberOfFollowers(username);
+        if (followGraph.isLoaded()) {
+            return followGraph.getFollowersCount(username);
+        }
+        return userFollowRepository.countByFollowed(username);
     }
 
     public int getNumberOfFollowing(String username) {
-        return userRepository.getNumberOfFollowing(username);
+        if (followGraph.isLoaded()) {
+            return followGraph.getFollowingCount(username);
+        }
+        return userFollowRepository.countByFollower(username);
     }
 
-    public Page<User> getFollowing(String username, Pageable pageable) {
-        return userRepository.getFollowing(username, pageable);
+    public Slice<User> getFollowing(String username, Pageable pageable) {
+        return userFollowRepository.getFollowing(username, pageable);
     }
 
-    public Page<User> getFollowers(String username, Pageable pageable) {
-        return userRepository.getFollowers(username, pageable);
+    public Slice<User> getFollowers(String username, Pageable pageable) {
+        return userFollowRepository.getFollowers(username, pageable);
     }
 
+    // The edge and both counters are written in one transaction: the primary key of
+    // user_follow settles concurrent follows and the counters are moved relative to
+    // the stored values, never from the (possibly stale) entities. The follow graph
+    // and the cached users follow once it commits.
+    @Transactional
     public void followUser(User follower, User following) {
         // Can't follow yourself or someone you're already following
-        if (!follower.equals(following) && !follower.getFollowingList().contains(following)) {
-            follower.addFollowing(following);
-            following.addFollower(follower);
-            userRepository.save(follower);
-            userRepository.save(following);
+        if (follower.equals(following)
+                || userFollowRepository.addEdge(follower.getUsername(), following.getUsername()) == 0) {
+            return;
         }
+        moveFollowCounters(follower, following, 1);
+        feedService.follow(follower.getUsername(), following.getUsername());
+        AfterCommit.run(() -> followGraph.follow(follower.getUsername(), following.getUsername()));
     }
 
+    @Transactional
     public void unfollowUser(User follower, User following) {
         // Can't unfollow someone you're not following or yourself
-        if (follower.getFollowingList().contains(following) && !follower.equals(following)) {
-            follower.removeFollowing(following);
-            following.removeFollower(follower);
-            userRepository.save(follower);
-            userRepository.save(following);
+        if (follower.equals(following)
+                || userFollowRepository.deleteEdge(follower.getUsername(), following.getUsername()) == 0) {
+            return;
+        }
+        moveFollowCounters(follower, following, -1);
+        feedService.unfollow(follower.getUsername(), following.getUsername());
+        AfterCommit.run(() -> followGraph.unfollow(follower.getUsername(), following.getUsername()));
+    }
+
+    private void moveFollowCounters(User follower, User followed, int delta) {
+        jdbcTemplate.update(MOVE_FOLLOW_COUNTERS, follower.getUsername(), delta, followed.getUsername(), delta,
+                follower.getUsername(), followed.getUsername());
+        // the users of the request are read again with the new counters, the cached
+        // ones are dropped once the change commits
+        for (User user : List.of(follower, followed)) {
+            if (entityManager.contains(user)) {
+                entityManager.refresh(user);
+            }
         }
+        AfterCommit.run(() -> {
+            secondLevelCache.evict(User.class, follower.getUsername());
+            secondLevelCache.evict(User.class, followed.getUsername());
+        });
     }
 
     public boolean isUserFollowing(String follower, String following) {
-        return userRepository.findByUsername(follower).getFollowingList()
-                .contains(userRepository.findByUsername(following));
+        if (followGraph.isLoaded()) {
+            return followGraph.isFollowing(follower, following);
+        }
+        return userFollowRepository.existsByFollowerAndFollowed(follower, following);
     }
 
     public boolean isUserFollower(String follower, String following) {
-        return userRepository.findByUsername(following).getFollowersList()
-                .contains(userRepository.findByUsername(follower));
+        return isUserFollowing(follower, following);
     }
 
     public boolean isUsernameAvailable(String username) {
@@ -147,57 +210,9 @@ public class UserService {
         return userRepository.findByEmail(email) == null;
     }
 
-    public void setUserImage(String username, Blob image) {
+    public void setUserImage(String username, ImageMetadata image) {
         User user = userRepository.findByUsername(username);
-        user.setPfp(image);
-        userRepository.save(user);
-    }
-
-    public void removeUserReferences(User user) {
-        // Remove user from followers and following lists
-        for (User follower : user.getFollowersList()) {
-            follower.removeFollowing(user);
-            userRepository.save(follower);
-        }
-        for (User following : user.getFollowingList()) {
-            following.removeFollower(user);
-            userRepository.save(following);
-        }
-
-        // Clear the lists to avoid further issues
-        user.getFollowersList().clear();
-        user.getFollowingList().clear();
-
-        // Remove user from communities
-        for (Community community : user.getCommunities()) {
-            community.getMembers().remove(user);
-            communityRepository.save(community);
-        }
-        user.getCommunities().clear();
-
-        // clear the liked replies
-        for (Reply reply : user.getLikedReplies()) {
-            reply.getLikedBy().remove(user);
-            replyRepository.save(reply);
-        }
-
-        for (Post post : user.getUpvotedPosts()) {
-            post.getUpvotedBy().remove(user);
-            postRepository.save(post);
-        }
-
-        for (Post post : user.getDownvotedPosts()) {
-            post.getDownvotedBy().remove(user);
-            postRepository.save(post);
-        }
-
-        // Remove user bans
-        List<Ban> userBans = communityRepository.getBansByUser(user.getUsername());
-        if (userBans != null && !userBans.isEmpty()) {
-            banRepository.deleteAll(userBans);
-        }
-
-        // Save the user
+        user.setPfpMetadata(image);
         userRepository.save(user);
     }
 
@@ -206,42 +221,15 @@ public class UserService {
     }
 
     public List<Object[]> getMostPopularUsersCount(int size) {
-        List<Object[]> userList = userRepository.getUsersWithMostLikedContentCount();
-        if (userList != null) {
-            if (size > userList.size()) {
-                return userList;
-            } else {
-                return userList.subList(0, size);
-            }
-        } else {
-            return Collections.emptyList();
-        }
+        return leaderboardService.getMostUpvotedUsers(size);
     }
 
     public List<Object[]> getMostBannedUsersCount(int size) {
-        List<Object[]> userList = userRepository.getUsersWithMostBansCount();
-        if (userList != null) {
-            if (size > userList.size()) {
-                return userList;
-            } else {
-                return userList.subList(0, size);
-            }
-        } else {
-            return Collections.emptyList();
-        }
+        return leaderboardService.getMostBannedUsers(size);
     }
 
     public List<Object[]> getMostDislikedUsersCount(int size) {
-        List<Object[]> userList = userRepository.getUsersWithMostDislikesCount();
-        if (userList != null) {
-            if (size > userList.size()) {
-                return userList;
-            } else {
-                return userList.subList(0, size);
-            }
-        } else {
-            return Collections.emptyList();
-        }
+        return leaderboardService.getMostDownvotedUsers(size);
     }
 
     // ADMIN ONLY: Disable a user account
@@ -263,6 +251,7 @@ public class UserService {
 
             user.setDisabled(true, timeNow);
             userRepository.save(user);
+            expiryScheduler.suspensionCreated(username, timeNow);
         }
         return user;
     }
@@ -279,19 +268,14 @@ public class UserService {
 
     // Account disabled check
     public boolean isAccountDisabled(String username) {
-        User user = userRepository.findByUsername(username);
+        return isAccountDisabled(userRepository.findByUsername(username));
+    }
 
-        // If user is disabled, check if the disabledUntil time has passed
+    // Account disabled check of an already loaded user. A suspension that ended counts
+    // as lifted (ExpiryScheduler enables the account).
+    public boolean isAccountDisabled(User user) {
         if (user != null && user.isDisabled()) {
-            LocalDateTime now = LocalDateTime.now();
-            // if the disabledUntil time has passed, enable the account
-            if (now.isAfter(user.getDisabledUntil())) {
-                user.setDisabled(false);
-                userRepository.save(user);
-                return false;
-            } else {
-                return true;
-            }
+            return user.getDisabledUntil() == null || LocalDateTime.now().isBefore(user.getDisabledUntil());
         }
         return false;
     }
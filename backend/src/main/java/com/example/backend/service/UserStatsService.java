@@ -0,0 +1,122 @@
+package com.example.backend.service;
+
+import com.example.backend.entity.UserStats;
+import com.example.backend.repository.UserStatsRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+// Profile counters (see UserStats). Writes that change a counter call this service
+// so the row is updated with a relative UPDATE in the same request, and reads get
+// the row by primary key instead of counting with "username LIKE" queries. Rows
+// missing for users created before this table existed are backfilled once the
+// application is ready; a row still missing on read is computed on the spot.
+@Service
+public class UserStatsService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserStatsService.class);
+
+    private static final String COLUMNS = "INSERT INTO user_stats (username, posts, communities, admin_communities, upvotes) ";
+
+    // Counters computed from the source tables
+    private static final String COMPUTE = "SELECT u.username, "
+            + "(SELECT COUNT(*) FROM post p WHERE p.author_username = u.username), "
+            + "(SELECT COUNT(*) FROM user_community uc WHERE uc.user_id = u.username), "
+            + "(SELECT COUNT(*) FROM community c WHERE c.admin_username = u.username), "
+            + "(SELECT COALESCE(SUM(p.upvotes), 0) FROM post p WHERE p.author_username = u.username) "
+            + "FROM `user` u ";
+
+    private static final String BACKFILL = COLUMNS + COMPUTE
+            + "WHERE NOT EXISTS (SELECT 1 FROM user_stats s WHERE s.username = u.username)";
+
+    private static final String UPSERT = " ON DUPLICATE KEY UPDATE posts = VALUES(posts), "
+            + "communities = VALUES(communities), admin_communities = VALUES(admin_communities), upvotes = VALUES(upvotes)";
+
+    private static final int REFRESH_BATCH = 500;
+
+    private final UserStatsRepository userStatsRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    public UserStatsService(UserStatsRepository userStatsRepository, JdbcTemplate jdbcTemplate) {
+        this.userStatsRepository = userStatsRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Create the missing rows from the source tables. Returns the rows created.
+    @EventListener(ApplicationReadyEvent.class)
+    public int backfill() {
+        long start = System.currentTimeMillis();
+        int rows = jdbcTemplate.update(BACKFILL);
+        LOG.info("Backfilled the profile counters of {} users in {} ms", rows, System.currentTimeMillis() - start);
+        return rows;
+    }
+
+    // Counters of a user, null if the user does not exist
+    public UserStats getStats(String username) {
+        UserStats stats = userStatsRepository.findById(username).orElse(null);
+        if (stats == null) {
+            refresh(List.of(username));
+            stats = userStatsRepository.findById(username).orElse(null);
+        }
+        return stats;
+    }
+
+    // Recompute the counters of the given users from the source tables, after a
+    // change too wide to apply as deltas (a community deleted with its posts)
+    public void refresh(Collection<String> usernames) {
+        List<String> batch = new ArrayList<>(REFRESH_BATCH);
+        for (String username : usernames) {
+            batch.add(username);
+            if (batch.size() == REFRESH_BATCH) {
+                refreshBatch(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            refreshBatch(batch);
+        }
+    }
+
+    private void refreshBatch(List<String> usernames) {
+        String placeholders = String.join(", ", Collections.nCopies(usernames.size(), "?"));
+        jdbcTemplate.update(COLUMNS + COMPUTE + "WHERE u.username IN (" + placeholders + ")" + UPSERT,
+                usernames.toArray());
+    }
+
+    public void postCreated(String author) {
+        userStatsRepository.addPosts(author, 1);
+    }
+
+    // upvotes: the upvotes of the post already written to the database
+    public void postDeleted(String author, long upvotes) {
+        userStatsRepository.addPosts(author, -1);
+        userStatsRepository.addUpvotes(author, -upvotes);
+    }
+
+    public void communityJoined(String username) {
+        userStatsRepository.addCommunities(username, 1);
+    }
+
+    public void communityLeft(String username) {
+        userStatsRepository.addCommunities(username, -1);
+    }
+
+    // The admin of a community changed (either side may be null)
+    public void adminChanged(String oldAdmin, String newAdmin) {
+        if (oldAdmin != null) {
+            userStatsRepository.addAdminCommunities(oldAdmin, -1);
+        }
+        if (newAdmin != null) {
+            userStatsRepository.addAdminCommunities(newAdmin, 1);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.backend.service;
+
+import com.example.backend.config.SecondLevelCacheSync;
+import com.example.backend.dto.PostSummary;
+import com.example.backend.entity.Post;
+import com.example.backend.entity.Reply;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Write-behind buffer for the post vote and reply like counters. Votes only add a
+// delta to an in-memory map (merged per key, so concurrent votes never lose each
+// other) and the accumulated deltas are written in batched relative UPDATEs on a
+// schedule and on shutdown. Reads add the pending delta to the stored value. The
+// upvotes received by each author (user_stats) are updated in the same transaction
+// as the post counters, and the updated posts are evicted from the second-level
+// cache once it commits, as these writes bypass Hibernate. Each node buffers the votes
+// it receives: the other nodes count them once they are flushed, when the posts are
+// evicted from their caches too (see SecondLevelCacheSync).
+@Service
+public class VoteCounterBuffer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VoteCounterBuffer.class);
+
+    private static final String POST_UPDATE = "UPDATE post SET upvotes = upvotes + ?, downvotes = downvotes + ? WHERE identifier = ?";
+    private static final String AUTHOR_UPDATE = "UPDATE user_stats s JOIN post p ON p.author_username = s.username "
+            + "SET s.upvotes = s.upvotes + ? WHERE p.identifier = ?";
+    private static final String REPLY_UPDATE = "UPDATE reply SET likes = likes + ? WHERE identifier = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SecondLevelCacheSync secondLevelCache;
+
+    // Pending deltas: post id -> {upvotes, downvotes}, reply id -> likes
+    private final Map<Long, long[]> postVotes = new ConcurrentHashMap<>();
+    private final Map<Long, Long> replyLikes = new ConcurrentHashMap<>();
+
+    public VoteCounterBuffer(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            SecondLevelCacheSync secondLevelCache) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.secondLevelCache = secondLevelCache;
+    }
+
+    // Add a vote delta to a post. If called inside a transaction the delta is
+    // discarded again when the transaction rolls back.
+    public void addPostVotes(Long postId, int upvotes, int downvotes) {
+        if (upvotes == 0 && downvotes == 0) {
+            return;
+        }
+        mergePostVotes(postId, upvotes, downvotes);
+        onRollback(() -> mergePostVotes(postId, -upvotes, -downvotes));
+    }
+
+    // Add a like delta to a reply. If called inside a transaction the delta is
+    // discarded again when the transaction rolls back.
+    public void addReplyLikes(Long replyId, int likes) {
+        if (likes == 0) {
+            return;
+        }
+        replyLikes.merge(replyId, (long) likes, Long::sum);
+        onRollback(() -> replyLikes.merge(replyId, (long) -likes, Long::sum));
+    }
+
+    // Copy the pending deltas of a post into its transient counters
+    public Post applyPending(Post post) {
+        if (post != null) {
+            long[] pending = postVotes.get(post.getIdentifier());
+            if (pending == null) {
+                post.setPendingVotes(0, 0);
+            } else {
+                synchronized (pending) {
+                    post.setPendingVotes((int) pending[0], (int) pending[1]);
+                }
+            }
+        }
+        return post;
+    }
+
+    // Summary of a post with its pending deltas added to the counters
+    public PostSummary applyPending(PostSummary post) {
+        long[] pending = postVotes.get(post.identifier());
+        if (pending == null) {
+            return post;
+        }
+        synchronized (pending) {
+            return post.withPendingVotes((int) pending[0], (int) pending[1]);
+        }
+    }
+
+    // Copy the pending delta of a reply into its transient counter
+    public Reply applyPending(Reply reply) {
+        if (reply != null) {
+            reply.setPendingLikes(replyLikes.getOrDefault(reply.getIdentifier(), 0L).intValue());
+        }
+        return reply;
+    }
+
+    // Write every pending delta to the database in two batches
+    @Scheduled(fixedDelayString = "${votes.flush-interval-ms:2000}")
+    public synchronized void flush() {
+        List<Object[]> postBatch = new ArrayList<>();
+        List<Object[]> authorBatch = new ArrayList<>();
+        for (Long postId : postVotes.keySet()) {
+            // remove() is atomic with merge(), so a concurrent vote either lands in
+            // this batch or starts a new entry for the next one
+            long[] delta = postVotes.remove(postId);
+            if (delta != null && (delta[0] != 0 || delta[1] != 0)) {
+                postBatch.add(new Object[] { delta[0], delta[1], postId });
+                if (delta[0] != 0) {
+                    authorBatch.add(new Object[] { delta[0], postId });
+                }
+            }
+        }
+
+        List<Object[]> replyBatch = new ArrayList<>();
+        for (Long replyId : replyLikes.keySet()) {
+            Long delta = replyLikes.remove(replyId);
+            if (delta != null && delta != 0) {
+                replyBatch.add(new Object[] { delta, replyId });
+            }
+        }
+
+        if (!postBatch.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.batchUpdate(POST_UPDATE, postBatch);
+                    if (!authorBatch.isEmpty()) {
+                        jdbcTemplate.batchUpdate(AUTHOR_UPDATE, authorBatch);
+                    }
+                });
+                for (Object[] row : postBatch) {
+                    secondLevelCache.evict(Post.class, row[2]);
+                }
+            } catch (RuntimeException e) {
+                // put the deltas back so they are retried on the next flush
+                LOG.error("Could not flush {} post vote counters", postBatch.size(), e);
+                for (Object[] row : postBatch) {
+                    mergePostVotes((Long) row[2], (Long) row[0], (Long) row[1]);
+                }
+            }
+        }
+
+        if (!replyBatch.isEmpty()) {
+            try {
+                jdbcTemplate.batchUpdate(REPLY_UPDATE, replyBatch);
+            } catch (RuntimeException e) {
+                LOG.error("Could not flush {} reply like counters", replyBatch.size(), e);
+                for (Object[] row : replyBatch) {
+                    replyLikes.merge((Long) row[1], (Long) row[0], Long::sum);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private void mergePostVotes(Long postId, long upvotes, long downvotes) {
+        postVotes.compute(postId, (id, delta) -> {
+            if (delta == null) {
+                delta = new long[2];
+            }
+            synchronized (delta) {
+                delta[0] += upvotes;
+                delta[1] += downvotes;
+            }
+            return delta;
+        });
+    }
+
+    private void onRollback(Runnable undo) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        undo.run();
+                    }
+                }
+            });
+        }
+    }
+}
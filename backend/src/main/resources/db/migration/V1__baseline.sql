@@ -0,0 +1,250 @@
+-- Schema as Hibernate generated it with ddl-auto (plus the full-text indexes that
+-- SearchIndexService used to create at startup). Databases created that way already
+-- have it: they are baselined at this version (spring.flyway.baseline-on-migrate) and
+-- only get the migrations after it.
+
+CREATE TABLE `user` (
+    username VARCHAR(255) NOT NULL,
+    password VARCHAR(255),
+    alias VARCHAR(255),
+    email VARCHAR(255),
+    description VARCHAR(255),
+    pfp_content_type VARCHAR(50),
+    pfp_hash VARCHAR(64),
+    pfp_last_modified DATETIME(6),
+    pfp_width INT,
+    pfp_height INT,
+    ban_count INT NOT NULL,
+    pfp_string VARCHAR(255),
+    followers INT NOT NULL,
+    following INT NOT NULL,
+    is_disabled BIT NOT NULL,
+    disabled_until DATETIME(6),
+    creation_date DATE,
+    creation_time TIME(6),
+    full_creation_date DATETIME(6),
+    PRIMARY KEY (username),
+    INDEX idx_user_disabled_until (disabled_until),
+    FULLTEXT INDEX ft_user (username, email, alias, description)
+) ENGINE = InnoDB;
+
+CREATE TABLE user_roles (
+    user_username VARCHAR(255) NOT NULL,
+    roles VARCHAR(255),
+    CONSTRAINT fk_user_roles_user FOREIGN KEY (user_username) REFERENCES `user` (username)
+) ENGINE = InnoDB;
+
+CREATE TABLE user_follow (
+    follower VARCHAR(255) NOT NULL,
+    followed VARCHAR(255) NOT NULL,
+    followed_at DATETIME(6),
+    PRIMARY KEY (follower, followed),
+    INDEX idx_user_follow_followed (followed, follower),
+    CONSTRAINT fk_user_follow_follower FOREIGN KEY (follower) REFERENCES `user` (username) ON DELETE CASCADE,
+    CONSTRAINT fk_user_follow_followed FOREIGN KEY (followed) REFERENCES `user` (username) ON DELETE CASCADE
+) ENGINE = InnoDB;
+
+CREATE TABLE user_stats (
+    username VARCHAR(255) NOT NULL,
+    posts INT NOT NULL,
+    communities INT NOT NULL,
+    admin_communities INT NOT NULL,
+    upvotes BIGINT NOT NULL,
+    PRIMARY KEY (username),
+    CONSTRAINT fk_user_stats_user FOREIGN KEY (username) REFERENCES `user` (username) ON DELETE CASCADE
+) ENGINE = InnoDB;
+
+CREATE TABLE account_deletion (
+    username VARCHAR(255) NOT NULL,
+    status VARCHAR(10) NOT NULL,
+    step VARCHAR(20) NOT NULL,
+    processed BIGINT NOT NULL,
+    requested_by VARCHAR(255),
+    requested_at DATETIME(6),
+    updated_at DATETIME(6),
+    error VARCHAR(255),
+    PRIMARY KEY (username)
+) ENGINE = InnoDB;
+
+CREATE TABLE community (
+    identifier BIGINT NOT NULL,
+    name VARCHAR(255),
+    description VARCHAR(500),
+    admin_username VARCHAR(255),
+    has_banner BIT NOT NULL,
+    banner_content_type VARCHAR(50),
+    banner_hash VARCHAR(64),
+    banner_last_modified DATETIME(6),
+    banner_width INT,
+    banner_height INT,
+    banner_string VARCHAR(255),
+    creation_date DATE,
+    creation_time TIME(6),
+    full_creation_date DATETIME(6),
+    last_post_date DATE,
+    last_post_time TIME(6),
+    full_last_post_date DATETIME(6),
+    PRIMARY KEY (identifier),
+    FULLTEXT INDEX ft_community (name, description),
+    CONSTRAINT fk_community_admin FOREIGN KEY (admin_username) REFERENCES `user` (username)
+) ENGINE = InnoDB;
+
+CREATE TABLE user_community (
+    community_id BIGINT NOT NULL,
+    user_id VARCHAR(255) NOT NULL,
+    joined_at DATETIME(6),
+    PRIMARY KEY (community_id, user_id),
+    INDEX idx_user_community_user (user_id, community_id),
+    CONSTRAINT fk_user_community_community FOREIGN KEY (community_id) REFERENCES community (identifier)
+        ON DELETE CASCADE,
+    CONSTRAINT fk_user_community_user FOREIGN KEY (user_id) REFERENCES `user` (username) ON DELETE CASCADE
+) ENGINE = InnoDB;
+
+CREATE TABLE moderator_community (
+    community_id BIGINT NOT NULL,
+    user_id VARCHAR(255) NOT NULL,
+    appointed_at DATETIME(6),
+    PRIMARY KEY (community_id, user_id),
+    INDEX idx_moderator_community_user (user_id, community_id),
+    CONSTRAINT fk_moderator_community_community FOREIGN KEY (community_id) REFERENCES community (identifier)
+        ON DELETE CASCADE,
+    CONSTRAINT fk_moderator_community_user FOREIGN KEY (user_id) REFERENCES `user` (username) ON DELETE CASCADE
+) ENGINE = InnoDB;
+
+CREATE TABLE ban (
+    id BIGINT NOT NULL,
+    username VARCHAR(255),
+    community_id BIGINT,
+    ban_reason VARCHAR(255),
+    ban_until DATETIME(6),
+    PRIMARY KEY (id),
+    INDEX idx_ban_ban_until (ban_until),
+    CONSTRAINT fk_ban_user FOREIGN KEY (username) REFERENCES `user` (username),
+    CONSTRAINT fk_ban_community FOREIGN KEY (community_id) REFERENCES community (identifier)
+) ENGINE = InnoDB;
+
+CREATE TABLE post (
+    identifier BIGINT NOT NULL,
+    author_username VARCHAR(255),
+    title VARCHAR(100),
+    content VARCHAR(5000),
+    image_content_type VARCHAR(50),
+    image_hash VARCHAR(64),
+    image_last_modified DATETIME(6),
+    image_width INT,
+    image_height INT,
+    has_image BIT NOT NULL,
+    community_identifier BIGINT,
+    upvotes INT NOT NULL,
+    downvotes INT NOT NULL,
+    comments INT NOT NULL,
+    creation_date DATE,
+    creation_time TIME(6),
+    full_creation_date DATETIME(6),
+    last_reply_date DATE,
+    last_reply_time TIME(6),
+    full_last_reply_date DATETIME(6),
+    is_edited BIT NOT NULL,
+    last_edit_date DATE,
+    last_edit_time TIME(6),
+    full_last_edit_date DATETIME(6),
+    PRIMARY KEY (identifier),
+    FULLTEXT INDEX ft_post (title, content),
+    CONSTRAINT fk_post_author FOREIGN KEY (author_username) REFERENCES `user` (username),
+    CONSTRAINT fk_post_community FOREIGN KEY (community_identifier) REFERENCES community (identifier)
+) ENGINE = InnoDB;
+
+CREATE TABLE post_vote (
+    post_id BIGINT NOT NULL,
+    username VARCHAR(255) NOT NULL,
+    direction VARCHAR(10) NOT NULL,
+    voted_at DATETIME(6),
+    PRIMARY KEY (post_id, username),
+    INDEX idx_post_vote_username (username),
+    CONSTRAINT fk_post_vote_post FOREIGN KEY (post_id) REFERENCES post (identifier) ON DELETE CASCADE,
+    CONSTRAINT fk_post_vote_user FOREIGN KEY (username) REFERENCES `user` (username) ON DELETE CASCADE
+) ENGINE = InnoDB;
+
+CREATE TABLE feed_entry (
+    username VARCHAR(255) NOT NULL,
+    feed VARCHAR(15) NOT NULL,
+    post_id BIGINT NOT NULL,
+    author_username VARCHAR(255),
+    community_id BIGINT,
+    PRIMARY KEY (username, feed, post_id),
+    CONSTRAINT fk_feed_entry_user FOREIGN KEY (username) REFERENCES `user` (username) ON DELETE CASCADE,
+    CONSTRAINT fk_feed_entry_post FOREIGN KEY (post_id) REFERENCES post (identifier) ON DELETE CASCADE
+) ENGINE = InnoDB;
+
+CREATE TABLE reply (
+    identifier BIGINT NOT NULL,
+    post_identifier BIGINT,
+    title VARCHAR(150),
+    content VARCHAR(500),
+    likes INT NOT NULL,
+    author_username VARCHAR(255),
+    creation_date DATE,
+    creation_time TIME(6),
+    full_creation_date DATETIME(6),
+    PRIMARY KEY (identifier),
+    FULLTEXT INDEX ft_reply (title, content),
+    CONSTRAINT fk_reply_post FOREIGN KEY (post_identifier) REFERENCES post (identifier),
+    CONSTRAINT fk_reply_author FOREIGN KEY (author_username) REFERENCES `user` (username)
+) ENGINE = InnoDB;
+
+CREATE TABLE reply_liked_by (
+    reply_id BIGINT NOT NULL,
+    user_id VARCHAR(255) NOT NULL,
+    liked_at DATETIME(6),
+    PRIMARY KEY (reply_id, user_id),
+    INDEX idx_reply_liked_by_user (user_id, reply_id),
+    CONSTRAINT fk_reply_liked_by_reply FOREIGN KEY (reply_id) REFERENCES reply (identifier) ON DELETE CASCADE,
+    CONSTRAINT fk_reply_liked_by_user FOREIGN KEY (user_id) REFERENCES `user` (username) ON DELETE CASCADE
+) ENGINE = InnoDB;
+
+CREATE TABLE chats (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    user1_id VARCHAR(255) NOT NULL,
+    user2_id VARCHAR(255) NOT NULL,
+    last_message_id BIGINT,
+    last_message_time DATETIME(6) NOT NULL,
+    user1_unread BIGINT NOT NULL,
+    user2_unread BIGINT NOT NULL,
+    user1_last_read_id BIGINT,
+    user2_last_read_id BIGINT,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_chats_last_message UNIQUE (last_message_id),
+    CONSTRAINT fk_chats_user1 FOREIGN KEY (user1_id) REFERENCES `user` (username) ON DELETE CASCADE,
+    CONSTRAINT fk_chats_user2 FOREIGN KEY (user2_id) REFERENCES `user` (username) ON DELETE CASCADE
+) ENGINE = InnoDB;
+
+CREATE TABLE messages (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    sender_id VARCHAR(255),
+    receiver_id VARCHAR(255),
+    content VARCHAR(255) NOT NULL,
+    is_read BIT NOT NULL,
+    timestamp DATETIME(6) NOT NULL,
+    chat_id BIGINT,
+    PRIMARY KEY (id),
+    INDEX idx_messages_chat_timestamp (chat_id, timestamp, id),
+    CONSTRAINT fk_messages_sender FOREIGN KEY (sender_id) REFERENCES `user` (username) ON DELETE CASCADE,
+    CONSTRAINT fk_messages_receiver FOREIGN KEY (receiver_id) REFERENCES `user` (username) ON DELETE CASCADE,
+    CONSTRAINT fk_messages_chat FOREIGN KEY (chat_id) REFERENCES chats (id) ON DELETE CASCADE
+) ENGINE = InnoDB;
+
+ALTER TABLE chats
+    ADD CONSTRAINT fk_chats_last_message FOREIGN KEY (last_message_id) REFERENCES messages (id) ON DELETE SET NULL;
+
+-- Tables of the pooled id generators (see PooledSequenceGenerator)
+CREATE TABLE post_seq (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO post_seq VALUES (1);
+
+CREATE TABLE reply_seq (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO reply_seq VALUES (1);
+
+CREATE TABLE community_seq (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO community_seq VALUES (1);
+
+CREATE TABLE ban_seq (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO ban_seq VALUES (1);
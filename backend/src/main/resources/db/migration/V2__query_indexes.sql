@@ -0,0 +1,44 @@
+-- Composite indexes for the filters and sort orders of the repository queries. Each
+-- one starts with the column of the equality condition and ends with the sort key
+-- (and the id used as tie-breaker by the keyset pages), so a page is read in index
+-- order without a filesort. The single-column indexes that InnoDB created for the
+-- foreign keys stay as they are.
+
+-- Posts of a community (PostRepository.findByCommunityIdentifierOrderBy*, keyset
+-- pages included; the replies order uses the comments counter)
+CREATE INDEX idx_post_community_created ON post (community_identifier, full_creation_date, identifier);
+CREATE INDEX idx_post_community_last_reply ON post (community_identifier, full_last_reply_date, identifier);
+CREATE INDEX idx_post_community_upvotes ON post (community_identifier, upvotes, identifier);
+CREATE INDEX idx_post_community_comments ON post (community_identifier, comments, identifier);
+
+-- Posts of a user (PostRepository.getPostsOfUserOrderBy*)
+CREATE INDEX idx_post_author_created ON post (author_username, full_creation_date);
+CREATE INDEX idx_post_author_last_reply ON post (author_username, full_last_reply_date);
+CREATE INDEX idx_post_author_upvotes ON post (author_username, upvotes);
+
+-- Most liked posts (getMostLikedPostsOf*)
+CREATE INDEX idx_post_upvotes ON post (upvotes);
+
+-- Replies of a post (ReplyRepository.findByPostOrderBy*, keyset pages included)
+CREATE INDEX idx_reply_post_created ON reply (post_identifier, full_creation_date, identifier);
+CREATE INDEX idx_reply_post_likes ON reply (post_identifier, likes, identifier);
+
+-- Ban of a user in a community (CommunityRepository.getBan, getAccess, and the
+-- scheduler lifting bans by community and username)
+CREATE INDEX idx_ban_community_user ON ban (community_id, username);
+
+-- Users by email (login, sign up checks), by followers and by bans (rankings)
+CREATE INDEX idx_user_email ON `user` (email);
+CREATE INDEX idx_user_followers ON `user` (followers);
+CREATE INDEX idx_user_ban_count ON `user` (ban_count);
+
+-- Chats of a user, newest first (ChatRepository.findByUsername*: one index per side
+-- of the OR, merged by the optimizer) and the chat between two users (findByUsers)
+CREATE INDEX idx_chats_user1_last_message ON chats (user1_id, last_message_time, id);
+CREATE INDEX idx_chats_user2_last_message ON chats (user2_id, last_message_time, id);
+CREATE INDEX idx_chats_users ON chats (user1_id, user2_id);
+
+-- Unread messages of a user (MessageRepository.countUnreadMessagesByUsername) and of
+-- a user in a chat (both markAsRead statements)
+CREATE INDEX idx_messages_receiver_read ON messages (receiver_id, is_read);
+CREATE INDEX idx_messages_chat_receiver_read ON messages (chat_id, receiver_id, is_read, id);
@@ -0,0 +1,37 @@
+-- Posts, replies, users and communities stored every date three times: a DATE, a TIME
+-- and the DATETIME made of both. Only the DATETIME columns are kept; rows that only
+-- had the separate parts get them joined first.
+
+UPDATE post SET full_creation_date = TIMESTAMP(creation_date, creation_time)
+    WHERE full_creation_date IS NULL AND creation_date IS NOT NULL;
+UPDATE post SET full_last_reply_date = TIMESTAMP(last_reply_date, last_reply_time)
+    WHERE full_last_reply_date IS NULL AND last_reply_date IS NOT NULL;
+UPDATE post SET full_last_edit_date = TIMESTAMP(last_edit_date, last_edit_time)
+    WHERE full_last_edit_date IS NULL AND last_edit_date IS NOT NULL;
+ALTER TABLE post
+    DROP COLUMN creation_date, DROP COLUMN creation_time,
+    DROP COLUMN last_reply_date, DROP COLUMN last_reply_time,
+    DROP COLUMN last_edit_date, DROP COLUMN last_edit_time;
+
+UPDATE reply SET full_creation_date = TIMESTAMP(creation_date, creation_time)
+    WHERE full_creation_date IS NULL AND creation_date IS NOT NULL;
+ALTER TABLE reply DROP COLUMN creation_date, DROP COLUMN creation_time;
+
+UPDATE `user` SET full_creation_date = TIMESTAMP(creation_date, creation_time)
+    WHERE full_creation_date IS NULL AND creation_date IS NOT NULL;
+ALTER TABLE `user` DROP COLUMN creation_date, DROP COLUMN creation_time;
+
+UPDATE community SET full_creation_date = TIMESTAMP(creation_date, creation_time)
+    WHERE full_creation_date IS NULL AND creation_date IS NOT NULL;
+UPDATE community SET full_last_post_date = TIMESTAMP(last_post_date, last_post_time)
+    WHERE full_last_post_date IS NULL AND last_post_date IS NOT NULL;
+ALTER TABLE community
+    DROP COLUMN creation_date, DROP COLUMN creation_time,
+    DROP COLUMN last_post_date, DROP COLUMN last_post_time;
+
+-- Orders by a timestamp over the whole table (newest posts of the most followed
+-- communities, latest communities, the search engine sorts)
+CREATE INDEX idx_post_created ON post (full_creation_date);
+CREATE INDEX idx_community_created ON community (full_creation_date);
+CREATE INDEX idx_community_last_post ON community (full_last_post_date);
+CREATE INDEX idx_user_created ON `user` (full_creation_date);
@@ -0,0 +1,6 @@
+-- Indexes for the queries QueryPlanIT found reading the whole table: the posts of an
+-- author sorted by number of replies (now the comments counter instead of a GROUP BY
+-- over the replies) and the exact matches on a post title and a user alias.
+CREATE INDEX idx_post_author_comments ON post (author_username, comments, identifier);
+CREATE INDEX idx_post_title ON post (title);
+CREATE INDEX idx_user_alias ON `user` (alias);
@@ -0,0 +1,291 @@
+package com.example.backend.cluster;
+
+import com.example.backend.BackendApplication;
+import com.example.backend.config.ChatPresenceRegistry;
+import com.example.backend.entity.User;
+import com.example.backend.repository.CommunityRepository;
+import com.example.backend.repository.UserRepository;
+import io.restassured.RestAssured;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.net.Socket;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.*;
+
+// Two nodes of the application in one JVM, routing chat and the changes of their
+// in-memory state through the broker embedded in node A. Node A runs with the dev
+// profile (schema and sample data created again), node B shares its database as it is
+// and connects to the broker in-vm.
+// Run with: mvn test -P cluster-tests
+class ChatClusterIT {
+
+    private static final String BROKER_ID = "42";
+
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    @BeforeAll
+    static void startNodes() {
+        nodeA = new SpringApplicationBuilder(BackendApplication.class)
+                .profiles("dev")
+                .properties("server.port=0",
+                        "chat.router=broker",
+                        "chat.node-id=node-a",
+                        "spring.artemis.mode=embedded",
+                        "spring.artemis.embedded.enabled=true",
+                        "spring.artemis.embedded.server-id=" + BROKER_ID)
+                .run();
+        nodeB = new SpringApplicationBuilder(BackendApplication.class)
+                .properties("server.port=0",
+                        "chat.router=broker",
+                        "chat.node-id=node-b",
+                        "spring.artemis.mode=embedded",
+                        "spring.artemis.embedded.enabled=false",
+                        "spring.artemis.embedded.server-id=" + BROKER_ID,
+                        // a second-level cache of its own, as in another JVM (the cache
+                        // manager of the default URI is shared by every context of the JVM)
+                        "spring.jpa.properties.hibernate.javax.cache.uri=application.conf")
+                .run();
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        if (nodeB != null) {
+            nodeB.close();
+        }
+        if (nodeA != null) {
+            nodeA.close();
+        }
+    }
+
+    @Test
+    void testMessagesCrossNodes() throws Exception {
+        ChatPresenceRegistry presenceA = nodeA.getBean(ChatPresenceRegistry.class);
+        ChatPresenceRegistry presenceB = nodeB.getBean(ChatPresenceRegistry.class);
+
+        // AdminReader is connected to both nodes, BookReader_14 only to node B
+        BlockingQueue<String> adminFramesA = new LinkedBlockingQueue<>();
+        BlockingQueue<String> adminFramesB = new LinkedBlockingQueue<>();
+        BlockingQueue<String> readerFramesB = new LinkedBlockingQueue<>();
+        WebSocketSession adminSessionA = connect(nodeA, "AdminReader", "adminpass", adminFramesA);
+        WebSocketSession adminSessionB = connect(nodeB, "AdminReader", "adminpass", adminFramesB);
+        WebSocketSession readerSessionB = connect(nodeB, "BookReader_14", "pass", readerFramesB);
+        try {
+            // Case 1: each node learns where the users of the other one are connected
+            awaitTrue(() -> presenceA.nodesOf("AdminReader").equals(Set.of("node-a", "node-b")));
+            awaitTrue(() -> presenceB.nodesOf("AdminReader").equals(Set.of("node-a", "node-b")));
+            awaitTrue(() -> presenceA.nodesOf("BookReader_14").equals(Set.of("node-b")));
+
+            // Case 2: a message sent on node B reaches the recipient on both nodes
+            readerSessionB.sendMessage(message("BookReader_14", "AdminReader", "From node B", "b-1"));
+            JSONObject ack = new JSONObject(readerFramesB.poll(10, TimeUnit.SECONDS));
+            assertEquals("ACCEPTED", ack.getString("status"));
+            for (BlockingQueue<String> frames : List.of(adminFramesA, adminFramesB)) {
+                JSONObject received = new JSONObject(frames.poll(10, TimeUnit.SECONDS));
+                assertEquals(ack.getString("messageId"), received.getString("messageId"));
+                assertEquals("From node B", received.getString("content"));
+            }
+
+            // Case 3: a message sent on node A reaches the recipient on node B, and the
+            // other session of the sender (also on node B)
+            adminSessionA.sendMessage(message("AdminReader", "BookReader_14", "From node A", "a-1"));
+            JSONObject ackA = new JSONObject(adminFramesA.poll(10, TimeUnit.SECONDS));
+            assertEquals("ACCEPTED", ackA.getString("status"));
+            JSONObject received = new JSONObject(readerFramesB.poll(10, TimeUnit.SECONDS));
+            assertEquals(ackA.getString("messageId"), received.getString("messageId"));
+            JSONObject copy = new JSONObject(adminFramesB.poll(10, TimeUnit.SECONDS));
+            assertEquals(ackA.getString("messageId"), copy.getString("messageId"));
+
+            // Case 4: closing a session is seen by the other node
+            adminSessionA.close();
+            awaitTrue(() -> presenceB.nodesOf("AdminReader").equals(Set.of("node-b")));
+        } finally {
+            adminSessionA.close();
+            adminSessionB.close();
+            readerSessionB.close();
+        }
+    }
+
+    @Test
+    void testStateCrossNodes() throws Exception {
+        String readerCookieA = login(nodeA, "BookReader_14", "pass");
+        String readerCookieB = login(nodeB, "BookReader_14", "pass");
+        // BookReader_14 is a member of every community and the admin of none
+        Long community = nodeA.getBean(CommunityRepository.class).findAll(PageRequest.of(0, 1)).getContent().get(0)
+                .getIdentifier();
+
+        // Case 1: leaving and joining a community on node A is seen by node B
+        assertTrue(isMember(nodeB, readerCookieB, community, "BookReader_14"));
+        manageMembership(nodeA, readerCookieA, community, "BookReader_14", "leave");
+        awaitTrue(() -> !isMember(nodeB, readerCookieB, community, "BookReader_14"));
+        manageMembership(nodeA, readerCookieA, community, "BookReader_14", "join");
+        awaitTrue(() -> isMember(nodeB, readerCookieB, community, "BookReader_14"));
+
+        // Case 2: a user cached by node B is evicted when node A updates it
+        Cache cacheB = nodeB.getBean(EntityManagerFactory.class).getCache();
+        nodeB.getBean(UserRepository.class).findById("BookReader_14");
+        assertTrue(cacheB.contains(User.class, "BookReader_14"));
+        given()
+                .baseUri("https://localhost")
+                .port(port(nodeA))
+                .cookie("AuthToken", readerCookieA)
+                .contentType("application/json")
+                .body("{\"description\": \"Edited on node A " + System.nanoTime() + "\"}")
+                .when()
+                .put("/api/v1/users/BookReader_14?action=edit")
+                .then()
+                .statusCode(200);
+        awaitTrue(() -> !cacheB.contains(User.class, "BookReader_14"));
+    }
+
+    private static boolean isMember(ConfigurableApplicationContext node, String cookie, Long community,
+            String username) {
+        return given()
+                .baseUri("https://localhost")
+                .port(port(node))
+                .cookie("AuthToken", cookie)
+                .when()
+                .get("/api/v1/communities/" + community + "/users/" + username)
+                .then()
+                .statusCode(200)
+                .extract()
+                .as(Boolean.class);
+    }
+
+    private static void manageMembership(ConfigurableApplicationContext node, String cookie, Long community,
+            String username, String action) {
+        given()
+                .baseUri("https://localhost")
+                .port(port(node))
+                .cookie("AuthToken", cookie)
+                .when()
+                .put("/api/v1/communities/" + community + "/users/" + username + "?action=" + action)
+                .then()
+                .statusCode(200);
+    }
+
+    private static TextMessage message(String sender, String recipient, String content, String clientId)
+            throws JSONException {
+        return new TextMessage(new JSONObject()
+                .put("senderUsername", sender)
+                .put("recipientUsername", recipient)
+                .put("content", content)
+                .put("clientId", clientId)
+                .toString());
+    }
+
+    private static int port(ConfigurableApplicationContext node) {
+        return Integer.parseInt(node.getEnvironment().getProperty("local.server.port"));
+    }
+
+    private static String login(ConfigurableApplicationContext node, String username, String password) {
+        RestAssured.useRelaxedHTTPSValidation();
+        return given()
+                .baseUri("https://localhost")
+                .port(port(node))
+                .contentType("application/json")
+                .body("{\"username\": \"" + username + "\", \"password\": \"" + password + "\"}")
+                .when()
+                .post("/api/v1/login")
+                .then()
+                .statusCode(200)
+                .extract()
+                .cookie("AuthToken");
+    }
+
+    private static WebSocketSession connect(ConfigurableApplicationContext node, String username, String password,
+            BlockingQueue<String> frames) throws Exception {
+        int port = port(node);
+        String authCookie = login(node, username, password);
+        String token = given()
+                .baseUri("https://localhost")
+                .port(port)
+                .cookie("AuthToken", authCookie)
+                .when()
+                .get("/api/v1/ws-token")
+                .then()
+                .statusCode(200)
+                .extract()
+                .asString();
+
+        // The server uses a self-signed certificate
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[] { new TrustAllManager() }, null);
+        StandardWebSocketClient client = new StandardWebSocketClient();
+        client.setUserProperties(Map.of("org.apache.tomcat.websocket.SSL_CONTEXT", sslContext));
+
+        return client.execute(new TextWebSocketHandler() {
+            @Override
+            protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+                frames.add(message.getPayload());
+            }
+        }, "wss://localhost:" + port + "/ws/chat?token={token}", token).get(10, TimeUnit.SECONDS);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting for the nodes to agree");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private static class TrustAllManager extends X509ExtendedTrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.backend.load;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Downloads the same post image 500 times concurrently and samples the heap of the
+// server while doing it. Run with: mvn test -P load-tests
+// The heap budget (MB above the idle heap) can be changed with -Dload.heap-budget-mb
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ImageDownloadLoadIT {
+
+    private static final int DOWNLOADS = 500;
+
+    static {
+        // the test keystore is self-signed
+        System.setProperty("jdk.internal.httpclient.disableHostnameVerification", "true");
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void testConcurrentImageDownloadsHeapUsage() throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .sslContext(trustAllContext())
+                .executor(Executors.newFixedThreadPool(64))
+                .build();
+        URI image = URI.create("https://localhost:" + port + "/api/v1/posts/1/pictures");
+
+        // warm up and size of the image
+        HttpResponse<byte[]> first = client.send(HttpRequest.newBuilder(image).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(200, first.statusCode());
+        long imageSize = first.body().length;
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long idleHeap = memory.getHeapMemoryUsage().getUsed();
+        AtomicLong peakHeap = new AtomicLong(idleHeap);
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0, 5, TimeUnit.MILLISECONDS);
+
+        List<CompletableFuture<HttpResponse<Void>>> downloads = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < DOWNLOADS; i++) {
+            downloads.add(client.sendAsync(HttpRequest.newBuilder(image).build(),
+                    HttpResponse.BodyHandlers.discarding()));
+        }
+        for (CompletableFuture<HttpResponse<Void>> download : downloads) {
+            assertEquals(200, download.get(2, TimeUnit.MINUTES).statusCode());
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        sampler.shutdownNow();
+
+        long growthMb = (peakHeap.get() - idleHeap) / 1024 / 1024;
+        long budgetMb = Long.getLong("load.heap-budget-mb", 512);
+        System.out.printf("%d downloads of a %d KB image in %d ms, peak heap +%d MB (budget %d MB, "
+                + "%d MB if every response were buffered)%n", DOWNLOADS, imageSize / 1024, elapsed, growthMb,
+                budgetMb, DOWNLOADS * imageSize / 1024 / 1024);
+        assertTrue(growthMb < budgetMb, "Peak heap grew " + growthMb + " MB");
+    }
+
+    private static SSLContext trustAllContext() throws Exception {
+        TrustManager trustAll = new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new TrustManager[] { trustAll }, new SecureRandom());
+        return context;
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.backend.load;
+
+import com.example.backend.config.LocalClusterEvents;
+import com.example.backend.repository.UserRepository;
+import com.example.backend.security.jwt.JwtCookieManager;
+import com.example.backend.security.jwt.JwtRequestFilter;
+import com.example.backend.security.jwt.JwtTokenProvider;
+import com.example.backend.security.jwt.SecurityCipher;
+import com.example.backend.security.jwt.VerifiedTokenCache;
+import io.jsonwebtoken.Jwts;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Time to authenticate a request carrying an access token cookie:
+// - before: the previous JwtRequestFilter, replayed step by step (AES key derived and
+//   Cipher created on every decryption, one parse to validate the token and another
+//   one to read the username, then the user lookup). The lookup is answered by an
+//   in-memory UserDetailsService, so the database round trip it made is not counted.
+// - afterCold: the current filter with an empty VerifiedTokenCache (first request of
+//   a token). Its revocation check is answered in memory too.
+// - afterWarm: the current filter with the token already verified.
+// Run with: mvn test -P load-tests -Dtest=JwtRequestFilterBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtRequestFilterBenchmark {
+
+    private static final String SECRET = "change_me";
+
+    private final FilterChain chain = (request, response) -> {
+    };
+
+    private UserDetailsService userDetailsService;
+    private VerifiedTokenCache verifiedTokenCache;
+    private JwtRequestFilter filter;
+    private MockHttpServletRequest request;
+    private String encryptedToken;
+
+    @Setup
+    public void setup() {
+        UserDetails user = new User("AdminReader", "adminpass",
+                List.of(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN")));
+        userDetailsService = username -> user;
+
+        JwtTokenProvider jwtTokenProvider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(jwtTokenProvider, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(jwtTokenProvider, "userDetailsService", userDetailsService);
+        jwtTokenProvider.init();
+
+        verifiedTokenCache = new VerifiedTokenCache(60000, 10000, new LocalClusterEvents());
+        filter = new JwtRequestFilter();
+        ReflectionTestUtils.setField(filter, "userDetailsService", userDetailsService);
+        ReflectionTestUtils.setField(filter, "jwtTokenProvider", jwtTokenProvider);
+        ReflectionTestUtils.setField(filter, "verifiedTokenCache", verifiedTokenCache);
+        ReflectionTestUtils.setField(filter, "userRepository", Proxy.newProxyInstance(
+                UserRepository.class.getClassLoader(), new Class<?>[] { UserRepository.class },
+                (proxy, method, args) -> method.getName().equals("acceptsToken") ? true : null));
+
+        encryptedToken = SecurityCipher.encrypt(jwtTokenProvider.generateToken(user).getTokenValue());
+        request = new MockHttpServletRequest("GET", "/api/v1/users/me");
+        request.setCookies(new Cookie(JwtCookieManager.ACCESS_TOKEN_COOKIE_NAME, encryptedToken));
+    }
+
+    @Benchmark
+    public Authentication before() throws Exception {
+        byte[] key = MessageDigest.getInstance("SHA-1").digest("secureCDCKey".getBytes(StandardCharsets.UTF_8));
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(Arrays.copyOf(key, 16), "AES"));
+        String token = new String(cipher.doFinal(Base64.getDecoder().decode(encryptedToken)));
+
+        Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token);
+        String username = Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody().getSubject();
+
+        UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+        return new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+    }
+
+    @Benchmark
+    public Authentication afterCold() throws Exception {
+        verifiedTokenCache.clear();
+        return authenticate();
+    }
+
+    @Benchmark
+    public Authentication afterWarm() throws Exception {
+        return authenticate();
+    }
+
+    private Authentication authenticate() throws Exception {
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        if (authentication == null) {
+            throw new IllegalStateException("The request was not authenticated");
+        }
+        return authentication;
+    }
+
+    @Test
+    void runBenchmark() throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtRequestFilterBenchmark.class.getSimpleName())
+                .shouldFailOnError(true)
+                .build()).run();
+    }
+}
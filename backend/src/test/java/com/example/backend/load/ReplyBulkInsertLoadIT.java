@@ -0,0 +1,81 @@
+package com.example.backend.load;
+
+import com.example.backend.entity.Post;
+import com.example.backend.entity.Reply;
+import com.example.backend.entity.User;
+import com.example.backend.repository.PostRepository;
+import com.example.backend.repository.ReplyRepository;
+import com.example.backend.repository.UserRepository;
+import com.example.backend.service.ReplyService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Inserts 1M replies into one post, first one row at a time (a transaction and a round
+// trip per reply, as the seeders did) and then through ReplyService.saveReplies
+// (chunked transactions, batched multi-row inserts and pooled ids), and prints the
+// rate of each. The row-at-a-time pass only inserts a sample and its time for the
+// whole run is extrapolated. Run with: mvn test -P load-tests
+// Sizes: -Dload.bulk.replies (default 1000000), -Dload.bulk.single-replies (default 20000)
+@SpringBootTest
+class ReplyBulkInsertLoadIT {
+
+    // Replies handed to saveReplies per call, so the test doesn't hold all of them
+    private static final int CALL_SIZE = 10000;
+
+    @Autowired
+    private ReplyService replyService;
+
+    @Autowired
+    private ReplyRepository replyRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void testBulkInsertReplies() {
+        int replies = Integer.getInteger("load.bulk.replies", 1000000);
+        int singleReplies = Integer.getInteger("load.bulk.single-replies", 20000);
+        User author = userRepository.findByUsername("BookReader_14");
+        Post post = postRepository.findByIdentifier(1L);
+        long before = replyRepository.count();
+
+        // Before: one save per reply
+        long start = System.nanoTime();
+        for (int i = 0; i < singleReplies; i++) {
+            replyRepository.save(new Reply("Single " + i, "Inserted one row at a time", author, post));
+        }
+        double singleSeconds = (System.nanoTime() - start) / 1e9;
+        double singleRate = singleReplies / singleSeconds;
+
+        // After: batched
+        start = System.nanoTime();
+        int inserted = 0;
+        while (inserted < replies) {
+            List<Reply> call = new ArrayList<>(CALL_SIZE);
+            for (int i = 0; i < CALL_SIZE && inserted + i < replies; i++) {
+                call.add(new Reply("Batched " + (inserted + i), "Inserted in batches", author, post));
+            }
+            inserted += replyService.saveReplies(call);
+        }
+        double batchSeconds = (System.nanoTime() - start) / 1e9;
+        double batchRate = replies / batchSeconds;
+
+        System.out.printf("One row at a time: %d replies in %.1f s (%.0f/s, ~%.0f s for %d)%n", singleReplies,
+                singleSeconds, singleRate, replies / singleRate, replies);
+        System.out.printf("Batched: %d replies in %.1f s (%.0f/s, %.1fx)%n", replies, batchSeconds, batchRate,
+                batchRate / singleRate);
+
+        assertEquals(before + singleReplies + replies, replyRepository.count());
+        assertEquals(replies, inserted);
+        assertTrue(batchRate > singleRate, "Batched inserts were not faster than one row at a time");
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.backend.plan;
+
+import com.example.backend.entity.Ban;
+import com.example.backend.entity.Community;
+import com.example.backend.entity.Post;
+import com.example.backend.entity.Reply;
+import com.example.backend.entity.User;
+import com.example.backend.service.BatchWriter;
+import com.example.backend.service.ReplyService;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Seeds the tables read by the repositories with a dataset of realistic size and
+// shape: a few users, communities and posts hold most of the activity (the choices
+// are skewed towards the first ones), as in production. Entities with generated ids
+// go through BatchWriter, the join tables and the chats through batched JDBC inserts.
+// Sizes are multiplied by -Dplan.scale (default 1).
+class PlanDataset {
+
+    private static final String[] WORDS = { "book", "novel", "fantasy", "reading", "author", "chapter", "library",
+            "review", "saga", "poetry" };
+
+    // Rows added per call to the JDBC batches
+    private static final int BATCH = 5000;
+
+    private final BatchWriter batchWriter;
+    private final ReplyService replyService;
+    private final JdbcTemplate jdbcTemplate;
+    private final Random random = new Random(42);
+
+    final int users;
+    final int communities;
+    final int posts;
+    final int replies;
+    final int memberships;
+    final int follows;
+    final int votes;
+    final int likes;
+    final int bans;
+    final int chats;
+    final int messages;
+
+    PlanDataset(BatchWriter batchWriter, ReplyService replyService, JdbcTemplate jdbcTemplate, double scale) {
+        this.batchWriter = batchWriter;
+        this.replyService = replyService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.users = (int) (2000 * scale);
+        this.communities = (int) (200 * scale);
+        this.posts = (int) (50000 * scale);
+        this.replies = (int) (200000 * scale);
+        this.memberships = (int) (20000 * scale);
+        this.follows = (int) (20000 * scale);
+        this.votes = (int) (100000 * scale);
+        this.likes = (int) (100000 * scale);
+        this.bans = (int) (2000 * scale);
+        this.chats = (int) (2000 * scale);
+        this.messages = (int) (50000 * scale);
+    }
+
+    void seed() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+
+        List<User> userList = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            User user = new User("plan_user_" + i, "Plan " + word(i), "Reader of " + word(i + 1), null,
+                    "plan_user_" + i + "@example.com", "pass", List.of("USER"));
+            user.setFollowers(skewed(1000));
+            user.setBanCount(random.nextInt(5));
+            user.setFullCreationDate(now.minusMinutes(random.nextInt(525600)));
+            userList.add(user);
+        }
+        batchWriter.insertAll(userList);
+
+        List<Community> communityList = new ArrayList<>(communities);
+        for (int i = 0; i < communities; i++) {
+            Community community = new Community("Plan community " + i + " " + word(i),
+                    "A community about " + word(i) + " and " + word(i + 3), null, pick(userList));
+            community.setFullCreationDate(now.minusMinutes(random.nextInt(525600)));
+            community.setFullLastPostDate(now.minusMinutes(random.nextInt(10080)));
+            communityList.add(community);
+        }
+        batchWriter.insertAll(communityList);
+
+        List<Post> postList = new ArrayList<>(posts);
+        for (int i = 0; i < posts; i++) {
+            Post post = new Post("Post " + i + " " + word(i), "Thoughts on a " + word(i + 1) + " " + word(i + 2),
+                    pick(userList), pick(communityList));
+            post.setUpvotes(skewed(500));
+            post.setDownvotes(skewed(50));
+            post.setFullCreationDate(now.minusMinutes(random.nextInt(525600)));
+            post.setFullLastReplyDate(post.getFullCreationDate().plusMinutes(random.nextInt(10080)));
+            post.setFullLastEditDate(post.getFullCreationDate());
+            postList.add(post);
+        }
+        batchWriter.insertAll(postList);
+
+        // replies are handed over in calls of 10000 so they are not all held at once
+        List<Reply> call = new ArrayList<>();
+        for (int i = 0; i < replies; i++) {
+            Post post = pick(postList);
+            Reply reply = new Reply("Reply " + i, "About the " + word(i), pick(userList), post);
+            reply.setFullCreationDate(post.getFullCreationDate().plusMinutes(random.nextInt(10080)));
+            call.add(reply);
+            if (call.size() == 10000 || i == replies - 1) {
+                replyService.saveReplies(call);
+                call = new ArrayList<>();
+            }
+        }
+        List<Long> replyIds = jdbcTemplate.queryForList(
+                "SELECT identifier FROM reply WHERE title LIKE 'Reply %' ORDER BY identifier", Long.class);
+
+        List<Ban> banList = new ArrayList<>(bans);
+        Set<String> banned = new HashSet<>();
+        while (banList.size() < bans && banned.size() < users * communities) {
+            User user = pick(userList);
+            Community community = pick(communityList);
+            if (banned.add(community.getIdentifier() + "/" + user.getUsername())) {
+                // all of them still running, so the expiry scheduler leaves them alone
+                banList.add(new Ban(user, community, "Plan ban", now.plusMinutes(60 + random.nextInt(20000))));
+            }
+        }
+        batchWriter.insertAll(banList);
+
+        insert("INSERT IGNORE INTO user_community (community_id, user_id, joined_at) VALUES (?, ?, NOW(6))",
+                memberships, () -> new Object[] { pick(communityList).getIdentifier(), pick(userList).getUsername() });
+        insert("INSERT IGNORE INTO moderator_community (community_id, user_id, appointed_at) VALUES (?, ?, NOW(6))",
+                communities * 2,
+                () -> new Object[] { pick(communityList).getIdentifier(), pick(userList).getUsername() });
+        insert("INSERT IGNORE INTO user_follow (follower, followed, followed_at) VALUES (?, ?, NOW(6))", follows,
+                () -> new Object[] { pick(userList).getUsername(), pick(userList).getUsername() });
+        insert("INSERT IGNORE INTO post_vote (post_id, username, direction, voted_at) VALUES (?, ?, ?, NOW(6))",
+                votes, () -> new Object[] { pick(postList).getIdentifier(), pick(userList).getUsername(),
+                        random.nextInt(10) == 0 ? "DOWNVOTE" : "UPVOTE" });
+        insert("INSERT IGNORE INTO reply_liked_by (reply_id, user_id, liked_at) VALUES (?, ?, NOW(6))", likes,
+                () -> new Object[] { pick(replyIds), pick(userList).getUsername() });
+
+        // one chat per pair of users, with the messages spread over them
+        long lastChat = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM chats", Long.class);
+        Set<String> pairs = new HashSet<>();
+        List<Object[]> chatRows = new ArrayList<>();
+        while (chatRows.size() < chats && pairs.size() < users * (users - 1) / 2) {
+            String user1 = pick(userList).getUsername();
+            String user2 = pick(userList).getUsername();
+            if (!user1.equals(user2) && pairs.add(user1.compareTo(user2) < 0 ? user1 + "/" + user2 : user2 + "/" + user1)) {
+                chatRows.add(new Object[] { user1, user2, Timestamp.valueOf(now.minusMinutes(random.nextInt(43200))) });
+            }
+        }
+        batch("INSERT INTO chats (user1_id, user2_id, last_message_time, user1_unread, user2_unread) "
+                + "VALUES (?, ?, ?, 0, 0)", chatRows);
+        List<Long> chatIds = jdbcTemplate.queryForList("SELECT id FROM chats WHERE id > ? ORDER BY id", Long.class,
+                lastChat);
+
+        List<Object[]> messageRows = new ArrayList<>();
+        for (int i = 0; i < messages && !chatIds.isEmpty(); i++) {
+            int chat = skewed(chatIds.size());
+            Object[] pair = chatRows.get(chat);
+            boolean fromFirst = random.nextBoolean();
+            messageRows.add(new Object[] { fromFirst ? pair[0] : pair[1], fromFirst ? pair[1] : pair[0],
+                    "Message " + i + " about " + word(i), random.nextInt(4) != 0,
+                    Timestamp.valueOf(now.minusSeconds(random.nextInt(2592000))), chatIds.get(chat) });
+            if (messageRows.size() == BATCH) {
+                batch("INSERT INTO messages (sender_id, receiver_id, content, is_read, timestamp, chat_id) "
+                        + "VALUES (?, ?, ?, ?, ?, ?)", messageRows);
+                messageRows.clear();
+            }
+        }
+        batch("INSERT INTO messages (sender_id, receiver_id, content, is_read, timestamp, chat_id) "
+                + "VALUES (?, ?, ?, ?, ?, ?)", messageRows);
+
+        // the optimizer works with the statistics of the tables, refresh them for the
+        // new rows
+        jdbcTemplate.execute("ANALYZE TABLE `user`, community, user_community, moderator_community, user_follow, "
+                + "post, post_vote, reply, reply_liked_by, ban, chats, messages");
+    }
+
+    private interface Row {
+        Object[] next();
+    }
+
+    private void insert(String sql, int count, Row row) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(row.next());
+            if (rows.size() == BATCH) {
+                batch(sql, rows);
+                rows.clear();
+            }
+        }
+        batch(sql, rows);
+    }
+
+    private void batch(String sql, List<Object[]> rows) {
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, rows);
+        }
+    }
+
+    // An index in [0, n) where the first ones are much more likely
+    private int skewed(int n) {
+        return n <= 0 ? 0 : (int) (n * Math.pow(random.nextDouble(), 3));
+    }
+
+    private <T> T pick(List<T> list) {
+        return list.get(skewed(list.size()));
+    }
+
+    private static String word(int i) {
+        return WORDS[i % WORDS.length];
+    }
+}
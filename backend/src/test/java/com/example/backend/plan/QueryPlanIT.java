@@ -0,0 +1,419 @@
+package com.example.backend.plan;
+
+import com.example.backend.entity.AccountDeletion;
+import com.example.backend.entity.User;
+import com.example.backend.repository.UserRepository;
+import com.example.backend.service.BatchWriter;
+import com.example.backend.service.ReplyService;
+import com.example.backend.service.SearchIndexService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.support.Repositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Query plan regression guard. Seeds a dataset of realistic size (see PlanDataset),
+// runs every query declared in the repository package (@Query and derived ones, not
+// the writes) with representative parameters while recording the SQL it executes,
+// and EXPLAINs each statement with the same parameters. Fails when a statement reads
+// a whole table or index (type ALL or index) or sorts (Using filesort) more than
+// -Dplan.max-rows estimated rows (default 1000), unless the query is in ALLOWED.
+// The plans, estimated rows and median latency of every query are written to
+// target/query-plans.txt. Run with: mvn test -P plan-tests
+// Dataset size: -Dplan.scale (default 1: 2000 users, 50000 posts, 200000 replies...)
+@SpringBootTest
+@Import(StatementRecorder.class)
+class QueryPlanIT {
+
+    // Timed runs of each query after the recorded one
+    private static final int RUNS = 3;
+
+    // Queries that are known to scan or sort more than the threshold, and why that is
+    // accepted. An entry that no longer does is reported so it can be removed.
+    private static final Map<String, String> ALLOWED = Map.ofEntries(
+            Map.entry("PostRepository.findByContent", "exact match on the body, which is too long for a B-tree; "
+                    + "searches go through ft_post"),
+            Map.entry("ReplyRepository.findByTitle", "substring match (LIKE %x%); searches go through ft_reply"),
+            Map.entry("ReplyRepository.findByContent", "substring match (LIKE %x%); searches go through ft_reply"),
+            Map.entry("PostRepository.getPostIdsOfAuthors", "feed backfill of a few authors, bounded by the LIMIT"),
+            Map.entry("PostRepository.getPostIdsOfCommunities", "feed backfill of a few communities, bounded by the LIMIT"),
+            Map.entry("PostRepository.getMostLikedPostsOfMostFollowedUsersGeneral", "landing page ranking over "
+                    + "every post with an author, its total counts them all"),
+            Map.entry("PostRepository.getMostLikedPostsOfMostFollowedCommunities", "landing page ranking, every "
+                    + "post is in a community"),
+            Map.entry("PostRepository.getMostRecentPostsOfMostFollowedCommunities", "landing page ranking, every "
+                    + "post is in a community"),
+            Map.entry("UserRepository.getUsersWithMostLikedContent", "ranking over every post, its total counts "
+                    + "them all"),
+            Map.entry("UserRepository.getUsersWithMostLikedContentCount", "aggregates every post; loaded once by "
+                    + "LeaderboardService, which keeps the ranking in memory"),
+            Map.entry("UserRepository.getUsersWithMostDislikesCount", "aggregates every post; loaded once by "
+                    + "LeaderboardService, which keeps the ranking in memory"),
+            Map.entry("UserRepository.getUsersWithMostBansCount", "loaded once by LeaderboardService, which keeps "
+                    + "the ranking in memory"),
+            Map.entry("UserRepository.getUsersSortedByBanCount", "admin search by a substring of the username"),
+            Map.entry("CommunityRepository.getAllAdmins", "whole table, loaded once by MembershipIndex"),
+            Map.entry("CommunityRepository.getAllBans", "whole table, loaded once by MembershipIndex"),
+            Map.entry("CommunityMemberRepository.getAllMemberships", "whole table, loaded once by MembershipIndex"),
+            Map.entry("CommunityModeratorRepository.getAllModerators", "whole table, loaded once by MembershipIndex"),
+            Map.entry("UserFollowRepository.getAllEdges", "whole table, loaded once by FollowGraph"),
+            Map.entry("PostRepository.searchPostIdsBySubstring",
+                    "substring match (LIKE %x%), fallback for the stopwords and short words ft_post skips"),
+            Map.entry("PostRepository.searchPostIdsOfCommunityBySubstring",
+                    "substring match (LIKE %x%), fallback for the stopwords and short words ft_post skips"),
+            Map.entry("PostRepository.searchPostIdsOfUserBySubstring",
+                    "substring match (LIKE %x%), fallback for the stopwords and short words ft_post skips"),
+            Map.entry("ReplyRepository.searchRepliesBySubstring",
+                    "substring match (LIKE %x%), fallback for the stopwords and short words ft_reply skips"),
+            Map.entry("ReplyRepository.searchRepliesOfPostBySubstring",
+                    "substring match (LIKE %x%), fallback for the stopwords and short words ft_reply skips"),
+            Map.entry("CommunityRepository.searchCommunitiesBySubstring",
+                    "substring match (LIKE %x%), fallback for the stopwords and short words ft_community skips"),
+            Map.entry("CommunityRepository.searchCommunitiesBySubstringOrderByMembers",
+                    "substring match (LIKE %x%), fallback for the stopwords and short words ft_community skips"),
+            Map.entry("UserRepository.searchUsersBySubstring",
+                    "substring match (LIKE %x%), fallback for the stopwords and short words ft_user skips"));
+
+    private record PlanRow(String table, String type, String key, long rows, String extra) {
+
+        boolean scan() {
+            return "ALL".equals(type) || "index".equals(type);
+        }
+
+        boolean filesort() {
+            return extra != null && extra.contains("Using filesort");
+        }
+    }
+
+    // Representative values of the parameters, taken from the seeded data
+    private record Sample(String user, String email, String alias, String partner, long community, long post,
+            long reply, long chat, long ban, List<String> authors, List<Long> communities, List<Long> postIds) {
+    }
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private BatchWriter batchWriter;
+
+    @Autowired
+    private ReplyService replyService;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void testQueryPlans() throws Exception {
+        long maxRows = Long.getLong("plan.max-rows", 1000);
+        PlanDataset dataset = new PlanDataset(batchWriter, replyService, jdbcTemplate,
+                Double.parseDouble(System.getProperty("plan.scale", "1")));
+        dataset.seed();
+        Sample sample = sample();
+
+        // every query runs in a read-only transaction that is rolled back
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+
+        Repositories repositories = new Repositories(applicationContext);
+        List<Method> queries = new ArrayList<>();
+        Map<Method, Object> beans = new TreeMap<>(Comparator.comparing(QueryPlanIT::name));
+        for (Class<?> domainType : repositories) {
+            Class<?> repository = repositories.getRepositoryInformationFor(domainType).orElseThrow()
+                    .getRepositoryInterface();
+            if (!repository.getPackageName().equals("com.example.backend.repository")) {
+                continue;
+            }
+            Object bean = repositories.getRepositoryFor(domainType).orElseThrow();
+            for (Method method : repository.getDeclaredMethods()) {
+                if (isRead(method)) {
+                    queries.add(method);
+                    beans.put(method, bean);
+                }
+            }
+        }
+        queries.sort(Comparator.comparing(QueryPlanIT::name));
+
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT,
+                "Dataset: %d users, %d communities, %d posts, %d replies, %d memberships, %d follows, %d chats, "
+                        + "%d messages. Threshold: %d rows%n%n",
+                dataset.users, dataset.communities, dataset.posts, dataset.replies, dataset.memberships,
+                dataset.follows, dataset.chats, dataset.messages, maxRows));
+        List<String> violations = new ArrayList<>();
+        List<String> staleAllowed = new ArrayList<>(ALLOWED.keySet());
+
+        for (Method method : queries) {
+            String name = name(method);
+            Object bean = beans.get(method);
+            Object[] args = arguments(method, sample);
+
+            StatementRecorder.start();
+            List<StatementRecorder.RecordedStatement> statements;
+            try {
+                run(transaction, bean, method, args);
+            } finally {
+                statements = StatementRecorder.stop();
+            }
+            long[] times = new long[RUNS];
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                run(transaction, bean, method, args);
+                times[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(times);
+
+            report.append(String.format(Locale.ROOT, "%s  %.2f ms%n", name, times[RUNS / 2] / 1e6));
+            boolean violates = false;
+            for (StatementRecorder.RecordedStatement statement : statements) {
+                String sql = statement.sql().replaceAll("\\s+", " ").trim();
+                if (!sql.toLowerCase(Locale.ROOT).startsWith("select")) {
+                    continue;
+                }
+                report.append("  ").append(sql).append(System.lineSeparator());
+                for (PlanRow row : explain(statement)) {
+                    report.append(String.format(Locale.ROOT, "    %-20s %-8s %-36s rows=%-8d %s%n", row.table(),
+                            row.type(), row.key(), row.rows(), row.extra() == null ? "" : row.extra()));
+                    if (row.rows() > maxRows && (row.scan() || row.filesort())) {
+                        violates = true;
+                        if (!ALLOWED.containsKey(name)) {
+                            violations.add(String.format(Locale.ROOT, "%s: %s on %s, %d rows (%s)", name,
+                                    row.scan() ? "full scan" : "filesort", row.table(), row.rows(), sql));
+                        }
+                    }
+                }
+            }
+            if (violates) {
+                staleAllowed.remove(name);
+                if (ALLOWED.containsKey(name)) {
+                    report.append("  allowed: ").append(ALLOWED.get(name)).append(System.lineSeparator());
+                }
+            }
+            report.append(System.lineSeparator());
+        }
+
+        for (String name : staleAllowed) {
+            report.append("Allowed but within the threshold now: ").append(name).append(System.lineSeparator());
+        }
+        Path file = Path.of("target", "query-plans.txt");
+        write(file, report.toString());
+        System.out.print(report);
+        System.out.printf("%d queries explained, report in %s%n", queries.size(), file.toAbsolutePath());
+
+        assertTrue(violations.isEmpty(), "Queries scanning or sorting more than " + maxRows + " rows:"
+                + System.lineSeparator() + String.join(System.lineSeparator(), violations));
+    }
+
+    // Queries declared in the repository itself that only read (default methods
+    // delegate to inherited ones)
+    private static boolean isRead(Method method) {
+        if (method.isDefault() || method.isSynthetic() || method.isAnnotationPresent(Modifying.class)) {
+            return false;
+        }
+        Query query = method.getAnnotation(Query.class);
+        if (query != null) {
+            String sql = query.value().trim().toUpperCase(Locale.ROOT);
+            return !(sql.startsWith("INSERT") || sql.startsWith("UPDATE") || sql.startsWith("DELETE"));
+        }
+        return !(method.getName().startsWith("delete") || method.getName().startsWith("remove"));
+    }
+
+    private static String name(Method method) {
+        return method.getDeclaringClass().getSimpleName() + "." + method.getName();
+    }
+
+    private void run(TransactionTemplate transaction, Object bean, Method method, Object[] args) {
+        transaction.executeWithoutResult(status -> {
+            status.setRollbackOnly();
+            try {
+                method.invoke(bean, args);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException(name(method) + " failed", e.getCause());
+            }
+        });
+    }
+
+    private List<PlanRow> explain(StatementRecorder.RecordedStatement statement) {
+        return jdbcTemplate.query("EXPLAIN " + statement.sql(), (rs, i) -> new PlanRow(rs.getString("table"),
+                rs.getString("type"), rs.getString("key"), rs.getLong("rows"), rs.getString("Extra")),
+                statement.parameters().toArray());
+    }
+
+    // The most active user, community, post and chat, so the queries read the largest
+    // ranges they can
+    private Sample sample() {
+        String user = jdbcTemplate.queryForObject("SELECT author_username FROM post GROUP BY author_username "
+                + "ORDER BY COUNT(*) DESC LIMIT 1", String.class);
+        User entity = userRepository.findByUsername(user);
+        long community = jdbcTemplate.queryForObject("SELECT community_identifier FROM post "
+                + "GROUP BY community_identifier ORDER BY COUNT(*) DESC LIMIT 1", Long.class);
+        long post = jdbcTemplate.queryForObject("SELECT identifier FROM post ORDER BY comments DESC LIMIT 1",
+                Long.class);
+        long reply = jdbcTemplate.queryForObject("SELECT reply_id FROM reply_liked_by GROUP BY reply_id "
+                + "ORDER BY COUNT(*) DESC LIMIT 1", Long.class);
+        Map<String, Object> chat = jdbcTemplate.queryForList("SELECT id, user1_id, user2_id FROM chats "
+                + "WHERE user1_id = ? OR user2_id = ? ORDER BY id LIMIT 1", user, user).stream().findFirst()
+                .orElseGet(() -> jdbcTemplate.queryForMap("SELECT id, user1_id, user2_id FROM chats LIMIT 1"));
+        String partner = user.equals(chat.get("user1_id")) ? (String) chat.get("user2_id")
+                : (String) chat.get("user1_id");
+        long ban = jdbcTemplate.queryForObject("SELECT MIN(id) FROM ban", Long.class);
+        List<String> authors = jdbcTemplate.queryForList("SELECT followed FROM user_follow WHERE follower = ?",
+                String.class, user);
+        List<Long> communities = jdbcTemplate.queryForList(
+                "SELECT community_id FROM user_community WHERE user_id = ?", Long.class, user);
+        List<Long> postIds = jdbcTemplate.queryForList("SELECT identifier FROM post ORDER BY identifier DESC "
+                + "LIMIT 100", Long.class);
+        return new Sample(user, entity.getEmail(), entity.getAlias(), partner, community, post, reply,
+                ((Number) chat.get("id")).longValue(), ban, authors.isEmpty() ? List.of(partner) : authors,
+                communities.isEmpty() ? List.of(community) : communities, postIds);
+    }
+
+    // A representative value for each parameter, chosen by its type and name. A new
+    // kind of parameter fails the test until it is added here.
+    private Object[] arguments(Method method, Sample sample) {
+        Parameter[] parameters = method.getParameters();
+        Object[] args = new Object[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            args[i] = argument(method, parameters[i], sample);
+        }
+        return args;
+    }
+
+    private Object argument(Method method, Parameter parameter, Sample sample) {
+        Class<?> type = parameter.getType();
+        String name = parameter.getName().toLowerCase(Locale.ROOT);
+        if (Pageable.class.isAssignableFrom(type)) {
+            return PageRequest.of(0, 10);
+        }
+        if (type == User.class) {
+            return userRepository.findByUsername(sample.user());
+        }
+        if (type.isEnum()) {
+            return type.getEnumConstants()[0];
+        }
+        if (type == LocalDateTime.class) {
+            // keyset pages start from the newest rows, ranges of ends cover everything
+            return name.startsWith("after") ? LocalDateTime.of(2000, 1, 1, 0, 0) : LocalDateTime.now().plusYears(1);
+        }
+        if (Collection.class.isAssignableFrom(type)) {
+            Class<?> element = (Class<?>) ((ParameterizedType) parameter.getParameterizedType())
+                    .getActualTypeArguments()[0];
+            if (element == AccountDeletion.Status.class) {
+                return List.of(AccountDeletion.Status.QUEUED, AccountDeletion.Status.RUNNING);
+            }
+            if (name.contains("author")) {
+                return sample.authors();
+            }
+            if (name.contains("community")) {
+                return sample.communities();
+            }
+            if (name.equals("ids")) {
+                return sample.postIds();
+            }
+            if (name.equals("usernames")) {
+                return sample.authors();
+            }
+        }
+        if (type == String.class) {
+            if (name.startsWith("after")) {
+                return "";
+            }
+            if (name.equals("query")) {
+                return searchIndexService.toBooleanQuery("book");
+            }
+            if (name.equals("email")) {
+                return sample.email();
+            }
+            if (name.equals("alias")) {
+                return sample.alias();
+            }
+            if (name.equals("followed") || name.equals("user2")) {
+                return sample.partner();
+            }
+            if (name.contains("user") || name.contains("author") || name.equals("follower")) {
+                return sample.user();
+            }
+            if (name.equals("title") || name.equals("content") || name.equals("name") || name.equals("description")
+                    || name.equals("text")) {
+                return "book";
+            }
+        }
+        if (type == Long.class || type == long.class) {
+            if (name.contains("community")) {
+                return sample.community();
+            }
+            if (name.contains("post")) {
+                return sample.post();
+            }
+            if (name.contains("reply")) {
+                return sample.reply();
+            }
+            if (name.contains("chat")) {
+                return sample.chat();
+            }
+            if (name.contains("ban")) {
+                return sample.ban();
+            }
+            if (name.equals("afterid")) {
+                return -1L;
+            }
+            if (name.equals("id") || name.equals("lastid")) {
+                return Long.MAX_VALUE;
+            }
+            if (name.equals("limit")) {
+                return 100L;
+            }
+        }
+        if (type == Integer.class || type == int.class) {
+            if (name.equals("likes") || name.equals("replies")) {
+                return Integer.MAX_VALUE;
+            }
+            if (name.equals("limit")) {
+                return 100;
+            }
+        }
+        throw new IllegalStateException("No representative value for parameter " + parameter.getName() + " ("
+                + type.getSimpleName() + ") of " + name(method) + ", add one to QueryPlanIT.argument");
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
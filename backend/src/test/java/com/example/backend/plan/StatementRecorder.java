@@ -0,0 +1,93 @@
+package com.example.backend.plan;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Wraps the DataSource so the SQL of the prepared statements executed by the current
+// thread, and the parameters bound to them, can be recorded while start() is on.
+// Only the statements Hibernate and Spring Data prepare are seen, which is every
+// repository query.
+public class StatementRecorder implements BeanPostProcessor {
+
+    public record RecordedStatement(String sql, List<Object> parameters) {
+    }
+
+    private static final ThreadLocal<List<RecordedStatement>> RECORDING = new ThreadLocal<>();
+
+    public static void start() {
+        RECORDING.set(new ArrayList<>());
+    }
+
+    // Stop recording and return what was executed since start()
+    public static List<RecordedStatement> stop() {
+        List<RecordedStatement> statements = RECORDING.get();
+        RECORDING.remove();
+        return statements == null ? List.of() : statements;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource) {
+            return proxy(DataSource.class, dataSource, (method, args) -> {
+                Object result = invoke(dataSource, method, args);
+                return method.getName().equals("getConnection") ? connection((Connection) result) : result;
+            });
+        }
+        return bean;
+    }
+
+    private static Connection connection(Connection connection) {
+        return proxy(Connection.class, connection, (method, args) -> {
+            Object result = invoke(connection, method, args);
+            return method.getName().equals("prepareStatement")
+                    ? statement((PreparedStatement) result, (String) args[0])
+                    : result;
+        });
+    }
+
+    private static PreparedStatement statement(PreparedStatement statement, String sql) {
+        Map<Integer, Object> parameters = new TreeMap<>();
+        return proxy(PreparedStatement.class, statement, (method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                parameters.put(index, name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                parameters.clear();
+            } else if ((name.equals("executeQuery") || name.equals("execute")) && (args == null || args.length == 0)) {
+                List<RecordedStatement> recording = RECORDING.get();
+                if (recording != null) {
+                    recording.add(new RecordedStatement(sql, new ArrayList<>(parameters.values())));
+                }
+            }
+            return invoke(statement, method, args);
+        });
+    }
+
+    private interface Handler {
+        Object handle(Method method, Object[] args) throws Throwable;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, Handler handler) {
+        return (T) Proxy.newProxyInstance(StatementRecorder.class.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> handler.handle(method, args));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
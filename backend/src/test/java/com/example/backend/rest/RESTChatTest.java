@@ -1,12 +1,35 @@
 package com.example.backend.rest;
 
+import com.example.backend.service.ChatMessageWriter;
 import io.restassured.RestAssured;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.json.JSONObject;
 import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.net.Socket;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static io.restassured.RestAssured.*;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
@@ -15,6 +38,12 @@ class RESTChatTest {
     @LocalServerPort
     private int port;
 
+    @Autowired
+    private ChatMessageWriter chatMessageWriter;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     @BeforeEach
     public void setup() {
         baseURI = "https://localhost";
@@ -233,4 +262,254 @@ class RESTChatTest {
                 .then()
                 .statusCode(403);
     }
-} 
\ No newline at end of file
+
+    @Test
+    @Order(6)
+    void testWebSocketFanOut() throws Exception {
+        String senderCookie = login("BookReader_14", "pass");
+        String recipientCookie = login("AdminReader", "adminpass");
+
+        // The recipient is connected from two places, the sender from one
+        BlockingQueue<String> recipientFrames1 = new LinkedBlockingQueue<>();
+        BlockingQueue<String> recipientFrames2 = new LinkedBlockingQueue<>();
+        BlockingQueue<String> senderFrames = new LinkedBlockingQueue<>();
+        WebSocketSession recipientSession1 = connect(recipientCookie, recipientFrames1);
+        WebSocketSession recipientSession2 = connect(recipientCookie, recipientFrames2);
+        WebSocketSession senderSession = connect(senderCookie, senderFrames);
+        try {
+            String content = "Fan-out test " + System.nanoTime();
+            long sentAt = System.currentTimeMillis();
+            senderSession.sendMessage(new TextMessage(new JSONObject()
+                    .put("senderUsername", "BookReader_14")
+                    .put("recipientUsername", "AdminReader")
+                    .put("content", content)
+                    .put("clientId", "client-1")
+                    .put("timestamp", 1L)
+                    .toString()));
+
+            // Case 1: the sender gets an acknowledgement with the id of the message, the
+            // time is the server's and the client's is only echoed
+            JSONObject ack = new JSONObject(senderFrames.poll(10, TimeUnit.SECONDS));
+            assertEquals("ack", ack.getString("type"));
+            assertEquals("client-1", ack.getString("clientId"));
+            assertEquals("ACCEPTED", ack.getString("status"));
+            assertEquals(1L, ack.getLong("clientTimestamp"));
+            assertTrue(ack.getLong("timestamp") >= sentAt);
+            String messageId = ack.getString("messageId");
+
+            // Case 2: every session of the recipient gets the message
+            for (BlockingQueue<String> frames : List.of(recipientFrames1, recipientFrames2)) {
+                JSONObject received = new JSONObject(frames.poll(10, TimeUnit.SECONDS));
+                assertEquals(messageId, received.getString("messageId"));
+                assertEquals(content, received.getString("content"));
+                assertEquals("BookReader_14", received.getString("senderUsername"));
+                assertEquals(ack.getLong("timestamp"), received.getLong("timestamp"));
+            }
+
+            // Case 3: a message to an unknown user is not accepted
+            senderSession.sendMessage(new TextMessage(new JSONObject()
+                    .put("senderUsername", "BookReader_14")
+                    .put("recipientUsername", "NoSuchUser_" + System.nanoTime())
+                    .put("content", "Nobody will read this")
+                    .put("clientId", "client-2")
+                    .toString()));
+            JSONObject invalid = new JSONObject(senderFrames.poll(10, TimeUnit.SECONDS));
+            assertEquals("client-2", invalid.getString("clientId"));
+            assertEquals("INVALID", invalid.getString("status"));
+
+            // Case 4: once written, the message is the last one of the chat
+            chatMessageWriter.flush();
+            given()
+                    .cookie("AuthToken", recipientCookie)
+                    .when()
+                    .get("/chats")
+                    .then()
+                    .statusCode(200)
+                    .body("lastMessage.content", hasItem(content));
+        } finally {
+            recipientSession1.close();
+            recipientSession2.close();
+            senderSession.close();
+        }
+    }
+
+    @Test
+    @Order(7)
+    void testChatHistoryPagesAndUnreadCounters() {
+        String authCookie = login("BookReader_14", "pass");
+
+        // Case 1: the chat list has the unread count of the user (chat 2 has one
+        // unread message from FanBook_785)
+        given()
+                .cookie("AuthToken", authCookie)
+                .when()
+                .get("/chats")
+                .then()
+                .statusCode(200)
+                .body("find { it.id == 2 }.unreadCount", equalTo(1));
+
+        // Case 2: the latest page, newest first
+        List<Integer> latest = given()
+                .cookie("AuthToken", authCookie)
+                .queryParam("size", 2)
+                .when()
+                .get("/chats/2/messages")
+                .then()
+                .statusCode(200)
+                .body("size()", equalTo(2))
+                .body("[0].content", equalTo("What are you reading?"))
+                .body("[1].content", equalTo("Hi FanBook!"))
+                .extract()
+                .path("id");
+
+        // Case 3: the page before the oldest message of the latest page
+        int oldest = given()
+                .cookie("AuthToken", authCookie)
+                .queryParam("before", latest.get(1))
+                .queryParam("size", 2)
+                .when()
+                .get("/chats/2/messages")
+                .then()
+                .statusCode(200)
+                .body("size()", equalTo(1))
+                .body("[0].content", equalTo("Hey BookReader!"))
+                .extract()
+                .path("[0].id");
+
+        // Case 4: the messages after one of them, oldest first
+        given()
+                .cookie("AuthToken", authCookie)
+                .queryParam("after", oldest)
+                .when()
+                .get("/chats/2/messages")
+                .then()
+                .statusCode(200)
+                .body("id", contains(latest.get(1), latest.get(0)));
+
+        // Case 5: an anchor from another chat
+        given()
+                .cookie("AuthToken", authCookie)
+                .queryParam("before", oldest)
+                .when()
+                .get("/chats/3/messages")
+                .then()
+                .statusCode(400);
+
+        // Case 6: reading the chat clears the counter and moves the marker
+        given()
+                .cookie("AuthToken", authCookie)
+                .when()
+                .post("/chats/2/read")
+                .then()
+                .statusCode(200);
+        given()
+                .cookie("AuthToken", authCookie)
+                .when()
+                .get("/chats")
+                .then()
+                .statusCode(200)
+                .body("find { it.id == 2 }.unreadCount", equalTo(0))
+                .body("find { it.id == 2 }.lastReadMessageId", equalTo(latest.get(0)));
+        given()
+                .cookie("AuthToken", authCookie)
+                .queryParam("size", 1)
+                .when()
+                .get("/chats/2/messages")
+                .then()
+                .statusCode(200)
+                .body("[0].read", equalTo(true));
+    }
+
+    @Test
+    @Order(8)
+    void testGetUserChatsQueryCount() {
+        String authCookie = login("BookReader_14", "pass");
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // The chats come with their participants and last message in one query, plus
+        // its count and the requester (the margin covers background jobs)
+        given()
+                .cookie("AuthToken", authCookie)
+                .queryParam("page", 0)
+                .queryParam("size", 10)
+                .when()
+                .get("/chats")
+                .then()
+                .statusCode(200)
+                .body("find { it.id == 2 }.user1.username", notNullValue())
+                .body("find { it.id == 2 }.lastMessage.sender.username", notNullValue())
+                .body("find { it.id == 2 }.unreadCount", notNullValue());
+
+        long statements = statistics.getPrepareStatementCount();
+        assertTrue(statements <= 5, "Chat list ran " + statements + " statements");
+    }
+
+    private String login(String username, String password) {
+        return given()
+                .contentType("application/json")
+                .body("{\"username\": \"" + username + "\", \"password\": \"" + password + "\"}")
+                .when()
+                .post("/login")
+                .then()
+                .statusCode(200)
+                .extract()
+                .cookie("AuthToken");
+    }
+
+    private WebSocketSession connect(String authCookie, BlockingQueue<String> frames) throws Exception {
+        String token = given()
+                .cookie("AuthToken", authCookie)
+                .when()
+                .get("/ws-token")
+                .then()
+                .statusCode(200)
+                .extract()
+                .asString();
+
+        // The server uses a self-signed certificate
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[] { new TrustAllManager() }, null);
+        StandardWebSocketClient client = new StandardWebSocketClient();
+        client.setUserProperties(Map.of("org.apache.tomcat.websocket.SSL_CONTEXT", sslContext));
+
+        return client.execute(new TextWebSocketHandler() {
+            @Override
+            protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+                frames.add(message.getPayload());
+            }
+        }, "wss://localhost:" + port + "/ws/chat?token={token}", token).get(10, TimeUnit.SECONDS);
+    }
+
+    private static class TrustAllManager extends X509ExtendedTrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
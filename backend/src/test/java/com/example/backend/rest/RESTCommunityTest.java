@@ -1,7 +1,11 @@
 package com.example.backend.rest;
 
 import io.restassured.RestAssured;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
 
@@ -18,6 +22,9 @@ class RESTCommunityTest {
     @LocalServerPort
     private int port;
 
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     @BeforeEach
     public void setup() {
         baseURI = "https://localhost";
@@ -1254,4 +1261,61 @@ class RESTCommunityTest {
                 .statusCode(200)
                 .body(equalTo("false")); // User is not a member
     }
+
+    @Test
+    @Order(20)
+    void testBanUserChecksQueryCount() {
+        String authCookieAdmin =
+                given()
+                        .contentType("application/json")
+                        .body("{\"username\": \"AdminReader\", \"password\": \"adminpass\"}")
+                        .when()
+                        .post("/login")
+                        .then()
+                        .statusCode(200)
+                        .cookie("AuthToken")
+                        .extract()
+                        .cookie("AuthToken");
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // Non-member user: every permission check runs before the request is rejected,
+        // and the requester and the target are resolved with one query each (the margin
+        // covers background jobs running at the same time)
+        given()
+                .cookie("AuthToken", authCookieAdmin)
+                .contentType("application/json")
+                .body(Map.of("communityID", "1", "username", "BookReader_14", "duration", "week", "reason", "Violation of rules"))
+                .when()
+                .post("/bans")
+                .then()
+                .statusCode(401);
+
+        long statements = statistics.getPrepareStatementCount();
+        Assertions.assertTrue(statements <= 10, "Ban checks ran " + statements + " statements");
+    }
+
+    @Test
+    @Order(21)
+    void testGetMembersQueryCount() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // The page of members, its count and the roles of all of them, plus the
+        // community and the requester (the margin covers background jobs)
+        given()
+                .pathParam("id", 1)
+                .queryParam("page", 0)
+                .queryParam("size", 10)
+                .when()
+                .get("/communities/{id}/users")
+                .then()
+                .statusCode(200)
+                .body("[0].username", notNullValue())
+                .body("[0].roles", hasItem("USER"));
+
+        long statements = statistics.getPrepareStatementCount();
+        Assertions.assertTrue(statements <= 7, "Members page ran " + statements + " statements");
+    }
 }
\ No newline at end of file
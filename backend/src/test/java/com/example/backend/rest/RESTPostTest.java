@@ -1,7 +1,12 @@
 package com.example.backend.rest;
 
+import com.example.backend.service.VoteCounterBuffer;
 import io.restassured.RestAssured;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
 
@@ -18,6 +23,12 @@ class RESTPostTest {
     @LocalServerPort
     private int port;
 
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private VoteCounterBuffer voteCounterBuffer;
+
     private int newPostWithImageId;
 
     private int newPostId;
@@ -103,6 +114,20 @@ class RESTPostTest {
                 .statusCode(200)
                 .contentType("application/json")
                 .body("get(0).identifier", equalTo(1));
+
+        // Every word is required and matched as a prefix
+        given()
+                .queryParam("query", "bookmarks rev")
+                .queryParam("page", 0)
+                .queryParam("size", 10)
+                .queryParam("order", "default")
+                .when()
+                .get("/posts")
+                .then()
+                .statusCode(200)
+                .contentType("application/json")
+                .body("size()", equalTo(1))
+                .body("get(0).identifier", equalTo(3));
     }
 
     @Test
@@ -189,6 +214,39 @@ class RESTPostTest {
                 .contentType("application/json")
                 .body("size()", lessThanOrEqualTo(2))
                 .body("get(0).identifier", equalTo(2));
+
+        // Keyset pagination: the first page returns the cursor of the next one
+        io.restassured.response.Response firstPage = given()
+                .pathParam("communityID", 1)
+                .queryParam("size", 1)
+                .queryParam("sort", "creationDate")
+                .queryParam("cursor", "")
+                .when()
+                .get("/communities/{communityID}/posts")
+                .then()
+                .statusCode(200)
+                .body("size()", equalTo(1))
+                .header("X-Next-Cursor", notNullValue())
+                .extract().response();
+
+        given()
+                .pathParam("communityID", 1)
+                .queryParam("size", 1)
+                .queryParam("sort", "creationDate")
+                .queryParam("cursor", firstPage.header("X-Next-Cursor"))
+                .when()
+                .get("/communities/{communityID}/posts")
+                .then()
+                .statusCode(200)
+                .body("get(0).identifier", not(equalTo(firstPage.path("get(0).identifier"))));
+
+        given()
+                .pathParam("communityID", 1)
+                .queryParam("cursor", "not a cursor")
+                .when()
+                .get("/communities/{communityID}/posts")
+                .then()
+                .statusCode(400);
     }
 
     @Test
@@ -409,6 +467,52 @@ class RESTPostTest {
                 .statusCode(200)
                 .contentType(anyOf(equalTo("image/jpeg"), equalTo("image/png")));
 
+        // The image is served with its hash as ETag, partially and conditionally
+        String etag = given()
+                .pathParam("postId", newPostWithImageId)
+                .when()
+                .get("/posts/{postId}/pictures")
+                .then()
+                .statusCode(200)
+                .header("Accept-Ranges", "bytes")
+                .header("ETag", notNullValue())
+                .extract().header("ETag");
+
+        given()
+                .pathParam("postId", newPostWithImageId)
+                .header("Range", "bytes=0-9")
+                .when()
+                .get("/posts/{postId}/pictures")
+                .then()
+                .statusCode(206)
+                .header("Content-Length", "10");
+
+        given()
+                .pathParam("postId", newPostWithImageId)
+                .header("If-None-Match", etag)
+                .when()
+                .get("/posts/{postId}/pictures")
+                .then()
+                .statusCode(304);
+
+        // Resized variants (the original is served while they are generated)
+        given()
+                .pathParam("postId", newPostWithImageId)
+                .queryParam("size", "thumbnail")
+                .when()
+                .get("/posts/{postId}/pictures")
+                .then()
+                .statusCode(200)
+                .contentType(anyOf(equalTo("image/jpeg"), equalTo("image/png")));
+
+        given()
+                .pathParam("postId", newPostWithImageId)
+                .queryParam("size", "huge")
+                .when()
+                .get("/posts/{postId}/pictures")
+                .then()
+                .statusCode(400);
+
         // Attempt to get an image for a post that exists but has no image
         int postIdWithoutImage = 5;
         given()
@@ -1793,4 +1897,140 @@ class RESTPostTest {
                 .contentType("application/json")
                 .body("size()", lessThanOrEqualTo(100));
     }
-}
\ No newline at end of file
+
+    @Test
+    @Order(27)
+    void testPostCacheSeesFlushedVotes() {
+        String authCookieAdmin =
+                given()
+                        .contentType("application/json")
+                        .body("{\"username\": \"AdminReader\", \"password\": \"adminpass\"}")
+                        .when()
+                        .post("/login")
+                        .then()
+                        .statusCode(200)
+                        .cookie("AuthToken")
+                        .extract()
+                        .cookie("AuthToken");
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // The second read of a post is served by the second-level cache
+        int upvotes = given()
+                .pathParam("postId", 1)
+                .when()
+                .get("/posts/{postId}")
+                .then()
+                .statusCode(200)
+                .extract()
+                .path("upvotes");
+
+        given()
+                .pathParam("postId", 1)
+                .when()
+                .get("/posts/{postId}")
+                .then()
+                .statusCode(200)
+                .body("upvotes", equalTo(upvotes));
+
+        long hits = statistics.getDomainDataRegionStatistics("post").getHitCount();
+        Assertions.assertTrue(hits > 0, "The post was read " + hits + " times from the cache");
+
+        // Toggle the vote and write it to the database: the cached post must not hide it
+        int toggled = given()
+                .cookie("AuthToken", authCookieAdmin)
+                .pathParam("postId", 1)
+                .formParam("action", "upvote")
+                .when()
+                .put("/posts/{postId}")
+                .then()
+                .statusCode(200)
+                .extract()
+                .path("upvotes");
+        voteCounterBuffer.flush();
+
+        given()
+                .pathParam("postId", 1)
+                .when()
+                .get("/posts/{postId}")
+                .then()
+                .statusCode(200)
+                .body("upvotes", equalTo(toggled));
+
+        // Restore the vote
+        given()
+                .cookie("AuthToken", authCookieAdmin)
+                .pathParam("postId", 1)
+                .formParam("action", "upvote")
+                .when()
+                .put("/posts/{postId}")
+                .then()
+                .statusCode(200)
+                .body("upvotes", equalTo(upvotes));
+        voteCounterBuffer.flush();
+
+        given()
+                .pathParam("postId", 1)
+                .when()
+                .get("/posts/{postId}")
+                .then()
+                .statusCode(200)
+                .body("upvotes", equalTo(upvotes));
+    }
+
+    @Test
+    @Order(28)
+    void testPostListsQueryCount() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        // Each list is read as summaries: the page and its count, plus the community
+        // and the requester (the margin covers background jobs running at the same time)
+        statistics.clear();
+        given()
+                .pathParam("communityID", 1)
+                .queryParam("page", 0)
+                .queryParam("size", 10)
+                .queryParam("sort", "likes")
+                .when()
+                .get("/communities/{communityID}/posts")
+                .then()
+                .statusCode(200)
+                .body("[0].author.username", notNullValue())
+                .body("[0].community.identifier", equalTo(1))
+                .body("[0]", not(hasKey("pendingUpvotes")));
+        long statements = statistics.getPrepareStatementCount();
+        Assertions.assertTrue(statements <= 6, "Community posts ran " + statements + " statements");
+
+        statistics.clear();
+        given()
+                .pathParam("username", "AdminReader")
+                .queryParam("page", 0)
+                .queryParam("size", 10)
+                .queryParam("order", "replies")
+                .when()
+                .get("/users/{username}/posts")
+                .then()
+                .statusCode(200)
+                .body("author.username", everyItem(equalTo("AdminReader")))
+                .body("[0].community.name", notNullValue());
+        statements = statistics.getPrepareStatementCount();
+        Assertions.assertTrue(statements <= 6, "User posts ran " + statements + " statements");
+
+        // Searches read the ids of the page and then their summaries
+        statistics.clear();
+        given()
+                .queryParam("query", "Bookmarks")
+                .queryParam("page", 0)
+                .queryParam("size", 10)
+                .queryParam("order", "creationDate")
+                .when()
+                .get("/posts")
+                .then()
+                .statusCode(200)
+                .body("[0].author.username", notNullValue())
+                .body("[0].community.name", notNullValue());
+        statements = statistics.getPrepareStatementCount();
+        Assertions.assertTrue(statements <= 6, "Post search ran " + statements + " statements");
+    }
+}
@@ -301,7 +301,29 @@ class RESTUserTest {
                 .statusCode(200)
                 .body(greaterThanOrEqualTo(Integer.toString(0)));
 
-        // Case 3: Non-existent user
+        // Case 3: The counters match the lists (exact username, "BookReader" must not
+        // count the communities of "BookReader_14" and vice versa)
+        for (boolean admin : new boolean[] { false, true }) {
+            int listed = given()
+                    .pathParam("username", existingUsername)
+                    .queryParam("admin", admin)
+                    .queryParam("size", 100)
+                    .when()
+                    .get("/users/{username}/communities")
+                    .then()
+                    .statusCode(200)
+                    .extract().body().path("size()");
+            given()
+                    .pathParam("username", existingUsername)
+                    .queryParam("admin", admin)
+                    .when()
+                    .get("/users/{username}/communities/count")
+                    .then()
+                    .statusCode(200)
+                    .body(equalTo(Integer.toString(listed)));
+        }
+
+        // Case 4: Non-existent user
         given()
                 .pathParam("username", nonExistentUsername)
                 .queryParam("admin", false)
@@ -310,7 +332,7 @@ class RESTUserTest {
                 .then()
                 .statusCode(404);
 
-        // Case 4: Missing 'admin' parameter
+        // Case 5: Missing 'admin' parameter
         given()
                 .pathParam("username", existingUsername)
                 .when()
@@ -533,7 +555,7 @@ class RESTUserTest {
     }
 
     @Test
-    void testDeleteUser() {
+    void testDeleteUser() throws InterruptedException {
         // No login
         given()
                 .when()
@@ -579,15 +601,39 @@ class RESTUserTest {
                 .then()
                 .statusCode(401);
 
-        // Delete user account
+        // Delete user account (accepted, then deleted in the background)
         given()
                 .contentType("application/json")
                 .cookie("AuthToken", authCookie)
                 .when()
                 .delete("/users/{username}", "YourReader")
                 .then()
-                .statusCode(200)
-                .body(equalTo("YourReader has been deleted"));
+                .statusCode(202)
+                .header("Location", endsWith("/api/v1/users/YourReader/deletion"))
+                .body("username", equalTo("YourReader"))
+                .body("status", oneOf("QUEUED", "RUNNING", "DONE"));
+
+        // The deletion finishes and the user is gone
+        long deadline = System.currentTimeMillis() + 10000;
+        String status;
+        do {
+            Thread.sleep(100);
+            status = given()
+                    .cookie("AuthToken", authCookie)
+                    .when()
+                    .get("/users/{username}/deletion", "YourReader")
+                    .then()
+                    .statusCode(200)
+                    .extract()
+                    .path("status");
+        } while (!status.equals("DONE") && System.currentTimeMillis() < deadline);
+        Assertions.assertEquals("DONE", status);
+
+        given()
+                .when()
+                .get("/users/{username}", "YourReader")
+                .then()
+                .statusCode(404);
     }
 
     @Test
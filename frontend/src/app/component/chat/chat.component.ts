@@ -24,8 +24,11 @@ export class ChatComponent implements OnInit, OnDestroy {
   // Current chat state
   currentChat: Chat | null = null;
   messages: Message[] = [];
+  messagesPageSize: number = 50;
   newMessage: string = '';
   loadingMessages: boolean = false;
+  loadingOlderMessages: boolean = false;
+  noMoreMessages: boolean = false;
   loadingTemporaryChat: boolean = false;
 
   // User state
@@ -228,12 +231,14 @@ export class ChatComponent implements OnInit, OnDestroy {
 
   loadMessages(chatId: number) {
     this.loadingMessages = true;
-    this.chatService.getChatMessages(chatId).subscribe({
+    this.noMoreMessages = false;
+    this.chatService.getChatMessages(chatId, undefined, this.messagesPageSize).subscribe({
       next: (messages: Message[]) => {
         // Sort messages from oldest to newest
         this.messages = messages.sort((a, b) => 
           new Date(a.timestamp).getTime() - new Date(b.timestamp).getTime()
         );
+        this.noMoreMessages = messages.length < this.messagesPageSize;
         this.loadingMessages = false;
         this.scrollToBottom();
       },
@@ -244,6 +249,27 @@ export class ChatComponent implements OnInit, OnDestroy {
     });
   }
 
+  loadOlderMessages() {
+    // oldest message already saved (messages received live don't have an id yet)
+    const oldest = this.messages.find(message => message.id);
+    if (!this.currentChat || !oldest) return;
+    this.loadingOlderMessages = true;
+    this.chatService.getChatMessages(this.currentChat.id, oldest.id, this.messagesPageSize).subscribe({
+      next: (messages: Message[]) => {
+        const older = messages.sort((a, b) =>
+          new Date(a.timestamp).getTime() - new Date(b.timestamp).getTime()
+        );
+        this.messages = [...older, ...this.messages];
+        this.noMoreMessages = messages.length < this.messagesPageSize;
+        this.loadingOlderMessages = false;
+      },
+      error: (error) => {
+        this.handleError('Error al cargar los mensajes', error);
+        this.loadingOlderMessages = false;
+      }
+    });
+  }
+
   sendMessage() {
     if (!this.newMessage.trim() || !this.currentChat) return;
 
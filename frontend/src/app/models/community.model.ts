@@ -7,10 +7,6 @@ export interface Community {
     admin: User;
     hasBanner?: boolean;
     bannerString: string;
-    creationDate: Date;
-    creationTime: string;
     fullCreationDate: Date;
-    lastPostDate: Date;
-    lastPostTime: string;
     fullLastPostDate: Date;
 }
\ No newline at end of file
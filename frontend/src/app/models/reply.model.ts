@@ -8,7 +8,5 @@ export interface Reply {
   likes: number;
   author: User;
   post: Post;
-  creationDate?: string; // ISO date string
-  creationTime?: string; // ISO time string
   fullCreationDate: string; // ISO datetime string
 }
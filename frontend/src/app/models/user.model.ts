@@ -10,8 +10,6 @@ export interface User {
   followers: number;
   following: number;
   fullCreationDate: string;
-  creationDate?: string;
-  creationTime?: string;
   banCount: number;
   isDisabled: boolean;
   disabledUntil: string;
@@ -32,6 +32,10 @@ export class ChatService {
         this.webSocket.onmessage = (event) => {
           try {
             const message = JSON.parse(event.data);
+            // acknowledgements of the messages sent from this session
+            if (message.type === 'ack') {
+              return;
+            }
             const formattedMessage: Message = {
               id: message.id,
               sender: { username: message.senderUsername },
@@ -105,8 +109,10 @@ export class ChatService {
       );
   }
 
-  getChatMessages(chatId: number, page: number = 0, size: number = 20): Observable<Message[]> {
-    return this.http.get(`${this.API_URL}/${chatId}/messages?page=${page}&size=${size}`, { responseType: 'text' })
+  // Latest messages of a chat, or the ones older than a message (newest first)
+  getChatMessages(chatId: number, before?: number, size: number = 50): Observable<Message[]> {
+    const params = before ? `before=${before}&size=${size}` : `size=${size}`;
+    return this.http.get(`${this.API_URL}/${chatId}/messages?${params}`, { responseType: 'text' })
       .pipe(
         map(response => {
           try {